@@ -0,0 +1,139 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.pool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.opentox.jaqpot3.util.Configuration;
+
+/**
+ * Pool of threads for the fine-grained jobs into which a computation that is
+ * already running (as a task of the {@link ExecutionPool}) is split, e.g. the
+ * folds of a cross validation or blocks of columns. The pool is separate from the
+ * pool of the tasks of the users and has no queue: a job is handed to an idle
+ * thread of the pool or else it is run by the thread which needs its result
+ * (see {@link #invokeAll(java.util.List) }). Therefore jobs never wait in (or
+ * fill) a queue and the pool never rejects work.
+ *
+ * <p>The number of threads is <code>computepool.size</code>, or the number of
+ * available processors if not positive.</p>
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class ComputePool {
+
+    private static final int _SIZE = Configuration.getIntegerProperty("computepool.size", 0);
+    private static final long _KEEP_ALIVE_TIME = 60;
+    public static final ComputePool POOL = new ComputePool();
+    private final ThreadPoolExecutor executor;
+
+    private ComputePool() {
+        final AtomicInteger count = new AtomicInteger();
+        ThreadFactory threadFactory = new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Compute_" + count.incrementAndGet());
+                thread.setPriority(Thread.MIN_PRIORITY);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        int size = _SIZE > 0 ? _SIZE : Runtime.getRuntime().availableProcessors();
+        /* Jobs that no thread can take are discarded here and run by the caller */
+        executor = new ThreadPoolExecutor(0, size, _KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), threadFactory, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * Runs a list of jobs in parallel and waits for all of them to complete. Jobs
+     * are handed to idle threads of the pool while the calling thread runs itself
+     * every job that no thread has picked up, so this method never blocks waiting
+     * for a free thread. If some job fails or the calling thread is interrupted,
+     * all pending jobs are cancelled.
+     *
+     * @param jobs
+     *      Jobs to be executed.
+     * @return
+     *      The results of the jobs in the order of the jobs in the provided list.
+     * @throws InterruptedException
+     *      If the calling thread is interrupted while waiting.
+     * @throws ExecutionException
+     *      If some job threw an exception; the exception is the cause of the
+     *      thrown ExecutionException.
+     */
+    public <T> List<T> invokeAll(List<? extends Callable<T>> jobs) throws InterruptedException, ExecutionException {
+        List<FutureTask<T>> tasks = new ArrayList<FutureTask<T>>(jobs.size());
+        for (Callable<T> job : jobs) {
+            tasks.add(new FutureTask<T>(job));
+        }
+        /* The first job is kept for the calling thread */
+        for (int i = 1; i < tasks.size(); i++) {
+            executor.execute(tasks.get(i));
+        }
+        List<T> results = new ArrayList<T>(tasks.size());
+        boolean done = false;
+        try {
+            for (FutureTask<T> task : tasks) {
+                task.run();// no-op if the task has already been started by the pool
+                results.add(task.get());
+            }
+            done = true;
+        } finally {
+            if (!done) {
+                for (FutureTask<T> task : tasks) {
+                    task.cancel(true);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Stops the threads of the pool; jobs submitted afterwards run in the calling
+     * thread.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -39,9 +39,10 @@ import java.io.StringWriter;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -57,7 +58,7 @@ import org.slf4j.LoggerFactory;
 public class ExecutionPool {
 
     private Logger logger = LoggerFactory.getLogger(ExecutionPool.class);
-    private ExecutorService executor;
+    private ThreadPoolExecutor executor;
     /**
      * Task UUID to Future
      */
@@ -113,6 +114,8 @@ public class ExecutionPool {
                 return 0;
             } else {
                 future.cancel(true);
+                /* A cancelled task that has not started is removed from the queue */
+                executor.purge();
                 return 1;
             }
         } catch (final Exception ex) {
@@ -121,7 +124,27 @@ public class ExecutionPool {
         }
     }
 
-    public void run(String id, Runnable runnable) {
-        map.put(id, executor.submit(runnable));
+    /**
+     * Submits a task of a user. The task is forgotten by the pool (and cannot be
+     * cancelled) once it completes.
+     *
+     * @throws RejectedExecutionException
+     *      If the queue of the pool is full.
+     */
+    public void run(final String id, Runnable runnable) {
+        FutureTask<Object> future = new FutureTask<Object>(runnable, null) {
+
+            @Override
+            protected void done() {
+                map.remove(id, this);
+            }
+        };
+        map.put(id, future);
+        try {
+            executor.execute(future);
+        } catch (RejectedExecutionException ex) {
+            map.remove(id, future);
+            throw ex;
+        }
     }
 }
@@ -0,0 +1,98 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.pool;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.opentox.jaqpot3.util.Configuration;
+
+/**
+ * Small pool of threads on which reports (e.g. the PDF documents of models) are
+ * rendered. Rendering is kept apart from the {@link ExecutionPool} so that
+ * requests for reports neither wait behind nor take the place of the training
+ * and prediction tasks of the users. The pool has <code>reports.threads</code>
+ * threads and at most <code>reports.queueSize</code> renderings wait for a
+ * thread; further renderings are rejected.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class ReportPool {
+
+    private static final int _THREADS = Math.max(1, Configuration.getIntegerProperty("reports.threads", 2));
+    private static final int _QUEUE_SIZE = Math.max(1, Configuration.getIntegerProperty("reports.queueSize", 20));
+    private static final long _KEEP_ALIVE_TIME = 60;
+    public static final ReportPool POOL = new ReportPool();
+    private final ThreadPoolExecutor executor;
+
+    private ReportPool() {
+        final AtomicInteger count = new AtomicInteger();
+        ThreadFactory threadFactory = new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Report_" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        executor = new ThreadPoolExecutor(_THREADS, _THREADS, _KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(_QUEUE_SIZE), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Schedules the rendering of a report.
+     *
+     * @param rendering
+     *      Renders the report.
+     * @throws RejectedExecutionException
+     *      If too many reports are already waiting to be rendered or the pool
+     *      has been shut down.
+     */
+    public void run(Runnable rendering) throws RejectedExecutionException {
+        executor.execute(rendering);
+    }
+
+    /**
+     * Stops the threads of the pool; renderings that have not started are dropped.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
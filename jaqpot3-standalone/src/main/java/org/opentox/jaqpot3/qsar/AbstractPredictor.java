@@ -34,14 +34,15 @@
 package org.opentox.jaqpot3.qsar;
 
 import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.util.DatasetCache;
 import org.opentox.toxotis.client.VRI;
 import org.opentox.toxotis.core.component.Dataset;
 import org.opentox.toxotis.core.component.Model;
 import org.opentox.toxotis.core.component.Task;
 import org.opentox.toxotis.exceptions.impl.ServiceInvocationException;
 import org.opentox.toxotis.exceptions.impl.ToxOtisException;
+import org.opentox.toxotis.factory.DatasetFactory;
 import org.opentox.toxotis.util.aa.AuthenticationToken;
-import org.opentox.toxotis.util.arff.ArffDownloader;
 import weka.core.Instances;
 
 /**
@@ -88,23 +89,54 @@ public abstract class AbstractPredictor implements IPredictor {
 
     @Override
     public Dataset predict(VRI input) throws JaqpotException {
-        ArffDownloader downloader = new ArffDownloader(input);
-        Instances inst = downloader.getInstances();
-        if (inst != null) { // the dataset is available in text/x-arff directly
-            return predict(inst);
-        } else { // The instances object has to be retrieved from the RDF format
-            try {
-                return predict(new Dataset(input).loadFromRemote());
-            } catch (ToxOtisException ex) {
-                throw new JaqpotException(ex);
-            } catch (ServiceInvocationException ex) {
-                throw new JaqpotException(ex);
-            }
-        }
+        return predict(loadInstances(input));
     }
 
     @Override
     public Dataset predict(Dataset data) throws JaqpotException {
         return predict(data.getInstances());
     }
+
+    @Override
+    public Dataset predict(Instances input) throws JaqpotException {
+        Instances result = predictInstances(input);
+        if (result == null) {
+            return null;
+        }
+        try {
+            return DatasetFactory.getInstance().createFromArff(result);
+        } catch (ToxOtisException ex) {
+            throw new JaqpotException("Exception while performing prediction", ex);
+        }
+    }
+
+    /**
+     * Retrieves the dataset at the given URI as an Instances object, in ARFF if
+     * available or else in RDF.
+     *
+     * @param input
+     *      URI of the dataset.
+     * @return
+     *      The dataset.
+     * @throws JaqpotException
+     *      In case the dataset cannot be retrieved.
+     */
+    public static Instances loadInstances(VRI input) throws JaqpotException {
+        Instances inst = DatasetCache.CACHE.getInstances(input);
+        if (inst != null) { // the dataset is available in text/x-arff directly
+            return inst;
+        }
+        try { // The instances object has to be retrieved from the RDF format
+            return new Dataset(input).loadFromRemote().getInstances();
+        } catch (ToxOtisException ex) {
+            throw new JaqpotException(ex);
+        } catch (ServiceInvocationException ex) {
+            throw new JaqpotException(ex);
+        }
+    }
+
+    @Override
+    public boolean isRowIndependent() {
+        return true;
+    }
 }
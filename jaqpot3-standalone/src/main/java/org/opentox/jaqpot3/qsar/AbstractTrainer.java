@@ -35,6 +35,7 @@ package org.opentox.jaqpot3.qsar;
 
 import java.util.UUID;
 import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.util.DatasetCache;
 import org.opentox.toxotis.client.VRI;
 import org.opentox.toxotis.core.component.Dataset;
 import org.opentox.toxotis.core.component.Model;
@@ -42,7 +43,6 @@ import org.opentox.toxotis.core.component.Task;
 import org.opentox.toxotis.exceptions.impl.ServiceInvocationException;
 import org.opentox.toxotis.exceptions.impl.ToxOtisException;
 import org.opentox.toxotis.util.aa.AuthenticationToken;
-import org.opentox.toxotis.util.arff.ArffDownloader;
 import weka.core.Instances;
 
 /**
@@ -97,8 +97,7 @@ public abstract class AbstractTrainer implements ITrainer {
         if (!needsDataset()) {
             return train((Instances) null);
         }
-        ArffDownloader downloader = new ArffDownloader(data);
-        Instances inst = downloader.getInstances();
+        Instances inst = DatasetCache.CACHE.getInstances(data);
         if (inst != null) {
             return train(inst);
         } else {
@@ -58,6 +58,8 @@ public class AlgorithmFinder {
         map.put("fastRbfNn", FastRbfNnTrainer.class);
         map.put("scaling", ScalingFilter.class);
         map.put("modelBundler", ModelBundlerTrainer.class);
+        map.put("consensus", ConsensusTrainer.class);
+        map.put("pmml", PmmlImporter.class);
     }
 
     public static Map<String, Class<? extends IParametrizableAlgorithm>> getMapping() {
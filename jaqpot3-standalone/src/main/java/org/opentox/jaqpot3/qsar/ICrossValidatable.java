@@ -0,0 +1,76 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+
+package org.opentox.jaqpot3.qsar;
+
+import org.opentox.jaqpot3.exception.JaqpotException;
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+
+/**
+ * A trainer whose models can be rebuilt entirely in memory, without any remote
+ * calls or database updates, so that they can be cross-validated. The trainer
+ * must have been parametrized before any of these methods is invoked.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public interface ICrossValidatable extends ITrainer {
+
+    /**
+     * Applies to the given dataset the same preprocessing that the trainer
+     * applies during training and sets the prediction feature as the class
+     * attribute of the returned object.
+     *
+     * @param data
+     *      Data as downloaded from the dataset service.
+     * @return
+     *      Training set with its class attribute set.
+     * @throws JaqpotException
+     *      In case the data are not suitable for training.
+     */
+    Instances prepareTrainingSet(Instances data) throws JaqpotException;
+
+    /**
+     * Creates a new, untrained classifier configured according to the parameters
+     * provided to the trainer. Every invocation returns a distinct object, so the
+     * result may be trained in its own thread.
+     *
+     * @return
+     *      New untrained classifier.
+     * @throws JaqpotException
+     *      In case the classifier cannot be configured.
+     */
+    Classifier createClassifier() throws JaqpotException;
+}
@@ -123,6 +123,29 @@ public interface IPredictor {
     Dataset predict(Dataset input) throws JaqpotException;
 
     Dataset predict(Instances input) throws JaqpotException;
+
+    /**
+     * Computes the predictions for a dataset without converting them to a
+     * {@link Dataset} component, e.g. to stream them to the dataset service.
+     *
+     * @param input
+     *      Test dataset.
+     * @return
+     *      The compound URIs of the input followed by the predicted features.
+     * @throws JaqpotException
+     *      In case the prediction fails.
+     */
+    Instances predictInstances(Instances input) throws JaqpotException;
+
+    /**
+     * Whether the prediction for each instance depends only on that instance and
+     * the model, so that a dataset may be predicted in consecutive chunks with the
+     * same result.
+     *
+     * @return
+     *      <code>true</code> if the input may be split in chunks.
+     */
+    boolean isRowIndependent();
     
     Dataset predict(VRI input) throws JaqpotException;
 }
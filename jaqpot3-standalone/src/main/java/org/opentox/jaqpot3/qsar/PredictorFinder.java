@@ -56,6 +56,8 @@ public class PredictorFinder {
         map.put("scaling", ScalingPredictor.class);
         map.put("mvh", MissingValueFilterPredictor.class);
         map.put("pls", PLSPredictor.class);
+        map.put("consensus", ConsensusPredictor.class);
+        map.put("pmml", PmmlPredictor.class);
     }
 
     public static Map<String, Class<? extends IPredictor>> getMapping() {
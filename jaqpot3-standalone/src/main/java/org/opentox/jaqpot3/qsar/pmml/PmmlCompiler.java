@@ -0,0 +1,693 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.qsar.pmml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.qsar.pmml.PmmlEvaluator.Step;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Compiles a PMML document into a {@link PmmlEvaluator}. The following subset of
+ * PMML (versions 3.x and 4.x) is supported, which covers the models exported by
+ * {@link org.opentox.jaqpot3.qsar.util.PMMLGenerator } as well as most regression
+ * models produced by other tools:
+ * <ul>
+ * <li><code>RegressionModel</code> (numeric predictors with exponents and
+ * predictor terms),</li>
+ * <li><code>SupportVectorMachineModel</code> (regression, linear, polynomial,
+ * radial basis and sigmoid kernels),</li>
+ * <li><code>NeuralNetwork</code> (regression, any activation function except
+ * <code>threshold</code>, no softmax normalization),</li>
+ * <li><code>MiningModel</code> whose segments are always selected and are
+ * combined with <code>selectAll</code>, <code>modelChain</code>, <code>sum</code>
+ * or <code>average</code>,</li>
+ * <li>derived fields with <code>FieldRef</code>, <code>NormContinuous</code>
+ * and <code>Constant</code> expressions, <code>Targets</code> and missing value
+ * replacement of the active fields.</li>
+ * </ul>
+ * All fields are treated as continuous. Anything else is rejected at compile time
+ * rather than evaluated wrongly.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class PmmlCompiler {
+
+    private static final Set<String> MODELS = new LinkedHashSet<String>();
+
+    static {
+        MODELS.add("RegressionModel");
+        MODELS.add("SupportVectorMachineModel");
+        MODELS.add("NeuralNetwork");
+        MODELS.add("MiningModel");
+    }
+    private static final Map<String, Integer> ACTIVATIONS = new HashMap<String, Integer>();
+
+    static {
+        ACTIVATIONS.put("identity", PmmlEvaluator.Neuron.IDENTITY);
+        ACTIVATIONS.put("logistic", PmmlEvaluator.Neuron.LOGISTIC);
+        ACTIVATIONS.put("tanh", PmmlEvaluator.Neuron.TANH);
+        ACTIVATIONS.put("exponential", PmmlEvaluator.Neuron.EXPONENTIAL);
+        ACTIVATIONS.put("reciprocal", PmmlEvaluator.Neuron.RECIPROCAL);
+        ACTIVATIONS.put("square", PmmlEvaluator.Neuron.SQUARE);
+        ACTIVATIONS.put("Gauss", PmmlEvaluator.Neuron.GAUSS);
+        ACTIVATIONS.put("sine", PmmlEvaluator.Neuron.SINE);
+        ACTIVATIONS.put("cosine", PmmlEvaluator.Neuron.COSINE);
+        ACTIVATIONS.put("Elliott", PmmlEvaluator.Neuron.ELLIOTT);
+        ACTIVATIONS.put("arctan", PmmlEvaluator.Neuron.ARCTAN);
+        ACTIVATIONS.put("radialBasis", PmmlEvaluator.Neuron.RADIAL_BASIS);
+    }
+    private final Map<String, Integer> slots = new LinkedHashMap<String, Integer>();
+    private final List<Step> steps = new ArrayList<Step>();
+    private int anonymous = 0;
+
+    private PmmlCompiler() {
+    }
+
+    /**
+     * Parses and compiles a PMML document.
+     * @param pmml
+     *      Input stream from which the document is read; it is not closed.
+     * @return
+     *      The compiled evaluator.
+     * @throws JaqpotException
+     *      If the document cannot be parsed or contains constructs which are not
+     *      supported.
+     */
+    public static PmmlEvaluator compile(InputStream pmml) throws JaqpotException {
+        Document document;
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setExpandEntityReferences(false);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            /* Errors are reported through the exception only */
+            builder.setErrorHandler(new DefaultHandler());
+            document = builder.parse(pmml);
+        } catch (ParserConfigurationException ex) {
+            throw new JaqpotException("XML parser cannot be configured", ex);
+        } catch (SAXException ex) {
+            throw new JaqpotException("Malformed PMML document: " + ex.getMessage(), ex);
+        } catch (IOException ex) {
+            throw new JaqpotException("PMML document cannot be read", ex);
+        }
+        return new PmmlCompiler().compile(document.getDocumentElement());
+    }
+
+    private PmmlEvaluator compile(Element root) throws JaqpotException {
+        if (!"PMML".equals(name(root))) {
+            throw new JaqpotException("Not a PMML document (root element: " + name(root) + ")");
+        }
+        Element dictionary = child(root, "DataDictionary", true);
+        for (Element field : children(dictionary, "DataField")) {
+            slot(attribute(field, "name", null, true));
+        }
+        Element transformations = child(root, "TransformationDictionary", false);
+        if (transformations != null) {
+            for (Element derived : children(transformations, "DerivedField")) {
+                derivedField(derived, attribute(derived, "name", null, true));
+            }
+        }
+        Element model = null;
+        for (Element e : children(root, null)) {
+            if (MODELS.contains(name(e))) {
+                if (isScorable(e)) {
+                    model = e;
+                    break;
+                }
+            }
+        }
+        if (model == null) {
+            throw new JaqpotException("The PMML document contains no supported model");
+        }
+        /* The inputs are the active fields of the top level model */
+        List<String> inputNames = new ArrayList<String>();
+        List<Double> replacements = new ArrayList<Double>();
+        for (Element field : children(child(model, "MiningSchema", true), "MiningField")) {
+            String usage = attribute(field, "usageType", "active", false);
+            if ("active".equals(usage)) {
+                String fieldName = attribute(field, "name", null, true);
+                known(fieldName);
+                inputNames.add(fieldName);
+                replacements.add(number(field, "missingValueReplacement", Double.NaN));
+            }
+        }
+        List<String> outputNames = model(model);
+
+        int[] inputSlots = new int[inputNames.size()];
+        double[] replacementValues = new double[inputNames.size()];
+        for (int i = 0; i < inputSlots.length; i++) {
+            inputSlots[i] = slots.get(inputNames.get(i));
+            replacementValues[i] = replacements.get(i);
+        }
+        int[] outputSlots = new int[outputNames.size()];
+        for (int i = 0; i < outputSlots.length; i++) {
+            outputSlots[i] = slots.get(outputNames.get(i));
+        }
+        return new PmmlEvaluator(inputNames.toArray(new String[inputNames.size()]), inputSlots, replacementValues,
+                steps.toArray(new Step[steps.size()]), outputNames.toArray(new String[outputNames.size()]),
+                outputSlots, slots.size());
+    }
+
+    /**
+     * Compiles a model and returns the names of its predicted fields.
+     */
+    private List<String> model(Element model) throws JaqpotException {
+        String type = name(model);
+        String function = attribute(model, "functionName", null, true);
+        if (!"regression".equals(function)) {
+            throw new JaqpotException("Only regression models are supported (" + type + " with functionName="
+                    + function + ")");
+        }
+        List<String> predicted = new ArrayList<String>();
+        for (Element field : children(child(model, "MiningSchema", true), "MiningField")) {
+            String usage = attribute(field, "usageType", "active", false);
+            String fieldName = attribute(field, "name", null, true);
+            if ("active".equals(usage)) {
+                known(fieldName);
+            } else if ("predicted".equals(usage) || "target".equals(usage)) {
+                predicted.add(fieldName);
+            }
+        }
+        Element local = child(model, "LocalTransformations", false);
+        if (local != null) {
+            for (Element derived : children(local, "DerivedField")) {
+                derivedField(derived, attribute(derived, "name", null, true));
+            }
+        }
+        List<String> outputs;
+        if ("RegressionModel".equals(type)) {
+            outputs = single(regression(model, target(model, predicted)));
+        } else if ("SupportVectorMachineModel".equals(type)) {
+            outputs = single(supportVectorMachine(model, target(model, predicted)));
+        } else if ("NeuralNetwork".equals(type)) {
+            outputs = neuralNetwork(model);
+        } else {
+            outputs = miningModel(model, predicted);
+        }
+        Element targets = child(model, "Targets", false);
+        if (targets != null) {
+            for (Element target : children(targets, "Target")) {
+                String field = attribute(target, "field", outputs.size() == 1 ? outputs.get(0) : null, true);
+                steps.add(new PmmlEvaluator.Target(known(field),
+                        number(target, "min", Double.NEGATIVE_INFINITY),
+                        number(target, "max", Double.POSITIVE_INFINITY),
+                        number(target, "rescaleFactor", 1),
+                        number(target, "rescaleConstant", 0)));
+            }
+        }
+        return outputs;
+    }
+
+    private String regression(Element model, String target) throws JaqpotException {
+        String normalization = attribute(model, "normalizationMethod", "none", false);
+        if (!"none".equals(normalization)) {
+            throw new JaqpotException("Unsupported normalization method for regression: " + normalization);
+        }
+        List<Element> tables = children(model, "RegressionTable");
+        if (tables.size() != 1) {
+            throw new JaqpotException("A regression model should have exactly one RegressionTable");
+        }
+        Element table = tables.get(0);
+        if (!children(table, "CategoricalPredictor").isEmpty()) {
+            throw new JaqpotException("Categorical predictors are not supported");
+        }
+        List<Element> predictors = children(table, "NumericPredictor");
+        int[] fields = new int[predictors.size()];
+        double[] exponents = new double[fields.length];
+        double[] coefficients = new double[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            Element predictor = predictors.get(i);
+            fields[i] = known(attribute(predictor, "name", null, true));
+            exponents[i] = number(predictor, "exponent", 1);
+            coefficients[i] = number(predictor, "coefficient");
+        }
+        List<Element> termElements = children(table, "PredictorTerm");
+        int[][] terms = new int[termElements.size()][];
+        double[] termCoefficients = new double[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            List<Element> refs = children(termElements.get(i), "FieldRef");
+            terms[i] = new int[refs.size()];
+            for (int j = 0; j < refs.size(); j++) {
+                terms[i][j] = known(attribute(refs.get(j), "field", null, true));
+            }
+            termCoefficients[i] = number(termElements.get(i), "coefficient");
+        }
+        steps.add(new PmmlEvaluator.Regression(slot(target), number(table, "intercept", 0),
+                fields, exponents, coefficients, terms, termCoefficients));
+        return target;
+    }
+
+    private String supportVectorMachine(Element model, String target) throws JaqpotException {
+        String representation = attribute(model, "svmRepresentation", "SupportVectors", false);
+        if (!"SupportVectors".equals(representation)) {
+            throw new JaqpotException("Unsupported SVM representation: " + representation);
+        }
+        int kernel;
+        double gamma = 1;
+        double coef0 = 1;
+        double degree = 1;
+        Element kernelElement;
+        if ((kernelElement = child(model, "LinearKernelType", false)) != null) {
+            kernel = PmmlEvaluator.SupportVectorMachine.LINEAR;
+        } else if ((kernelElement = child(model, "PolynomialKernelType", false)) != null) {
+            kernel = PmmlEvaluator.SupportVectorMachine.POLYNOMIAL;
+            gamma = number(kernelElement, "gamma", 1);
+            coef0 = number(kernelElement, "coef0", 1);
+            degree = number(kernelElement, "degree", 1);
+        } else if ((kernelElement = child(model, "RadialBasisKernelType", false)) != null) {
+            kernel = PmmlEvaluator.SupportVectorMachine.RADIAL_BASIS;
+            gamma = number(kernelElement, "gamma", 1);
+        } else if ((kernelElement = child(model, "SigmoidKernelType", false)) != null) {
+            kernel = PmmlEvaluator.SupportVectorMachine.SIGMOID;
+            gamma = number(kernelElement, "gamma", 1);
+            coef0 = number(kernelElement, "coef0", 1);
+        } else {
+            throw new JaqpotException("The SVM model does not specify a supported kernel");
+        }
+        Element dictionary = child(model, "VectorDictionary", true);
+        List<Element> refs = children(child(dictionary, "VectorFields", true), "FieldRef");
+        int p = refs.size();
+        int[] fields = new int[p];
+        for (int j = 0; j < p; j++) {
+            fields[j] = known(attribute(refs.get(j), "field", null, true));
+        }
+        Map<String, double[]> instances = new HashMap<String, double[]>();
+        for (Element instance : children(dictionary, "VectorInstance")) {
+            instances.put(attribute(instance, "id", null, true), vector(instance, p));
+        }
+        List<Element> machines = children(model, "SupportVectorMachine");
+        if (machines.size() != 1) {
+            throw new JaqpotException("A regression SVM model should have exactly one SupportVectorMachine");
+        }
+        Element machine = machines.get(0);
+        List<Element> vectorIds = children(child(machine, "SupportVectors", true), "SupportVector");
+        Element coefficientsElement = child(machine, "Coefficients", true);
+        List<Element> coefficientList = children(coefficientsElement, "Coefficient");
+        if (vectorIds.size() != coefficientList.size()) {
+            throw new JaqpotException("The numbers of support vectors and coefficients differ");
+        }
+        int n = vectorIds.size();
+        double[] vectors = new double[n * p];
+        double[] coefficients = new double[n];
+        for (int i = 0; i < n; i++) {
+            String id = attribute(vectorIds.get(i), "vectorId", null, true);
+            double[] vector = instances.get(id);
+            if (vector == null) {
+                throw new JaqpotException("Undefined support vector: " + id);
+            }
+            System.arraycopy(vector, 0, vectors, i * p, p);
+            coefficients[i] = number(coefficientList.get(i), "value", 0);
+        }
+        steps.add(new PmmlEvaluator.SupportVectorMachine(slot(target), kernel, gamma, coef0, degree,
+                fields, vectors, coefficients, number(coefficientsElement, "absoluteValue", 0)));
+        return target;
+    }
+
+    private double[] vector(Element instance, int p) throws JaqpotException {
+        Element array = child(instance, "Array", false);
+        if (array != null) {
+            double[] values = numbers(array.getTextContent());
+            if (values.length != p) {
+                throw new JaqpotException("Vector " + instance.getAttribute("id") + " has " + values.length
+                        + " values instead of " + p);
+            }
+            return values;
+        }
+        Element sparse = child(instance, "REAL-SparseArray", false);
+        if (sparse == null) {
+            throw new JaqpotException("Vector " + instance.getAttribute("id") + " has no values");
+        }
+        double[] values = new double[p];
+        double[] indices = numbers(text(child(sparse, "Indices", false)));
+        double[] entries = numbers(text(child(sparse, "REAL-Entries", false)));
+        if (indices.length != entries.length) {
+            throw new JaqpotException("Malformed sparse array in vector " + instance.getAttribute("id"));
+        }
+        for (int k = 0; k < indices.length; k++) {
+            int index = (int) indices[k] - 1;
+            if (index < 0 || index >= p) {
+                throw new JaqpotException("Index out of range in vector " + instance.getAttribute("id"));
+            }
+            values[index] = entries[k];
+        }
+        return values;
+    }
+
+    private List<String> neuralNetwork(Element model) throws JaqpotException {
+        String modelActivation = attribute(model, "activationFunction", null, true);
+        checkNormalization(model);
+        double modelWidth = number(model, "width", Double.NaN);
+        double modelAltitude = number(model, "altitude", 1);
+        /* Neurons (and inputs) are referred to by id */
+        Map<String, Integer> neurons = new HashMap<String, Integer>();
+        for (Element input : children(child(model, "NeuralInputs", true), "NeuralInput")) {
+            String id = attribute(input, "id", null, true);
+            neurons.put(id, derivedField(child(input, "DerivedField", true), null));
+        }
+        for (Element layer : children(model, "NeuralLayer")) {
+            checkNormalization(layer);
+            String activationName = attribute(layer, "activationFunction", modelActivation, false);
+            Integer activation = ACTIVATIONS.get(activationName);
+            if (activation == null) {
+                throw new JaqpotException("Unsupported activation function: " + activationName);
+            }
+            double layerWidth = number(layer, "width", modelWidth);
+            double layerAltitude = number(layer, "altitude", modelAltitude);
+            /* Neurons of a layer depend only on previous layers */
+            List<Step> layerSteps = new ArrayList<Step>();
+            Map<String, Integer> layerNeurons = new HashMap<String, Integer>();
+            for (Element neuron : children(layer, "Neuron")) {
+                List<Element> connections = children(neuron, "Con");
+                int[] from = new int[connections.size()];
+                double[] weights = new double[from.length];
+                for (int i = 0; i < from.length; i++) {
+                    String source = attribute(connections.get(i), "from", null, true);
+                    Integer sourceSlot = neurons.get(source);
+                    if (sourceSlot == null) {
+                        throw new JaqpotException("Connection from unknown neuron: " + source);
+                    }
+                    from[i] = sourceSlot;
+                    weights[i] = number(connections.get(i), "weight");
+                }
+                double width = number(neuron, "width", layerWidth);
+                if (activation == PmmlEvaluator.Neuron.RADIAL_BASIS && !(width > 0)) {
+                    throw new JaqpotException("A positive width is needed for radial basis neurons");
+                }
+                int target = slot(null);
+                layerNeurons.put(attribute(neuron, "id", null, true), target);
+                layerSteps.add(new PmmlEvaluator.Neuron(target, activation, number(neuron, "bias", 0),
+                        from, weights, width, number(neuron, "altitude", layerAltitude)));
+            }
+            neurons.putAll(layerNeurons);
+            steps.addAll(layerSteps);
+        }
+        List<String> outputs = new ArrayList<String>();
+        for (Element output : children(child(model, "NeuralOutputs", true), "NeuralOutput")) {
+            String id = attribute(output, "outputNeuron", null, true);
+            Integer neuron = neurons.get(id);
+            if (neuron == null) {
+                throw new JaqpotException("Unknown output neuron: " + id);
+            }
+            Element derived = child(output, "DerivedField", true);
+            Element ref = child(derived, "FieldRef", false);
+            Element norm = child(derived, "NormContinuous", false);
+            String field;
+            if (ref != null) {
+                field = attribute(ref, "field", null, true);
+                steps.add(new PmmlEvaluator.Copy(neuron, slot(field), Double.NaN));
+            } else if (norm != null) {
+                /* The neuron holds the normalized value of the target */
+                field = attribute(norm, "field", null, true);
+                steps.add(normContinuous(norm, neuron, slot(field), true));
+            } else {
+                throw new JaqpotException("Unsupported expression for the output of neuron " + id);
+            }
+            outputs.add(field);
+        }
+        return outputs;
+    }
+
+    private List<String> miningModel(Element model, List<String> predicted) throws JaqpotException {
+        Element segmentation = child(model, "Segmentation", true);
+        String method = attribute(segmentation, "multipleModelMethod", null, true);
+        List<List<String>> segmentOutputs = new ArrayList<List<String>>();
+        for (Element segment : children(segmentation, "Segment")) {
+            if (child(segment, "True", false) == null) {
+                throw new JaqpotException("Only segments with a True predicate are supported");
+            }
+            Element nested = null;
+            for (Element e : children(segment, null)) {
+                if (MODELS.contains(name(e))) {
+                    nested = e;
+                }
+            }
+            if (nested == null) {
+                throw new JaqpotException("Segment without a supported model");
+            }
+            segmentOutputs.add(model(nested));
+        }
+        if (segmentOutputs.isEmpty()) {
+            throw new JaqpotException("Mining model without segments");
+        }
+        if ("selectAll".equals(method)) {
+            if (!predicted.isEmpty()) {
+                for (String field : predicted) {
+                    known(field);
+                }
+                return predicted;
+            }
+            List<String> all = new ArrayList<String>();
+            for (List<String> outputs : segmentOutputs) {
+                all.addAll(outputs);
+            }
+            return all;
+        } else if ("modelChain".equals(method)) {
+            return segmentOutputs.get(segmentOutputs.size() - 1);
+        } else if ("sum".equals(method) || "average".equals(method)) {
+            String target = target(model, predicted);
+            int[] sources = new int[segmentOutputs.size()];
+            for (int i = 0; i < sources.length; i++) {
+                sources[i] = slots.get(segmentOutputs.get(i).get(0));
+            }
+            steps.add(new PmmlEvaluator.Aggregate(slot(target), sources, "average".equals(method)));
+            return single(target);
+        }
+        throw new JaqpotException("Unsupported multiple model method: " + method);
+    }
+
+    /**
+     * Compiles a derived field; anonymous fields (e.g. neural inputs) are given
+     * no name. Returns the slot of the field.
+     */
+    private int derivedField(Element derived, String fieldName) throws JaqpotException {
+        Element ref = child(derived, "FieldRef", false);
+        Element norm = child(derived, "NormContinuous", false);
+        Element constant = child(derived, "Constant", false);
+        if (ref != null) {
+            int source = known(attribute(ref, "field", null, true));
+            int target = slot(fieldName);
+            steps.add(new PmmlEvaluator.Copy(source, target, number(ref, "mapMissingTo", Double.NaN)));
+            return target;
+        } else if (norm != null) {
+            int source = known(attribute(norm, "field", null, true));
+            int target = slot(fieldName);
+            steps.add(normContinuous(norm, source, target, false));
+            return target;
+        } else if (constant != null) {
+            int target = slot(fieldName);
+            steps.add(new PmmlEvaluator.Constant(target, numbers(constant.getTextContent())[0]));
+            return target;
+        }
+        throw new JaqpotException("Unsupported expression in derived field "
+                + (fieldName != null ? fieldName : "(anonymous)"));
+    }
+
+    private Step normContinuous(Element norm, int source, int target, boolean inverse) throws JaqpotException {
+        List<Element> points = children(norm, "LinearNorm");
+        if (points.size() < 2) {
+            throw new JaqpotException("NormContinuous needs at least two LinearNorm elements");
+        }
+        double[] orig = new double[points.size()];
+        double[] normalized = new double[orig.length];
+        for (int i = 0; i < orig.length; i++) {
+            orig[i] = number(points.get(i), "orig");
+            normalized[i] = number(points.get(i), "norm");
+            if (i > 0 && (orig[i] <= orig[i - 1] || (inverse && normalized[i] <= normalized[i - 1]))) {
+                throw new JaqpotException("The LinearNorm elements should be in increasing order");
+            }
+        }
+        String outliers = attribute(norm, "outliers", "asIs", false);
+        int treatment = "asMissingValues".equals(outliers) ? PmmlEvaluator.NormContinuous.AS_MISSING
+                : "asExtremeValues".equals(outliers) ? PmmlEvaluator.NormContinuous.AS_EXTREME
+                : PmmlEvaluator.NormContinuous.AS_IS;
+        return new PmmlEvaluator.NormContinuous(source, target, orig, normalized, inverse, treatment,
+                number(norm, "mapMissingTo", Double.NaN));
+    }
+
+    private String target(Element model, List<String> predicted) throws JaqpotException {
+        if (predicted.size() > 1) {
+            throw new JaqpotException(name(model) + " with more than one predicted field");
+        }
+        if (!predicted.isEmpty()) {
+            return predicted.get(0);
+        }
+        String target = attribute(model, "targetFieldName", null, false);
+        if (target == null) {
+            target = "prediction" + (anonymous++ > 0 ? "_" + anonymous : "");
+        }
+        return target;
+    }
+
+    private void checkNormalization(Element element) throws JaqpotException {
+        String normalization = attribute(element, "normalizationMethod", "none", false);
+        if (!"none".equals(normalization)) {
+            throw new JaqpotException("Unsupported normalization method: " + normalization);
+        }
+    }
+
+    private boolean isScorable(Element model) {
+        return !"false".equals(model.getAttribute("isScorable"));
+    }
+
+    /**
+     * The slot of a field, which is allocated if the field is new. Anonymous
+     * fields (<code>null</code> name) always get a new slot.
+     */
+    private int slot(String fieldName) {
+        if (fieldName == null) {
+            int slot = slots.size();
+            slots.put("\u0000" + slot, slot);
+            return slot;
+        }
+        Integer slot = slots.get(fieldName);
+        if (slot == null) {
+            slot = slots.size();
+            slots.put(fieldName, slot);
+        }
+        return slot;
+    }
+
+    private int known(String fieldName) throws JaqpotException {
+        Integer slot = slots.get(fieldName);
+        if (slot == null) {
+            throw new JaqpotException("Reference to undefined field: " + fieldName);
+        }
+        return slot;
+    }
+
+    private static List<String> single(String field) {
+        List<String> list = new ArrayList<String>(1);
+        list.add(field);
+        return list;
+    }
+
+    private static String name(Node node) {
+        return node.getLocalName() != null ? node.getLocalName() : node.getNodeName();
+    }
+
+    private static List<Element> children(Element parent, String childName) {
+        List<Element> result = new ArrayList<Element>();
+        for (Node n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE && (childName == null || childName.equals(name(n)))) {
+                result.add((Element) n);
+            }
+        }
+        return result;
+    }
+
+    private static Element child(Element parent, String childName, boolean mandatory) throws JaqpotException {
+        for (Node n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE && childName.equals(name(n))) {
+                return (Element) n;
+            }
+        }
+        if (mandatory) {
+            throw new JaqpotException("Element " + childName + " is missing from " + name(parent));
+        }
+        return null;
+    }
+
+    private static String attribute(Element element, String attributeName, String defaultValue, boolean mandatory)
+            throws JaqpotException {
+        if (element.hasAttribute(attributeName)) {
+            return element.getAttribute(attributeName);
+        }
+        if (mandatory && defaultValue == null) {
+            throw new JaqpotException("Attribute " + attributeName + " is missing from " + name(element));
+        }
+        return defaultValue;
+    }
+
+    private static double number(Element element, String attributeName) throws JaqpotException {
+        if (!element.hasAttribute(attributeName)) {
+            throw new JaqpotException("Attribute " + attributeName + " is missing from " + name(element));
+        }
+        return number(element, attributeName, Double.NaN);
+    }
+
+    private static double number(Element element, String attributeName, double defaultValue) throws JaqpotException {
+        if (!element.hasAttribute(attributeName)) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(element.getAttribute(attributeName).trim());
+        } catch (NumberFormatException ex) {
+            throw new JaqpotException("Attribute " + attributeName + " of " + name(element)
+                    + " is not a number", ex);
+        }
+    }
+
+    private static String text(Element element) {
+        return element != null ? element.getTextContent() : "";
+    }
+
+    private static double[] numbers(String text) throws JaqpotException {
+        String trimmed = text.trim();
+        if (trimmed.length() == 0) {
+            return new double[0];
+        }
+        String[] tokens = trimmed.split("\\s+");
+        double[] values = new double[tokens.length];
+        try {
+            for (int i = 0; i < tokens.length; i++) {
+                String token = tokens[i];
+                if (token.length() > 1 && token.charAt(0) == '"') {
+                    token = token.substring(1, token.length() - 1);
+                }
+                values[i] = Double.parseDouble(token);
+            }
+        } catch (NumberFormatException ex) {
+            throw new JaqpotException("Array with non numeric values", ex);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,474 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.qsar.pmml;
+
+import java.util.Arrays;
+
+/**
+ * A PMML document compiled into a sequence of arithmetic steps over a flat array
+ * of doubles. Every field of the document (data fields, derived fields, neurons
+ * and intermediate predictions) is assigned a slot in that array at compile
+ * time, so evaluating a row involves no lookups by name and, when a workspace is
+ * reused, no allocations. Instances are immutable and may be shared among
+ * threads as long as each thread uses its own workspace.
+ *
+ * @see PmmlCompiler
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public final class PmmlEvaluator {
+
+    private final String[] inputs;
+    private final int[] inputSlots;
+    private final double[] replacements;
+    private final Step[] steps;
+    private final String[] outputs;
+    private final int[] outputSlots;
+    private final int numSlots;
+
+    PmmlEvaluator(String[] inputs, int[] inputSlots, double[] replacements, Step[] steps,
+            String[] outputs, int[] outputSlots, int numSlots) {
+        this.inputs = inputs;
+        this.inputSlots = inputSlots;
+        this.replacements = replacements;
+        this.steps = steps;
+        this.outputs = outputs;
+        this.outputSlots = outputSlots;
+        this.numSlots = numSlots;
+    }
+
+    /**
+     * Names of the (active) input fields in the order expected by
+     * {@link #evaluate(double[]) }.
+     */
+    public String[] getInputFields() {
+        return inputs.clone();
+    }
+
+    /**
+     * Names of the predicted fields in the order they are returned by
+     * {@link #evaluate(double[]) }.
+     */
+    public String[] getOutputFields() {
+        return outputs.clone();
+    }
+
+    /**
+     * A new workspace for {@link #evaluate(double[], double[], double[]) }.
+     */
+    public double[] newWorkspace() {
+        double[] workspace = new double[numSlots];
+        Arrays.fill(workspace, Double.NaN);
+        return workspace;
+    }
+
+    /**
+     * Evaluates the model on a single row.
+     * @param input
+     *      Values of the input fields; missing values are <code>NaN</code>.
+     * @return
+     *      Values of the output fields; <code>NaN</code> where no prediction
+     *      could be made.
+     */
+    public double[] evaluate(double[] input) {
+        double[] output = new double[outputs.length];
+        evaluate(input, output, newWorkspace());
+        return output;
+    }
+
+    /**
+     * Evaluates the model on a single row using the given workspace, which is
+     * what batch scorers should call in their inner loop.
+     * @param input
+     *      Values of the input fields; missing values are <code>NaN</code>.
+     * @param output
+     *      Array where the values of the output fields are stored.
+     * @param workspace
+     *      A workspace created by {@link #newWorkspace() }.
+     */
+    public void evaluate(double[] input, double[] output, double[] workspace) {
+        if (input.length != inputs.length) {
+            throw new IllegalArgumentException("Expected " + inputs.length + " input values but "
+                    + input.length + " were given");
+        }
+        for (int i = 0; i < input.length; i++) {
+            double value = input[i];
+            workspace[inputSlots[i]] = Double.isNaN(value) ? replacements[i] : value;
+        }
+        for (Step step : steps) {
+            step.apply(workspace);
+        }
+        for (int i = 0; i < outputSlots.length; i++) {
+            output[i] = workspace[outputSlots[i]];
+        }
+    }
+
+    static abstract class Step {
+
+        abstract void apply(double[] slots);
+    }
+
+    static final class Constant extends Step {
+
+        private final int target;
+        private final double value;
+
+        Constant(int target, double value) {
+            this.target = target;
+            this.value = value;
+        }
+
+        void apply(double[] slots) {
+            slots[target] = value;
+        }
+    }
+
+    static final class Copy extends Step {
+
+        private final int source;
+        private final int target;
+        private final double mapMissingTo;
+
+        Copy(int source, int target, double mapMissingTo) {
+            this.source = source;
+            this.target = target;
+            this.mapMissingTo = mapMissingTo;
+        }
+
+        void apply(double[] slots) {
+            double value = slots[source];
+            slots[target] = Double.isNaN(value) ? mapMissingTo : value;
+        }
+    }
+
+    /**
+     * Piecewise linear normalization (<code>NormContinuous</code>); the inverse
+     * mapping is used for the outputs of neural networks.
+     */
+    static final class NormContinuous extends Step {
+
+        static final int AS_IS = 0;
+        static final int AS_MISSING = 1;
+        static final int AS_EXTREME = 2;
+        private final int source;
+        private final int target;
+        private final double[] from;
+        private final double[] to;
+        private final int outliers;
+        private final double mapMissingTo;
+
+        NormContinuous(int source, int target, double[] orig, double[] norm, boolean inverse,
+                int outliers, double mapMissingTo) {
+            this.source = source;
+            this.target = target;
+            this.from = inverse ? norm : orig;
+            this.to = inverse ? orig : norm;
+            this.outliers = outliers;
+            this.mapMissingTo = mapMissingTo;
+        }
+
+        void apply(double[] slots) {
+            double x = slots[source];
+            if (Double.isNaN(x)) {
+                slots[target] = mapMissingTo;
+                return;
+            }
+            int last = from.length - 1;
+            int segment;
+            if (x < from[0] || x > from[last]) {
+                if (outliers == AS_MISSING) {
+                    slots[target] = Double.NaN;
+                    return;
+                } else if (outliers == AS_EXTREME) {
+                    slots[target] = x < from[0] ? to[0] : to[last];
+                    return;
+                }
+                segment = x < from[0] ? 0 : last - 1;
+            } else {
+                segment = 0;
+                while (segment < last - 1 && x > from[segment + 1]) {
+                    segment++;
+                }
+            }
+            double x0 = from[segment];
+            double x1 = from[segment + 1];
+            slots[target] = to[segment] + (x - x0) * (to[segment + 1] - to[segment]) / (x1 - x0);
+        }
+    }
+
+    static final class Regression extends Step {
+
+        private final int target;
+        private final double intercept;
+        private final int[] fields;
+        private final double[] exponents;
+        private final double[] coefficients;
+        private final int[][] terms;
+        private final double[] termCoefficients;
+
+        Regression(int target, double intercept, int[] fields, double[] exponents, double[] coefficients,
+                int[][] terms, double[] termCoefficients) {
+            this.target = target;
+            this.intercept = intercept;
+            this.fields = fields;
+            this.exponents = exponents;
+            this.coefficients = coefficients;
+            this.terms = terms;
+            this.termCoefficients = termCoefficients;
+        }
+
+        void apply(double[] slots) {
+            double sum = intercept;
+            for (int i = 0; i < fields.length; i++) {
+                double x = slots[fields[i]];
+                double e = exponents[i];
+                sum += coefficients[i] * (e == 1 ? x : e == 2 ? x * x : Math.pow(x, e));
+            }
+            for (int i = 0; i < terms.length; i++) {
+                int[] term = terms[i];
+                double product = termCoefficients[i];
+                for (int j = 0; j < term.length; j++) {
+                    product *= slots[term[j]];
+                }
+                sum += product;
+            }
+            /* NaN propagates from missing inputs */
+            slots[target] = sum;
+        }
+    }
+
+    static final class SupportVectorMachine extends Step {
+
+        static final int LINEAR = 0;
+        static final int POLYNOMIAL = 1;
+        static final int RADIAL_BASIS = 2;
+        static final int SIGMOID = 3;
+        private final int target;
+        private final int kernel;
+        private final double gamma;
+        private final double coef0;
+        private final double degree;
+        private final int[] fields;
+        /* Support vectors, one after the other */
+        private final double[] vectors;
+        private final double[] coefficients;
+        private final double intercept;
+
+        SupportVectorMachine(int target, int kernel, double gamma, double coef0, double degree,
+                int[] fields, double[] vectors, double[] coefficients, double intercept) {
+            this.target = target;
+            this.kernel = kernel;
+            this.gamma = gamma;
+            this.coef0 = coef0;
+            this.degree = degree;
+            this.fields = fields;
+            this.vectors = vectors;
+            this.coefficients = coefficients;
+            this.intercept = intercept;
+        }
+
+        void apply(double[] slots) {
+            int p = fields.length;
+            double sum = intercept;
+            int offset = 0;
+            for (int i = 0; i < coefficients.length; i++) {
+                double k = 0;
+                if (kernel == RADIAL_BASIS) {
+                    for (int j = 0; j < p; j++) {
+                        double d = slots[fields[j]] - vectors[offset + j];
+                        k += d * d;
+                    }
+                    k = Math.exp(-gamma * k);
+                } else {
+                    for (int j = 0; j < p; j++) {
+                        k += slots[fields[j]] * vectors[offset + j];
+                    }
+                    if (kernel == POLYNOMIAL) {
+                        k = Math.pow(gamma * k + coef0, degree);
+                    } else if (kernel == SIGMOID) {
+                        k = Math.tanh(gamma * k + coef0);
+                    }
+                }
+                sum += coefficients[i] * k;
+                offset += p;
+            }
+            slots[target] = sum;
+        }
+    }
+
+    /**
+     * A single neuron of a neural network; its activation is stored in its own
+     * slot.
+     */
+    static final class Neuron extends Step {
+
+        static final int IDENTITY = 0;
+        static final int LOGISTIC = 1;
+        static final int TANH = 2;
+        static final int EXPONENTIAL = 3;
+        static final int RECIPROCAL = 4;
+        static final int SQUARE = 5;
+        static final int GAUSS = 6;
+        static final int SINE = 7;
+        static final int COSINE = 8;
+        static final int ELLIOTT = 9;
+        static final int ARCTAN = 10;
+        static final int RADIAL_BASIS = 11;
+        private final int target;
+        private final int activation;
+        private final double bias;
+        private final int[] from;
+        private final double[] weights;
+        private final double width;
+        private final double altitude;
+
+        Neuron(int target, int activation, double bias, int[] from, double[] weights, double width, double altitude) {
+            this.target = target;
+            this.activation = activation;
+            this.bias = bias;
+            this.from = from;
+            this.weights = weights;
+            this.width = width;
+            this.altitude = altitude;
+        }
+
+        void apply(double[] slots) {
+            if (activation == RADIAL_BASIS) {
+                double z = 0;
+                for (int i = 0; i < from.length; i++) {
+                    double d = slots[from[i]] - weights[i];
+                    z += d * d;
+                }
+                z /= 2 * width * width;
+                slots[target] = altitude == 1 ? Math.exp(-z) : Math.exp(from.length * Math.log(altitude) - z);
+                return;
+            }
+            double z = bias;
+            for (int i = 0; i < from.length; i++) {
+                z += slots[from[i]] * weights[i];
+            }
+            double a;
+            switch (activation) {
+                case LOGISTIC:
+                    a = 1 / (1 + Math.exp(-z));
+                    break;
+                case TANH:
+                    a = Math.tanh(z);
+                    break;
+                case EXPONENTIAL:
+                    a = Math.exp(z);
+                    break;
+                case RECIPROCAL:
+                    a = 1 / z;
+                    break;
+                case SQUARE:
+                    a = z * z;
+                    break;
+                case GAUSS:
+                    a = Math.exp(-z * z);
+                    break;
+                case SINE:
+                    a = Math.sin(z);
+                    break;
+                case COSINE:
+                    a = Math.cos(z);
+                    break;
+                case ELLIOTT:
+                    a = z / (1 + Math.abs(z));
+                    break;
+                case ARCTAN:
+                    a = 2 * Math.atan(z) / Math.PI;
+                    break;
+                default:
+                    a = z;
+            }
+            slots[target] = a;
+        }
+    }
+
+    /**
+     * The <code>Targets</code> post-processing of a prediction: the value is
+     * first bounded within [min, max] and then rescaled.
+     */
+    static final class Target extends Step {
+
+        private final int slot;
+        private final double min;
+        private final double max;
+        private final double factor;
+        private final double constant;
+
+        Target(int slot, double min, double max, double factor, double constant) {
+            this.slot = slot;
+            this.min = min;
+            this.max = max;
+            this.factor = factor;
+            this.constant = constant;
+        }
+
+        void apply(double[] slots) {
+            double value = slots[slot];
+            if (value < min) {
+                value = min;
+            } else if (value > max) {
+                value = max;
+            }
+            slots[slot] = value * factor + constant;
+        }
+    }
+
+    /**
+     * Combination of the predictions of segments by sum or average.
+     */
+    static final class Aggregate extends Step {
+
+        private final int target;
+        private final int[] sources;
+        private final boolean average;
+
+        Aggregate(int target, int[] sources, boolean average) {
+            this.target = target;
+            this.sources = sources;
+            this.average = average;
+        }
+
+        void apply(double[] slots) {
+            double sum = 0;
+            for (int source : sources) {
+                sum += slots[source];
+            }
+            slots[target] = average ? sum / sources.length : sum;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.qsar.pmml;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedList;
+
+/**
+ * Minimal streaming XML writer for PMML documents. Elements are written as soon
+ * as they are opened so that large models (e.g. support vector machines with
+ * thousands of support vectors) are never held in memory as a string. Attributes
+ * are given as name-value pairs.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class PmmlWriter {
+
+    public static final String PMML_VERSION = "4.1";
+    public static final String PMML_NAMESPACE = "http://www.dmg.org/PMML-4_1";
+    private final Writer out;
+    private final LinkedList<String> open = new LinkedList<String>();
+
+    public PmmlWriter(OutputStream stream) throws IOException {
+        this.out = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"), 16384);
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    }
+
+    /**
+     * Opens a new element.
+     * @param name
+     *      Name of the element.
+     * @param attributes
+     *      Attribute names followed by their values. Attributes with <code>null</code>
+     *      value are omitted.
+     */
+    public PmmlWriter start(String name, Object... attributes) throws IOException {
+        tag(name, attributes);
+        out.write(">\n");
+        open.addLast(name);
+        return this;
+    }
+
+    /**
+     * Writes an element without content.
+     */
+    public PmmlWriter empty(String name, Object... attributes) throws IOException {
+        tag(name, attributes);
+        out.write("/>\n");
+        return this;
+    }
+
+    /**
+     * Writes an element with text content.
+     */
+    public PmmlWriter text(String name, String text, Object... attributes) throws IOException {
+        tag(name, attributes);
+        out.write('>');
+        escape(text);
+        out.write("</");
+        out.write(name);
+        out.write(">\n");
+        return this;
+    }
+
+    /**
+     * Writes an array of numbers as a PMML <code>Array</code> element.
+     */
+    public PmmlWriter array(double[] values) throws IOException {
+        tag("Array", "n", values.length, "type", "real");
+        out.write('>');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.write(' ');
+            }
+            out.write(number(values[i]));
+        }
+        out.write("</Array>\n");
+        return this;
+    }
+
+    /**
+     * Closes the element which was opened last.
+     */
+    public PmmlWriter end() throws IOException {
+        String name = open.removeLast();
+        out.write("</");
+        out.write(name);
+        out.write(">\n");
+        return this;
+    }
+
+    /**
+     * Closes all open elements and flushes the underlying stream, which is not
+     * closed.
+     */
+    public void finish() throws IOException {
+        while (!open.isEmpty()) {
+            end();
+        }
+        out.flush();
+    }
+
+    /**
+     * Formats a number for a PMML document.
+     * @throws IllegalArgumentException
+     *      If the number is not finite, as PMML has no representation for it.
+     */
+    public static String number(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Non-finite number (" + value + ") cannot be written in PMML");
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private void tag(String name, Object... attributes) throws IOException {
+        if (attributes.length % 2 != 0) {
+            throw new IllegalArgumentException("Attributes should be given as name-value pairs");
+        }
+        out.write('<');
+        out.write(name);
+        for (int i = 0; i < attributes.length; i += 2) {
+            Object value = attributes[i + 1];
+            if (value == null) {
+                continue;
+            }
+            out.write(' ');
+            out.write(attributes[i].toString());
+            out.write("=\"");
+            escape(value instanceof Double ? number((Double) value) : value.toString());
+            out.write('"');
+        }
+    }
+
+    private void escape(String text) throws IOException {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    out.write("&lt;");
+                    break;
+                case '>':
+                    out.write("&gt;");
+                    break;
+                case '&':
+                    out.write("&amp;");
+                    break;
+                case '"':
+                    out.write("&quot;");
+                    break;
+                default:
+                    out.write(c);
+            }
+        }
+    }
+}
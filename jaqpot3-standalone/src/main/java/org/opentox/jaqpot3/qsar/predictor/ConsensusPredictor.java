@@ -0,0 +1,384 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.qsar.predictor;
+
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.qsar.AbstractPredictor;
+import org.opentox.jaqpot3.qsar.IClientInput;
+import org.opentox.jaqpot3.qsar.IPredictor;
+import org.opentox.jaqpot3.qsar.InstancesUtil;
+import org.opentox.jaqpot3.qsar.PredictorFinder;
+import org.opentox.jaqpot3.qsar.exceptions.BadParameterException;
+import org.opentox.jaqpot3.qsar.exceptions.QSARException;
+import org.opentox.jaqpot3.qsar.serializable.ConsensusModel;
+import org.opentox.jaqpot3.qsar.util.AttributeCleanup;
+import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.ModelLoader;
+import org.opentox.toxotis.client.VRI;
+import org.opentox.toxotis.core.component.Feature;
+import org.opentox.toxotis.core.component.Model;
+import org.opentox.toxotis.util.aa.AuthenticationToken;
+import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import static org.opentox.jaqpot3.qsar.util.AttributeCleanup.AttributeType.*;
+
+/**
+ * Predictor for consensus models. The input dataset is projected once on the
+ * union of the independent features of all members and the members predict
+ * this shared copy concurrently. Each member must finish within the timeout
+ * of the consensus model, counted from the moment the member starts running;
+ * members that time out or fail are left out (and reported in the task) and
+ * the remaining predictions are combined instance by instance.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class ConsensusPredictor extends AbstractPredictor {
+
+    private static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ConsensusPredictor.class);
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger(0);
+    private static final int _MEMBER_THREADS = Configuration.getIntegerProperty("consensus.memberThreads", 0);
+    /**
+     * Members run on their own threads (not on the execution pool) so that a
+     * timed out member never occupies one of the threads running tasks. The pool
+     * has <code>consensus.memberThreads</code> threads (the number of available
+     * processors if not positive); further members wait in its queue.
+     */
+    private static final ThreadPoolExecutor MEMBER_EXECUTOR;
+
+    static {
+        int threads = _MEMBER_THREADS > 0 ? _MEMBER_THREADS : Runtime.getRuntime().availableProcessors();
+        MEMBER_EXECUTOR = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "consensus-member-" + THREAD_COUNT.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        MEMBER_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    public ConsensusPredictor() {
+        super();
+    }
+
+    /**
+     * Stops the threads on which the members of consensus models run; invoked
+     * when the server stops.
+     */
+    public static void shutdown() {
+        MEMBER_EXECUTOR.shutdownNow();
+    }
+
+    @Override
+    public IPredictor parametrize(IClientInput clientParameters) throws BadParameterException {
+        return this;
+    }
+
+    /**
+     * The members are loaded and given their timeout once for the whole dataset;
+     * predicting it in chunks would reload them per chunk and could leave out
+     * different members in different chunks.
+     */
+    @Override
+    public boolean isRowIndependent() {
+        return false;
+    }
+
+    @Override
+    public Instances predictInstances(Instances input) throws JaqpotException {
+        ConsensusModel actual = (ConsensusModel) model.getActualModel();
+        List<Model> members = new ArrayList<Model>(actual.getMemberUris().size());
+        for (String memberUri : actual.getMemberUris()) {
+            members.add(findModel(memberUri));
+        }
+        double[][] memberPredictions = predictMembers(members, input, actual.getMemberTimeout(), token);
+        int available = 0;
+        for (int m = 0; m < memberPredictions.length; m++) {
+            if (memberPredictions[m] != null) {
+                available++;
+            } else if (getTask() != null) {
+                getTask().getMeta().addComment("Member model " + actual.getMemberUris().get(m)
+                        + " did not provide predictions and was left out of the consensus");
+            }
+        }
+        if (available == 0) {
+            throw new JaqpotException("None of the member models of the consensus model provided predictions");
+        }
+
+        /* Combine the predictions of the members in a single pass */
+        String predictedFeature = model.getPredictedFeatures().iterator().next().getUri().toString();
+        FastVector attributes = new FastVector(1);
+        attributes.addElement(new Attribute(predictedFeature));
+        int numInstances = input.numInstances();
+        Instances predictions = new Instances(input.relationName(), attributes, numInstances);
+        double[] instancePredictions = new double[memberPredictions.length];
+        for (int i = 0; i < numInstances; i++) {
+            for (int m = 0; m < memberPredictions.length; m++) {
+                instancePredictions[m] = memberPredictions[m] != null ? memberPredictions[m][i] : Double.NaN;
+            }
+            double consensus = actual.combine(instancePredictions);
+            predictions.add(new Instance(1.0, new double[]{Double.isNaN(consensus) ? Instance.missingValue() : consensus}));
+        }
+
+        AttributeCleanup justCompounds = new AttributeCleanup(true, nominal, numeric, string);
+        Instances compounds = null;
+        try {
+            compounds = justCompounds.filter(input);
+        } catch (QSARException ex) {
+            logger.debug(null, ex);
+        }
+        return Instances.mergeInstances(compounds, predictions);
+    }
+
+    /**
+     * Computes the predictions of several models on a dataset concurrently.
+     *
+     * @param members
+     *      Member models.
+     * @param input
+     *      Input dataset; it should contain the independent features of all members.
+     * @param timeoutMillis
+     *      Maximum time (in milliseconds) each member may run, counted from the
+     *      moment it starts; non-positive values mean no timeout.
+     * @param token
+     *      Token used by members which need to access remote services.
+     * @return
+     *      Predictions per member and instance. The predictions of a member that
+     *      failed or timed out are <code>null</code>; missing predictions are <code>NaN</code>.
+     * @throws JaqpotException
+     *      If some member needs a feature which is not found in the dataset.
+     */
+    public static double[][] predictMembers(List<Model> members, Instances input, long timeoutMillis,
+            final AuthenticationToken token) throws JaqpotException {
+        /* The shared copy holds the compound URI (if any) and the features of all members */
+        Set<String> union = new LinkedHashSet<String>();
+        for (Model member : members) {
+            for (Feature f : member.getIndependentFeatures()) {
+                union.add(f.getUri().toString());
+            }
+        }
+        final Instances shared = InstancesUtil.sortByFeatureAttrList(new ArrayList<String>(union), input,
+                input.attribute("compound_uri") != null ? 0 : -1);
+
+        /* The timeout of each member counts from the moment it starts running, not
+         * from its submission, since it may wait in the queue of the pool first */
+        final AtomicLongArray started = new AtomicLongArray(members.size());
+        List<Future<double[]>> futures = new ArrayList<Future<double[]>>(members.size());
+        for (int m = 0; m < members.size(); m++) {
+            final Model member = members.get(m);
+            final int index = m;
+            futures.add(MEMBER_EXECUTOR.submit(new Callable<double[]>() {
+
+                @Override
+                public double[] call() throws Exception {
+                    started.set(index, System.currentTimeMillis());
+                    return predictMember(member, shared, token);
+                }
+            }));
+        }
+
+        double[][] result = new double[members.size()][];
+        for (int m = 0; m < members.size(); m++) {
+            Future<double[]> future = futures.get(m);
+            String memberUri = members.get(m).getUri().toString();
+            try {
+                result[m] = timeoutMillis > 0 ? waitFor(future, started, m, timeoutMillis) : future.get();
+            } catch (TimeoutException ex) {
+                /* Members predicting through a Weka classifier stop at the next instance;
+                 * other predictors do not check for interruption, so they run to the end
+                 * on their thread and only their result is discarded */
+                future.cancel(true);
+                logger.warn("Member model " + memberUri + " timed out after " + timeoutMillis + "ms");
+            } catch (ExecutionException ex) {
+                logger.warn("Member model " + memberUri + " failed to predict the dataset", ex.getCause());
+            } catch (InterruptedException ex) {
+                for (Future<double[]> f : futures) {
+                    f.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                throw new JaqpotException("Interrupted while waiting for the member models", ex);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Waits for the result of a member until its timeout elapses, counting from
+     * the moment the member started running.
+     */
+    private static double[] waitFor(Future<double[]> future, AtomicLongArray started, int index,
+            long timeoutMillis) throws InterruptedException, ExecutionException, TimeoutException {
+        while (true) {
+            long start = started.get(index);
+            long remaining = start == 0 ? timeoutMillis : start + timeoutMillis - System.currentTimeMillis();
+            try {
+                return future.get(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                start = started.get(index);
+                if (start != 0 && System.currentTimeMillis() - start >= timeoutMillis) {
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Predictions of a single member on the shared dataset. Weka classifiers are
+     * applied directly on the values of the shared dataset; other models are
+     * invoked through their predictor.
+     */
+    private static double[] predictMember(Model member, Instances shared, AuthenticationToken token) throws Exception {
+        String predictedFeature = member.getPredictedFeatures().iterator().next().getUri().toString();
+        int numInstances = shared.numInstances();
+        double[] predictions = new double[numInstances];
+        Object actual = member.getActualModel();
+        if (actual instanceof Classifier) {
+            /* Same layout as in WekaPredictor: the features of the model and the class last */
+            Classifier classifier = (Classifier) actual;
+            List<Feature> features = member.getIndependentFeatures();
+            int numFeatures = features.size();
+            int[] indices = new int[numFeatures];
+            FastVector attributes = new FastVector(numFeatures + 1);
+            for (int j = 0; j < numFeatures; j++) {
+                Attribute attribute = shared.attribute(features.get(j).getUri().toString());
+                indices[j] = attribute.index();
+                attributes.addElement(attribute.copy());
+            }
+            attributes.addElement(new Attribute(predictedFeature));
+            Instances header = new Instances(shared.relationName(), attributes, 0);
+            header.setClassIndex(numFeatures);
+            for (int i = 0; i < numInstances; i++) {
+                Instance sharedInstance = shared.instance(i);
+                double[] values = new double[numFeatures + 1];
+                for (int j = 0; j < numFeatures; j++) {
+                    values[j] = sharedInstance.value(indices[j]);
+                }
+                values[numFeatures] = Instance.missingValue();
+                Instance instance = new Instance(1.0, values);
+                instance.setDataset(header);
+                try {
+                    predictions[i] = classifier.distributionForInstance(instance)[0];
+                } catch (Exception ex) {
+                    predictions[i] = Double.NaN;
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException("Prediction of member " + member.getUri() + " was cancelled");
+                }
+            }
+        } else {
+            IPredictor predictor = PredictorFinder.getPredictor(member.getAlgorithm().getUri().getId());
+            if (predictor == null) {
+                throw new JaqpotException("No predictor is available for the member model " + member.getUri());
+            }
+            predictor.setModel(member);
+            predictor.setToken(token);
+            Instances result = predictor.predictInstances(new Instances(shared));
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("Prediction of member " + member.getUri() + " was cancelled");
+            }
+            Attribute attribute = result.attribute(predictedFeature);
+            if (attribute == null) {
+                throw new JaqpotException("The member model " + member.getUri() + " did not produce its predicted feature");
+            }
+            for (int i = 0; i < numInstances; i++) {
+                predictions[i] = result.instance(i).isMissing(attribute) ? Double.NaN : result.instance(i).value(attribute);
+            }
+        }
+        return predictions;
+    }
+
+    /**
+     * Looks up a model of this service in the database.
+     *
+     * @param modelUri
+     *      URI of the model.
+     * @return
+     *      The model.
+     * @throws JaqpotException
+     *      If the model is not found, is disabled or the database cannot be accessed.
+     */
+    public static Model findModel(String modelUri) throws JaqpotException {
+        return findModel(modelUri, true);
+    }
+
+    /**
+     * Looks up a model of this service in the database.
+     *
+     * @param modelUri
+     *      URI of the model.
+     * @param withPayload
+     *      Whether the actual model is needed; if not, only the metadata of the
+     *      model are loaded (see {@link ModelLoader}).
+     * @return
+     *      The model.
+     * @throws JaqpotException
+     *      If the model is not found, is disabled or the database cannot be accessed.
+     */
+    public static Model findModel(String modelUri, boolean withPayload) throws JaqpotException {
+        String id;
+        try {
+            id = new VRI(modelUri).getId();
+        } catch (URISyntaxException ex) {
+            throw new JaqpotException("Invalid model URI : " + modelUri, ex);
+        }
+        Model found = withPayload ? ModelLoader.find(id) : ModelLoader.findMetadata(id);
+        if (found == null) {
+            throw new JaqpotException("The model " + modelUri + " was not found on the server");
+        }
+        return found;
+    }
+}
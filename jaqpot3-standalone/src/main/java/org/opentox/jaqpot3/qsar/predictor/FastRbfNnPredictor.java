@@ -36,6 +36,7 @@
 package org.opentox.jaqpot3.qsar.predictor;
 
 import org.opentox.jaqpot3.qsar.serializable.FastRbfNnModel;
+import org.opentox.jaqpot3.qsar.serializable.MappedRbfNetwork;
 import java.net.URISyntaxException;
 import org.opentox.jaqpot3.exception.JaqpotException;
 import org.opentox.jaqpot3.qsar.AbstractPredictor;
@@ -45,11 +46,9 @@ import org.opentox.jaqpot3.qsar.InstancesUtil;
 import org.opentox.jaqpot3.qsar.exceptions.BadParameterException;
 import org.opentox.jaqpot3.qsar.exceptions.QSARException;
 import org.opentox.jaqpot3.qsar.util.AttributeCleanup;
+import org.opentox.jaqpot3.util.LocalModelStore;
 import org.opentox.toxotis.client.VRI;
 import org.opentox.toxotis.client.collection.Services;
-import org.opentox.toxotis.core.component.Dataset;
-import org.opentox.toxotis.exceptions.impl.ToxOtisException;
-import org.opentox.toxotis.factory.DatasetFactory;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.filters.Filter;
@@ -102,8 +101,7 @@ public class FastRbfNnPredictor extends AbstractPredictor {
     }
 
     @Override
-    public Dataset predict(Instances inputSet) throws JaqpotException {
-        FastRbfNnModel actualModel = (FastRbfNnModel) model.getActualModel();
+    public Instances predictInstances(Instances inputSet) throws JaqpotException {
         Instances orderedDataset = null;
         try {
             orderedDataset = InstancesUtil.sortForModel(model, inputSet, -1);
@@ -133,6 +131,15 @@ public class FastRbfNnPredictor extends AbstractPredictor {
         }
 
 
+        MappedRbfNetwork network = LocalModelStore.rbfNetwork(model);
+        if (network != null) {
+            for (int i = 0; i < orderedDataset.numInstances(); i++) {
+                predictions.instance(i).setClassValue(network.evaluate(orderedDataset.instance(i).toDoubleArray()));
+            }
+            return Instances.mergeInstances(compounds, predictions);
+        }
+
+        FastRbfNnModel actualModel = (FastRbfNnModel) model.getActualModel();
         Instances nodes = actualModel.getNodes();
         double[] sigma = actualModel.getSigma();
         double[] coeffs = actualModel.getLrCoefficients();
@@ -145,15 +152,7 @@ public class FastRbfNnPredictor extends AbstractPredictor {
             predictions.instance(i).setClassValue(sum);
         }
 
-        try {
-            Instances resultSet = Instances.mergeInstances(compounds, predictions);
-            Dataset output = DatasetFactory.getInstance().createFromArff(resultSet);
-            return output;
-        } catch (ToxOtisException ex) {
-            logger.error(null, ex);
-            throw new JaqpotException(ex);
-        }
-
+        return Instances.mergeInstances(compounds, predictions);
     }
     
 }
@@ -14,8 +14,6 @@ import org.opentox.jaqpot3.qsar.util.AttributeCleanup;
 import org.opentox.toxotis.client.VRI;
 import org.opentox.toxotis.client.collection.Services;
 import org.opentox.toxotis.core.component.Dataset;
-import org.opentox.toxotis.exceptions.impl.ToxOtisException;
-import org.opentox.toxotis.factory.DatasetFactory;
 import weka.core.Instances;
 import weka.filters.Filter;
 import weka.filters.unsupervised.attribute.Add;
@@ -50,7 +48,7 @@ public class LeveragesPredictor extends AbstractPredictor {
     }
 
     @Override
-    public Dataset predict(Instances inputSet) throws JaqpotException {
+    public Instances predictInstances(Instances inputSet) throws JaqpotException {
         LeveragesModel actualModel = (LeveragesModel) model.getActualModel();
         Matrix matrix = actualModel.getDataMatrix();
         double gamma = actualModel.getGamma();
@@ -100,17 +98,6 @@ public class LeveragesPredictor extends AbstractPredictor {
             predictions.instance(i).setClassValue(indicator);
         }
 
-        try {
-
-            Dataset output = DatasetFactory.getInstance().
-                    createFromArff(Instances.mergeInstances(compounds, predictions));
-
-            return output;
-        } catch (ToxOtisException ex) {
-            logger.error(null, ex);
-            throw new JaqpotException(ex);
-        }
-
-
+        return Instances.mergeInstances(compounds, predictions);
     }
 }
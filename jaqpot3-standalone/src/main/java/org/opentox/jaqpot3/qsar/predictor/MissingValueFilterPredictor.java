@@ -39,21 +39,16 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import org.opentox.jaqpot3.exception.JaqpotException;
 import org.opentox.jaqpot3.qsar.AbstractPredictor;
 import org.opentox.jaqpot3.qsar.IClientInput;
 import org.opentox.jaqpot3.qsar.IPredictor;
 import org.opentox.jaqpot3.qsar.exceptions.BadParameterException;
-import org.opentox.toxotis.core.component.Dataset;
+import org.opentox.jaqpot3.qsar.util.ColumnStatistics;
 import org.opentox.toxotis.core.component.Feature;
 import org.opentox.toxotis.core.component.Model;
-import org.opentox.toxotis.exceptions.impl.ToxOtisException;
-import org.opentox.toxotis.factory.DatasetFactory;
 import weka.core.Attribute;
 import weka.core.Instances;
-import weka.filters.unsupervised.attribute.ReplaceMissingValues;
 
 /**
  *
@@ -78,8 +73,16 @@ public class MissingValueFilterPredictor extends AbstractPredictor {
         }
     }
 
+    /**
+     * Missing values are replaced using statistics of the whole input dataset.
+     */
     @Override
-    public Dataset predict(Instances data) throws JaqpotException {
+    public boolean isRowIndependent() {
+        return false;
+    }
+
+    @Override
+    public Instances predictInstances(Instances data) throws JaqpotException {
         HashSet<String> ignoredUris = (HashSet<String>) model.getActualModel();        
         for (String attribute2Bignored : ignoredUris) {
             Attribute attr = data.attribute(attribute2Bignored);
@@ -88,14 +91,7 @@ public class MissingValueFilterPredictor extends AbstractPredictor {
             }
         }
         updateFeatureMap(model);
-        weka.filters.unsupervised.attribute.ReplaceMissingValues replacer = new ReplaceMissingValues();
-
-        try {
-            replacer.setInputFormat(data);
-        } catch (Exception ex) {
-            Logger.getLogger(MissingValueFilterPredictor.class.getName()).log(Level.SEVERE, null, ex);
-            throw new JaqpotException(ex);
-        }
+        data = ColumnStatistics.compute(data).replaceMissingValues(data, true);
 
 
         Iterator<String> features = featureToMVH.keySet().iterator();
@@ -110,16 +106,6 @@ public class MissingValueFilterPredictor extends AbstractPredictor {
             }
             data.renameAttribute(currentAttribute, featureToMVH.get(nextFeature));
         }
-        
-
-        try {
-            return DatasetFactory.getInstance().createFromArff(data);
-        } catch (ToxOtisException ex) {
-            Logger.getLogger(MissingValueFilterPredictor.class.getName()).log(Level.SEVERE, null, ex);
-            throw new JaqpotException(ex);
-        }
-
-
-
+        return data;
     }
 }
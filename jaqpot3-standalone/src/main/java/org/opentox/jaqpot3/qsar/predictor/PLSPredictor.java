@@ -44,11 +44,11 @@ import org.opentox.jaqpot3.qsar.exceptions.BadParameterException;
 import org.opentox.jaqpot3.qsar.exceptions.QSARException;
 import org.opentox.jaqpot3.qsar.serializable.PLSModel;
 import org.opentox.jaqpot3.qsar.util.AttributeCleanup;
-import org.opentox.toxotis.core.component.Dataset;
 import org.opentox.toxotis.core.component.Feature;
 import org.opentox.toxotis.core.component.Parameter;
-import org.opentox.toxotis.exceptions.impl.ToxOtisException;
-import org.opentox.toxotis.factory.DatasetFactory;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
 import weka.core.Instances;
 import weka.filters.Filter;
 import weka.filters.supervised.attribute.PLSFilter;
@@ -67,15 +67,17 @@ public class PLSPredictor extends AbstractPredictor {
     }
 
     @Override
-    public Dataset predict(Instances input) throws JaqpotException {
+    public Instances predictInstances(Instances input) throws JaqpotException {
         PLSModel actual = (PLSModel) model.getActualModel();
-        PLSFilter plsFilter = actual.getPls();
-        Instances newData = InstancesUtil.sortForModel(model, input, -1);
-        try {
-            newData = Filter.useFilter(newData, plsFilter);
-        } catch (Exception ex) {
-            Logger.getLogger(PLSPredictor.class.getName()).log(Level.SEVERE, null, ex);
+        String target = null;
+        for (Parameter p : model.getParameters()) {
+            if ("target".equals(p.getName().getValueAsString())) {
+                target = p.getValue().toString();
+            }
         }
+        Instances newData = actual.getPls() != null
+                ? wekaFilter(actual.getPls(), input, target)
+                : project(actual, input, target);
 
         AttributeCleanup justCompounds = new AttributeCleanup(true, nominal, numeric, string);
         Instances compounds = null;
@@ -84,25 +86,68 @@ public class PLSPredictor extends AbstractPredictor {
         } catch (QSARException ex) {
 //                logger.debug(null, ex);
         }
+        return Instances.mergeInstances(compounds, newData);
+    }
 
-        int i = 0;
+    /**
+     * Applies the stored projection directly on the values of the input dataset.
+     * The result contains the scores of every component and the target, which is
+     * replaced by its prediction if the model was trained with <code>doUpdateClass=on</code>.
+     */
+    private Instances project(PLSModel actual, Instances input, String target) throws JaqpotException {
+        String[] features = actual.getFeatures();
+        int[] indices = new int[features.length];
+        for (int j = 0; j < features.length; j++) {
+            Attribute attribute = input.attribute(features[j]);
+            if (attribute == null) {
+                throw new JaqpotException("The Dataset you provided does not contain feature:" + features[j]);
+            }
+            indices[j] = attribute.index();
+        }
+        Attribute targetAttribute = target != null ? input.attribute(target) : null;
+
+        int numComponents = actual.getNumComponents();
+        FastVector attributes = new FastVector(numComponents + 1);
         for (Feature f : model.getPredictedFeatures()) {
-            newData.renameAttribute(i++, f.getUri().toString());
+            attributes.addElement(new Attribute(f.getUri().toString()));
         }
-        String target = null;
-        for (Parameter p : model.getParameters()){
-            if ("target".equals(p.getName().getValueAsString())){
-                target = p.getValue().toString();
+        attributes.addElement(new Attribute(target != null ? target : "Class"));
+        int numInstances = input.numInstances();
+        Instances result = new Instances(input.relationName(), attributes, numInstances);
+        double[] row = new double[features.length];
+        for (int i = 0; i < numInstances; i++) {
+            Instance instance = input.instance(i);
+            for (int j = 0; j < features.length; j++) {
+                row[j] = instance.isMissing(indices[j]) ? Double.NaN : instance.value(indices[j]);
             }
-        }        
-        newData.renameAttribute(newData.attribute("Class"),target);        
-        newData = Instances.mergeInstances(compounds, newData);
+            double[] scores = actual.scores(row);
+            double[] values = new double[numComponents + 1];
+            System.arraycopy(scores, 0, values, 0, numComponents);
+            if (actual.isUpdateClass()) {
+                values[numComponents] = actual.predict(scores, numComponents);
+            } else {
+                values[numComponents] = targetAttribute != null ? instance.value(targetAttribute) : Instance.missingValue();
+            }
+            result.add(new Instance(1.0, values));
+        }
+        return result;
+    }
+
+    /**
+     * Prediction for models trained with earlier versions using Weka's PLSFilter.
+     */
+    private Instances wekaFilter(PLSFilter plsFilter, Instances input, String target) throws JaqpotException {
+        Instances newData = InstancesUtil.sortForModel(model, input, -1);
         try {
-            return DatasetFactory.getInstance().createFromArff(newData);
-        } catch (ToxOtisException ex) {
+            newData = Filter.useFilter(newData, plsFilter);
+        } catch (Exception ex) {
             Logger.getLogger(PLSPredictor.class.getName()).log(Level.SEVERE, null, ex);
-            throw new JaqpotException(ex);
         }
-        
+        int i = 0;
+        for (Feature f : model.getPredictedFeatures()) {
+            newData.renameAttribute(i++, f.getUri().toString());
+        }
+        newData.renameAttribute(newData.attribute("Class"), target);
+        return newData;
     }
 }
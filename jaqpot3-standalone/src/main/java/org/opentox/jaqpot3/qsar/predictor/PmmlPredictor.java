@@ -0,0 +1,122 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.qsar.predictor;
+
+import java.util.List;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.qsar.AbstractPredictor;
+import org.opentox.jaqpot3.qsar.IClientInput;
+import org.opentox.jaqpot3.qsar.IPredictor;
+import org.opentox.jaqpot3.qsar.exceptions.BadParameterException;
+import org.opentox.jaqpot3.qsar.exceptions.QSARException;
+import org.opentox.jaqpot3.qsar.pmml.PmmlEvaluator;
+import org.opentox.jaqpot3.qsar.serializable.PmmlModel;
+import org.opentox.jaqpot3.qsar.util.AttributeCleanup;
+import org.opentox.toxotis.core.component.Feature;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import static org.opentox.jaqpot3.qsar.util.AttributeCleanup.AttributeType.*;
+
+/**
+ * Predictor for models imported from PMML documents. The input fields of the
+ * document are looked up in the dataset by name (feature URI) and every row is
+ * scored by the compiled evaluator; the outputs of the document are mapped, in
+ * order, to the predicted features of the model.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class PmmlPredictor extends AbstractPredictor {
+
+    private org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(PmmlPredictor.class);
+
+    @Override
+    public IPredictor parametrize(IClientInput clientParameters) throws BadParameterException {
+        return this;
+    }
+
+    @Override
+    public Instances predictInstances(Instances input) throws JaqpotException {
+        PmmlEvaluator evaluator = ((PmmlModel) model.getActualModel()).getEvaluator();
+        String[] fields = evaluator.getInputFields();
+        int[] indices = new int[fields.length];
+        for (int j = 0; j < fields.length; j++) {
+            Attribute attribute = input.attribute(fields[j]);
+            if (attribute == null) {
+                throw new JaqpotException("The Dataset you provided does not contain feature:" + fields[j]);
+            }
+            indices[j] = attribute.index();
+        }
+        List<Feature> predicted = model.getPredictedFeatures();
+        int numOutputs = evaluator.getOutputFields().length;
+        if (predicted.size() != numOutputs) {
+            throw new JaqpotException("The model predicts " + predicted.size() + " features while its PMML "
+                    + "document has " + numOutputs + " outputs");
+        }
+        FastVector attributes = new FastVector(numOutputs);
+        for (Feature f : predicted) {
+            attributes.addElement(new Attribute(f.getUri().toString()));
+        }
+        int numInstances = input.numInstances();
+        Instances result = new Instances(input.relationName(), attributes, numInstances);
+        double[] row = new double[fields.length];
+        double[] workspace = evaluator.newWorkspace();
+        for (int i = 0; i < numInstances; i++) {
+            Instance instance = input.instance(i);
+            for (int j = 0; j < fields.length; j++) {
+                row[j] = instance.isMissing(indices[j]) ? Double.NaN : instance.value(indices[j]);
+            }
+            double[] values = new double[numOutputs];
+            evaluator.evaluate(row, values, workspace);
+            for (int k = 0; k < numOutputs; k++) {
+                if (Double.isNaN(values[k])) {
+                    values[k] = Instance.missingValue();
+                }
+            }
+            result.add(new Instance(1.0, values));
+        }
+
+        AttributeCleanup justCompounds = new AttributeCleanup(true, nominal, numeric, string);
+        Instances compounds = null;
+        try {
+            compounds = justCompounds.filter(input);
+        } catch (QSARException ex) {
+            logger.debug(null, ex);
+        }
+        return Instances.mergeInstances(compounds, result);
+    }
+}
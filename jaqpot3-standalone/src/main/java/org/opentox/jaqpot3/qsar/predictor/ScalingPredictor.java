@@ -44,11 +44,8 @@ import org.opentox.jaqpot3.qsar.AbstractPredictor;
 import org.opentox.jaqpot3.qsar.IClientInput;
 import org.opentox.jaqpot3.qsar.IPredictor;
 import org.opentox.jaqpot3.qsar.exceptions.BadParameterException;
-import org.opentox.toxotis.core.component.Dataset;
 import org.opentox.toxotis.core.component.Feature;
 import org.opentox.toxotis.core.component.Model;
-import org.opentox.toxotis.exceptions.impl.ToxOtisException;
-import org.opentox.toxotis.factory.DatasetFactory;
 import weka.core.Attribute;
 import weka.core.Instances;
 
@@ -78,7 +75,7 @@ public class ScalingPredictor extends AbstractPredictor {
     }
 
     @Override
-    public Dataset predict(Instances inputData) throws JaqpotException {
+    public Instances predictInstances(Instances inputData) throws JaqpotException {
         try{
         ScalingModel actualModel = (ScalingModel) model.getActualModel();
         
@@ -124,11 +121,7 @@ public class ScalingPredictor extends AbstractPredictor {
             }
             inputData.renameAttribute(currentAttribute, featureToScaled.get(nextFeature));
         }
-        try {
-            return DatasetFactory.getInstance().createFromArff(inputData);
-        } catch (ToxOtisException ex) {
-            throw new JaqpotException(ex);
-        }
+        return inputData;
 
 
         } catch (Throwable thr){
@@ -43,9 +43,6 @@ import org.opentox.jaqpot3.qsar.InstancesUtil;
 import org.opentox.jaqpot3.qsar.exceptions.BadParameterException;
 import org.opentox.jaqpot3.qsar.exceptions.QSARException;
 import org.opentox.jaqpot3.qsar.util.AttributeCleanup;
-import org.opentox.toxotis.core.component.Dataset;
-import org.opentox.toxotis.exceptions.impl.ToxOtisException;
-import org.opentox.toxotis.factory.DatasetFactory;
 import weka.classifiers.Classifier;
 import weka.core.Instances;
 import weka.filters.Filter;
@@ -73,54 +70,45 @@ public class WekaPredictor extends AbstractPredictor {
     }
 
     @Override
-    public Dataset predict(Instances inputSet) throws JaqpotException {
+    public Instances predictInstances(Instances inputSet) throws JaqpotException {
+        /* THE OBJECT newData WILL HOST THE PREDICTIONS... */
+        Instances newData = InstancesUtil.sortForModel(model, inputSet, -1);
+        /* ADD TO THE NEW DATA THE PREDICTION FEATURE*/
+        Add attributeAdder = new Add();
+        attributeAdder.setAttributeIndex("last");
+        attributeAdder.setAttributeName(model.getPredictedFeatures().iterator().next().getUri().toString());
+        Instances predictions = null;
         try {
-            /* THE OBJECT newData WILL HOST THE PREDICTIONS... */
-            Instances newData = InstancesUtil.sortForModel(model, inputSet, -1);
-            /* ADD TO THE NEW DATA THE PREDICTION FEATURE*/
-            Add attributeAdder = new Add();
-            attributeAdder.setAttributeIndex("last");
-            attributeAdder.setAttributeName(model.getPredictedFeatures().iterator().next().getUri().toString());
-            Instances predictions = null;
-            try {
-                attributeAdder.setInputFormat(newData);
-                predictions = Filter.useFilter(newData, attributeAdder);
-                predictions.setClass(predictions.attribute(model.getPredictedFeatures().iterator().next().getUri().toString()));
-            } catch (Exception ex) {
-                String message = "Exception while trying to add prediction feature to Instances";
-                logger.debug(message, ex);
-                throw new JaqpotException(message, ex);
-            }
+            attributeAdder.setInputFormat(newData);
+            predictions = Filter.useFilter(newData, attributeAdder);
+            predictions.setClass(predictions.attribute(model.getPredictedFeatures().iterator().next().getUri().toString()));
+        } catch (Exception ex) {
+            String message = "Exception while trying to add prediction feature to Instances";
+            logger.debug(message, ex);
+            throw new JaqpotException(message, ex);
+        }
 
-            if (predictions != null) {
-                Classifier classifier = (Classifier) model.getActualModel();                
+        if (predictions != null) {
+            Classifier classifier = (Classifier) model.getActualModel();                
 
-                int numInstances = predictions.numInstances();
-                for (int i = 0; i < numInstances; i++) {
-                    try {
-                        double predictionValue = classifier.distributionForInstance(predictions.instance(i))[0];
-                        predictions.instance(i).setClassValue(predictionValue);
-                    } catch (Exception ex) {
-                        logger.warn("Prediction failed :-(", ex);
-                    }
+            int numInstances = predictions.numInstances();
+            for (int i = 0; i < numInstances; i++) {
+                try {
+                    double predictionValue = classifier.distributionForInstance(predictions.instance(i))[0];
+                    predictions.instance(i).setClassValue(predictionValue);
+                } catch (Exception ex) {
+                    logger.warn("Prediction failed :-(", ex);
                 }
             }
+        }
 
-            AttributeCleanup justCompounds = new AttributeCleanup(true, nominal, numeric, string);
-            Instances compounds = null;
-            try {
-                compounds = justCompounds.filter(inputSet);
-            } catch (QSARException ex) {
-                logger.debug(null, ex);
-            }
-            Instances result = Instances.mergeInstances(compounds, predictions);
-            Dataset ds = DatasetFactory.getInstance().createFromArff(result);
-
-            return ds;
-        } catch (ToxOtisException ex) {
+        AttributeCleanup justCompounds = new AttributeCleanup(true, nominal, numeric, string);
+        Instances compounds = null;
+        try {
+            compounds = justCompounds.filter(inputSet);
+        } catch (QSARException ex) {
             logger.debug(null, ex);
-            throw new JaqpotException("Exception while performing prediction", ex);
         }
-
+        return Instances.mergeInstances(compounds, predictions);
     }
 }
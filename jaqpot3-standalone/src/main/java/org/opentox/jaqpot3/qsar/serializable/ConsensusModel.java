@@ -0,0 +1,155 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.qsar.serializable;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Actual model of a consensus model: the URIs of the member models, the way
+ * their predictions are combined and the time each member is allowed to run.
+ * Members are referenced (not copied) and are looked up in the database when
+ * predictions are requested.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class ConsensusModel implements Serializable {
+
+    private static final long serialVersionUID = 6630281974415120337L;
+
+    public enum Combination {
+
+        mean,
+        median,
+        weighted;
+    }
+    private ArrayList<String> memberUris = new ArrayList<String>();
+    private Combination combination = Combination.mean;
+    private double[] weights;
+    private long memberTimeout;
+
+    public ConsensusModel() {
+    }
+
+    public ArrayList<String> getMemberUris() {
+        return memberUris;
+    }
+
+    public void setMemberUris(ArrayList<String> memberUris) {
+        this.memberUris = memberUris;
+    }
+
+    public Combination getCombination() {
+        return combination;
+    }
+
+    public void setCombination(Combination combination) {
+        this.combination = combination;
+    }
+
+    /**
+     * Weights of the members (in the order of {@link #getMemberUris() }) used
+     * with the weighted combination.
+     *
+     * @return
+     *      Array of weights or <code>null</code> if the combination is not weighted.
+     */
+    public double[] getWeights() {
+        return weights;
+    }
+
+    public void setWeights(double[] weights) {
+        this.weights = weights;
+    }
+
+    /**
+     * Maximum time in milliseconds a member may take to predict a dataset.
+     * Members that do not finish in time are left out of the consensus.
+     *
+     * @return
+     *      Timeout in milliseconds.
+     */
+    public long getMemberTimeout() {
+        return memberTimeout;
+    }
+
+    public void setMemberTimeout(long memberTimeout) {
+        this.memberTimeout = memberTimeout;
+    }
+
+    /**
+     * Combines the predictions of the members for a single instance. Missing
+     * predictions (<code>NaN</code>) are ignored.
+     *
+     * @param predictions
+     *      Predictions of the members, in the order of {@link #getMemberUris() }.
+     * @return
+     *      The consensus prediction or <code>NaN</code> if no member has provided
+     *      a prediction.
+     */
+    public double combine(double[] predictions) {
+        switch (combination) {
+            case median:
+                double[] available = new double[predictions.length];
+                int count = 0;
+                for (double p : predictions) {
+                    if (!Double.isNaN(p)) {
+                        available[count++] = p;
+                    }
+                }
+                if (count == 0) {
+                    return Double.NaN;
+                }
+                Arrays.sort(available, 0, count);
+                return count % 2 == 1 ? available[count / 2] : (available[count / 2 - 1] + available[count / 2]) / 2;
+            default:
+                double sum = 0, totalWeight = 0;
+                for (int i = 0; i < predictions.length; i++) {
+                    if (!Double.isNaN(predictions[i])) {
+                        double w = combination == Combination.weighted && weights != null ? weights[i] : 1;
+                        sum += w * predictions[i];
+                        totalWeight += w;
+                    }
+                }
+                return totalWeight > 0 ? sum / totalWeight : Double.NaN;
+        }
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return ModelCodec.replace(this);
+    }
+}
@@ -34,6 +34,7 @@
 
 package org.opentox.jaqpot3.qsar.serializable;
 
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 import weka.core.Instances;
 
@@ -103,4 +104,7 @@ public class FastRbfNnModel implements Serializable {
         this.lrCoefficients = lrCoefficients;
     }
 
+    private Object writeReplace() throws ObjectStreamException {
+        return ModelCodec.replace(this);
+    }
 }
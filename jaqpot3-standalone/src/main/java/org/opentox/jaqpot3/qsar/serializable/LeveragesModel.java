@@ -35,13 +35,17 @@
 package org.opentox.jaqpot3.qsar.serializable;
 
 import Jama.Matrix;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 
 /**
  * A class encapsulating 'actual' models as these are defined in ToxOtis models.
  * A LeveragesModel object includes all necessary information needed to generate
  * a Domain of Applicability estimation for a test dataset. In particular it contains
- * the matrix Ω = inv(X'X) and the number γ=3k/n.
+ * the matrix Ω = inv(X'X) and the number γ=3k/n. Models trained with recent
+ * versions of the leverages algorithm also hold the matrix X'X and the number of
+ * training instances, so that new data can be appended to them without retraining
+ * (see {@link #update(Jama.Matrix) }).
  *
  * @author Pantelis Sopasakis
  * @author Charalampos Chomenides
@@ -51,6 +55,8 @@ public class LeveragesModel implements Serializable {
     private static final long serialVersionUID = 165610711007992L;
     private Matrix dataMatrix = null;
     private double gamma = 0;//3k/n
+    private Matrix gramMatrix = null;//X'X
+    private int numInstances = 0;
 
     public LeveragesModel() {
     }
@@ -89,4 +95,67 @@ public class LeveragesModel implements Serializable {
     public void setGamma(int k, int n) {
         this.gamma = 3.0 * k / n;
     }
+
+    /**
+     * The matrix X'X of the training data. This is <code>null</code> for models
+     * created before sufficient statistics were stored in leverages models.
+     * @return
+     *      The matrix X'X or <code>null</code> if not available.
+     */
+    public Matrix getGramMatrix() {
+        return gramMatrix;
+    }
+
+    public void setGramMatrix(Matrix gramMatrix) {
+        this.gramMatrix = gramMatrix;
+    }
+
+    /**
+     * Number of instances in the training set.
+     * @return
+     *      The number of training instances or 0 if not available.
+     */
+    public int getNumInstances() {
+        return numInstances;
+    }
+
+    public void setNumInstances(int numInstances) {
+        this.numInstances = numInstances;
+    }
+
+    /**
+     * Whether the model holds the statistics needed to append new data to it.
+     * @return
+     *      <code>true</code> if the model can be updated.
+     */
+    public boolean isUpdatable() {
+        return gramMatrix != null && numInstances > 0;
+    }
+
+    /**
+     * Creates a new leverages model which corresponds to the training data of this
+     * model augmented by the provided rows. The cost of the update depends on the
+     * number of new rows and not on the size of the original training set. This
+     * model is not modified.
+     * @param newData
+     *      Matrix of new data with one row per instance and the same columns (in
+     *      the same order) as the training data.
+     * @return
+     *      The updated model.
+     */
+    public LeveragesModel update(Matrix newData) {
+        if (!isUpdatable()) {
+            throw new IllegalStateException("This leverages model does not hold the statistics needed for an update");
+        }
+        Matrix gram = gramMatrix.plus(newData.transpose().times(newData));
+        LeveragesModel updated = new LeveragesModel(gram.inverse(), 0);
+        updated.setGramMatrix(gram);
+        updated.setNumInstances(numInstances + newData.getRowDimension());
+        updated.setGamma(updated.getNumInstances(), gram.getColumnDimension());
+        return updated;
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return ModelCodec.replace(this);
+    }
 }
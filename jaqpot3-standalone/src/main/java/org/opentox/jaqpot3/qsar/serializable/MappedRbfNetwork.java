@@ -0,0 +1,197 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.qsar.serializable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import weka.core.Instances;
+
+/**
+ * Read-only view of an RBF network ({@link FastRbfNnModel}) stored in a
+ * memory-mapped file. The nodes, their widths (sigma) and the coefficients of
+ * the network are read straight from the mapped file, off the heap, so large
+ * networks are not deserialized for every prediction and a single mapping is
+ * shared by all threads that use the network.
+ *
+ * <p>The file starts with a header (magic number, layout version, number of
+ * nodes and number of attributes) followed by the sigmas, the coefficients and
+ * the nodes (one row per node), all as big-endian doubles.</p>
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public final class MappedRbfNetwork {
+
+    private static final int MAGIC = 0x4A515242;
+    private static final int LAYOUT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private final int numNodes;
+    private final int numAttributes;
+    private final DoubleBuffer sigma;
+    private final DoubleBuffer coefficients;
+    private final DoubleBuffer nodes;
+
+    private MappedRbfNetwork(int numNodes, int numAttributes, DoubleBuffer values) {
+        this.numNodes = numNodes;
+        this.numAttributes = numAttributes;
+        this.sigma = slice(values, 0, numNodes);
+        this.coefficients = slice(values, numNodes, numNodes);
+        this.nodes = slice(values, 2 * numNodes, numNodes * numAttributes);
+    }
+
+    private static DoubleBuffer slice(DoubleBuffer values, int offset, int length) {
+        DoubleBuffer view = values.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice();
+    }
+
+    /**
+     * Whether the network can be stored in a mapped file; its nodes must all be
+     * numeric and their number must match the sigmas and the coefficients.
+     */
+    public static boolean supports(FastRbfNnModel model) {
+        Instances nodes = model.getNodes();
+        if (nodes == null || model.getSigma() == null || model.getLrCoefficients() == null
+                || model.getSigma().length != nodes.numInstances()
+                || model.getLrCoefficients().length != nodes.numInstances()) {
+            return false;
+        }
+        for (int j = 0; j < nodes.numAttributes(); j++) {
+            if (!nodes.attribute(j).isNumeric()) {
+                return false;
+            }
+        }
+        return HEADER_SIZE + 8L * nodes.numInstances() * (nodes.numAttributes() + 2) <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Writes the network in the layout of mapped networks.
+     *
+     * @throws IllegalArgumentException
+     *      If the network is not {@link #supports(org.opentox.jaqpot3.qsar.serializable.FastRbfNnModel) supported}.
+     */
+    public static void write(FastRbfNnModel model, File file) throws IOException {
+        if (!supports(model)) {
+            throw new IllegalArgumentException("This RBF network cannot be mapped");
+        }
+        Instances nodes = model.getNodes();
+        int numNodes = nodes.numInstances();
+        int numAttributes = nodes.numAttributes();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            int size = HEADER_SIZE + 8 * numNodes * (numAttributes + 2);
+            raf.setLength(size);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC).putInt(LAYOUT_VERSION).putInt(numNodes).putInt(numAttributes);
+            DoubleBuffer values = buffer.asDoubleBuffer();
+            values.put(model.getSigma());
+            values.put(model.getLrCoefficients());
+            for (int i = 0; i < numNodes; i++) {
+                values.put(nodes.instance(i).toDoubleArray());
+            }
+            buffer.force();
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Maps a file written by {@link #write(org.opentox.jaqpot3.qsar.serializable.FastRbfNnModel, java.io.File) }.
+     * The mapping remains valid after the file is closed (or deleted).
+     */
+    public static MappedRbfNetwork map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a mapped RBF network : " + file);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != LAYOUT_VERSION) {
+                throw new IOException("Not a mapped RBF network : " + file);
+            }
+            int numNodes = buffer.getInt();
+            int numAttributes = buffer.getInt();
+            if (numNodes < 0 || numAttributes < 0
+                    || size != HEADER_SIZE + 8L * numNodes * (numAttributes + 2)) {
+                throw new IOException("Corrupt mapped RBF network : " + file);
+            }
+            return new MappedRbfNetwork(numNodes, numAttributes, buffer.asDoubleBuffer());
+        } finally {
+            raf.close();
+        }
+    }
+
+    public int getNumNodes() {
+        return numNodes;
+    }
+
+    public int getNumAttributes() {
+        return numAttributes;
+    }
+
+    /**
+     * The output of the network for an input vector, i.e. the sum over all nodes
+     * of <code>c<sub>j</sub>exp(-||x-n<sub>j</sub>||<sup>2</sup>/&sigma;<sub>j</sub><sup>2</sup>)</code>.
+     * Only absolute reads are made on the mapped buffers, so this method may be
+     * called concurrently.
+     */
+    public double evaluate(double[] x) {
+        if (x.length != numAttributes) {
+            throw new IllegalArgumentException("Provided instances of different length! "
+                    + "Squared Norm of the difference cannot be calculated!");
+        }
+        double sum = 0;
+        int offset = 0;
+        for (int j = 0; j < numNodes; j++) {
+            double distance = 0;
+            for (int i = 0; i < numAttributes; i++) {
+                double difference = x[i] - nodes.get(offset + i);
+                distance += difference * difference;
+            }
+            offset += numAttributes;
+            double s = sigma.get(j);
+            sum += Math.exp(-distance / (s * s)) * coefficients.get(j);
+        }
+        return sum;
+    }
+}
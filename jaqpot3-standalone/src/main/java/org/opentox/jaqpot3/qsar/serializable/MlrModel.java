@@ -0,0 +1,309 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+
+package org.opentox.jaqpot3.qsar.serializable;
+
+import Jama.Matrix;
+import java.io.ObjectStreamException;
+import weka.classifiers.Classifier;
+import weka.classifiers.UpdateableClassifier;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Multiple linear regression model which keeps, along with its coefficients, the
+ * sufficient statistics of the training data, that is the matrix X'X, the vector
+ * X'y and the number of training instances n (X is augmented with a column of
+ * ones for the intercept). New instances can therefore be folded into the model
+ * in time proportional to their number, without retraining on the whole dataset.
+ * Instances with missing values are not used for training; at prediction time
+ * missing values are replaced by the means of the training data.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class MlrModel extends Classifier implements UpdateableClassifier {
+
+    private static final long serialVersionUID = 2849107364556230417L;
+    /**
+     * Ridge added to the diagonal of X'X (except for the intercept) for numerical
+     * stability, as in the LinearRegression classifier of Weka.
+     */
+    private static final double _RIDGE = 1.0e-8;
+    private int numAttributes;
+    private int classIndex = -1;
+    private double[][] xtx;
+    private double[] xty;
+    private long n = 0;
+    /**
+     * One coefficient per attribute (zero for the class attribute) followed by
+     * the intercept; <code>null</code> if the model needs to be solved again.
+     */
+    private double[] coefficients;
+
+    public MlrModel() {
+    }
+
+    /**
+     * Restores a model from its sufficient statistics (see {@link ModelCodec}).
+     */
+    MlrModel(int numAttributes, int classIndex, long n, double[][] xtx, double[] xty) {
+        this.numAttributes = numAttributes;
+        this.classIndex = classIndex;
+        this.n = n;
+        this.xtx = xtx;
+        this.xty = xty;
+    }
+
+    @Override
+    public void buildClassifier(Instances data) throws Exception {
+        if (data.classIndex() < 0 || !data.classAttribute().isNumeric()) {
+            throw new IllegalArgumentException("A numeric class attribute is needed to train an MLR model");
+        }
+        numAttributes = data.numAttributes();
+        classIndex = data.classIndex();
+        xtx = new double[numAttributes][numAttributes];
+        xty = new double[numAttributes];
+        n = 0;
+        coefficients = null;
+        int numInstances = data.numInstances();
+        for (int i = 0; i < numInstances; i++) {
+            updateClassifier(data.instance(i));
+        }
+        coefficients();
+    }
+
+    /**
+     * Folds a single instance into the sufficient statistics of the model. The
+     * instance must have the same structure as the training data. The coefficients
+     * are recomputed lazily, when they are next needed.
+     *
+     * @param instance
+     *      New training instance.
+     */
+    @Override
+    public void updateClassifier(Instance instance) {
+        if (xtx == null) {
+            throw new IllegalStateException("The model has not been trained");
+        }
+        if (instance.hasMissingValue()) {
+            return;
+        }
+        double[] x = augmentedRow(instance);
+        double y = instance.value(classIndex);
+        int size = x.length;
+        synchronized (this) {
+            for (int i = 0; i < size; i++) {
+                if (x[i] == 0) {
+                    continue;
+                }
+                for (int j = i; j < size; j++) {
+                    xtx[i][j] += x[i] * x[j];
+                }
+                xty[i] += x[i] * y;
+            }
+            n++;
+            coefficients = null;
+        }
+    }
+
+    /**
+     * Creates a new model which is trained on the union of the training data of
+     * this model and the provided data. This model is not modified.
+     *
+     * @param data
+     *      Additional training data with the same structure as the original
+     *      training data.
+     * @return
+     *      The updated model.
+     */
+    public MlrModel update(Instances data) {
+        MlrModel updated = copy();
+        int numInstances = data.numInstances();
+        for (int i = 0; i < numInstances; i++) {
+            updated.updateClassifier(data.instance(i));
+        }
+        updated.coefficients();
+        return updated;
+    }
+
+    private synchronized MlrModel copy() {
+        MlrModel copy = new MlrModel();
+        copy.numAttributes = numAttributes;
+        copy.classIndex = classIndex;
+        copy.n = n;
+        copy.xty = xty.clone();
+        copy.xtx = new double[xtx.length][];
+        for (int i = 0; i < xtx.length; i++) {
+            copy.xtx[i] = xtx[i].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * Vector with the values of the independent attributes of the instance (in
+     * the order they appear in the dataset) followed by 1 (for the intercept).
+     */
+    private double[] augmentedRow(Instance instance) {
+        double[] x = new double[numAttributes];
+        int position = 0;
+        for (int j = 0; j < numAttributes; j++) {
+            if (j != classIndex) {
+                x[position++] = instance.value(j);
+            }
+        }
+        x[numAttributes - 1] = 1.0;
+        return x;
+    }
+
+    /**
+     * The coefficients of the model in the format of Weka's LinearRegression, i.e.
+     * one coefficient per attribute (the one corresponding to the class attribute
+     * is zero) followed by the intercept.
+     *
+     * @return
+     *      Array of coefficients.
+     */
+    public synchronized double[] coefficients() {
+        if (coefficients != null) {
+            return coefficients;
+        }
+        if (n == 0) {
+            throw new IllegalStateException("No complete instances are available to train the MLR model");
+        }
+        int size = numAttributes;
+        Matrix a = new Matrix(size, size);
+        Matrix b = new Matrix(size, 1);
+        for (int i = 0; i < size; i++) {
+            for (int j = i; j < size; j++) {
+                a.set(i, j, xtx[i][j]);
+                a.set(j, i, xtx[i][j]);
+            }
+            b.set(i, 0, xty[i]);
+        }
+        for (int i = 0; i < size - 1; i++) {
+            a.set(i, i, a.get(i, i) + _RIDGE);
+        }
+        Matrix beta = a.solve(b);
+        double[] result = new double[numAttributes + 1];
+        int position = 0;
+        for (int j = 0; j < numAttributes; j++) {
+            if (j != classIndex) {
+                result[j] = beta.get(position++, 0);
+            }
+        }
+        result[numAttributes] = beta.get(size - 1, 0);
+        coefficients = result;
+        return coefficients;
+    }
+
+    @Override
+    public double classifyInstance(Instance instance) throws Exception {
+        double[] beta = coefficients();
+        double prediction = beta[numAttributes];
+        int position = 0;
+        for (int j = 0; j < numAttributes; j++) {
+            if (j != classIndex) {
+                double value = instance.isMissing(j) ? mean(position) : instance.value(j);
+                prediction += beta[j] * value;
+                position++;
+            }
+        }
+        return prediction;
+    }
+
+    /**
+     * Mean value of the independent variable at the given position in the
+     * training data (the last column of X'X holds the column sums of X).
+     */
+    private synchronized double mean(int position) {
+        return xtx[position][numAttributes - 1] / n;
+    }
+
+    /**
+     * The matrix X'X where X is the (augmented) data matrix of the training set.
+     * Only the upper triangular part is populated.
+     *
+     * @return
+     *      The upper triangular part of X'X.
+     */
+    public double[][] getXtX() {
+        return xtx;
+    }
+
+    /**
+     * The vector X'y, where X is the (augmented) data matrix of the training set
+     * and y the vector of target values.
+     *
+     * @return
+     *      The vector X'y.
+     */
+    public double[] getXty() {
+        return xty;
+    }
+
+    /**
+     * Number of instances the model has been trained on.
+     *
+     * @return
+     *      Number of training instances.
+     */
+    public long getN() {
+        return n;
+    }
+
+    public int getClassIndex() {
+        return classIndex;
+    }
+
+    @Override
+    public String toString() {
+        if (xtx == null) {
+            return "MLR model: not trained";
+        }
+        double[] beta = coefficients();
+        StringBuilder sb = new StringBuilder("MLR model (trained on " + n + " instances)\n\ny = ");
+        for (int j = 0; j < numAttributes; j++) {
+            if (j != classIndex) {
+                sb.append(beta[j]).append(" * [").append(j).append("] + ");
+            }
+        }
+        sb.append(beta[numAttributes]);
+        return sb.toString();
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return ModelCodec.replace(this);
+    }
+}
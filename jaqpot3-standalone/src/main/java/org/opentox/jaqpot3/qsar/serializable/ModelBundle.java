@@ -34,6 +34,7 @@
 
 package org.opentox.jaqpot3.qsar.serializable;
 
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -69,4 +70,8 @@ public class ModelBundle implements Serializable {
     public ArrayList<String> getModelUris() {
         return modelUris;
     }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return ModelCodec.replace(this);
+    }
 }
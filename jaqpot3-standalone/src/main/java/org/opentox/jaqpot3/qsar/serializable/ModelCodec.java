@@ -0,0 +1,478 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.qsar.serializable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.opentox.jaqpot3.util.Configuration;
+
+/**
+ * Compact, versioned binary encoding of actual models. Models are still stored
+ * by ToxOtis using Java serialization, but every model type which has a
+ * {@link Format} replaces itself (see {@link #replace(java.lang.Object) }) with
+ * an {@link EncodedModel}, i.e. a single byte array, so that the stored object
+ * graph consists of primitive arrays instead of matrices, maps, VRIs and Weka
+ * datasets. Models without a format (e.g. Weka classifiers) are serialized as
+ * before and blobs written before the codec existed are read as before.
+ *
+ * <p>An encoded model consists of the magic bytes <code>JQM</code>, the
+ * version of the layout, the tag of the format, a table of strings (feature
+ * URIs and other names, each stored once) and the body written by the format.
+ * All numbers are big endian; arrays are prefixed by their length, which is
+ * <code>-1</code> for <code>null</code>.</p>
+ *
+ * <p>The codec is used when <code>models.binaryCodec</code> is <code>true</code>
+ * in <code>server.properties</code> (it is <code>false</code> by default).
+ * Enabling it is a one-way change for the database: encoded models can be read
+ * regardless of the setting, but not by earlier versions of the server.</p>
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public final class ModelCodec {
+
+    /**
+     * Current version of the binary layout. Formats receive the version of the
+     * model being decoded so that they can read models written by earlier
+     * versions.
+     */
+    public static final int FORMAT_VERSION = 1;
+    private static final byte[] _MAGIC = {'J', 'Q', 'M'};
+    private static final Charset _UTF8 = Charset.forName("UTF-8");
+    private static final Map<Class<?>, Format<?>> byType = new HashMap<Class<?>, Format<?>>();
+    private static final Format<?>[] byTag = new Format<?>[256];
+    private static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ModelCodec.class);
+
+    static {
+        ModelFormats.registerAll();
+    }
+
+    /**
+     * Binary representation of one type of actual model.
+     *
+     * @param <T>
+     *      The type of the model.
+     */
+    public interface Format<T> {
+
+        /**
+         * Unique identifier of the format which is written in every encoded model
+         * (it must never change or be reused).
+         */
+        int getTag();
+
+        Class<T> getType();
+
+        /**
+         * Whether this particular model can be encoded (for instance, PLS models
+         * which wrap a Weka filter cannot).
+         */
+        boolean accepts(T model);
+
+        void write(T model, Output out) throws IOException;
+
+        T read(Input in, int version) throws IOException;
+    }
+
+    /**
+     * Destination of an encoded model. Strings which are written with
+     * {@link #writeString(java.lang.String) } are placed in the string table.
+     */
+    public static final class Output {
+
+        private ByteBuffer buffer = ByteBuffer.allocate(256);
+        private final Map<String, Integer> index = new HashMap<String, Integer>();
+        private final List<String> table = new ArrayList<String>();
+
+        private Output() {
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+
+        public void writeBoolean(boolean value) {
+            ensure(1);
+            buffer.put(value ? (byte) 1 : (byte) 0);
+        }
+
+        public void writeInt(int value) {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        public void writeLong(long value) {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        public void writeDouble(double value) {
+            ensure(8);
+            buffer.putDouble(value);
+        }
+
+        public void writeDoubles(double[] values) {
+            if (values == null) {
+                writeInt(-1);
+                return;
+            }
+            writeInt(values.length);
+            ensure(8 * values.length);
+            buffer.asDoubleBuffer().put(values);
+            buffer.position(buffer.position() + 8 * values.length);
+        }
+
+        /**
+         * Writes a rectangular or jagged matrix row by row.
+         */
+        public void writeMatrix(double[][] values) {
+            if (values == null) {
+                writeInt(-1);
+                return;
+            }
+            writeInt(values.length);
+            for (double[] row : values) {
+                writeDoubles(row);
+            }
+        }
+
+        public void writeBytes(byte[] values) {
+            if (values == null) {
+                writeInt(-1);
+                return;
+            }
+            writeInt(values.length);
+            ensure(values.length);
+            buffer.put(values);
+        }
+
+        /**
+         * Writes a reference to the string, which is stored once in the string
+         * table of the model.
+         */
+        public void writeString(String value) {
+            if (value == null) {
+                writeInt(-1);
+                return;
+            }
+            Integer position = index.get(value);
+            if (position == null) {
+                position = table.size();
+                table.add(value);
+                index.put(value, position);
+            }
+            writeInt(position);
+        }
+
+        public void writeStrings(String[] values) {
+            if (values == null) {
+                writeInt(-1);
+                return;
+            }
+            writeInt(values.length);
+            for (String value : values) {
+                writeString(value);
+            }
+        }
+
+        private byte[] toByteArray(int tag) {
+            byte[][] strings = new byte[table.size()][];
+            int size = _MAGIC.length + 2 + 4;
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = table.get(i).getBytes(_UTF8);
+                size += 4 + strings[i].length;
+            }
+            size += buffer.position();
+            ByteBuffer result = ByteBuffer.allocate(size);
+            result.put(_MAGIC);
+            result.put((byte) FORMAT_VERSION);
+            result.put((byte) tag);
+            result.putInt(strings.length);
+            for (byte[] string : strings) {
+                result.putInt(string.length);
+                result.put(string);
+            }
+            result.put(buffer.array(), 0, buffer.position());
+            return result.array();
+        }
+    }
+
+    /**
+     * Source of an encoded model; the counterpart of {@link Output}.
+     */
+    public static final class Input {
+
+        private final ByteBuffer buffer;
+        private String[] table;
+
+        private Input(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private void check(int bytes) throws IOException {
+            if (bytes < 0 || buffer.remaining() < bytes) {
+                throw new IOException("Truncated or corrupt model");
+            }
+        }
+
+        public boolean readBoolean() throws IOException {
+            check(1);
+            return buffer.get() != 0;
+        }
+
+        public int readInt() throws IOException {
+            check(4);
+            return buffer.getInt();
+        }
+
+        public long readLong() throws IOException {
+            check(8);
+            return buffer.getLong();
+        }
+
+        public double readDouble() throws IOException {
+            check(8);
+            return buffer.getDouble();
+        }
+
+        public double[] readDoubles() throws IOException {
+            int length = readInt();
+            if (length == -1) {
+                return null;
+            }
+            check(8 * length);
+            double[] values = new double[length];
+            buffer.asDoubleBuffer().get(values);
+            buffer.position(buffer.position() + 8 * length);
+            return values;
+        }
+
+        public double[][] readMatrix() throws IOException {
+            int length = readInt();
+            if (length == -1) {
+                return null;
+            }
+            check(4 * length);
+            double[][] values = new double[length][];
+            for (int i = 0; i < length; i++) {
+                values[i] = readDoubles();
+            }
+            return values;
+        }
+
+        public byte[] readBytes() throws IOException {
+            int length = readInt();
+            if (length == -1) {
+                return null;
+            }
+            check(length);
+            byte[] values = new byte[length];
+            buffer.get(values);
+            return values;
+        }
+
+        public String readString() throws IOException {
+            int position = readInt();
+            if (position == -1) {
+                return null;
+            }
+            if (position < 0 || position >= table.length) {
+                throw new IOException("Invalid reference to the string table of the model");
+            }
+            return table[position];
+        }
+
+        public String[] readStrings() throws IOException {
+            int length = readInt();
+            if (length == -1) {
+                return null;
+            }
+            check(4 * length);
+            String[] values = new String[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = readString();
+            }
+            return values;
+        }
+
+        private void readTable() throws IOException {
+            int size = readInt();
+            check(4 * size);
+            table = new String[size];
+            for (int i = 0; i < size; i++) {
+                int length = readInt();
+                check(length);
+                table[i] = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, _UTF8);
+                buffer.position(buffer.position() + length);
+            }
+        }
+    }
+
+    /**
+     * Lazily reads the setting, so that the codec can be used (e.g. in tests)
+     * without a server configuration.
+     */
+    private static class Enabled {
+
+        private static final boolean ENABLED = Configuration.getBooleanProperty("models.binaryCodec", false);
+    }
+
+    private ModelCodec() {
+    }
+
+    /**
+     * Whether models are encoded when they are stored (<code>models.binaryCodec</code>).
+     */
+    public static boolean isEnabled() {
+        return Enabled.ENABLED;
+    }
+
+    /**
+     * Registers a format. Formats of the models of jaqpot are registered when
+     * this class is loaded.
+     *
+     * @throws IllegalArgumentException
+     *      If the tag or the type is already registered.
+     */
+    public static synchronized void register(Format<?> format) {
+        int tag = format.getTag();
+        if (tag < 1 || tag > 255) {
+            throw new IllegalArgumentException("Tags of model formats are in the range 1..255");
+        }
+        if (byTag[tag] != null || byType.containsKey(format.getType())) {
+            throw new IllegalArgumentException("A format is already registered for the tag " + tag
+                    + " or the type " + format.getType().getName());
+        }
+        byTag[tag] = format;
+        byType.put(format.getType(), format);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static synchronized <T> Format<T> formatOf(T model) {
+        return model != null ? (Format<T>) byType.get(model.getClass()) : null;
+    }
+
+    private static synchronized Format<?> formatOf(int tag) {
+        return byTag[tag];
+    }
+
+    /**
+     * Whether the model can be encoded.
+     */
+    public static <T> boolean supports(T model) {
+        Format<T> format = formatOf(model);
+        return format != null && format.accepts(model);
+    }
+
+    /**
+     * Encodes a model.
+     *
+     * @throws IllegalArgumentException
+     *      If there is no format for this model.
+     */
+    public static <T> byte[] encode(T model) throws IOException {
+        Format<T> format = formatOf(model);
+        if (format == null || !format.accepts(model)) {
+            throw new IllegalArgumentException("Models of type " + (model != null ? model.getClass().getName() : null)
+                    + " cannot be encoded");
+        }
+        Output out = new Output();
+        format.write(model, out);
+        return out.toByteArray(format.getTag());
+    }
+
+    /**
+     * Whether the data is an encoded model (of any version).
+     */
+    public static boolean isEncoded(byte[] data) {
+        return data != null && data.length >= _MAGIC.length + 2
+                && Arrays.equals(_MAGIC, Arrays.copyOf(data, _MAGIC.length));
+    }
+
+    public static Object decode(byte[] data) throws IOException {
+        if (!isEncoded(data)) {
+            throw new IOException("Not an encoded model");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.BIG_ENDIAN);
+        buffer.position(_MAGIC.length);
+        int version = buffer.get() & 0xFF;
+        int tag = buffer.get() & 0xFF;
+        if (version > FORMAT_VERSION) {
+            throw new IOException("The model was encoded with version " + version + " of the binary layout "
+                    + "but only versions up to " + FORMAT_VERSION + " are supported");
+        }
+        Format<?> format = formatOf(tag);
+        if (format == null) {
+            throw new IOException("Unknown format of model: " + tag);
+        }
+        Input in = new Input(buffer);
+        in.readTable();
+        return format.read(in, version);
+    }
+
+    /**
+     * Object to be serialized in place of the model: an {@link EncodedModel}
+     * if the codec is enabled and the model can be encoded, otherwise the model
+     * itself. This is meant to be returned by the <code>writeReplace</code>
+     * methods of the actual models.
+     */
+    public static Object replace(Object model) {
+        if (!isEnabled() || !supports(model)) {
+            return model;
+        }
+        try {
+            return new EncodedModel(encode(model));
+        } catch (IOException ex) {
+            logger.warn("Model of type " + model.getClass().getName() + " could not be encoded; "
+                    + "Java serialization will be used instead", ex);
+            return model;
+        } catch (RuntimeException ex) {
+            logger.warn("Model of type " + model.getClass().getName() + " could not be encoded; "
+                    + "Java serialization will be used instead", ex);
+            return model;
+        }
+    }
+}
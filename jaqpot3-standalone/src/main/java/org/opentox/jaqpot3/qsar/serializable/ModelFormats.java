@@ -0,0 +1,446 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.qsar.serializable;
+
+import Jama.Matrix;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import org.opentox.jaqpot3.qsar.serializable.ModelCodec.Format;
+import org.opentox.jaqpot3.qsar.serializable.ModelCodec.Input;
+import org.opentox.jaqpot3.qsar.serializable.ModelCodec.Output;
+import org.opentox.toxotis.client.VRI;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Binary formats of the actual models of jaqpot. The tags of the formats are
+ * written in the stored models and must not be changed or reused.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+final class ModelFormats {
+
+    private ModelFormats() {
+    }
+
+    static void registerAll() {
+        ModelCodec.register(new MlrFormat());
+        ModelCodec.register(new LeveragesFormat());
+        ModelCodec.register(new ScalingFormat());
+        ModelCodec.register(new FastRbfNnFormat());
+        ModelCodec.register(new PLSFormat());
+        ModelCodec.register(new ConsensusFormat());
+        ModelCodec.register(new BundleFormat());
+        ModelCodec.register(new PmmlFormat());
+    }
+
+    private static ArrayList<String> list(String[] values) {
+        return values != null ? new ArrayList<String>(Arrays.asList(values)) : new ArrayList<String>();
+    }
+
+    private static String[] array(ArrayList<String> values) {
+        return values != null ? values.toArray(new String[values.size()]) : null;
+    }
+
+    private static VRI vri(String uri) throws IOException {
+        try {
+            return uri != null ? new VRI(uri) : null;
+        } catch (URISyntaxException ex) {
+            throw new IOException("Invalid URI in model : " + uri, ex);
+        }
+    }
+
+    private static void writeMatrix(Matrix matrix, Output out) {
+        out.writeMatrix(matrix != null ? matrix.getArray() : null);
+    }
+
+    private static Matrix readMatrix(Input in) throws IOException {
+        double[][] values = in.readMatrix();
+        return values != null ? new Matrix(values) : null;
+    }
+
+    /**
+     * Sufficient statistics of an MLR model; only the upper triangular part of
+     * X'X is stored and the coefficients are solved again when first needed.
+     */
+    static final class MlrFormat implements Format<MlrModel> {
+
+        public int getTag() {
+            return 1;
+        }
+
+        public Class<MlrModel> getType() {
+            return MlrModel.class;
+        }
+
+        public boolean accepts(MlrModel model) {
+            return model.getXtX() != null;
+        }
+
+        public void write(MlrModel model, Output out) {
+            double[][] xtx = model.getXtX();
+            int size = xtx.length;
+            out.writeInt(model.getClassIndex());
+            out.writeLong(model.getN());
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeDoubles(Arrays.copyOfRange(xtx[i], i, size));
+            }
+            out.writeDoubles(model.getXty());
+        }
+
+        public MlrModel read(Input in, int version) throws IOException {
+            int classIndex = in.readInt();
+            long n = in.readLong();
+            int size = in.readInt();
+            double[][] xtx = new double[Math.max(size, 0)][];
+            for (int i = 0; i < size; i++) {
+                double[] upper = in.readDoubles();
+                if (upper == null || upper.length != size - i) {
+                    throw new IOException("Corrupt MLR model");
+                }
+                xtx[i] = new double[size];
+                System.arraycopy(upper, 0, xtx[i], i, upper.length);
+            }
+            double[] xty = in.readDoubles();
+            return new MlrModel(size, classIndex, n, xtx, xty);
+        }
+    }
+
+    static final class LeveragesFormat implements Format<LeveragesModel> {
+
+        public int getTag() {
+            return 2;
+        }
+
+        public Class<LeveragesModel> getType() {
+            return LeveragesModel.class;
+        }
+
+        public boolean accepts(LeveragesModel model) {
+            return true;
+        }
+
+        public void write(LeveragesModel model, Output out) {
+            out.writeDouble(model.getGamma());
+            out.writeInt(model.getNumInstances());
+            writeMatrix(model.getDataMatrix(), out);
+            writeMatrix(model.getGramMatrix(), out);
+        }
+
+        public LeveragesModel read(Input in, int version) throws IOException {
+            LeveragesModel model = new LeveragesModel();
+            model.setGamma(in.readDouble());
+            model.setNumInstances(in.readInt());
+            model.setDataMatrix(readMatrix(in));
+            model.setGramMatrix(readMatrix(in));
+            return model;
+        }
+    }
+
+    static final class ScalingFormat implements Format<ScalingModel> {
+
+        public int getTag() {
+            return 3;
+        }
+
+        public Class<ScalingModel> getType() {
+            return ScalingModel.class;
+        }
+
+        public boolean accepts(ScalingModel model) {
+            return model.getMinVals() != null && model.getMaxVals() != null;
+        }
+
+        private static void writeValues(Map<VRI, Double> values, Output out) {
+            out.writeInt(values.size());
+            for (Map.Entry<VRI, Double> entry : values.entrySet()) {
+                out.writeString(entry.getKey().toString());
+                out.writeDouble(entry.getValue());
+            }
+        }
+
+        private static void readValues(Map<VRI, Double> values, Input in) throws IOException {
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                values.put(vri(in.readString()), in.readDouble());
+            }
+        }
+
+        public void write(ScalingModel model, Output out) {
+            out.writeDouble(model.getMin());
+            out.writeDouble(model.getMax());
+            out.writeString(model.getDatasetReference() != null ? model.getDatasetReference().toString() : null);
+            writeValues(model.getMinVals(), out);
+            writeValues(model.getMaxVals(), out);
+        }
+
+        public ScalingModel read(Input in, int version) throws IOException {
+            ScalingModel model = new ScalingModel(in.readDouble(), in.readDouble());
+            model.setDatasetReference(vri(in.readString()));
+            readValues(model.getMinVals(), in);
+            readValues(model.getMaxVals(), in);
+            return model;
+        }
+    }
+
+    /**
+     * The nodes of the network are stored as a matrix (one row per node) along
+     * with the names of the attributes; they must all be numeric.
+     */
+    static final class FastRbfNnFormat implements Format<FastRbfNnModel> {
+
+        public int getTag() {
+            return 4;
+        }
+
+        public Class<FastRbfNnModel> getType() {
+            return FastRbfNnModel.class;
+        }
+
+        public boolean accepts(FastRbfNnModel model) {
+            Instances nodes = model.getNodes();
+            if (nodes != null) {
+                for (int j = 0; j < nodes.numAttributes(); j++) {
+                    if (!nodes.attribute(j).isNumeric()) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        public void write(FastRbfNnModel model, Output out) {
+            out.writeDouble(model.getAlpha());
+            out.writeDouble(model.getBeta());
+            out.writeDouble(model.getEpsilon());
+            out.writeDoubles(model.getSigma());
+            out.writeDoubles(model.getLrCoefficients());
+            Instances nodes = model.getNodes();
+            out.writeBoolean(nodes != null);
+            if (nodes == null) {
+                return;
+            }
+            int numAttributes = nodes.numAttributes();
+            String[] names = new String[numAttributes];
+            for (int j = 0; j < numAttributes; j++) {
+                names[j] = nodes.attribute(j).name();
+            }
+            out.writeString(nodes.relationName());
+            out.writeStrings(names);
+            out.writeInt(nodes.classIndex());
+            int numNodes = nodes.numInstances();
+            out.writeInt(numNodes);
+            for (int i = 0; i < numNodes; i++) {
+                out.writeDoubles(nodes.instance(i).toDoubleArray());
+            }
+        }
+
+        public FastRbfNnModel read(Input in, int version) throws IOException {
+            FastRbfNnModel model = new FastRbfNnModel();
+            model.setAlpha(in.readDouble());
+            model.setBeta(in.readDouble());
+            model.setEpsilon(in.readDouble());
+            model.setSigma(in.readDoubles());
+            model.setLrCoefficients(in.readDoubles());
+            if (!in.readBoolean()) {
+                return model;
+            }
+            String relation = in.readString();
+            String[] names = in.readStrings();
+            int classIndex = in.readInt();
+            int numNodes = in.readInt();
+            FastVector attributes = new FastVector(names.length);
+            for (String name : names) {
+                attributes.addElement(new Attribute(name));
+            }
+            Instances nodes = new Instances(relation, attributes, Math.max(numNodes, 0));
+            nodes.setClassIndex(classIndex);
+            for (int i = 0; i < numNodes; i++) {
+                double[] values = in.readDoubles();
+                if (values == null || values.length != names.length) {
+                    throw new IOException("Corrupt RBF network model");
+                }
+                nodes.add(new Instance(1.0, values));
+            }
+            model.setNodes(nodes);
+            return model;
+        }
+    }
+
+    /**
+     * Native PLS models only; models which wrap a Weka filter are serialized.
+     */
+    static final class PLSFormat implements Format<PLSModel> {
+
+        public int getTag() {
+            return 5;
+        }
+
+        public Class<PLSModel> getType() {
+            return PLSModel.class;
+        }
+
+        public boolean accepts(PLSModel model) {
+            return model.getPls() == null;
+        }
+
+        public void write(PLSModel model, Output out) {
+            out.writeString(model.getAlgorithm());
+            out.writeString(model.getPreprocessing());
+            out.writeStrings(model.getFeatures());
+            out.writeBoolean(model.isUpdateClass());
+            out.writeDoubles(model.getXMean());
+            out.writeDoubles(model.getXOffset());
+            out.writeDoubles(model.getXScale());
+            out.writeDouble(model.getYOffset());
+            out.writeDouble(model.getYScale());
+            out.writeMatrix(model.getWeights());
+            out.writeMatrix(model.getLoadings());
+            out.writeMatrix(model.getProjection());
+            out.writeDoubles(model.getYLoadings());
+        }
+
+        public PLSModel read(Input in, int version) throws IOException {
+            String algorithm = in.readString();
+            String preprocessing = in.readString();
+            String[] features = in.readStrings();
+            boolean updateClass = in.readBoolean();
+            double[] xMean = in.readDoubles();
+            double[] xOffset = in.readDoubles();
+            double[] xScale = in.readDoubles();
+            double yOffset = in.readDouble();
+            double yScale = in.readDouble();
+            double[][] weights = in.readMatrix();
+            double[][] loadings = in.readMatrix();
+            double[][] projection = in.readMatrix();
+            double[] yLoadings = in.readDoubles();
+            PLSModel model = new PLSModel(algorithm, preprocessing, xMean, xOffset, xScale, yOffset, yScale,
+                    weights, loadings, projection, yLoadings);
+            model.setFeatures(features);
+            model.setUpdateClass(updateClass);
+            return model;
+        }
+    }
+
+    static final class ConsensusFormat implements Format<ConsensusModel> {
+
+        public int getTag() {
+            return 6;
+        }
+
+        public Class<ConsensusModel> getType() {
+            return ConsensusModel.class;
+        }
+
+        public boolean accepts(ConsensusModel model) {
+            return true;
+        }
+
+        public void write(ConsensusModel model, Output out) {
+            out.writeStrings(array(model.getMemberUris()));
+            out.writeString(model.getCombination() != null ? model.getCombination().name() : null);
+            out.writeDoubles(model.getWeights());
+            out.writeLong(model.getMemberTimeout());
+        }
+
+        public ConsensusModel read(Input in, int version) throws IOException {
+            ConsensusModel model = new ConsensusModel();
+            model.setMemberUris(list(in.readStrings()));
+            String combination = in.readString();
+            try {
+                model.setCombination(combination != null ? ConsensusModel.Combination.valueOf(combination) : null);
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("Unknown combination of consensus model : " + combination, ex);
+            }
+            model.setWeights(in.readDoubles());
+            model.setMemberTimeout(in.readLong());
+            return model;
+        }
+    }
+
+    static final class BundleFormat implements Format<ModelBundle> {
+
+        public int getTag() {
+            return 7;
+        }
+
+        public Class<ModelBundle> getType() {
+            return ModelBundle.class;
+        }
+
+        public boolean accepts(ModelBundle model) {
+            return true;
+        }
+
+        public void write(ModelBundle model, Output out) {
+            out.writeStrings(array(model.getModelUris()));
+        }
+
+        public ModelBundle read(Input in, int version) throws IOException {
+            ModelBundle model = new ModelBundle();
+            model.setModelUris(list(in.readStrings()));
+            return model;
+        }
+    }
+
+    static final class PmmlFormat implements Format<PmmlModel> {
+
+        public int getTag() {
+            return 8;
+        }
+
+        public Class<PmmlModel> getType() {
+            return PmmlModel.class;
+        }
+
+        public boolean accepts(PmmlModel model) {
+            return model.getDocument() != null;
+        }
+
+        public void write(PmmlModel model, Output out) {
+            out.writeBytes(model.getDocument());
+        }
+
+        public PmmlModel read(Input in, int version) throws IOException {
+            return new PmmlModel(in.readBytes());
+        }
+    }
+}
@@ -31,13 +31,20 @@
  * tel. +30 210 7723236
  *
  */
-
 package org.opentox.jaqpot3.qsar.serializable;
 
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 import weka.filters.supervised.attribute.PLSFilter;
 
 /**
+ * A trained PLS model. Models trained with earlier versions of Jaqpot wrap a
+ * Weka {@link PLSFilter}; models trained with {@link org.opentox.jaqpot3.qsar.util.PartialLeastSquares PartialLeastSquares}
+ * store the preprocessing offsets and scales, the weights, the X-loadings and
+ * the Y-loadings of every component together with the projection matrix
+ * <code>R</code> which maps (preprocessed) independent variables directly to
+ * scores, <code>T = XR</code>. All matrices are stored component-wise, i.e.
+ * <code>R[a]</code> is the vector of the a-th component.
  *
  * @author Pantelis Sopasakis
  * @author Charalampos Chomenides
@@ -47,13 +54,173 @@ public class PLSModel implements Serializable {
     private static final long serialVersionUID = 941376210178L;
 
     private final PLSFilter pls;
+    private String algorithm;
+    private String preprocessing;
+    private String[] features;
+    private boolean updateClass = false;
+    private double[] xMean;
+    private double[] xOffset;
+    private double[] xScale;
+    private double yOffset;
+    private double yScale = 1;
+    private double[][] weights;
+    private double[][] loadings;
+    private double[][] projection;
+    private double[] yLoadings;
 
     public PLSModel(PLSFilter pls) {
         this.pls = pls;
     }
 
+    public PLSModel(String algorithm, String preprocessing,
+            double[] xMean, double[] xOffset, double[] xScale, double yOffset, double yScale,
+            double[][] weights, double[][] loadings, double[][] projection, double[] yLoadings) {
+        this.pls = null;
+        this.algorithm = algorithm;
+        this.preprocessing = preprocessing;
+        this.xMean = xMean;
+        this.xOffset = xOffset;
+        this.xScale = xScale;
+        this.yOffset = yOffset;
+        this.yScale = yScale;
+        this.weights = weights;
+        this.loadings = loadings;
+        this.projection = projection;
+        this.yLoadings = yLoadings;
+    }
 
+    /**
+     * The Weka filter of models trained with earlier versions of Jaqpot.
+     *
+     * @return
+     *      The PLS filter or <code>null</code> if this is a native model.
+     */
     public PLSFilter getPls() {
         return pls;
     }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public String getPreprocessing() {
+        return preprocessing;
+    }
+
+    /**
+     * URIs of the independent features in the order expected by {@link #scores(double[]) }.
+     *
+     * @return
+     *      Array of feature URIs.
+     */
+    public String[] getFeatures() {
+        return features;
+    }
+
+    public void setFeatures(String[] features) {
+        this.features = features;
+    }
+
+    public boolean isUpdateClass() {
+        return updateClass;
+    }
+
+    public void setUpdateClass(boolean updateClass) {
+        this.updateClass = updateClass;
+    }
+
+    public int getNumComponents() {
+        return projection != null ? projection.length : 0;
+    }
+
+    public double[] getXMean() {
+        return xMean;
+    }
+
+    public double[] getXOffset() {
+        return xOffset;
+    }
+
+    public double[] getXScale() {
+        return xScale;
+    }
+
+    public double getYOffset() {
+        return yOffset;
+    }
+
+    public double getYScale() {
+        return yScale;
+    }
+
+    public double[][] getWeights() {
+        return weights;
+    }
+
+    public double[][] getLoadings() {
+        return loadings;
+    }
+
+    public double[][] getProjection() {
+        return projection;
+    }
+
+    public double[] getYLoadings() {
+        return yLoadings;
+    }
+
+    /**
+     * Computes the scores of an instance. Missing values (<code>NaN</code>) are
+     * replaced by the mean value of the corresponding feature in the training set.
+     *
+     * @param row
+     *      Values of the independent features.
+     * @return
+     *      The scores of the instance on every component.
+     */
+    public double[] scores(double[] row) {
+        int p = xOffset.length;
+        double[] preprocessed = new double[p];
+        for (int j = 0; j < p; j++) {
+            double value = Double.isNaN(row[j]) ? xMean[j] : row[j];
+            preprocessed[j] = (value - xOffset[j]) / xScale[j];
+        }
+        int numComponents = projection.length;
+        double[] scores = new double[numComponents];
+        for (int a = 0; a < numComponents; a++) {
+            double[] r = projection[a];
+            double sum = 0;
+            for (int j = 0; j < p; j++) {
+                sum += preprocessed[j] * r[j];
+            }
+            scores[a] = sum;
+        }
+        return scores;
+    }
+
+    /**
+     * Prediction for the target using the first <code>numComponents</code> components.
+     *
+     * @param scores
+     *      Scores of the instance as returned by {@link #scores(double[]) }.
+     * @param numComponents
+     *      Number of components to use.
+     * @return
+     *      Predicted value of the target.
+     */
+    public double predict(double[] scores, int numComponents) {
+        double sum = 0;
+        for (int a = 0; a < numComponents; a++) {
+            sum += scores[a] * yLoadings[a];
+        }
+        return yOffset + yScale * sum;
+    }
+
+    public double predict(double[] row) {
+        return predict(scores(row), getNumComponents());
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return ModelCodec.replace(this);
+    }
 }
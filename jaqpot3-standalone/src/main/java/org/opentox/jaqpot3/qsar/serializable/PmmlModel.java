@@ -0,0 +1,81 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.qsar.serializable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.qsar.pmml.PmmlCompiler;
+import org.opentox.jaqpot3.qsar.pmml.PmmlEvaluator;
+
+/**
+ * A model imported from a PMML document. Only the document itself is stored;
+ * it is compiled into a {@link PmmlEvaluator} the first time the model is used
+ * after being loaded.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class PmmlModel implements Serializable {
+
+    private static final long serialVersionUID = 5527340160119385L;
+    private final byte[] document;
+    private transient volatile PmmlEvaluator evaluator;
+
+    public PmmlModel(byte[] document) {
+        this.document = document;
+    }
+
+    /**
+     * The PMML document as it was imported (UTF-8 unless otherwise declared in
+     * the document).
+     */
+    public byte[] getDocument() {
+        return document;
+    }
+
+    public PmmlEvaluator getEvaluator() throws JaqpotException {
+        PmmlEvaluator compiled = evaluator;
+        if (compiled == null) {
+            compiled = PmmlCompiler.compile(new ByteArrayInputStream(document));
+            evaluator = compiled;
+        }
+        return compiled;
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return ModelCodec.replace(this);
+    }
+}
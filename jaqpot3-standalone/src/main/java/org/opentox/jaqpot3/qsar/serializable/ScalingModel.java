@@ -34,6 +34,7 @@
 
 package org.opentox.jaqpot3.qsar.serializable;
 
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -124,4 +125,8 @@ public class ScalingModel implements Serializable {
     public void setDatasetReference(VRI datasetReference) {
         this.datasetReference = datasetReference;
     }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return ModelCodec.replace(this);
+    }
 }
@@ -0,0 +1,330 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.qsar.trainer;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import java.io.NotSerializableException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.qsar.AbstractTrainer;
+import org.opentox.jaqpot3.qsar.IClientInput;
+import org.opentox.jaqpot3.qsar.IParametrizableAlgorithm;
+import org.opentox.jaqpot3.qsar.exceptions.BadParameterException;
+import org.opentox.jaqpot3.qsar.predictor.ConsensusPredictor;
+import org.opentox.jaqpot3.qsar.serializable.ConsensusModel;
+import org.opentox.jaqpot3.qsar.serializable.ConsensusModel.Combination;
+import org.opentox.jaqpot3.resources.collections.Algorithms;
+import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.toxotis.client.VRI;
+import org.opentox.toxotis.client.collection.Services;
+import org.opentox.toxotis.core.component.Algorithm;
+import org.opentox.toxotis.core.component.Feature;
+import org.opentox.toxotis.core.component.Model;
+import org.opentox.toxotis.core.component.Parameter;
+import org.opentox.toxotis.exceptions.impl.ServiceInvocationException;
+import org.opentox.toxotis.factory.FeatureFactory;
+import org.opentox.toxotis.ontology.LiteralValue;
+import org.opentox.toxotis.ontology.ResourceValue;
+import org.opentox.toxotis.ontology.collection.OTClasses;
+import weka.core.Attribute;
+import weka.core.Instances;
+
+/**
+ * Trainer for consensus models. A consensus model combines the predictions of
+ * two or more existing models of this service (MLR, SVM or RBF NN models) for the
+ * same target. With the weighted combination, the weights are either provided
+ * by the client or are computed as the inverse mean squared error of every
+ * member on the training dataset.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class ConsensusTrainer extends AbstractTrainer {
+
+    private static final Random RANDOM = new Random(37 * System.currentTimeMillis() + 17);
+    /**
+     * Algorithms whose models may take part in a consensus model
+     */
+    private static final Set<String> MEMBER_ALGORITHMS = new HashSet<String>(Arrays.asList("mlr", "svm", "fastRbfNn"));
+    private ArrayList<String> memberUris = new ArrayList<String>();
+    private Combination combination = Combination.mean;
+    private double[] weights;
+    private long timeout;
+    private VRI featureService;
+    private VRI datasetUri;
+    private VRI targetUri;
+
+    @Override
+    public IParametrizableAlgorithm parametrize(IClientInput clientParameters) throws BadParameterException {
+        String[] models = clientParameters.getValuesArray("model");
+        for (String model : models) {
+            memberUris.add(model);
+        }
+        if (memberUris.size() < 2) {
+            throw new BadParameterException("At least two models must be specified using the parameter 'model'.");
+        }
+        String combinationString = clientParameters.getFirstValue("combination");
+        if (combinationString != null) {
+            try {
+                combination = Combination.valueOf(combinationString.trim());
+            } catch (IllegalArgumentException ex) {
+                throw new BadParameterException("Bad Parameter : '" + combinationString + "'. Admissible values for the "
+                        + "parameter 'combination' are 'mean', 'median' and 'weighted'.", ex);
+            }
+        }
+        String[] weightStrings = clientParameters.getValuesArray("weight");
+        if (weightStrings != null && weightStrings.length > 0) {
+            if (weightStrings.length != memberUris.size()) {
+                throw new BadParameterException("One weight per model should be provided (models: " + memberUris.size()
+                        + ", weights: " + weightStrings.length + ").");
+            }
+            weights = new double[weightStrings.length];
+            for (int i = 0; i < weightStrings.length; i++) {
+                try {
+                    weights[i] = Double.parseDouble(weightStrings[i]);
+                } catch (NumberFormatException nfe) {
+                    throw new BadParameterException("Invalid value for the parameter 'weight' (" + weightStrings[i] + ")", nfe);
+                }
+                if (weights[i] < 0) {
+                    throw new BadParameterException("Weights of the models cannot be negative.");
+                }
+            }
+            combination = Combination.weighted;
+        }
+        timeout = Configuration.getIntegerProperty("consensus.memberTimeout", 60000);
+        String timeoutString = clientParameters.getFirstValue("timeout");
+        if (timeoutString != null) {
+            try {
+                timeout = Long.parseLong(timeoutString.trim());
+            } catch (NumberFormatException nfe) {
+                throw new BadParameterException("Invalid value for the parameter 'timeout' (" + timeoutString + ")", nfe);
+            }
+        }
+        if (needsDataset()) {
+            String datasetUriString = clientParameters.getFirstValue("dataset_uri");
+            String targetString = clientParameters.getFirstValue("prediction_feature");
+            if (datasetUriString == null || targetString == null) {
+                throw new BadParameterException("The parameters 'dataset_uri' and 'prediction_feature' are mandatory "
+                        + "for weighted consensus models unless the weights are specified using the parameter 'weight'.");
+            }
+            try {
+                datasetUri = new VRI(datasetUriString);
+                targetUri = new VRI(targetString);
+            } catch (URISyntaxException ex) {
+                throw new BadParameterException("The parameters 'dataset_uri' and 'prediction_feature' should be valid URIs.", ex);
+            }
+        }
+        String featureServiceString = clientParameters.getFirstValue("feature_service");
+        if (featureServiceString != null) {
+            try {
+                featureService = new VRI(featureServiceString);
+            } catch (URISyntaxException ex) {
+                throw new BadParameterException("The parameter 'feature_service' you provided is not a valid URI.", ex);
+            }
+        } else {
+            featureService = Services.ideaconsult().augment("feature");
+        }
+        return this;
+    }
+
+    @Override
+    public boolean needsDataset() {
+        return combination == Combination.weighted && weights == null;
+    }
+
+    @Override
+    public Model train(Instances data) throws JaqpotException {
+        /* Load and check the members */
+        List<Model> members = new ArrayList<Model>(memberUris.size());
+        Set<String> independentFeatures = new LinkedHashSet<String>();
+        Feature dependentFeature = null;
+        for (String memberUri : memberUris) {
+            /* The actual members are needed only to compute the weights */
+            Model member = findMember(memberUri, needsDataset());
+            String algorithm = member.getAlgorithm() != null ? member.getAlgorithm().getUri().getId() : null;
+            if (!MEMBER_ALGORITHMS.contains(algorithm)) {
+                throw new JaqpotException("The model " + memberUri + " cannot be a member of a consensus model; "
+                        + "only MLR, SVM and RBF NN models are supported");
+            }
+            if (member.getPredictedFeatures() == null || member.getPredictedFeatures().isEmpty()) {
+                throw new JaqpotException("The model " + memberUri + " has no predicted feature");
+            }
+            if (member.getDependentFeatures() != null && !member.getDependentFeatures().isEmpty()) {
+                Feature memberDependent = member.getDependentFeatures().iterator().next();
+                if (dependentFeature == null) {
+                    dependentFeature = memberDependent;
+                } else if (!dependentFeature.getUri().equals(memberDependent.getUri())) {
+                    throw new JaqpotException("The member models predict different features : "
+                            + dependentFeature.getUri() + " and " + memberDependent.getUri());
+                }
+            }
+            for (Feature f : member.getIndependentFeatures()) {
+                independentFeatures.add(f.getUri().toString());
+            }
+            members.add(member);
+        }
+
+        double[] memberWeights = weights;
+        if (needsDataset()) {
+            memberWeights = inverseErrorWeights(members, data);
+        }
+
+        Model consensus = new Model(Configuration.getBaseUri().augment("model", getUuid().toString()));
+        consensus.setAlgorithm(getAlgorithm());
+        consensus.setCreatedBy(getTask().getCreatedBy());
+        if (datasetUri != null) {
+            consensus.setDataset(datasetUri);
+        }
+        consensus.setIndependentFeatures(new ArrayList<Feature>(independentFeatures.size()));
+        for (String f : independentFeatures) {
+            try {
+                consensus.getIndependentFeatures().add(new Feature(new VRI(f)));
+            } catch (URISyntaxException ex) {
+                throw new JaqpotException("Invalid feature URI : " + f, ex);
+            }
+        }
+        if (dependentFeature != null) {
+            consensus.addDependentFeatures(dependentFeature);
+        }
+        consensus.getMeta().addTitle("Consensus model of " + memberUris.size() + " models").
+                addDescription("Combines the predictions of the models " + memberUris + " using the " + combination
+                + " of their predictions.");
+
+        ConsensusModel actual = new ConsensusModel();
+        actual.setMemberUris(memberUris);
+        actual.setCombination(combination);
+        actual.setWeights(combination == Combination.weighted ? memberWeights : null);
+        actual.setMemberTimeout(timeout);
+        try {
+            consensus.setActualModel(actual);
+        } catch (NotSerializableException ex) {
+            throw new JaqpotException(ex);
+        }
+
+        Set<Parameter> parameters = new HashSet<Parameter>();
+        for (int i = 0; i < memberUris.size(); i++) {
+            parameters.add(new Parameter(Configuration.getBaseUri().augment("parameter", RANDOM.nextLong()),
+                    "model", new LiteralValue(memberUris.get(i), XSDDatatype.XSDanyURI)).setScope(Parameter.ParameterScope.MANDATORY));
+            if (actual.getWeights() != null) {
+                parameters.add(new Parameter(Configuration.getBaseUri().augment("parameter", RANDOM.nextLong()),
+                        "weight", new LiteralValue(actual.getWeights()[i], XSDDatatype.XSDdouble)).setScope(Parameter.ParameterScope.OPTIONAL));
+            }
+        }
+        parameters.add(new Parameter(Configuration.getBaseUri().augment("parameter", RANDOM.nextLong()),
+                "combination", new LiteralValue(combination.toString(), XSDDatatype.XSDstring)).setScope(Parameter.ParameterScope.OPTIONAL));
+        parameters.add(new Parameter(Configuration.getBaseUri().augment("parameter", RANDOM.nextLong()),
+                "timeout", new LiteralValue(timeout, XSDDatatype.XSDlong)).setScope(Parameter.ParameterScope.OPTIONAL));
+        consensus.setParameters(parameters);
+
+        consensus.addPredictedFeatures(publishPredictedFeature(consensus));
+        return consensus;
+    }
+
+    /**
+     * Looks up a member model; may be overridden to look up models elsewhere
+     * (e.g. in memory).
+     *
+     * @param memberUri
+     *      URI of the member model.
+     * @param withPayload
+     *      Whether the actual model is needed or only its metadata.
+     */
+    protected Model findMember(String memberUri, boolean withPayload) throws JaqpotException {
+        return ConsensusPredictor.findModel(memberUri, withPayload);
+    }
+
+    /**
+     * Publishes the feature predicted by the consensus model to the feature
+     * service; may be overridden to publish to some other (e.g. local) service.
+     */
+    protected Feature publishPredictedFeature(Model consensus) throws JaqpotException {
+        try {
+            return FeatureFactory.createAndPublishFeature(
+                    "Feature created as prediction feature for the consensus model " + consensus.getUri(), "",
+                    new ResourceValue(consensus.getUri(), OTClasses.model()), featureService, token);
+        } catch (ServiceInvocationException ex) {
+            throw new JaqpotException("Cannot publish the predicted feature to the feature service at " + featureService, ex);
+        }
+    }
+
+    /**
+     * Weights of the members equal to the inverse of their mean squared error on
+     * the training dataset, normalized to sum up to 1.
+     */
+    private double[] inverseErrorWeights(List<Model> members, Instances data) throws JaqpotException {
+        Attribute target = data.attribute(targetUri.toString());
+        if (target == null) {
+            throw new JaqpotException("The dataset " + datasetUri + " does not contain the feature " + targetUri);
+        }
+        double[][] predictions = ConsensusPredictor.predictMembers(members, data, timeout, token);
+        double[] inverseErrors = new double[members.size()];
+        double total = 0;
+        for (int m = 0; m < members.size(); m++) {
+            if (predictions[m] == null) {
+                throw new JaqpotException("The model " + memberUris.get(m) + " could not predict the training dataset");
+            }
+            double sse = 0;
+            int count = 0;
+            for (int i = 0; i < data.numInstances(); i++) {
+                if (!data.instance(i).isMissing(target) && !Double.isNaN(predictions[m][i])) {
+                    double error = predictions[m][i] - data.instance(i).value(target);
+                    sse += error * error;
+                    count++;
+                }
+            }
+            if (count == 0) {
+                throw new JaqpotException("The model " + memberUris.get(m) + " could not be evaluated on the training dataset");
+            }
+            inverseErrors[m] = 1 / Math.max(sse / count, 1e-12);
+            total += inverseErrors[m];
+            getTask().getMeta().addComment("Training MSE of member " + memberUris.get(m) + " : " + (sse / count));
+        }
+        for (int m = 0; m < inverseErrors.length; m++) {
+            inverseErrors[m] /= total;
+        }
+        return inverseErrors;
+    }
+
+    @Override
+    public Algorithm getAlgorithm() {
+        return Algorithms.consensus();
+    }
+}
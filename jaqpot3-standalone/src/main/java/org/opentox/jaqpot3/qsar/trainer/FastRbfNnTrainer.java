@@ -35,7 +35,6 @@
 
 package org.opentox.jaqpot3.qsar.trainer;
 
-import org.opentox.jaqpot3.qsar.util.SimpleMVHFilter;
 import org.opentox.jaqpot3.qsar.serializable.FastRbfNnModel;
 import Jama.Matrix;
 import java.io.NotSerializableException;
@@ -51,7 +50,7 @@ import org.opentox.jaqpot3.qsar.IClientInput;
 import org.opentox.jaqpot3.qsar.ITrainer;
 import org.opentox.jaqpot3.qsar.exceptions.BadParameterException;
 import org.opentox.jaqpot3.qsar.exceptions.QSARException;
-import org.opentox.jaqpot3.qsar.util.AttributeCleanup;
+import org.opentox.jaqpot3.qsar.util.PreprocessingPipeline;
 import org.opentox.jaqpot3.resources.collections.Algorithms;
 import org.opentox.jaqpot3.util.Configuration;
 import org.opentox.toxotis.client.VRI;
@@ -165,46 +164,10 @@ public class FastRbfNnTrainer extends AbstractTrainer {
         return result;
     }
 
-    private Instances preprocessInstances(Instances in) throws QSARException {
-        AttributeCleanup cleanup = new AttributeCleanup(false, AttributeCleanup.AttributeType.string);
-        try {
-            Instances filt1 = cleanup.filter(in);
-            SimpleMVHFilter mvh = new SimpleMVHFilter();
-            Instances fin = mvh.filter(filt1);
-            return fin;
-        } catch (JaqpotException ex) {
-            throw new QSARException(ex);
-        } catch (QSARException ex) {
-            throw new QSARException(ex);
-        }
-    }
-
     @Override
     public Model train(Instances training) throws JaqpotException {
         training.renameAttribute(0, "compound_uri");
-        try {
-            training = preprocessInstances(training);
-            //        Instances training = data.getInstances();
-        } catch (QSARException ex) {
-            throw new JaqpotException(ex);
-        }
-//        Instances training = data.getInstances();
-
-        if (!training.attribute(targetUri.toString()).isNumeric()) {
-            throw new JaqpotException("The prediction feature you specified is not a numeric feature");
-        }
-        /*
-         * For this algorithm we need to remove all string and nominal attributes
-         * and additionally we will remove the target attribute too.
-         */
-        AttributeCleanup cleanup = new AttributeCleanup(false, nominal, string);
-        Instances cleanedTraining = null;
-        try {
-            cleanedTraining = cleanup.filter(training);
-        } catch (QSARException ex) {
-            logger.error(null, ex);
-        }
-        Attribute targetAttribute = cleanedTraining.attribute(targetUri.toString());
+        Attribute targetAttribute = training.attribute(targetUri.toString());
         if (targetAttribute == null) {
             throw new JaqpotException("The prediction feature you provided was not found in the dataset. "
                     + "Prediction Feature provided by the client: " + targetUri.toString());
@@ -213,15 +176,25 @@ public class FastRbfNnTrainer extends AbstractTrainer {
                 throw new JaqpotException("The prediction feature you provided is not numeric.");
             }
         }
-        double[] targetValues = new double[cleanedTraining.numInstances()];
-        for (int i = 0; i < cleanedTraining.numInstances(); i++) {
-            targetValues[i] = cleanedTraining.instance(i).value(targetAttribute);
+        /*
+         * For this algorithm we need to remove all string and nominal attributes
+         * and additionally we will remove the target attribute too. Cleanup, MVH
+         * and the extraction of the target are carried out in a single pass.
+         */
+        double[] targetValues = new double[training.numInstances()];
+        Instances cleanedTraining = null;
+        try {
+            cleanedTraining = new PreprocessingPipeline().
+                    remove(nominal, string).
+                    replaceMissingValues(true).
+                    target(targetUri.toString()).
+                    keepTarget(false).
+                    apply(training, targetValues);
+        } catch (QSARException ex) {
+            throw new JaqpotException(ex);
         }
-        cleanedTraining.deleteAttributeAt(targetAttribute.index());
-
 
-        Instances rbfNnNodes = new Instances(cleanedTraining);
-        rbfNnNodes.delete();
+        Instances rbfNnNodes = new Instances(cleanedTraining, 0);
         double[] potential = calculatePotential(cleanedTraining);
 
         int L = 1;
@@ -15,9 +15,10 @@ import org.opentox.jaqpot3.qsar.ITrainer;
 import org.opentox.jaqpot3.qsar.exceptions.BadParameterException;
 import org.opentox.jaqpot3.qsar.exceptions.QSARException;
 import org.opentox.jaqpot3.qsar.util.AttributeCleanup;
-import org.opentox.jaqpot3.qsar.util.SimpleMVHFilter;
+import org.opentox.jaqpot3.qsar.util.PreprocessingPipeline;
 import org.opentox.jaqpot3.resources.collections.Algorithms;
 import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DbMetrics;
 import org.opentox.toxotis.client.VRI;
 import org.opentox.toxotis.client.collection.Services;
 import org.opentox.toxotis.core.component.Algorithm;
@@ -27,7 +28,6 @@ import org.opentox.toxotis.database.engine.task.UpdateTask;
 import org.opentox.toxotis.database.exception.DbException;
 import org.opentox.toxotis.ontology.ResourceValue;
 import org.opentox.toxotis.ontology.collection.OTClasses;
-import weka.core.Attribute;
 import weka.core.Instances;
 
 /**
@@ -44,36 +44,19 @@ public class LeveragesTrainer extends AbstractTrainer {
     private org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(LeveragesTrainer.class);
 
     private Instances preprocessInstances(Instances in) throws QSARException {
-        AttributeCleanup cleanup = new AttributeCleanup(false, AttributeCleanup.AttributeType.string);
-        try {
-            Instances filt1 = cleanup.filter(in);
-            SimpleMVHFilter mvh = new SimpleMVHFilter();
-            Instances fin = mvh.filter(filt1);
-            return fin;
-        } catch (JaqpotException ex) {
-            throw new QSARException(ex);
-        } catch (QSARException ex) {
-            throw new QSARException(ex);
-        }
+        /* The target (if present) is checked and left out of the training set in a single pass */
+        return new PreprocessingPipeline().
+                remove(AttributeCleanup.AttributeType.string).
+                replaceMissingValues(true).
+                target(targetUri.toString(), false).
+                keepTarget(false).
+                apply(in);
     }
 
     @Override
     public Model train(Instances trainingSet) throws JaqpotException {
         try {
             trainingSet = preprocessInstances(trainingSet);
-            Attribute target = trainingSet.attribute(targetUri.toString());
-            if (target == null) {
-                // Do nothing! It doesn't matter :)
-            } else {
-                if (!target.isNumeric()) {
-                    throw new QSARException("The prediction feature you provided is not numeric.");
-                }
-            }
-
-            int targetIndex = -1;
-            if (target != null) {
-                targetIndex = trainingSet.attribute(targetUri.toString()).index();
-            }
             /* PROVIDE META DATA FOR THE MODEL */
             Model model = new Model(Configuration.getBaseUri().augment("model", uuid.toString()));
             model.setAlgorithm(getAlgorithm());
@@ -83,12 +66,10 @@ public class LeveragesTrainer extends AbstractTrainer {
             model.setDataset(datasetUri);
             List<Feature> independentFeatures = new ArrayList<Feature>();
             for (int i = 0; i < trainingSet.numAttributes(); i++) {
-                if (i != targetIndex) {
-                    try {
-                        independentFeatures.add(new Feature(new VRI(trainingSet.attribute(i).name())));
-                    } catch (URISyntaxException ex) {
-                        throw new QSARException("The URI: " + trainingSet.attribute(i).name() + " is not valid", ex);
-                    }
+                try {
+                    independentFeatures.add(new Feature(new VRI(trainingSet.attribute(i).name())));
+                } catch (URISyntaxException ex) {
+                    throw new QSARException("The URI: " + trainingSet.attribute(i).name() + " is not valid", ex);
                 }
             }
             model.setIndependentFeatures(independentFeatures);
@@ -109,7 +90,7 @@ public class LeveragesTrainer extends AbstractTrainer {
                 UpdateTask updater = new UpdateTask(getTask());
                 updater.setUpdateMeta(true);
                 try {
-                    updater.update();
+                    DbMetrics.update(updater);
                 } catch (DbException ex) {
                     String msg = "DB Update operation failed";
                     logger.error(msg);
@@ -129,9 +110,6 @@ public class LeveragesTrainer extends AbstractTrainer {
             }
 
             model.addPredictedFeatures(predictedFeature);
-            if (target != null) {
-                trainingSet.deleteAttributeAt(targetIndex);
-            }
             int k = trainingSet.numInstances();
             int n = trainingSet.numAttributes();
             double[][] dataArray = new double[k][n];
@@ -139,10 +117,14 @@ public class LeveragesTrainer extends AbstractTrainer {
                 dataArray[i] = trainingSet.instance(i).toDoubleArray();
             }
             Matrix dataMatrix = new Matrix(dataArray);                        
-            Matrix omega = (dataMatrix.transpose().times(dataMatrix)).inverse();
+            Matrix gram = dataMatrix.transpose().times(dataMatrix);
+            Matrix omega = gram.inverse();
             LeveragesModel actualModel = new LeveragesModel();
             actualModel.setDataMatrix(omega);
             actualModel.setGamma(k, n);
+            /* Sufficient statistics for future updates of the model */
+            actualModel.setGramMatrix(gram);
+            actualModel.setNumInstances(k);
             model.setActualModel(actualModel);
             model.getMeta().addCreator(getTask().getCreatedBy().getUid()).addDescription("Model designed to tell wether a compound "
                     + "belongs to the domain of applicability of any model trained with the dataset " + datasetUri + " using the "
@@ -37,7 +37,10 @@ package org.opentox.jaqpot3.qsar.trainer;
 import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
 import java.io.NotSerializableException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -46,8 +49,10 @@ import org.opentox.jaqpot3.qsar.AbstractTrainer;
 import org.opentox.jaqpot3.qsar.IClientInput;
 import org.opentox.jaqpot3.qsar.IParametrizableAlgorithm;
 import org.opentox.jaqpot3.qsar.exceptions.BadParameterException;
+import org.opentox.jaqpot3.qsar.util.FeaturePublisher;
 import org.opentox.jaqpot3.resources.collections.Algorithms;
 import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DbMetrics;
 import org.opentox.toxotis.client.VRI;
 import org.opentox.toxotis.client.collection.Services;
 import org.opentox.toxotis.core.component.Algorithm;
@@ -57,8 +62,6 @@ import org.opentox.toxotis.core.component.Model;
 import org.opentox.toxotis.core.component.Parameter;
 import org.opentox.toxotis.database.engine.task.UpdateTask;
 import org.opentox.toxotis.database.exception.DbException;
-import org.opentox.toxotis.exceptions.impl.ServiceInvocationException;
-import org.opentox.toxotis.factory.FeatureFactory;
 import org.opentox.toxotis.ontology.LiteralValue;
 import org.opentox.toxotis.ontology.ResourceValue;
 import org.opentox.toxotis.ontology.collection.OTClasses;
@@ -91,39 +94,41 @@ public class MissingValueFilter extends AbstractTrainer {
          * For every feature of the old dataset, create a new one
          */
         int nAttr = data.numAttributes();
-
+        FeaturePublisher publisher = new FeaturePublisher(featureService, token);
+        List<VRI> handledFeatures = new ArrayList<VRI>();
         for (int i = 0; i < nAttr; i++) {
             Attribute attribute = data.attribute(i);
             if ((attribute.isNumeric() || attribute.isNominal()) && !ignored.contains(attribute.name())) {
-
                 try {
                     VRI featureVri = new VRI(attribute.name());
                     mvh.addIndependentFeatures(new Feature(featureVri));
-                    Feature f = FeatureFactory.createAndPublishFeature("MVH " + featureVri.toString(), "",
-                            new ResourceValue(newModelUri, OTClasses.model()), featureService, token);
-                    mvh.addPredictedFeatures(f);
-                    getTask().getMeta().addComment("MVH feature for " + featureVri.toString()
-                            + " has been created at " + f.getUri().toString());
-                    getTask().setPercentageCompleted((float) ((float) i / (float) nAttr) * 99.5f);
-                    UpdateTask taskUpdater = new UpdateTask(getTask());                    
-                    taskUpdater.setUpdateMeta(true);
-                    try {
-                        taskUpdater.update();
-                    } catch (DbException ex) {
-                        throw new JaqpotException(ex);
-                    } finally {
-                        try {
-                            taskUpdater.close();
-                        } catch (DbException ex) {
-                            throw new JaqpotException(ex);
-                        }
-                    }
-                } catch (ServiceInvocationException ex) {
-                    Logger.getLogger(MissingValueFilter.class.getName()).log(Level.SEVERE, null, ex);
+                    publisher.submit("MVH " + featureVri.toString(), "",
+                            new ResourceValue(newModelUri, OTClasses.model()));
+                    handledFeatures.add(featureVri);
                 } catch (URISyntaxException ex) {
                     Logger.getLogger(MissingValueFilter.class.getName()).log(Level.SEVERE, null, ex);
                 }
+            }
+        }
 
+        /* Wait for all features to be published and update the task once */
+        Iterator<VRI> handledIterator = handledFeatures.iterator();
+        for (Feature f : publisher.join()) {
+            mvh.addPredictedFeatures(f);
+            getTask().getMeta().addComment("MVH feature for " + handledIterator.next().toString()
+                    + " has been created at " + f.getUri().toString());
+        }
+        UpdateTask taskUpdater = new UpdateTask(getTask());
+        taskUpdater.setUpdateMeta(true);
+        try {
+            DbMetrics.update(taskUpdater);
+        } catch (DbException ex) {
+            throw new JaqpotException(ex);
+        } finally {
+            try {
+                taskUpdater.close();
+            } catch (DbException ex) {
+                throw new JaqpotException(ex);
             }
         }
 
@@ -34,7 +34,6 @@
 
 package org.opentox.jaqpot3.qsar.trainer;
 
-import org.opentox.jaqpot3.qsar.util.SimpleMVHFilter;
 import java.io.NotSerializableException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
@@ -46,13 +45,16 @@ import java.util.logging.Logger;
 import org.opentox.jaqpot3.exception.JaqpotException;
 import org.opentox.jaqpot3.qsar.AbstractTrainer;
 import org.opentox.jaqpot3.qsar.IClientInput;
+import org.opentox.jaqpot3.qsar.ICrossValidatable;
 import org.opentox.jaqpot3.qsar.ITrainer;
-import org.opentox.jaqpot3.qsar.InstancesUtil;
 import org.opentox.jaqpot3.qsar.exceptions.BadParameterException;
 import org.opentox.jaqpot3.qsar.exceptions.QSARException;
+import org.opentox.jaqpot3.qsar.serializable.MlrModel;
 import org.opentox.jaqpot3.qsar.util.AttributeCleanup;
+import org.opentox.jaqpot3.qsar.util.PreprocessingPipeline;
 import org.opentox.jaqpot3.resources.collections.Algorithms;
 import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DbMetrics;
 import org.opentox.toxotis.client.VRI;
 import org.opentox.toxotis.client.collection.Services;
 import org.opentox.toxotis.core.component.Algorithm;
@@ -65,16 +67,14 @@ import org.opentox.toxotis.factory.FeatureFactory;
 import org.opentox.toxotis.ontology.LiteralValue;
 import org.opentox.toxotis.ontology.ResourceValue;
 import org.opentox.toxotis.ontology.collection.OTClasses;
-import weka.core.Attribute;
 import weka.core.Instances;
-import weka.classifiers.functions.LinearRegression;
 
 /**
  *
  * @author Pantelis Sopasakis
  * @author Charalampos Chomenides
  */
-public class MlrRegression extends AbstractTrainer {
+public class MlrRegression extends AbstractTrainer implements ICrossValidatable {
 
     private VRI targetUri;
     private VRI datasetUri;
@@ -84,23 +84,6 @@ public class MlrRegression extends AbstractTrainer {
     public MlrRegression() {
     }
 
-
-    private Instances preprocessInstances(Instances in) throws QSARException {
-        AttributeCleanup cleanup = new AttributeCleanup(false, AttributeCleanup.AttributeType.string);
-        try {
-            Instances filt1 = cleanup.filter(in);
-            SimpleMVHFilter mvh = new SimpleMVHFilter();
-            Instances fin = mvh.filter(filt1);
-            return fin;
-        } catch (JaqpotException ex) {
-            throw new QSARException(ex);
-        } catch (QSARException ex) {
-            throw new QSARException(ex);
-        }
-    }
-
-    
-
     @Override
     public ITrainer parametrize(IClientInput clientParameters) throws BadParameterException {
         String targetString = clientParameters.getFirstValue("prediction_feature");
@@ -134,6 +117,29 @@ public class MlrRegression extends AbstractTrainer {
         return this;
     }
 
+    @Override
+    public Instances prepareTrainingSet(Instances data) throws JaqpotException {
+        data.renameAttribute(0, "compound_uri");
+        try {
+            if (data.attribute(targetUri.toString()) == null) {
+                throw new BadParameterException("The prediction feature you provided was not found in the dataset");
+            }
+            /* Cleanup, MVH and target placement (target = last) in a single pass */
+            return new PreprocessingPipeline().
+                    remove(AttributeCleanup.AttributeType.string).
+                    replaceMissingValues(true).
+                    target(targetUri.toString()).
+                    apply(data);
+        } catch (QSARException ex) {
+            throw new JaqpotException(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public MlrModel createClassifier() throws JaqpotException {
+        return new MlrModel();
+    }
+
     @Override
     public Algorithm getAlgorithm() {
         return Algorithms.mlr();
@@ -141,7 +147,6 @@ public class MlrRegression extends AbstractTrainer {
 
     @Override
     public Model train(Instances data) throws JaqpotException {
-        data.renameAttribute(0, "compound_uri");
         try {
 
             getTask().getMeta().addComment("Dataset successfully retrieved and converted "
@@ -150,7 +155,7 @@ public class MlrRegression extends AbstractTrainer {
             firstTaskUpdater.setUpdateMeta(true);
             firstTaskUpdater.setUpdateTaskStatus(true);//TODO: Is this necessary?
             try {
-                firstTaskUpdater.update();
+                DbMetrics.update(firstTaskUpdater);
             } catch (DbException ex) {
                 throw new JaqpotException(ex);
             } finally {
@@ -161,13 +166,13 @@ public class MlrRegression extends AbstractTrainer {
                 }
             }
 
-            Instances trainingSet = preprocessInstances(data);
+            Instances orderedTrainingSet = prepareTrainingSet(data);
             getTask().getMeta().addComment("The downloaded dataset is now preprocessed");
             firstTaskUpdater = new UpdateTask(getTask());
             firstTaskUpdater.setUpdateMeta(true);
             firstTaskUpdater.setUpdateTaskStatus(true);//TODO: Is this necessary?
             try {
-                firstTaskUpdater.update();
+                DbMetrics.update(firstTaskUpdater);
             } catch (DbException ex) {
                 throw new JaqpotException(ex);
             } finally {
@@ -178,35 +183,6 @@ public class MlrRegression extends AbstractTrainer {
                 }
             }
 
-            /* SET CLASS ATTRIBUTE */
-            Attribute target = trainingSet.attribute(targetUri.toString());
-            if (target == null) {
-                throw new BadParameterException("The prediction feature you provided was not found in the dataset");
-            } else {
-                if (!target.isNumeric()) {
-                    throw new QSARException("The prediction feature you provided is not numeric.");
-                }
-            }
-            trainingSet.setClass(target);
-            /* Very important: place the target feature at the end! (target = last)*/
-            int numAttributes = trainingSet.numAttributes();
-            int classIndex = trainingSet.classIndex();
-            Instances orderedTrainingSet = null;
-            List<String> properOrder = new ArrayList<String>(numAttributes);
-            for (int j = 0; j < numAttributes; j++) {
-                if (j != classIndex) {
-                    properOrder.add(trainingSet.attribute(j).name());
-                }
-            }
-            properOrder.add(trainingSet.attribute(classIndex).name());
-            try {
-                orderedTrainingSet = InstancesUtil.sortByFeatureAttrList(properOrder, trainingSet, -1);
-            } catch (JaqpotException ex) {
-                logger.error("Improper dataset - training will stop", ex);
-                throw ex;
-            }
-            orderedTrainingSet.setClass(orderedTrainingSet.attribute(targetUri.toString()));
-
             /* START CONSTRUCTION OF MODEL */
             Model m = new Model(Configuration.getBaseUri().augment("model", getUuid().toString()));
             m.setAlgorithm(getAlgorithm());
@@ -269,7 +245,7 @@ public class MlrRegression extends AbstractTrainer {
             firstTaskUpdater.setUpdateMeta(true);
             firstTaskUpdater.setUpdateTaskStatus(true);//TODO: Is this necessary?
             try {
-                firstTaskUpdater.update();
+                DbMetrics.update(firstTaskUpdater);
             } catch (DbException ex) {
                 throw new JaqpotException(ex);
             } finally {
@@ -282,11 +258,8 @@ public class MlrRegression extends AbstractTrainer {
 
 
             /* ACTUAL TRAINING OF THE MODEL USING WEKA */
-            LinearRegression linreg = new LinearRegression();
-            String[] linRegOptions = {"-S", "1", "-C"};
-
+            MlrModel linreg = createClassifier();
             try {
-                linreg.setOptions(linRegOptions);
                 linreg.buildClassifier(orderedTrainingSet);
             } catch (final Exception ex) {// illegal options or could not build the classifier!
                 String message = "MLR Model could not be trained";
@@ -38,6 +38,7 @@ import java.io.NotSerializableException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.logging.Level;
@@ -50,6 +51,8 @@ import org.opentox.jaqpot3.qsar.exceptions.BadParameterException;
 import org.opentox.jaqpot3.qsar.exceptions.QSARException;
 import org.opentox.jaqpot3.qsar.serializable.PLSModel;
 import org.opentox.jaqpot3.qsar.util.AttributeCleanup;
+import org.opentox.jaqpot3.qsar.util.FeaturePublisher;
+import org.opentox.jaqpot3.qsar.util.PartialLeastSquares;
 import org.opentox.jaqpot3.resources.collections.Algorithms;
 import org.opentox.jaqpot3.util.Configuration;
 import org.opentox.toxotis.client.VRI;
@@ -58,13 +61,12 @@ import org.opentox.toxotis.core.component.Algorithm;
 import org.opentox.toxotis.core.component.Feature;
 import org.opentox.toxotis.core.component.Model;
 import org.opentox.toxotis.core.component.Parameter;
-import org.opentox.toxotis.exceptions.impl.ServiceInvocationException;
-import org.opentox.toxotis.factory.FeatureFactory;
 import org.opentox.toxotis.ontology.LiteralValue;
 import org.opentox.toxotis.ontology.ResourceValue;
 import org.opentox.toxotis.ontology.collection.OTClasses;
+import weka.core.Attribute;
+import weka.core.Instance;
 import weka.core.Instances;
-import weka.filters.supervised.attribute.PLSFilter;
 
 /**
  *
@@ -104,8 +106,15 @@ public class PLSTrainer extends AbstractTrainer {
             featureService = Services.ideaconsult().augment("feature");
         }
         String numComponentsString = clientParameters.getFirstValue("numComponents");
-        if (numComponentsString != null) {
-            numComponents = Integer.parseInt(numComponentsString);
+        if (numComponentsString != null && !"auto".equals(numComponentsString.trim())) {
+            try {
+                numComponents = Integer.parseInt(numComponentsString.trim());
+            } catch (NumberFormatException nfe) {
+                throw new BadParameterException("Invalid value for the parameter 'numComponents' (" + numComponentsString + ")", nfe);
+            }
+            if (numComponents < 1) {
+                throw new BadParameterException("The parameter 'numComponents' must be a positive integer or 'auto'.");
+            }
         }
         pls_algorithm = clientParameters.getFirstValue("algorithm");
         if (pls_algorithm == null) {
@@ -138,6 +147,9 @@ public class PLSTrainer extends AbstractTrainer {
          * This is a mandatory parameter:
          */
         target = clientParameters.getFirstValue("target");
+        if (target == null) {
+            throw new BadParameterException("The parameter 'target' is mandatory for this algorithm.");
+        }
         return this;
     }
 
@@ -159,7 +171,11 @@ public class PLSTrainer extends AbstractTrainer {
         } catch (QSARException ex) {
             throw new JaqpotException(ex);
         }
-        data.setClass(data.attribute(target));
+        Attribute targetAttribute = data.attribute(target);
+        if (targetAttribute == null || !targetAttribute.isNumeric()) {
+            throw new JaqpotException("The target feature " + target + " is not a numeric feature of the dataset");
+        }
+        data.setClass(targetAttribute);
 
         model.setIndependentFeatures(new ArrayList<Feature>(data.numAttributes()));
         for (int i = 0; i < data.numAttributes(); i++) {
@@ -172,21 +188,55 @@ public class PLSTrainer extends AbstractTrainer {
 
 
         /*
-         * Train the PLS filter
+         * Collect the independent variables and the target (instances with
+         * missing target values are not used)
          */
-        PLSFilter pls = new PLSFilter();
-        try {
-            pls.setInputFormat(data);
-            pls.setOptions(new String[]{"-C", Integer.toString(numComponents),
-                        "-A", pls_algorithm,
-                        "-P", preprocessing,
-                        "-U", doUpdateClass});
-            PLSFilter.useFilter(data, pls);
-        } catch (Exception ex) {
-            Logger.getLogger(PLSTrainer.class.getName()).log(Level.SEVERE, null, ex);
+        int classIndex = data.classIndex();
+        int numFeatures = data.numAttributes() - 1;
+        String[] features = new String[numFeatures];
+        int[] featureIndices = new int[numFeatures];
+        for (int j = 0, k = 0; j < data.numAttributes(); j++) {
+            if (j != classIndex) {
+                features[k] = data.attribute(j).name();
+                featureIndices[k++] = j;
+            }
+        }
+        List<double[]> rows = new ArrayList<double[]>(data.numInstances());
+        List<Double> targets = new ArrayList<Double>(data.numInstances());
+        for (int i = 0; i < data.numInstances(); i++) {
+            Instance instance = data.instance(i);
+            if (instance.classIsMissing()) {
+                continue;
+            }
+            double[] row = new double[numFeatures];
+            for (int k = 0; k < numFeatures; k++) {
+                row[k] = instance.isMissing(featureIndices[k]) ? Double.NaN : instance.value(featureIndices[k]);
+            }
+            rows.add(row);
+            targets.add(instance.classValue());
+        }
+        double[][] x = rows.toArray(new double[rows.size()][]);
+        double[] y = new double[targets.size()];
+        for (int i = 0; i < y.length; i++) {
+            y[i] = targets.get(i);
         }
 
-        PLSModel actualModel = new PLSModel(pls);
+        /*
+         * Train the PLS model; the number of components is chosen by cross
+         * validation unless specified by the client
+         */
+        PartialLeastSquares engine = new PartialLeastSquares(PartialLeastSquares.Type.valueOf(pls_algorithm),
+                PartialLeastSquares.Preprocessing.valueOf(preprocessing));
+        if (numComponents <= 0) {
+            numComponents = engine.selectNumComponents(x, y,
+                    Configuration.getIntegerProperty("pls.maxComponents", 20),
+                    Configuration.getIntegerProperty("crossvalidation.defaultFolds", 10), RANDOM.nextLong());
+            getTask().getMeta().addComment("Number of PLS components selected by cross validation: " + numComponents);
+        }
+        PLSModel actualModel = engine.fit(x, y, numComponents);
+        numComponents = actualModel.getNumComponents();
+        actualModel.setFeatures(features);
+        actualModel.setUpdateClass("on".equals(doUpdateClass));
         try {
             model.setActualModel(actualModel);
         } catch (NotSerializableException ex) {
@@ -218,15 +268,12 @@ public class PLSTrainer extends AbstractTrainer {
         model.setParameters(parameters);
 
 
+        FeaturePublisher publisher = new FeaturePublisher(featureService, token);
         for (int i = 0; i < numComponents; i++) {
-            try {
-                Feature f = FeatureFactory.createAndPublishFeature("PLS-" + i, "",
-                        new ResourceValue(model.getUri(), OTClasses.model()),
-                        featureService, token);
-                model.addPredictedFeatures(f);
-            } catch (ServiceInvocationException ex) {
-                Logger.getLogger(PLSTrainer.class.getName()).log(Level.SEVERE, null, ex);
-            }
+            publisher.submit("PLS-" + i, "", new ResourceValue(model.getUri(), OTClasses.model()));
+        }
+        for (Feature f : publisher.join()) {
+            model.addPredictedFeatures(f);
         }
 
 
@@ -0,0 +1,197 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.qsar.trainer;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.util.HashSet;
+import java.util.Random;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.qsar.AbstractTrainer;
+import org.opentox.jaqpot3.qsar.IClientInput;
+import org.opentox.jaqpot3.qsar.IParametrizableAlgorithm;
+import org.opentox.jaqpot3.qsar.exceptions.BadParameterException;
+import org.opentox.jaqpot3.qsar.pmml.PmmlCompiler;
+import org.opentox.jaqpot3.qsar.pmml.PmmlEvaluator;
+import org.opentox.jaqpot3.qsar.serializable.PmmlModel;
+import org.opentox.jaqpot3.qsar.util.FeaturePublisher;
+import org.opentox.jaqpot3.resources.collections.Algorithms;
+import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.HttpTransport;
+import org.opentox.toxotis.client.VRI;
+import org.opentox.toxotis.client.collection.Services;
+import org.opentox.toxotis.core.component.Algorithm;
+import org.opentox.toxotis.core.component.Feature;
+import org.opentox.toxotis.core.component.Model;
+import org.opentox.toxotis.core.component.Parameter;
+import org.opentox.toxotis.ontology.LiteralValue;
+import org.opentox.toxotis.ontology.ResourceValue;
+import org.opentox.toxotis.ontology.collection.OTClasses;
+import weka.core.Instances;
+
+/**
+ * Imports a model from a PMML document (e.g. one exported by another Jaqpot
+ * server or produced by a batch modelling tool). The document is downloaded and
+ * compiled to make sure that it can be scored; the names of its input fields
+ * have to be feature URIs while a new feature is created for every output.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class PmmlImporter extends AbstractTrainer {
+
+    private static final int _MAX_SIZE = Configuration.getIntegerProperty("pmml.maxImportSize", 16777216);
+    private static final Random RANDOM = new Random(31 * System.currentTimeMillis() + 7);
+    private org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(PmmlImporter.class);
+    private String pmmlUri;
+    private VRI featureService;
+
+    @Override
+    public boolean needsDataset() {
+        return false;
+    }
+
+    @Override
+    public Model train(Instances data) throws JaqpotException {
+        byte[] document = download();
+        PmmlEvaluator evaluator = PmmlCompiler.compile(new ByteArrayInputStream(document));
+
+        VRI newModelUri = Configuration.getBaseUri().augment("model", getUuid());
+        Model model = new Model(newModelUri);
+        for (String field : evaluator.getInputFields()) {
+            try {
+                if (!field.contains("://")) {
+                    throw new URISyntaxException(field, "Not an absolute URI");
+                }
+                model.addIndependentFeatures(new Feature(new VRI(field)));
+            } catch (URISyntaxException ex) {
+                throw new JaqpotException("The input field '" + field + "' of the PMML document is not a feature URI", ex);
+            }
+        }
+        FeaturePublisher publisher = new FeaturePublisher(featureService, token);
+        for (String output : evaluator.getOutputFields()) {
+            publisher.submit(output + " as predicted by the PMML model " + newModelUri, "",
+                    new ResourceValue(newModelUri, OTClasses.model()));
+        }
+        for (Feature f : publisher.join()) {
+            model.addPredictedFeatures(f);
+        }
+        try {
+            model.setActualModel(new PmmlModel(document));
+        } catch (NotSerializableException ex) {
+            throw new JaqpotException("PMML model cannot be serialized", ex);
+        }
+        model.setAlgorithm(getAlgorithm());
+        model.setParameters(new HashSet<Parameter>());
+        Parameter p = new Parameter(Configuration.getBaseUri().augment("parameter", RANDOM.nextLong()),
+                "pmml", new LiteralValue(pmmlUri, XSDDatatype.XSDanyURI)).setScope(Parameter.ParameterScope.MANDATORY);
+        model.getParameters().add(p);
+        return model;
+    }
+
+    private byte[] download() throws JaqpotException {
+        HttpTransport.Exchange exchange;
+        try {
+            exchange = HttpTransport.TRANSPORT.open(pmmlUri, "GET");
+        } catch (IOException ex) {
+            throw new JaqpotException("The PMML document at " + pmmlUri + " cannot be downloaded", ex);
+        }
+        try {
+            HttpURLConnection connection = exchange.getConnection();
+            connection.setRequestProperty("Accept", "application/xml, text/xml;q=0.9");
+            if (token != null) {
+                connection.setRequestProperty("subjectid", token.stringValue());
+            }
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new JaqpotException("The PMML document at " + pmmlUri + " cannot be downloaded (status "
+                        + status + ")");
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(65536);
+            InputStream in = exchange.getInputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+                if (bytes.size() > _MAX_SIZE) {
+                    throw new JaqpotException("The PMML document at " + pmmlUri + " exceeds the maximum size of "
+                            + _MAX_SIZE + " bytes");
+                }
+            }
+            exchange.close();
+            return bytes.toByteArray();
+        } catch (IOException ex) {
+            logger.debug("Cannot download " + pmmlUri, ex);
+            throw new JaqpotException("The PMML document at " + pmmlUri + " cannot be downloaded", ex);
+        } finally {
+            /* Unless the response was read completely, the connection is not reused */
+            exchange.abort();
+        }
+    }
+
+    @Override
+    public IParametrizableAlgorithm parametrize(IClientInput clientParameters) throws BadParameterException {
+        pmmlUri = clientParameters.getFirstValue("pmml");
+        if (pmmlUri == null) {
+            throw new BadParameterException("The parameter 'pmml' is mandatory for this algorithm.");
+        }
+        try {
+            new VRI(pmmlUri);
+        } catch (URISyntaxException ex) {
+            throw new BadParameterException("The parameter 'pmml' you provided is not a valid URI.", ex);
+        }
+        String featureServiceString = clientParameters.getFirstValue("feature_service");
+        if (featureServiceString != null) {
+            try {
+                featureService = new VRI(featureServiceString);
+            } catch (URISyntaxException ex) {
+                throw new BadParameterException("The parameter 'feature_service' you provided is not a valid URI.", ex);
+            }
+        } else {
+            featureService = Services.ideaconsult().augment("feature");
+        }
+        return this;
+    }
+
+    @Override
+    public Algorithm getAlgorithm() {
+        return Algorithms.pmml();
+    }
+}
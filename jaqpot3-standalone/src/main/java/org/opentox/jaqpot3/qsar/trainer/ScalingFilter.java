@@ -2,7 +2,10 @@ package org.opentox.jaqpot3.qsar.trainer;
 
 import java.io.NotSerializableException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -12,8 +15,11 @@ import org.opentox.jaqpot3.qsar.IClientInput;
 import org.opentox.jaqpot3.qsar.IParametrizableAlgorithm;
 import org.opentox.jaqpot3.qsar.exceptions.BadParameterException;
 import org.opentox.jaqpot3.qsar.serializable.ScalingModel;
+import org.opentox.jaqpot3.qsar.util.ColumnStatistics;
+import org.opentox.jaqpot3.qsar.util.FeaturePublisher;
 import org.opentox.jaqpot3.resources.collections.Algorithms;
 import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DbMetrics;
 import org.opentox.toxotis.client.VRI;
 import org.opentox.toxotis.client.collection.Services;
 import org.opentox.toxotis.core.component.Algorithm;
@@ -21,8 +27,6 @@ import org.opentox.toxotis.core.component.Feature;
 import org.opentox.toxotis.core.component.Model;
 import org.opentox.toxotis.database.engine.task.UpdateTask;
 import org.opentox.toxotis.database.exception.DbException;
-import org.opentox.toxotis.exceptions.impl.ServiceInvocationException;
-import org.opentox.toxotis.factory.FeatureFactory;
 import org.opentox.toxotis.ontology.ResourceValue;
 import org.opentox.toxotis.ontology.collection.OTClasses;
 import weka.core.Attribute;
@@ -42,27 +46,13 @@ public class ScalingFilter extends AbstractTrainer {
     private VRI datasetUri;
     Set<String> ignored = new HashSet<String>();
 
-    private double minValue(Instances dataInst, int attributeIndex) {
-        return dataInst.kthSmallestValue(attributeIndex, 1);
-    }
-
-    private double maxValue(Instances dataInst, int attributeIndex) {
-        double maxVal = Double.MIN_VALUE;
-        double currentValue = maxVal;
-        int nInst = dataInst.numInstances();
-        for (int i = 0; i < nInst; i++) {
-            currentValue = dataInst.instance(i).value(attributeIndex);
-            if (currentValue > maxVal) {
-                maxVal = currentValue;
-            }
-        }
-        return maxVal;
-    }
-
     private Model processAbsoluteScaling(Instances dataInst) throws JaqpotException {
         VRI newModelUri = Configuration.getBaseUri().augment("model", getUuid());
         Model scalingModel = new Model(newModelUri);
         ScalingModel actualModel = new ScalingModel();
+        ColumnStatistics stats = ColumnStatistics.compute(dataInst);
+        FeaturePublisher publisher = new FeaturePublisher(featureService, token);
+        List<VRI> scaledFeatures = new ArrayList<VRI>();
         int nAttr = dataInst.numAttributes();
         for (int i = 0; i < nAttr; i++) {
             Attribute attribute = dataInst.attribute(i);
@@ -70,41 +60,41 @@ public class ScalingFilter extends AbstractTrainer {
                 try {
                     VRI featureVri = new VRI(attribute.name());
                     scalingModel.addIndependentFeatures(new Feature(featureVri));
-                    //TODO: Create in-house private methods to find min and max values
-                    actualModel.getMinVals().put(featureVri, minValue(dataInst, i));
-                    actualModel.getMaxVals().put(featureVri, maxValue(dataInst, i));
-                    Feature f = FeatureFactory.createAndPublishFeature("Scaled " + featureVri.toString() + " within [" + min + ", " + max + "]", "",
-                            new ResourceValue(newModelUri, OTClasses.model()), featureService, token);                    
-                    scalingModel.addPredictedFeatures(f);
-                    //getTask().getMeta().setComments(new HashSet<LiteralValue>());
-                    getTask().getMeta().addComment("Scaled feature for " + featureVri.toString()
-                            + " has been created at " + f.getUri().toString());
-
-                    UpdateTask taskUpdater = new UpdateTask(getTask());
-                    //taskUpdater.setUpdatePercentageCompleted(true);
-                    taskUpdater.setUpdateMeta(true);
-
-                    try {
-                        taskUpdater.update();
-                    } catch (DbException ex) {
-                        throw new JaqpotException(ex);
-                    } finally {
-                        try {
-                            taskUpdater.close();
-                        } catch (DbException ex) {
-                            throw new JaqpotException(ex);
-                        }
-                    }
+                    actualModel.getMinVals().put(featureVri, stats.getMin(i));
+                    actualModel.getMaxVals().put(featureVri, stats.getMax(i));
+                    publisher.submit("Scaled " + featureVri.toString() + " within [" + min + ", " + max + "]", "",
+                            new ResourceValue(newModelUri, OTClasses.model()));
+                    scaledFeatures.add(featureVri);
                 } catch (final URISyntaxException ex) {
+                    publisher.cancel();
                     String message = "URI syntax exception for numeric feature : '" + attribute.name() + "'. Invalid URI provided.";
                     logger.error(message, ex);
                     throw new JaqpotException(message, ex);
-                } catch (ServiceInvocationException ex) {
-                    logger.debug("", ex);
                 }
             }
         }
 
+        /* Wait for all features to be published and update the task once */
+        Iterator<VRI> scaledIterator = scaledFeatures.iterator();
+        for (Feature f : publisher.join()) {
+            scalingModel.addPredictedFeatures(f);
+            getTask().getMeta().addComment("Scaled feature for " + scaledIterator.next().toString()
+                    + " has been created at " + f.getUri().toString());
+        }
+        UpdateTask taskUpdater = new UpdateTask(getTask());
+        taskUpdater.setUpdateMeta(true);
+        try {
+            DbMetrics.update(taskUpdater);
+        } catch (DbException ex) {
+            throw new JaqpotException(ex);
+        } finally {
+            try {
+                taskUpdater.close();
+            } catch (DbException ex) {
+                throw new JaqpotException(ex);
+            }
+        }
+
         try {
             try {
                 scalingModel.setActualModel(actualModel);
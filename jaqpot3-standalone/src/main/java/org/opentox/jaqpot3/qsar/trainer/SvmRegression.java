@@ -34,7 +34,6 @@
 
 package org.opentox.jaqpot3.qsar.trainer;
 
-import org.opentox.jaqpot3.qsar.util.SimpleMVHFilter;
 import java.io.NotSerializableException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
@@ -46,13 +45,15 @@ import java.util.concurrent.Future;
 import org.opentox.jaqpot3.exception.JaqpotException;
 import org.opentox.jaqpot3.qsar.AbstractTrainer;
 import org.opentox.jaqpot3.qsar.IClientInput;
+import org.opentox.jaqpot3.qsar.ICrossValidatable;
 import org.opentox.jaqpot3.qsar.ITrainer;
-import org.opentox.jaqpot3.qsar.InstancesUtil;
 import org.opentox.jaqpot3.qsar.exceptions.BadParameterException;
 import org.opentox.jaqpot3.qsar.exceptions.QSARException;
 import org.opentox.jaqpot3.qsar.util.AttributeCleanup;
+import org.opentox.jaqpot3.qsar.util.PreprocessingPipeline;
 import org.opentox.jaqpot3.resources.collections.Algorithms;
 import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DbMetrics;
 import org.opentox.toxotis.client.VRI;
 import org.opentox.toxotis.client.collection.Services;
 import org.opentox.toxotis.core.component.Algorithm;
@@ -83,7 +84,7 @@ import org.slf4j.LoggerFactory;
  * @author Pantelis Sopasakis
  * @author Charalampos Chomenides
  */
-public class SvmRegression extends AbstractTrainer {
+public class SvmRegression extends AbstractTrainer implements ICrossValidatable {
 
     private static final Random RANDOM = new Random(19 * System.currentTimeMillis() + 53);
 
@@ -119,43 +120,15 @@ public class SvmRegression extends AbstractTrainer {
 
     @Override
     public Model train(Instances data) throws JaqpotException {
-        data.renameAttribute(0, "compound_uri");
         try {
-            Instances trainingSet = preprocessInstances(data);
-            Attribute target = trainingSet.attribute(predictionFeatureUri.toString());
-            if (target == null) {
-                throw new QSARException("The prediction feature you provided was not found in the dataset");
-            } else {
-                if (!target.isNumeric()) {
-                    throw new QSARException("The prediction feature you provided is not numeric.");
-                }
-            }
-            trainingSet.setClass(target);
-            //trainingSet.deleteAttributeAt(0);//remove the first attribute, i.e. 'compound_uri' or 'URI'
-            /* Very important: place the target feature at the end! (target = last)*/
-            int numAttributes = trainingSet.numAttributes();
-            int classIndex = trainingSet.classIndex();
-            Instances orderedTrainingSet = null;
-            List<String> properOrder = new ArrayList<String>(numAttributes);
-            for (int j = 0; j < numAttributes; j++) {
-                if (j != classIndex) {
-                    properOrder.add(trainingSet.attribute(j).name());
-                }
-            }
-            properOrder.add(trainingSet.attribute(classIndex).name());
-            try {
-                orderedTrainingSet = InstancesUtil.sortByFeatureAttrList(properOrder, trainingSet, -1);
-            } catch (JaqpotException ex) {
-                logger.error(null, ex);
-            }
-            orderedTrainingSet.setClass(orderedTrainingSet.attribute(predictionFeatureUri.toString()));
+            Instances orderedTrainingSet = prepareTrainingSet(data);
 
             getTask().getMeta().addComment("Dataset successfully retrieved and converted into a weka.core.Instances object");
             UpdateTask firstTaskUpdater = new UpdateTask(getTask());
             firstTaskUpdater.setUpdateMeta(true);
             firstTaskUpdater.setUpdateTaskStatus(true);//TODO: Is this necessary?
             try {
-                firstTaskUpdater.update();
+                DbMetrics.update(firstTaskUpdater);
             } catch (DbException ex) {
                 throw new JaqpotException(ex);
             } finally {
@@ -168,42 +141,11 @@ public class SvmRegression extends AbstractTrainer {
 
 
             // INITIALIZE THE REGRESSOR
-            SVMreg regressor = new SVMreg();
-            final String[] regressorOptions = {
-                "-P", Double.toString(epsilon),
-                "-T", Double.toString(tolerance)
-            };
-            Kernel svm_kernel = null;
-            if (kernel.equalsIgnoreCase("rbf")) {
-                RBFKernel rbf_kernel = new RBFKernel();
-                rbf_kernel.setGamma(Double.parseDouble(Double.toString(gamma)));
-                rbf_kernel.setCacheSize(Integer.parseInt(Integer.toString(cacheSize)));
-                svm_kernel = rbf_kernel;
-            } else if (kernel.equalsIgnoreCase("polynomial")) {
-                PolyKernel poly_kernel = new PolyKernel();
-                poly_kernel.setExponent(Double.parseDouble(Integer.toString(degree)));
-                poly_kernel.setCacheSize(Integer.parseInt(Integer.toString(cacheSize)));
-                poly_kernel.setUseLowerOrder(true);
-                svm_kernel = poly_kernel;
-            } else if (kernel.equalsIgnoreCase("linear")) {
-                PolyKernel poly_kernel = new PolyKernel();
-                poly_kernel.setExponent((double) 1.0);
-                poly_kernel.setCacheSize(Integer.parseInt(Integer.toString(cacheSize)));
-                poly_kernel.setUseLowerOrder(true);
-                svm_kernel = poly_kernel;
-            }
-
-            try {
-                regressor.setOptions(regressorOptions);
-            } catch (final Exception ex) {
-                throw new QSARException("Bad options in SVM trainer for epsilon = {" + epsilon + "} or "
-                        + "tolerance = {" + tolerance + "}.", ex);
-            }
-            regressor.setKernel(svm_kernel);
+            SVMreg regressor = createClassifier();
 
             // START TRAINING
             try {
-                regressor.buildClassifier(trainingSet);
+                regressor.buildClassifier(orderedTrainingSet);
             } catch (final Exception ex) {
                 throw new QSARException("Unexpected condition while trying to train "
                         + "the model. Possible explanation : {" + ex.getMessage() + "}", ex);
@@ -231,15 +173,15 @@ public class SvmRegression extends AbstractTrainer {
             m.addDependentFeatures(dependentFeature);
 
             List<Feature> independentFeatures = new ArrayList<Feature>();
-            for (int i = 0; i < trainingSet.numAttributes(); i++) {
+            for (int i = 0; i < orderedTrainingSet.numAttributes(); i++) {
                 Feature f;
                 try {
-                    f = new Feature(new VRI(trainingSet.attribute(i).name()));
-                    if (trainingSet.classIndex() != i) {
+                    f = new Feature(new VRI(orderedTrainingSet.attribute(i).name()));
+                    if (orderedTrainingSet.classIndex() != i) {
                         independentFeatures.add(f);
                     }
                 } catch (URISyntaxException ex) {
-                    throw new QSARException("The URI: " + trainingSet.attribute(i).name() + " is not valid", ex);
+                    throw new QSARException("The URI: " + orderedTrainingSet.attribute(i).name() + " is not valid", ex);
                 }
             }
             m.setIndependentFeatures(independentFeatures);
@@ -266,7 +208,7 @@ public class SvmRegression extends AbstractTrainer {
                     UpdateTask taskUpdater = new UpdateTask(getTask());
                     taskUpdater.setUpdateMeta(true);
                     try {
-                        taskUpdater.update();
+                        DbMetrics.update(taskUpdater);
                     } catch (DbException ex) {
                         throw new JaqpotException(ex);
                     } finally {
@@ -318,43 +260,83 @@ public class SvmRegression extends AbstractTrainer {
     }
     
 
-    private Instances preprocessInstances(Instances in) throws QSARException {
-        AttributeCleanup cleanup = new AttributeCleanup(false, AttributeCleanup.AttributeType.string);
+    @Override
+    public Instances prepareTrainingSet(Instances data) throws JaqpotException {
+        data.renameAttribute(0, "compound_uri");
         try {
-            Instances filt1 = cleanup.filter(in);
-            SimpleMVHFilter mvh = new SimpleMVHFilter();
-            Instances fin = mvh.filter(filt1);
-
-            /*
-             * Do some checks for the prediction feature...
-             */
-            // CHECK IF THE PREDICTION FEATURE EXISTS
-            // IF IT DOESN'T PROVIDE A LIST OF SOME NUMERIC FEATURES IN THE DATASET
-            Attribute classAttribute = fin.attribute(predictionFeatureUri.toString());
-            if (classAttribute == null) {
-                String message =
-                        "The prediction feature you provided is is not included in the  dataset :{"
-                        + predictionFeatureUri + "}. " + attributeHint(fin);
-                logger.debug(message);
-                throw new QSARException(message);
-            }
-
-            // CHECK IF THE PREDICTION FEATURE IS NUMERIC:
-            // IF IT DOESN'T PROVIDE A LIST OF SOME NUMERIC FEATURES IN THE DATASET
-            if (classAttribute.type() != Attribute.NUMERIC) {
-                String message =
-                        "The prediction feature you provided is not numeric : "
-                        + "{" + predictionFeatureUri + "}. " + attributeHint(fin);
-                logger.debug(message);
-                throw new QSARException(message);
-            }
-            fin.setClass(fin.attribute(predictionFeatureUri.toString()));
-            return fin;
-        } catch (JaqpotException ex) {
-            throw new QSARException(ex);
+            return preprocessInstances(data);
         } catch (QSARException ex) {
-            throw new QSARException(ex);
+            throw new JaqpotException(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public SVMreg createClassifier() throws JaqpotException {
+        SVMreg regressor = new SVMreg();
+        final String[] regressorOptions = {
+            "-P", Double.toString(epsilon),
+            "-T", Double.toString(tolerance)
+        };
+        Kernel svm_kernel = null;
+        if (kernel.equalsIgnoreCase("rbf")) {
+            RBFKernel rbf_kernel = new RBFKernel();
+            rbf_kernel.setGamma(Double.parseDouble(Double.toString(gamma)));
+            rbf_kernel.setCacheSize(Integer.parseInt(Integer.toString(cacheSize)));
+            svm_kernel = rbf_kernel;
+        } else if (kernel.equalsIgnoreCase("polynomial")) {
+            PolyKernel poly_kernel = new PolyKernel();
+            poly_kernel.setExponent(Double.parseDouble(Integer.toString(degree)));
+            poly_kernel.setCacheSize(Integer.parseInt(Integer.toString(cacheSize)));
+            poly_kernel.setUseLowerOrder(true);
+            svm_kernel = poly_kernel;
+        } else if (kernel.equalsIgnoreCase("linear")) {
+            PolyKernel poly_kernel = new PolyKernel();
+            poly_kernel.setExponent((double) 1.0);
+            poly_kernel.setCacheSize(Integer.parseInt(Integer.toString(cacheSize)));
+            poly_kernel.setUseLowerOrder(true);
+            svm_kernel = poly_kernel;
+        }
+
+        try {
+            regressor.setOptions(regressorOptions);
+        } catch (final Exception ex) {
+            throw new JaqpotException("Bad options in SVM trainer for epsilon = {" + epsilon + "} or "
+                    + "tolerance = {" + tolerance + "}.", ex);
+        }
+        regressor.setKernel(svm_kernel);
+        return regressor;
+    }
+
+    private Instances preprocessInstances(Instances in) throws QSARException {
+        /*
+         * Do some checks for the prediction feature...
+         */
+        // CHECK IF THE PREDICTION FEATURE EXISTS
+        // IF IT DOESN'T PROVIDE A LIST OF SOME NUMERIC FEATURES IN THE DATASET
+        Attribute classAttribute = in.attribute(predictionFeatureUri.toString());
+        if (classAttribute == null) {
+            String message =
+                    "The prediction feature you provided is is not included in the  dataset :{"
+                    + predictionFeatureUri + "}. " + attributeHint(in);
+            logger.debug(message);
+            throw new QSARException(message);
+        }
+
+        // CHECK IF THE PREDICTION FEATURE IS NUMERIC:
+        // IF IT DOESN'T PROVIDE A LIST OF SOME NUMERIC FEATURES IN THE DATASET
+        if (classAttribute.type() != Attribute.NUMERIC) {
+            String message =
+                    "The prediction feature you provided is not numeric : "
+                    + "{" + predictionFeatureUri + "}. " + attributeHint(in);
+            logger.debug(message);
+            throw new QSARException(message);
         }
+        /* Cleanup, MVH and target placement (target = last) in a single pass */
+        return new PreprocessingPipeline().
+                remove(AttributeCleanup.AttributeType.string).
+                replaceMissingValues(true).
+                target(predictionFeatureUri.toString()).
+                apply(in);
     }
 
     @Override
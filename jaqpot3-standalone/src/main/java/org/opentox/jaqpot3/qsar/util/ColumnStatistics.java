@@ -0,0 +1,286 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+
+package org.opentox.jaqpot3.qsar.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.pool.ComputePool;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Per-column statistics of a dataset (minimum, maximum, mean, variance, mode and
+ * number of missing values) computed in a single scan of every column. Columns
+ * are split in blocks which are processed in parallel on the {@link ComputePool}.
+ * Missing values are ignored in all statistics; the minimum, maximum, mean and
+ * variance of a column without any values are <code>NaN</code>. The mode is
+ * computed for nominal attributes only.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class ColumnStatistics {
+
+    /**
+     * Minimum number of values (rows x columns) for which the columns are processed in parallel
+     */
+    private static final int _PARALLEL_THRESHOLD = 100000;
+    private static final int _MIN_COLUMNS_PER_JOB = 32;
+    private final int numInstances;
+    private final double[] min;
+    private final double[] max;
+    private final double[] mean;
+    private final double[] variance;
+    private final int[] missing;
+    private final int[] mode;
+
+    private ColumnStatistics(int numInstances, int numAttributes) {
+        this.numInstances = numInstances;
+        min = new double[numAttributes];
+        max = new double[numAttributes];
+        mean = new double[numAttributes];
+        variance = new double[numAttributes];
+        missing = new int[numAttributes];
+        mode = new int[numAttributes];
+    }
+
+    /**
+     * Computes the statistics of the given dataset. The dataset should not be
+     * modified while the returned object is in use.
+     *
+     * @param data
+     *      Dataset.
+     * @return
+     *      Column statistics for the dataset.
+     * @throws JaqpotException
+     *      If the computation is interrupted.
+     */
+    public static ColumnStatistics compute(final Instances data) throws JaqpotException {
+        final int numAttributes = data.numAttributes();
+        final ColumnStatistics stats = new ColumnStatistics(data.numInstances(), numAttributes);
+        long size = (long) data.numInstances() * numAttributes;
+        int numJobs = Math.min(Runtime.getRuntime().availableProcessors(),
+                (numAttributes + _MIN_COLUMNS_PER_JOB - 1) / _MIN_COLUMNS_PER_JOB);
+        if (size < _PARALLEL_THRESHOLD || numJobs <= 1) {
+            stats.scan(data, 0, numAttributes);
+            return stats;
+        }
+        final int blockSize = (numAttributes + numJobs - 1) / numJobs;
+        List<Callable<Object>> jobs = new ArrayList<Callable<Object>>(numJobs);
+        for (int start = 0; start < numAttributes; start += blockSize) {
+            final int from = start;
+            final int to = Math.min(start + blockSize, numAttributes);
+            jobs.add(new Callable<Object>() {
+
+                @Override
+                public Object call() throws Exception {
+                    stats.scan(data, from, to);
+                    return null;
+                }
+            });
+        }
+        try {
+            ComputePool.POOL.invokeAll(jobs);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new JaqpotException("Computation of column statistics was interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new JaqpotException("Computation of column statistics failed", ex.getCause());
+        }
+        return stats;
+    }
+
+    /**
+     * Scans the columns <code>from</code> (inclusive) to <code>to</code> (exclusive).
+     * Different blocks of columns write to different positions of the arrays of
+     * this object.
+     */
+    private void scan(Instances data, int from, int to) {
+        for (int j = from; j < to; j++) {
+            Attribute attribute = data.attribute(j);
+            int[] counts = attribute.isNominal() ? new int[attribute.numValues()] : null;
+            double columnMin = Double.POSITIVE_INFINITY, columnMax = Double.NEGATIVE_INFINITY;
+            double columnMean = 0, m2 = 0;
+            int count = 0, columnMissing = 0;
+            for (int i = 0; i < numInstances; i++) {
+                double value = data.instance(i).value(j);
+                if (Instance.isMissingValue(value)) {
+                    columnMissing++;
+                    continue;
+                }
+                if (value < columnMin) {
+                    columnMin = value;
+                }
+                if (value > columnMax) {
+                    columnMax = value;
+                }
+                /* Welford's online algorithm for the mean and the variance */
+                count++;
+                double delta = value - columnMean;
+                columnMean += delta / count;
+                m2 += delta * (value - columnMean);
+                if (counts != null) {
+                    counts[(int) value]++;
+                }
+            }
+            missing[j] = columnMissing;
+            if (count == 0) {
+                min[j] = max[j] = mean[j] = variance[j] = Double.NaN;
+            } else {
+                min[j] = columnMin;
+                max[j] = columnMax;
+                mean[j] = columnMean;
+                variance[j] = count > 1 ? m2 / (count - 1) : 0;
+            }
+            mode[j] = -1;
+            if (counts != null) {
+                int best = 0;
+                for (int k = 1; k < counts.length; k++) {
+                    if (counts[k] > counts[best]) {
+                        best = k;
+                    }
+                }
+                mode[j] = counts.length > 0 ? best : -1;
+            }
+        }
+    }
+
+    /**
+     * Creates a copy of the given dataset where missing values of numeric and nominal
+     * attributes are replaced by the mean or the mode of the corresponding column
+     * respectively (as Weka's ReplaceMissingValues filter does). The dataset must be
+     * the one these statistics were computed for.
+     *
+     * @param data
+     *      Dataset.
+     * @param skipClass
+     *      Whether missing values of the class attribute (if any) should be left
+     *      untouched.
+     * @return
+     *      New dataset without missing values in its numeric and nominal attributes.
+     */
+    public Instances replaceMissingValues(Instances data, boolean skipClass) {
+        Instances result = new Instances(data);
+        int numAttributes = result.numAttributes();
+        int classIndex = skipClass ? result.classIndex() : -1;
+        List<Integer> columns = new ArrayList<Integer>();
+        for (int j = 0; j < numAttributes; j++) {
+            if (missing[j] > 0 && j != classIndex
+                    && (result.attribute(j).isNumeric() || result.attribute(j).isNominal())) {
+                columns.add(j);
+            }
+        }
+        if (columns.isEmpty()) {
+            return result;
+        }
+        for (int i = 0; i < numInstances; i++) {
+            Instance instance = result.instance(i);
+            for (int j : columns) {
+                if (instance.isMissing(j)) {
+                    instance.setValue(j, getReplacement(j));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The value used to replace missing values of an attribute, i.e. its mean for
+     * numeric attributes (0 if there are no values) and its mode for nominal ones.
+     *
+     * @param attributeIndex
+     *      Index of the attribute.
+     * @return
+     *      Replacement value.
+     */
+    public double getReplacement(int attributeIndex) {
+        if (mode[attributeIndex] >= 0) {
+            return mode[attributeIndex];
+        }
+        return Double.isNaN(mean[attributeIndex]) ? 0 : mean[attributeIndex];
+    }
+
+    public int getNumInstances() {
+        return numInstances;
+    }
+
+    public int getNumAttributes() {
+        return min.length;
+    }
+
+    public double getMin(int attributeIndex) {
+        return min[attributeIndex];
+    }
+
+    public double getMax(int attributeIndex) {
+        return max[attributeIndex];
+    }
+
+    public double getMean(int attributeIndex) {
+        return mean[attributeIndex];
+    }
+
+    /**
+     * Sample variance (with denominator n-1) of the values of an attribute.
+     *
+     * @param attributeIndex
+     *      Index of the attribute.
+     * @return
+     *      The variance of the attribute.
+     */
+    public double getVariance(int attributeIndex) {
+        return variance[attributeIndex];
+    }
+
+    /**
+     * Index of the most frequent value of a nominal attribute.
+     *
+     * @param attributeIndex
+     *      Index of the attribute.
+     * @return
+     *      Index of the mode or <code>-1</code> if the attribute is not nominal.
+     */
+    public int getMode(int attributeIndex) {
+        return mode[attributeIndex];
+    }
+
+    public int getMissingCount(int attributeIndex) {
+        return missing[attributeIndex];
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+
+package org.opentox.jaqpot3.qsar.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.pool.ComputePool;
+import org.opentox.jaqpot3.qsar.ICrossValidatable;
+import weka.classifiers.Classifier;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Parallel k-fold cross validation of regression models. All folds, together
+ * with a fit on the whole dataset, run concurrently on the {@link ComputePool}
+ * and share the same (read-only) training data; the data are downloaded and
+ * preprocessed only once. The folds are determined by a seeded permutation of
+ * the instances, so that the outcome of a validation is reproducible.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class CrossValidation {
+
+    private final ICrossValidatable trainer;
+    private final Instances data;
+    private int numFolds = 10;
+    private long seed = 1;
+    private org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CrossValidation.class);
+
+    /**
+     * Creates a new cross validation procedure.
+     *
+     * @param trainer
+     *      Parametrized trainer which provides the classifiers to be validated.
+     * @param data
+     *      Preprocessed training set with its class attribute set, as returned by
+     *      {@link ICrossValidatable#prepareTrainingSet(weka.core.Instances) }. The
+     *      data are not modified during the validation.
+     */
+    public CrossValidation(ICrossValidatable trainer, Instances data) {
+        this.trainer = trainer;
+        this.data = data;
+    }
+
+    public int getNumFolds() {
+        return numFolds;
+    }
+
+    public CrossValidation setNumFolds(int numFolds) {
+        this.numFolds = numFolds;
+        return this;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public CrossValidation setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public CrossValidationReport validate() throws JaqpotException {
+        if (data.classIndex() < 0) {
+            throw new JaqpotException("No class attribute is set on the training data");
+        }
+        final int numInstances = data.numInstances();
+        if (numFolds < 2 || numInstances < 2) {
+            throw new JaqpotException("Cross validation needs at least 2 folds and 2 instances "
+                    + "(folds: " + numFolds + ", instances: " + numInstances + ")");
+        }
+        final int folds = Math.min(numFolds, numInstances);
+
+        /* Seeded permutation; fold f is tested on the positions j with j%folds == f */
+        final int[] permutation = new int[numInstances];
+        for (int i = 0; i < numInstances; i++) {
+            permutation[i] = i;
+        }
+        Random random = new Random(seed);
+        for (int i = numInstances - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int temp = permutation[i];
+            permutation[i] = permutation[j];
+            permutation[j] = temp;
+        }
+
+        /*
+         * Every fold writes to distinct positions of these arrays. Visibility of
+         * the values to this thread is guaranteed by ComputePool#invokeAll.
+         */
+        final double[] crossValidated = new double[numInstances];
+        final double[] fitted = new double[numInstances];
+
+        List<Callable<Object>> jobs = new ArrayList<Callable<Object>>(folds + 1);
+        for (int f = 0; f < folds; f++) {
+            final int fold = f;
+            final Classifier classifier = trainer.createClassifier();
+            jobs.add(new Callable<Object>() {
+
+                @Override
+                public Object call() throws Exception {
+                    Instances trainingSet = new Instances(data, numInstances - numInstances / folds);
+                    for (int j = 0; j < numInstances; j++) {
+                        if (j % folds != fold) {
+                            trainingSet.add(data.instance(permutation[j]));
+                        }
+                    }
+                    classifier.buildClassifier(trainingSet);
+                    for (int j = fold; j < numInstances; j += folds) {
+                        crossValidated[permutation[j]] = classify(classifier, permutation[j]);
+                    }
+                    return null;
+                }
+            });
+        }
+        final Classifier fullClassifier = trainer.createClassifier();
+        jobs.add(new Callable<Object>() {
+
+            @Override
+            public Object call() throws Exception {
+                fullClassifier.buildClassifier(new Instances(data));
+                for (int i = 0; i < numInstances; i++) {
+                    fitted[i] = classify(fullClassifier, i);
+                }
+                return null;
+            }
+        });
+
+        try {
+            ComputePool.POOL.invokeAll(jobs);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new JaqpotException("Cross validation was interrupted", ex);
+        } catch (ExecutionException ex) {
+            String message = "Cross validation failed: a model could not be trained";
+            logger.debug(message, ex.getCause());
+            throw new JaqpotException(message, ex.getCause());
+        }
+
+        double mean = 0;
+        for (int i = 0; i < numInstances; i++) {
+            mean += data.instance(i).classValue();
+        }
+        mean /= numInstances;
+        double total = 0, press = 0, residual = 0;
+        for (int i = 0; i < numInstances; i++) {
+            double observed = data.instance(i).classValue();
+            total += (observed - mean) * (observed - mean);
+            press += (observed - crossValidated[i]) * (observed - crossValidated[i]);
+            residual += (observed - fitted[i]) * (observed - fitted[i]);
+        }
+        double rSquared = total == 0 ? Double.NaN : 1 - residual / total;
+        double qSquared = total == 0 ? Double.NaN : 1 - press / total;
+        double rmse = Math.sqrt(press / numInstances);
+        return new CrossValidationReport(folds, numInstances, seed, rSquared, qSquared, rmse);
+    }
+
+    private double classify(Classifier classifier, int index) throws Exception {
+        /* The shared instance is copied as some filters modify their input */
+        return classifier.classifyInstance((Instance) data.instance(index).copy());
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+
+package org.opentox.jaqpot3.qsar.util;
+
+/**
+ * Aggregate statistics of a cross validation. R<sup>2</sup> refers to the fit
+ * of a model trained on the whole dataset, while Q<sup>2</sup> and RMSE are
+ * computed from the cross-validated (out-of-fold) predictions.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class CrossValidationReport {
+
+    private final int numFolds;
+    private final int numInstances;
+    private final long seed;
+    private final double rSquared;
+    private final double qSquared;
+    private final double rmse;
+
+    public CrossValidationReport(int numFolds, int numInstances, long seed,
+            double rSquared, double qSquared, double rmse) {
+        this.numFolds = numFolds;
+        this.numInstances = numInstances;
+        this.seed = seed;
+        this.rSquared = rSquared;
+        this.qSquared = qSquared;
+        this.rmse = rmse;
+    }
+
+    public int getNumFolds() {
+        return numFolds;
+    }
+
+    public int getNumInstances() {
+        return numInstances;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public double getRSquared() {
+        return rSquared;
+    }
+
+    public double getQSquared() {
+        return qSquared;
+    }
+
+    public double getRmse() {
+        return rmse;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("R^2 = %f, Q^2 = %f, RMSE = %f (%d-fold cross validation on %d instances, seed = %d)",
+                rSquared, qSquared, rmse, numFolds, numInstances, seed);
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+
+package org.opentox.jaqpot3.qsar.util;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.toxotis.client.VRI;
+import org.opentox.toxotis.core.component.Feature;
+import org.opentox.toxotis.exceptions.impl.ServiceInvocationException;
+import org.opentox.toxotis.factory.FeatureFactory;
+import org.opentox.toxotis.ontology.ResourceValue;
+import org.opentox.toxotis.util.aa.AuthenticationToken;
+
+/**
+ * Publishes features to a remote feature service concurrently. Trainers that
+ * need to create many features (e.g. one per attribute of the dataset) submit
+ * them all with {@link #submit(java.lang.String, java.lang.String, org.opentox.toxotis.ontology.ResourceValue) submit}
+ * and then wait for all of them once with {@link #join() join}. At most
+ * <code>maxConcurrency</code> requests of a publisher are sent to the feature
+ * service at the same time; the rest are queued. The default limit is set by the
+ * property <code>features.publishConcurrency</code>. All publishers share a pool
+ * of <code>features.publishThreads</code> threads.
+ *
+ * <p>The remote invocation is performed in {@link #publish(java.lang.String, java.lang.String, org.opentox.toxotis.ontology.ResourceValue) publish}
+ * which may be overridden to publish to some other (e.g. local) service.</p>
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class FeaturePublisher {
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger(0);
+    private static final int _THREADS = Math.max(1, Configuration.getIntegerProperty("features.publishThreads", 16));
+    private static final ThreadPoolExecutor EXECUTOR;
+
+    static {
+        EXECUTOR = new ThreadPoolExecutor(_THREADS, _THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "feature-publisher-" + THREAD_COUNT.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        /* Idle threads are released when no model is being trained */
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+    private final VRI featureService;
+    private final AuthenticationToken token;
+    private final int maxConcurrency;
+    private final List<Future<Feature>> pending = new ArrayList<Future<Feature>>();
+    /**
+     * Publications of this publisher waiting for one of its slots; guarded by itself
+     */
+    private final LinkedList<FutureTask<Feature>> queue = new LinkedList<FutureTask<Feature>>();
+    private int running = 0;
+
+    public FeaturePublisher(VRI featureService, AuthenticationToken token) {
+        this(featureService, token, Configuration.getIntegerProperty("features.publishConcurrency", 8));
+    }
+
+    public FeaturePublisher(VRI featureService, AuthenticationToken token, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("At least one concurrent request is needed to publish features");
+        }
+        this.featureService = featureService;
+        this.token = token;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Stops the threads shared by all publishers; invoked when the server stops.
+     */
+    public static void shutdown() {
+        EXECUTOR.shutdownNow();
+    }
+
+    /**
+     * Queues a new feature for publication.
+     *
+     * @param title
+     *      Title of the feature.
+     * @param units
+     *      Units of the feature.
+     * @param source
+     *      Source of the feature (usually the model that predicts it).
+     * @return
+     *      Future holding the published feature.
+     */
+    public synchronized Future<Feature> submit(final String title, final String units, final ResourceValue source) {
+        FutureTask<Feature> future = new FutureTask<Feature>(new Callable<Feature>() {
+
+            @Override
+            public Feature call() throws Exception {
+                return publish(title, units, source);
+            }
+        });
+        pending.add(future);
+        synchronized (queue) {
+            queue.add(future);
+        }
+        dispatch();
+        return future;
+    }
+
+    /**
+     * Hands queued publications to the shared threads while this publisher has
+     * less than <code>maxConcurrency</code> of them running.
+     */
+    private void dispatch() {
+        synchronized (queue) {
+            while (running < maxConcurrency && !queue.isEmpty()) {
+                final FutureTask<Feature> future = queue.removeFirst();
+                running++;
+                try {
+                    EXECUTOR.execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            try {
+                                future.run();// no-op if it has been cancelled
+                            } finally {
+                                synchronized (queue) {
+                                    running--;
+                                }
+                                dispatch();
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException ex) {
+                    /* The server is stopping */
+                    running--;
+                    future.cancel(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for all submitted features to be published. If some publication
+     * fails, the features that have not been published yet are cancelled.
+     * This publisher cannot be used after this method is invoked.
+     *
+     * @return
+     *      The published features in the order they were submitted.
+     * @throws JaqpotException
+     *      If some feature could not be published or the calling thread is
+     *      interrupted.
+     */
+    public synchronized List<Feature> join() throws JaqpotException {
+        List<Feature> features = new ArrayList<Feature>(pending.size());
+        try {
+            for (Future<Feature> future : pending) {
+                features.add(future.get());
+            }
+            return features;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new JaqpotException("Interrupted while waiting for features to be published", ex);
+        } catch (ExecutionException ex) {
+            throw new JaqpotException("Cannot publish feature to the feature service at " + featureService, ex.getCause());
+        } catch (CancellationException ex) {
+            throw new JaqpotException("Publication of features to " + featureService + " was cancelled", ex);
+        } finally {
+            if (features.size() < pending.size()) {
+                cancel();
+            }
+            pending.clear();
+        }
+    }
+
+    /**
+     * Cancels all features that have not been published yet. This publisher
+     * cannot be used after this method is invoked.
+     */
+    public synchronized void cancel() {
+        synchronized (queue) {
+            queue.clear();
+        }
+        for (Future<Feature> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+    }
+
+    /**
+     * Publishes a single feature. Invoked concurrently by the threads shared by
+     * all publishers.
+     */
+    protected Feature publish(String title, String units, ResourceValue source) throws ServiceInvocationException {
+        return FeatureFactory.createAndPublishFeature(title, units, source, featureService, token);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+
+package org.opentox.jaqpot3.qsar.util;
+
+import Jama.Matrix;
+import java.io.NotSerializableException;
+import java.util.ArrayList;
+import java.util.List;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.qsar.InstancesUtil;
+import org.opentox.jaqpot3.qsar.serializable.LeveragesModel;
+import org.opentox.jaqpot3.qsar.serializable.MlrModel;
+import org.opentox.toxotis.client.VRI;
+import org.opentox.toxotis.core.component.Feature;
+import org.opentox.toxotis.core.component.Model;
+import org.opentox.toxotis.ontology.LiteralValue;
+import org.opentox.toxotis.ontology.ResourceValue;
+import org.opentox.toxotis.ontology.collection.OTClasses;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Creates new versions of models by folding additional training data into the
+ * sufficient statistics stored in them. This is supported for MLR models (see
+ * {@link MlrModel}) and for leverages models (see {@link LeveragesModel}) that
+ * hold their sufficient statistics; the cost of an update is proportional to the
+ * size of the new data. Instances with missing values are ignored.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class ModelUpdater {
+
+    private static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ModelUpdater.class);
+
+    public static boolean isUpdatable(Model model) {
+        Object actualModel = model.getActualModel();
+        if (actualModel instanceof MlrModel) {
+            return true;
+        }
+        return actualModel instanceof LeveragesModel && ((LeveragesModel) actualModel).isUpdatable();
+    }
+
+    /**
+     * Creates a new version of a model trained on the union of its original training
+     * set and the provided data. The provided model is not modified.
+     *
+     * @param model
+     *      The model to be updated.
+     * @param data
+     *      New data as downloaded from a dataset service. The data should contain
+     *      the independent features of the model and, for regression models, its
+     *      dependent feature.
+     * @param newModelUri
+     *      URI of the new version of the model.
+     * @return
+     *      New version of the model.
+     * @throws JaqpotException
+     *      In case the model does not support updates or the data are not suitable.
+     */
+    public static Model update(Model model, Instances data, VRI newModelUri) throws JaqpotException {
+        Object actualModel = model.getActualModel();
+        Object updatedActualModel = null;
+        if (actualModel instanceof MlrModel) {
+            List<Feature> features = new ArrayList<Feature>(model.getIndependentFeatures());
+            features.add(model.getDependentFeatures().iterator().next());
+            Instances ordered = InstancesUtil.sortByFeatureList(features, data, -1);
+            ordered.setClassIndex(ordered.numAttributes() - 1);
+            updatedActualModel = ((MlrModel) actualModel).update(ordered);
+        } else if (actualModel instanceof LeveragesModel && ((LeveragesModel) actualModel).isUpdatable()) {
+            Instances ordered = InstancesUtil.sortForModel(model, data, -1);
+            List<double[]> rows = new ArrayList<double[]>(ordered.numInstances());
+            for (int i = 0; i < ordered.numInstances(); i++) {
+                Instance instance = ordered.instance(i);
+                if (!instance.hasMissingValue()) {
+                    rows.add(instance.toDoubleArray());
+                }
+            }
+            if (rows.isEmpty()) {
+                throw new JaqpotException("The submitted dataset contains no complete instances");
+            }
+            updatedActualModel = ((LeveragesModel) actualModel).update(
+                    new Matrix(rows.toArray(new double[rows.size()][])));
+        } else {
+            throw new JaqpotException("The model " + model.getUri() + " does not hold the statistics needed "
+                    + "for an incremental update. Only MLR and leverages models support updates; models trained "
+                    + "with older versions of these algorithms have to be retrained.");
+        }
+
+        Model updated = new Model(newModelUri);
+        updated.setAlgorithm(model.getAlgorithm());
+        updated.setCreatedBy(model.getCreatedBy());
+        updated.setDataset(model.getDataset());
+        updated.setIndependentFeatures(model.getIndependentFeatures());
+        for (Feature f : model.getDependentFeatures()) {
+            updated.addDependentFeatures(f);
+        }
+        for (Feature f : model.getPredictedFeatures()) {
+            updated.addPredictedFeatures(f);
+        }
+        updated.setParameters(model.getParameters());
+        for (LiteralValue title : model.getMeta().getTitles()) {
+            updated.getMeta().addTitle(title.getValueAsString());
+        }
+        updated.getMeta().addHasSource(new ResourceValue(model.getUri(), OTClasses.model())).
+                addComment("Updated version of the model " + model.getUri()
+                + " trained on additional data (" + data.numInstances() + " instances)");
+        try {
+            updated.setActualModel(updatedActualModel);
+        } catch (NotSerializableException ex) {
+            String message = "Updated model is not serializable";
+            logger.error(message, ex);
+            throw new JaqpotException(message, ex);
+        }
+        return updated;
+    }
+}
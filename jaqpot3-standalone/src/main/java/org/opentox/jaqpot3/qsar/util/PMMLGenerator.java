@@ -31,100 +31,686 @@
  * tel. +30 210 7723236
  *
  */
-
-
 package org.opentox.jaqpot3.qsar.util;
 
+import Jama.Matrix;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
 import org.opentox.jaqpot3.exception.JaqpotException;
-import org.opentox.jaqpot3.resources.collections.Algorithms;
+import org.opentox.jaqpot3.qsar.pmml.PmmlWriter;
+import org.opentox.jaqpot3.qsar.serializable.FastRbfNnModel;
+import org.opentox.jaqpot3.qsar.serializable.LeveragesModel;
+import org.opentox.jaqpot3.qsar.serializable.MlrModel;
+import org.opentox.jaqpot3.qsar.serializable.PLSModel;
+import org.opentox.jaqpot3.qsar.serializable.PmmlModel;
+import org.opentox.jaqpot3.qsar.serializable.ScalingModel;
 import org.opentox.jaqpot3.util.Configuration;
 import org.opentox.toxotis.core.component.Feature;
 import org.opentox.toxotis.core.component.Model;
+import org.opentox.toxotis.core.component.Parameter;
 import weka.classifiers.functions.LinearRegression;
+import weka.classifiers.functions.SVMreg;
+import weka.classifiers.functions.supportVector.Kernel;
+import weka.classifiers.functions.supportVector.PolyKernel;
+import weka.classifiers.functions.supportVector.RBFKernel;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.filters.Filter;
 
 /**
+ * Exports trained models as PMML 4.1 documents, which are written directly to an
+ * output stream. MLR models are exported as regression models, SVM models as
+ * support vector machine models, RBF networks as neural networks with a radial
+ * basis layer, leverages models as quadratic regression models and PLS and
+ * scaling models, which have several outputs, as mining models with one linear
+ * regression segment per output. The names of the fields are the URIs of the
+ * corresponding features. Imported PMML models are exported as they were
+ * imported.
  *
+ * @see org.opentox.jaqpot3.qsar.pmml.PmmlCompiler
  * @author Pantelis Sopasakis
  * @author Charalampos Chomenides
  */
 public class PMMLGenerator {
 
     private static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(PMMLGenerator.class);
+    private static final String _COPYRIGHT = Configuration.getStringProperty("pmml.copyright",
+            "Copyleft (c) OpenTox - An Open Source Predictive Toxicology Framework, http://www.opentox.org, 2009");
 
-    public static String generatePMML(Model model) throws JaqpotException{
-        if(model.getAlgorithm().equals(Algorithms.mlr())){
-            return generateMLR(model);
-        }else{
-            throw new UnsupportedOperationException("PMML Representation for this model is not implemented yet.");
+    /**
+     * Whether the model can be exported in PMML.
+     */
+    public static boolean supports(Model model) {
+        if (model.getAlgorithm() == null || model.getAlgorithm().getUri() == null) {
+            return false;
         }
+        String algorithm = model.getAlgorithm().getUri().getId();
+        Object actualModel = model.getActualModel();
+        return ("mlr".equals(algorithm) && (actualModel instanceof MlrModel || actualModel instanceof LinearRegression))
+                || ("svm".equals(algorithm) && actualModel instanceof SVMreg)
+                || ("fastRbfNn".equals(algorithm) && actualModel instanceof FastRbfNnModel)
+                || ("pls".equals(algorithm) && actualModel instanceof PLSModel && ((PLSModel) actualModel).getPls() == null)
+                || ("scaling".equals(algorithm) && actualModel instanceof ScalingModel)
+                || ("leverages".equals(algorithm) && actualModel instanceof LeveragesModel)
+                || actualModel instanceof PmmlModel;
     }
 
-    private static String generateMLR(Model model) throws JaqpotException{
-        LinearRegression wekaModel = (LinearRegression) model.getActualModel();
-        String uuid = model.getUri().getId();
-        String PMMLIntro = Configuration.getStringProperty("pmml.intro");
-        StringBuilder pmml = new StringBuilder();
+    public static String generatePMML(Model model) throws JaqpotException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writePMML(model, bytes);
         try {
-            final double[] coefficients = wekaModel.coefficients();
-            pmml.append("<?xml version=\"1.0\" ?>");
-            pmml.append(PMMLIntro);
-            pmml.append("<Model ID=\"" + uuid + "\" Name=\"MLR Model\">\n");
-            pmml.append("<AlgorithmID href=\"" + Configuration.BASE_URI + "/algorithm/mlr\"/>\n");
-          //  URI trainingDatasetURI = URI.create(model.getDataset().getUri());
-
-            pmml.append("<DatasetID href=\"" + URLEncoder.encode(model.getDataset().toString(),
-                    Configuration.getStringProperty("jaqpot.urlEncoding")) + "\"/>\n");
-            pmml.append("<AlgorithmParameters />\n");
-//            pmml.append("<FeatureDefinitions>\n");
-//            for (Feature feature : model.getIndependentFeatures()) {
-//                pmml.append("<link href=\"" + feature.getUri().toString() + "\"/>\n");
-//            }
-//            pmml.append("<target index=\"" + data.attribute(model.getPredictedFeature().getUri().toString()).index() + "\" name=\"" + model.getPredictedFeature().getUri().toString() + "\"/>\n");
-//            pmml.append("</FeatureDefinitions>\n");
-            pmml.append("<Timestamp>" + java.util.GregorianCalendar.getInstance().getTime() + "</Timestamp>\n");
-            pmml.append("</Model>\n");
-            pmml.append("<DataDictionary numberOfFields=\"" + model.getIndependentFeatures().size() + "\" >\n");
-            for (Feature feature : model.getIndependentFeatures()) {
-                pmml.append("<DataField name=\"" + feature.getUri().toString() + "\" optype=\"continuous\" dataType=\"double\" />\n");
-            }
-            pmml.append("</DataDictionary>\n");
-            // RegressionModel
-            pmml.append("<RegressionModel modelName=\"" + uuid.toString() + "\"" + 
-                    " functionName=\"regression\" modelType=\"linearRegression\"" +
-                    " algorithmName=\"linearRegression\"" + " targetFieldName=\"" +
-                    model.getDependentFeatures().iterator().next().getUri().toString() + "\"" + ">\n");
-            // RegressionModel::MiningSchema
-            pmml.append("<MiningSchema>\n");
-            for (Feature feature : model.getIndependentFeatures()) {
-                    pmml.append("<MiningField name=\"" + feature.getUri().toString() + "\" />\n");
-
-            }
-            pmml.append("<MiningField name=\"" + model.getDependentFeatures().iterator().next().getUri().toString() + "\" " + "usageType=\"predicted\"/>\n");
-            pmml.append("</MiningSchema>\n");
-            // RegressionModel::RegressionTable
-            pmml.append("<RegressionTable intercept=\"" + coefficients[coefficients.length - 1] + "\">\n");
-            for (int k = 0; k < model.getIndependentFeatures().size() ; k++) {
-                    pmml.append("<NumericPredictor name=\"" + model.getIndependentFeatures().get(k).getUri().toString() + "\" " + " exponent=\"1\" " + "coefficient=\"" + coefficients[k] + "\"/>\n");
-
-            }
-            pmml.append("</RegressionTable>\n");
-            pmml.append("</RegressionModel>\n");
-            pmml.append("</PMML>\n\n");
+            return bytes.toString("UTF-8");
         } catch (UnsupportedEncodingException ex) {
-            String message = "Character Encoding :'"
-                    + Configuration.getStringProperty("jaqpot.urlEncoding") + "' is not supported.";
+            throw new JaqpotException(ex);
+        }
+    }
+
+    /**
+     * Writes the PMML representation of a model to a stream, which is not closed.
+     *
+     * @throws UnsupportedOperationException
+     *      If the model cannot be represented in PMML; see {@link #supports(Model) }.
+     * @throws JaqpotException
+     *      If the model cannot be written to the stream.
+     */
+    public static void writePMML(Model model, OutputStream stream) throws JaqpotException {
+        if (!supports(model)) {
+            throw new UnsupportedOperationException("PMML Representation for this model is not implemented yet.");
+        }
+        Object actualModel = model.getActualModel();
+        try {
+            if (actualModel instanceof PmmlModel) {
+                stream.write(((PmmlModel) actualModel).getDocument());
+                stream.flush();
+                return;
+            }
+            PmmlWriter writer = new PmmlWriter(stream);
+            if (actualModel instanceof MlrModel || actualModel instanceof LinearRegression) {
+                mlr(model, actualModel, writer);
+            } else if (actualModel instanceof SVMreg) {
+                svm(model, (SVMreg) actualModel, writer);
+            } else if (actualModel instanceof FastRbfNnModel) {
+                fastRbfNn(model, (FastRbfNnModel) actualModel, writer);
+            } else if (actualModel instanceof PLSModel) {
+                pls(model, (PLSModel) actualModel, writer);
+            } else if (actualModel instanceof ScalingModel) {
+                scaling(model, (ScalingModel) actualModel, writer);
+            } else {
+                leverages(model, (LeveragesModel) actualModel, writer);
+            }
+            writer.finish();
+        } catch (IOException ex) {
+            String message = "The PMML representation of the model cannot be written";
             logger.debug(message, ex);
             throw new JaqpotException(message, ex);
-        } catch (Exception ex) {
+        } catch (RuntimeException ex) {
+            if (ex instanceof UnsupportedOperationException) {
+                throw ex;
+            }
             String message = "Unexpected exception was caught while generating"
                     + " the PMML representaition of a trained model.";
             logger.error(message, ex);
             throw new JaqpotException(message, ex);
         }
-        return pmml.toString();
     }
-    
-}
 
+    private static void mlr(Model model, Object actualModel, PmmlWriter w) throws IOException, JaqpotException {
+        List<String> inputs = uris(model.getIndependentFeatures());
+        String output = predicted(model).get(0);
+        double[] coefficients;
+        int[] positions = new int[inputs.size()];
+        if (actualModel instanceof MlrModel) {
+            MlrModel mlr = (MlrModel) actualModel;
+            coefficients = mlr.coefficients();
+            /* One coefficient per attribute in the order of the training data, skipping the class */
+            int position = 0;
+            for (int j = 0; j < coefficients.length - 1 && position < positions.length; j++) {
+                if (j != mlr.getClassIndex()) {
+                    positions[position++] = j;
+                }
+            }
+        } else {
+            coefficients = ((LinearRegression) actualModel).coefficients();
+            for (int k = 0; k < positions.length; k++) {
+                positions[k] = k;
+            }
+        }
+        if (coefficients.length < inputs.size() + 1) {
+            throw new JaqpotException("The MLR model has fewer coefficients than independent features");
+        }
+        header(w, model, "MLR Model", inputs, single(output));
+        w.start("RegressionModel", "modelName", model.getUri().getId(), "functionName", "regression",
+                "algorithmName", "linearRegression", "targetFieldName", output);
+        miningSchema(w, inputs, null, single(output));
+        w.start("RegressionTable", "intercept", coefficients[coefficients.length - 1]);
+        for (int k = 0; k < inputs.size(); k++) {
+            w.empty("NumericPredictor", "name", inputs.get(k), "coefficient", coefficients[positions[k]]);
+        }
+        w.end();
+        w.end();
+    }
+
+    /**
+     * SVM models are extracted from the Weka classifier (see {@link SvmInternals}
+     * for what is read from its internals): the normalization of the
+     * inputs and the replacement of missing values are recovered by passing probe
+     * instances through the filters of the classifier, while the scaling of the
+     * target is calibrated against the classifier itself. The result is verified
+     * on an independent probe and the export fails rather than produce a model
+     * which predicts differently.
+     */
+    private static void svm(Model model, SVMreg regressor, PmmlWriter w) throws IOException, JaqpotException {
+        SvmInternals internals = SvmInternals.of(regressor);
+        double[] alpha = internals.getAlpha();
+        double[] alphaStar = internals.getAlphaStar();
+        Instances data = internals.getData();
+        Filter missing = internals.getMissing();
+        Filter normalization = internals.getNormalization();
+        Kernel kernel = regressor.getKernel();
+        String kernelType;
+        double gamma = 1;
+        double coef0 = 0;
+        double degree = 1;
+        if (kernel instanceof RBFKernel) {
+            kernelType = "RadialBasisKernelType";
+            gamma = ((RBFKernel) kernel).getGamma();
+        } else if (kernel instanceof PolyKernel) {
+            kernelType = "PolynomialKernelType";
+            degree = ((PolyKernel) kernel).getExponent();
+            coef0 = ((PolyKernel) kernel).getUseLowerOrder() ? 1 : 0;
+        } else {
+            throw new UnsupportedOperationException("PMML Representation for SVM models with the kernel "
+                    + kernel.getClass().getSimpleName() + " is not implemented yet.");
+        }
+
+        int classIndex = data.classIndex();
+        int numAttributes = data.numAttributes();
+        List<String> inputs = new ArrayList<String>();
+        int[] attributes = new int[numAttributes - 1];
+        for (int j = 0; j < numAttributes; j++) {
+            if (j != classIndex) {
+                if (!data.attribute(j).isNumeric()) {
+                    throw new UnsupportedOperationException("PMML Representation for SVM models with nominal "
+                            + "features is not implemented yet.");
+                }
+                attributes[inputs.size()] = j;
+                inputs.add(data.attribute(j).name());
+            }
+        }
+        int p = inputs.size();
+        Instances header = missing != null ? missing.getOutputFormat() : new Instances(data, 0);
+
+        /* Normalization x' = scale * x + shift and replacement of missing values */
+        double[] scale = new double[p];
+        double[] shift = new double[p];
+        double[] zeros = filter(normalization, probe(header, 0));
+        double[] ones = filter(normalization, probe(header, 1));
+        for (int k = 0; k < p; k++) {
+            shift[k] = zeros[attributes[k]];
+            scale[k] = ones[attributes[k]] - shift[k];
+        }
+        double[] means = missing != null ? filter(missing, probe(header, Double.NaN)) : null;
+
+        List<double[]> vectors = new ArrayList<double[]>();
+        List<Double> coefficients = new ArrayList<Double>();
+        for (int i = 0; i < alpha.length; i++) {
+            if (alpha[i] != alphaStar[i]) {
+                Instance instance = data.instance(i);
+                double[] vector = new double[p];
+                for (int k = 0; k < p; k++) {
+                    vector[k] = instance.value(attributes[k]);
+                }
+                vectors.add(vector);
+                coefficients.add(alpha[i] - alphaStar[i]);
+            }
+        }
+        if (vectors.isEmpty()) {
+            throw new UnsupportedOperationException("The SVM model holds no support vectors");
+        }
+
+        /* The classifier computes factor * (sum of kernels) + constant */
+        List<double[]> probes = new ArrayList<double[]>();
+        probes.add(new double[p]);
+        double[] unit = new double[p];
+        Arrays.fill(unit, 1);
+        probes.add(unit);
+        for (int i = 0; i < Math.min(3, vectors.size()); i++) {
+            double[] raw = new double[p];
+            for (int k = 0; k < p; k++) {
+                raw[k] = scale[k] != 0 ? (vectors.get(i)[k] - shift[k]) / scale[k] : 0;
+            }
+            probes.add(raw);
+        }
+        double[] sums = new double[probes.size()];
+        double[] targets = new double[probes.size()];
+        for (int q = 0; q < probes.size(); q++) {
+            sums[q] = kernelSum(probes.get(q), scale, shift, vectors, coefficients, gamma, coef0, degree,
+                    kernel instanceof RBFKernel);
+            targets[q] = classify(regressor, header, attributes, probes.get(q));
+        }
+        int first = 0;
+        int second = 1;
+        for (int q = 0; q < probes.size(); q++) {
+            for (int r = q + 1; r < probes.size(); r++) {
+                if (Math.abs(sums[q] - sums[r]) > Math.abs(sums[first] - sums[second])) {
+                    first = q;
+                    second = r;
+                }
+            }
+        }
+        double factor = sums[first] != sums[second]
+                ? (targets[first] - targets[second]) / (sums[first] - sums[second]) : 1;
+        double constant = targets[first] - factor * sums[first];
+        for (int q = 0; q < probes.size(); q++) {
+            double estimate = factor * sums[q] + constant;
+            if (Math.abs(estimate - targets[q]) > 1e-6 * Math.max(1, Math.abs(targets[q]))) {
+                throw new UnsupportedOperationException("The structure of this SVM model is not recognized; "
+                        + "it cannot be exported in PMML.");
+            }
+        }
+
+        String output = predicted(model).get(0);
+        header(w, model, "SVM Model", inputs, single(output));
+        w.start("SupportVectorMachineModel", "modelName", model.getUri().getId(), "functionName", "regression",
+                "algorithmName", "SVMreg", "svmRepresentation", "SupportVectors");
+        double[] replacements = null;
+        if (means != null) {
+            replacements = new double[p];
+            for (int k = 0; k < p; k++) {
+                replacements[k] = means[attributes[k]];
+            }
+        }
+        miningSchema(w, inputs, replacements, single(output));
+        w.start("Targets");
+        w.empty("Target", "field", output, "rescaleFactor", factor, "rescaleConstant", constant);
+        w.end();
+        w.start("LocalTransformations");
+        for (int k = 0; k < p; k++) {
+            w.start("DerivedField", "name", "normalized:" + inputs.get(k), "optype", "continuous", "dataType", "double");
+            w.start("NormContinuous", "field", inputs.get(k));
+            w.empty("LinearNorm", "orig", 0.0, "norm", shift[k]);
+            w.empty("LinearNorm", "orig", 1.0, "norm", shift[k] + scale[k]);
+            w.end();
+            w.end();
+        }
+        w.end();
+        if (kernel instanceof RBFKernel) {
+            w.empty(kernelType, "gamma", gamma);
+        } else {
+            w.empty(kernelType, "gamma", 1.0, "coef0", coef0, "degree", degree);
+        }
+        w.start("VectorDictionary", "numberOfVectors", vectors.size());
+        w.start("VectorFields", "numberOfFields", p);
+        for (int k = 0; k < p; k++) {
+            w.empty("FieldRef", "field", "normalized:" + inputs.get(k));
+        }
+        w.end();
+        for (int i = 0; i < vectors.size(); i++) {
+            w.start("VectorInstance", "id", i);
+            w.array(vectors.get(i));
+            w.end();
+        }
+        w.end();
+        w.start("SupportVectorMachine", "numberOfSupportVectors", vectors.size(), "numberOfAttributes", p);
+        w.start("SupportVectors", "numberOfSupportVectors", vectors.size(), "numberOfAttributes", p);
+        for (int i = 0; i < vectors.size(); i++) {
+            w.empty("SupportVector", "vectorId", i);
+        }
+        w.end();
+        w.start("Coefficients", "numberOfCoefficients", coefficients.size(), "absoluteValue", 0.0);
+        for (Double c : coefficients) {
+            w.empty("Coefficient", "value", c);
+        }
+        w.end();
+        w.end();
+        w.end();
+    }
+
+    private static double kernelSum(double[] raw, double[] scale, double[] shift, List<double[]> vectors,
+            List<Double> coefficients, double gamma, double coef0, double degree, boolean radialBasis) {
+        int p = raw.length;
+        double sum = 0;
+        for (int i = 0; i < vectors.size(); i++) {
+            double[] v = vectors.get(i);
+            double k = 0;
+            for (int j = 0; j < p; j++) {
+                double x = scale[j] * raw[j] + shift[j];
+                k += radialBasis ? (x - v[j]) * (x - v[j]) : x * v[j];
+            }
+            k = radialBasis ? Math.exp(-gamma * k) : Math.pow(k + coef0, degree);
+            sum += coefficients.get(i) * k;
+        }
+        return sum;
+    }
+
+    /**
+     * An instance with the structure of the training data whose features all have
+     * the given value (the class is missing).
+     */
+    private static Instance probe(Instances header, double value) {
+        double[] values = new double[header.numAttributes()];
+        for (int j = 0; j < values.length; j++) {
+            values[j] = j == header.classIndex() ? Instance.missingValue() : value;
+        }
+        Instance instance = new Instance(1.0, values);
+        instance.setDataset(header);
+        return instance;
+    }
+
+    private static double[] filter(Filter filter, Instance instance) throws JaqpotException {
+        if (filter == null) {
+            return instance.toDoubleArray();
+        }
+        try {
+            if (!filter.input(instance)) {
+                throw new UnsupportedOperationException("The filters of this SVM model cannot be exported in PMML.");
+            }
+            return filter.output().toDoubleArray();
+        } catch (UnsupportedOperationException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new JaqpotException("The filters of the SVM model cannot be applied", ex);
+        }
+    }
+
+    private static double classify(SVMreg regressor, Instances header, int[] attributes, double[] raw)
+            throws JaqpotException {
+        Instance instance = probe(header, 0);
+        for (int k = 0; k < attributes.length; k++) {
+            instance.setValue(attributes[k], raw[k]);
+        }
+        try {
+            return regressor.classifyInstance(instance);
+        } catch (Exception ex) {
+            throw new JaqpotException("The SVM model cannot be evaluated", ex);
+        }
+    }
+
+    /**
+     * RBF networks are written as neural networks with a hidden layer of radial
+     * basis neurons and an output neuron without bias; the width of a neuron is
+     * <code>sigma/sqrt(2)</code> so that its activation is
+     * <code>exp(-|x-c|^2/sigma^2)</code>.
+     */
+    private static void fastRbfNn(Model model, FastRbfNnModel rbf, PmmlWriter w) throws IOException, JaqpotException {
+        List<String> inputs = uris(model.getIndependentFeatures());
+        String output = predicted(model).get(0);
+        Instances nodes = rbf.getNodes();
+        double[] sigma = rbf.getSigma();
+        double[] coefficients = rbf.getLrCoefficients();
+        if (nodes.numAttributes() != inputs.size()) {
+            throw new JaqpotException("The nodes of the RBF network do not match the independent features of the model");
+        }
+        header(w, model, "RBF Neural Network", inputs, single(output));
+        w.start("NeuralNetwork", "modelName", model.getUri().getId(), "functionName", "regression",
+                "algorithmName", "fastRbfNn", "activationFunction", "identity");
+        miningSchema(w, inputs, null, single(output));
+        w.start("NeuralInputs", "numberOfInputs", inputs.size());
+        for (int j = 0; j < inputs.size(); j++) {
+            w.start("NeuralInput", "id", "i" + j);
+            w.start("DerivedField", "optype", "continuous", "dataType", "double");
+            w.empty("FieldRef", "field", inputs.get(j));
+            w.end();
+            w.end();
+        }
+        w.end();
+        int numNodes = nodes.numInstances();
+        w.start("NeuralLayer", "numberOfNeurons", numNodes, "activationFunction", "radialBasis");
+        for (int k = 0; k < numNodes; k++) {
+            w.start("Neuron", "id", "h" + k, "width", sigma[k] / Math.sqrt(2));
+            Instance node = nodes.instance(k);
+            for (int j = 0; j < inputs.size(); j++) {
+                w.empty("Con", "from", "i" + j, "weight", node.value(j));
+            }
+            w.end();
+        }
+        w.end();
+        w.start("NeuralLayer", "numberOfNeurons", 1, "activationFunction", "identity");
+        w.start("Neuron", "id", "o", "bias", 0.0);
+        for (int k = 0; k < numNodes; k++) {
+            w.empty("Con", "from", "h" + k, "weight", coefficients[k]);
+        }
+        w.end();
+        w.end();
+        w.start("NeuralOutputs", "numberOfOutputs", 1);
+        w.start("NeuralOutput", "outputNeuron", "o");
+        w.start("DerivedField", "optype", "continuous", "dataType", "double");
+        w.empty("FieldRef", "field", output);
+        w.end();
+        w.end();
+        w.end();
+        w.end();
+    }
+
+    /**
+     * PLS scores (and the prediction of the target, if the model updates it) are
+     * linear in the independent variables; the centering and scaling of the data
+     * is folded into the coefficients.
+     */
+    private static void pls(Model model, PLSModel pls, PmmlWriter w) throws IOException, JaqpotException {
+        String[] features = pls.getFeatures();
+        List<String> inputs = new ArrayList<String>();
+        for (String f : features) {
+            inputs.add(f);
+        }
+        List<String> outputs = predicted(model);
+        int numComponents = pls.getNumComponents();
+        if (outputs.size() < numComponents) {
+            throw new JaqpotException("The PLS model predicts fewer features than its components");
+        }
+        outputs = new ArrayList<String>(outputs.subList(0, numComponents));
+        double[] offset = pls.getXOffset();
+        double[] xScale = pls.getXScale();
+        double[][] projection = pls.getProjection();
+        int p = features.length;
+        List<double[]> tables = new ArrayList<double[]>();
+        for (int a = 0; a < numComponents; a++) {
+            /* p coefficients followed by the intercept */
+            double[] table = new double[p + 1];
+            for (int j = 0; j < p; j++) {
+                table[j] = projection[a][j] / xScale[j];
+                table[p] -= projection[a][j] * offset[j] / xScale[j];
+            }
+            tables.add(table);
+        }
+        String target = null;
+        if (model.getParameters() != null) {
+            for (Parameter parameter : model.getParameters()) {
+                if ("target".equals(parameter.getName().getValueAsString())) {
+                    target = parameter.getValue().toString();
+                }
+            }
+        }
+        if (pls.isUpdateClass() && target != null) {
+            double[] table = new double[p + 1];
+            double[] yLoadings = pls.getYLoadings();
+            for (int a = 0; a < numComponents; a++) {
+                for (int j = 0; j <= p; j++) {
+                    table[j] += pls.getYScale() * yLoadings[a] * tables.get(a)[j];
+                }
+            }
+            table[p] += pls.getYOffset();
+            tables.add(table);
+            outputs.add(target);
+        }
+        header(w, model, "PLS Model", inputs, outputs);
+        linearSegments(w, model, "pls", inputs, pls.getXMean(), outputs, tables);
+    }
+
+    /**
+     * Scaled values are <code>(x-min)/(max-min)</code> as computed by the
+     * scaling predictor; features which were constant in the training set are
+     * mapped to 0.
+     */
+    private static void scaling(Model model, ScalingModel scaling, PmmlWriter w) throws IOException, JaqpotException {
+        List<String> inputs = uris(model.getIndependentFeatures());
+        List<String> outputs = predicted(model);
+        if (outputs.size() != inputs.size()) {
+            throw new JaqpotException("The scaling model predicts " + outputs.size() + " features for "
+                    + inputs.size() + " independent features");
+        }
+        Map<String, Double> mins = scaling.getMinVals2();
+        Map<String, Double> maxs = scaling.getMaxVals2();
+        List<double[]> tables = new ArrayList<double[]>();
+        for (int j = 0; j < inputs.size(); j++) {
+            Double min = mins.get(inputs.get(j));
+            Double max = maxs.get(inputs.get(j));
+            if (min == null || max == null) {
+                throw new JaqpotException("No range is available for the feature " + inputs.get(j));
+            }
+            double[] table = new double[inputs.size() + 1];
+            if (max > min) {
+                table[j] = 1 / (max - min);
+                table[inputs.size()] = -min / (max - min);
+            }
+            tables.add(table);
+        }
+        header(w, model, "Scaling Model", inputs, outputs);
+        linearSegments(w, model, "scaling", inputs, null, outputs, tables);
+    }
+
+    /**
+     * The leverages indicator <code>max(0, 1 - x'Ωx/γ)</code> is a quadratic
+     * regression model (squares and pairwise products of the features) whose
+     * target is bounded below by 0.
+     */
+    private static void leverages(Model model, LeveragesModel leverages, PmmlWriter w) throws IOException, JaqpotException {
+        List<String> inputs = uris(model.getIndependentFeatures());
+        String output = predicted(model).get(0);
+        Matrix omega = leverages.getDataMatrix();
+        double gamma = leverages.getGamma();
+        int k = inputs.size();
+        if (omega.getRowDimension() != k || omega.getColumnDimension() != k) {
+            throw new JaqpotException("The leverages matrix does not match the independent features of the model");
+        }
+        header(w, model, "Leverages DoA Model", inputs, single(output));
+        w.start("RegressionModel", "modelName", model.getUri().getId(), "functionName", "regression",
+                "algorithmName", "leverages", "targetFieldName", output);
+        miningSchema(w, inputs, null, single(output));
+        w.start("Targets");
+        w.empty("Target", "field", output, "min", 0.0);
+        w.end();
+        w.start("RegressionTable", "intercept", 1.0);
+        for (int i = 0; i < k; i++) {
+            w.empty("NumericPredictor", "name", inputs.get(i), "exponent", 2, "coefficient", -omega.get(i, i) / gamma);
+        }
+        for (int i = 0; i < k; i++) {
+            for (int j = i + 1; j < k; j++) {
+                double coefficient = -(omega.get(i, j) + omega.get(j, i)) / gamma;
+                if (coefficient != 0) {
+                    w.start("PredictorTerm", "coefficient", coefficient);
+                    w.empty("FieldRef", "field", inputs.get(i));
+                    w.empty("FieldRef", "field", inputs.get(j));
+                    w.end();
+                }
+            }
+        }
+        w.end();
+        w.end();
+    }
+
+    /**
+     * A mining model which selects all of its segments, each one being a linear
+     * regression model for one of the outputs.
+     * @param tables
+     *      For every output, the coefficients of the inputs followed by the intercept.
+     */
+    private static void linearSegments(PmmlWriter w, Model model, String algorithm, List<String> inputs,
+            double[] replacements, List<String> outputs, List<double[]> tables) throws IOException {
+        int p = inputs.size();
+        w.start("MiningModel", "modelName", model.getUri().getId(), "functionName", "regression",
+                "algorithmName", algorithm);
+        miningSchema(w, inputs, replacements, outputs);
+        w.start("Segmentation", "multipleModelMethod", "selectAll");
+        for (int o = 0; o < outputs.size(); o++) {
+            double[] table = tables.get(o);
+            w.start("Segment", "id", o + 1);
+            w.empty("True");
+            w.start("RegressionModel", "functionName", "regression", "targetFieldName", outputs.get(o));
+            List<String> used = new ArrayList<String>();
+            for (int j = 0; j < p; j++) {
+                if (table[j] != 0) {
+                    used.add(inputs.get(j));
+                }
+            }
+            miningSchema(w, used, null, single(outputs.get(o)));
+            w.start("RegressionTable", "intercept", table[p]);
+            for (int j = 0; j < p; j++) {
+                if (table[j] != 0) {
+                    w.empty("NumericPredictor", "name", inputs.get(j), "coefficient", table[j]);
+                }
+            }
+            w.end();
+            w.end();
+            w.end();
+        }
+        w.end();
+        w.end();
+    }
+
+    private static void header(PmmlWriter w, Model model, String description, List<String> inputs,
+            List<String> outputs) throws IOException {
+        w.start("PMML", "version", PmmlWriter.PMML_VERSION, "xmlns", PmmlWriter.PMML_NAMESPACE);
+        w.start("Header", "copyright", _COPYRIGHT, "description", description);
+        w.empty("Extension", "extender", "Jaqpot", "name", "model", "value", model.getUri());
+        w.empty("Extension", "extender", "Jaqpot", "name", "algorithm", "value", model.getAlgorithm().getUri());
+        if (model.getDataset() != null) {
+            w.empty("Extension", "extender", "Jaqpot", "name", "dataset", "value", model.getDataset());
+        }
+        w.empty("Application", "name", "Jaqpot");
+        w.text("Timestamp", GregorianCalendar.getInstance().getTime().toString());
+        w.end();
+        w.start("DataDictionary", "numberOfFields", inputs.size() + outputs.size());
+        for (String field : inputs) {
+            w.empty("DataField", "name", field, "optype", "continuous", "dataType", "double");
+        }
+        for (String field : outputs) {
+            if (!inputs.contains(field)) {
+                w.empty("DataField", "name", field, "optype", "continuous", "dataType", "double");
+            }
+        }
+        w.end();
+    }
+
+    private static void miningSchema(PmmlWriter w, List<String> inputs, double[] replacements,
+            List<String> outputs) throws IOException {
+        w.start("MiningSchema");
+        for (int j = 0; j < inputs.size(); j++) {
+            w.empty("MiningField", "name", inputs.get(j),
+                    "missingValueReplacement", replacements != null ? (Object) replacements[j] : null);
+        }
+        for (String output : outputs) {
+            w.empty("MiningField", "name", output, "usageType", "predicted");
+        }
+        w.end();
+    }
+
+    private static List<String> uris(List<Feature> features) {
+        List<String> uris = new ArrayList<String>(features.size());
+        for (Feature f : features) {
+            uris.add(f.getUri().toString());
+        }
+        return uris;
+    }
+
+    private static List<String> predicted(Model model) throws JaqpotException {
+        List<String> outputs = uris(model.getPredictedFeatures());
+        if (outputs.isEmpty()) {
+            throw new JaqpotException("The model has no predicted features");
+        }
+        return outputs;
+    }
+
+    private static List<String> single(String field) {
+        List<String> list = new ArrayList<String>(1);
+        list.add(field);
+        return list;
+    }
+}
@@ -0,0 +1,525 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+
+package org.opentox.jaqpot3.qsar.util;
+
+import Jama.Matrix;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.pool.ComputePool;
+import org.opentox.jaqpot3.qsar.serializable.PLSModel;
+
+/**
+ * Partial Least Squares regression for a single response on primitive arrays.
+ * Two algorithms are supported: PLS1 (NIPALS with deflation of the independent
+ * variables) and SIMPLS (de Jong, 1993). The data may be left as is, centered or
+ * standardized (centered and divided by the standard deviation) before the
+ * components are extracted. The matrix-vector products and the deflation steps
+ * which dominate the cost of training on wide datasets are split in blocks of
+ * rows or columns and run in parallel on the {@link ComputePool}.
+ *
+ * <p>For both algorithms the components are nested: the model with the first
+ * <code>c</code> components of a model is the one that would be trained with
+ * <code>c</code> components. This is exploited in {@link #selectNumComponents(double[][], double[], int, int, long)
+ * selectNumComponents} which evaluates all numbers of components up to some
+ * maximum with a single model per fold.</p>
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class PartialLeastSquares {
+
+    public enum Type {
+
+        PLS1,
+        SIMPLS;
+    }
+
+    public enum Preprocessing {
+
+        none,
+        center,
+        standardize;
+    }
+    private static final double _EPSILON = 1e-12;
+    /**
+     * Minimum size (rows x columns) of a matrix for its products to be computed in parallel
+     */
+    private static final long _PARALLEL_THRESHOLD = 100000;
+    private static final int _MIN_BLOCK_SIZE = 64;
+    private final Type type;
+    private final Preprocessing preprocessing;
+
+    public PartialLeastSquares(Type type, Preprocessing preprocessing) {
+        this.type = type;
+        this.preprocessing = preprocessing;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Preprocessing getPreprocessing() {
+        return preprocessing;
+    }
+
+    /**
+     * Trains a PLS model. Missing values (<code>NaN</code>) of the independent
+     * variables are replaced by the mean of the corresponding column; the provided
+     * arrays are not modified. Fewer than <code>numComponents</code> components are
+     * extracted if the residuals vanish earlier.
+     *
+     * @param x
+     *      Independent variables; one row per instance.
+     * @param y
+     *      Target values (no missing values are allowed).
+     * @param numComponents
+     *      Number of components to extract.
+     * @return
+     *      The trained model.
+     * @throws JaqpotException
+     *      If the data are insufficient or no component can be extracted.
+     */
+    public PLSModel fit(double[][] x, double[] y, int numComponents) throws JaqpotException {
+        final int n = x.length;
+        final int p = n > 0 ? x[0].length : 0;
+        if (n < 2 || p < 1) {
+            throw new JaqpotException("PLS needs at least 2 instances and 1 independent feature "
+                    + "(instances: " + n + ", features: " + p + ")");
+        }
+        if (numComponents < 1) {
+            throw new JaqpotException("The number of PLS components must be positive");
+        }
+
+        /* Column means (over the non-missing values) and standard deviations */
+        double[] xMean = new double[p];
+        int[] counts = new int[p];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < p; j++) {
+                if (!Double.isNaN(x[i][j])) {
+                    xMean[j] += x[i][j];
+                    counts[j]++;
+                }
+            }
+        }
+        for (int j = 0; j < p; j++) {
+            xMean[j] = counts[j] > 0 ? xMean[j] / counts[j] : 0;
+        }
+        double[] xOffset = new double[p];
+        double[] xScale = new double[p];
+        Arrays.fill(xScale, 1);
+        double yMean = 0;
+        for (int i = 0; i < n; i++) {
+            yMean += y[i];
+        }
+        yMean /= n;
+        double yOffset = 0, yScale = 1;
+        if (preprocessing != Preprocessing.none) {
+            System.arraycopy(xMean, 0, xOffset, 0, p);
+            yOffset = yMean;
+        }
+        if (preprocessing == Preprocessing.standardize) {
+            double[] sumSq = new double[p];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < p; j++) {
+                    double d = (Double.isNaN(x[i][j]) ? xMean[j] : x[i][j]) - xMean[j];
+                    sumSq[j] += d * d;
+                }
+            }
+            for (int j = 0; j < p; j++) {
+                double std = Math.sqrt(sumSq[j] / (n - 1));
+                xScale[j] = std > _EPSILON ? std : 1;
+            }
+            double ySumSq = 0;
+            for (int i = 0; i < n; i++) {
+                ySumSq += (y[i] - yMean) * (y[i] - yMean);
+            }
+            double yStd = Math.sqrt(ySumSq / (n - 1));
+            yScale = yStd > _EPSILON ? yStd : 1;
+        }
+
+        /* Preprocessed copies (the deflation of PLS1 modifies them) */
+        double[][] xs = new double[n][p];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < p; j++) {
+                double value = Double.isNaN(x[i][j]) ? xMean[j] : x[i][j];
+                xs[i][j] = (value - xOffset[j]) / xScale[j];
+            }
+            ys[i] = (y[i] - yOffset) / yScale;
+        }
+
+        int maxComponents = Math.min(numComponents, Math.min(n, p));
+        double[][] weights = new double[maxComponents][];
+        double[][] loadings = new double[maxComponents][];
+        double[][] projection;
+        double[] yLoadings = new double[maxComponents];
+        int extracted = 0;
+
+        if (type == Type.PLS1) {
+            for (int a = 0; a < maxComponents; a++) {
+                double[] w = transposeTimes(xs, ys);
+                double wNorm = norm(w);
+                if (wNorm < _EPSILON) {
+                    break;
+                }
+                scale(w, 1 / wNorm);
+                double[] t = times(xs, w);
+                double tt = dot(t, t);
+                if (tt < _EPSILON) {
+                    break;
+                }
+                double[] loading = transposeTimes(xs, t);
+                scale(loading, 1 / tt);
+                double q = dot(ys, t) / tt;
+                deflate(xs, t, loading);
+                for (int i = 0; i < n; i++) {
+                    ys[i] -= q * t[i];
+                }
+                weights[a] = w;
+                loadings[a] = loading;
+                yLoadings[a] = q;
+                extracted++;
+            }
+            if (extracted == 0) {
+                throw new JaqpotException("No PLS component could be extracted from the data");
+            }
+            /* R = W (P'W)^-1 where P'W is upper triangular */
+            double[][] ptw = new double[extracted][extracted];
+            for (int a = 0; a < extracted; a++) {
+                for (int b = 0; b < extracted; b++) {
+                    ptw[a][b] = dot(loadings[a], weights[b]);
+                }
+            }
+            double[][] inverse = new Matrix(ptw).inverse().getArray();
+            projection = new double[extracted][p];
+            for (int a = 0; a < extracted; a++) {
+                for (int b = 0; b <= a; b++) {
+                    double coefficient = inverse[b][a];
+                    if (coefficient != 0) {
+                        double[] w = weights[b];
+                        double[] r = projection[a];
+                        for (int j = 0; j < p; j++) {
+                            r[j] += coefficient * w[j];
+                        }
+                    }
+                }
+            }
+        } else {
+            double[] s = transposeTimes(xs, ys);
+            List<double[]> basis = new ArrayList<double[]>(maxComponents);
+            for (int a = 0; a < maxComponents; a++) {
+                double[] r = s.clone();
+                double[] t = times(xs, r);
+                double tNorm = norm(t);
+                if (tNorm < _EPSILON) {
+                    break;
+                }
+                scale(t, 1 / tNorm);
+                scale(r, 1 / tNorm);
+                double[] loading = transposeTimes(xs, t);
+                double q = dot(ys, t);
+                /* Orthonormal basis of the loadings; S is projected on its complement */
+                double[] v = loading.clone();
+                for (double[] previous : basis) {
+                    double projectionOnPrevious = dot(previous, loading);
+                    for (int j = 0; j < p; j++) {
+                        v[j] -= projectionOnPrevious * previous[j];
+                    }
+                }
+                double vNorm = norm(v);
+                if (vNorm < _EPSILON) {
+                    break;
+                }
+                scale(v, 1 / vNorm);
+                double vs = dot(v, s);
+                for (int j = 0; j < p; j++) {
+                    s[j] -= vs * v[j];
+                }
+                basis.add(v);
+                weights[a] = r;
+                loadings[a] = loading;
+                yLoadings[a] = q;
+                extracted++;
+            }
+            if (extracted == 0) {
+                throw new JaqpotException("No PLS component could be extracted from the data");
+            }
+            projection = new double[extracted][];
+            System.arraycopy(weights, 0, projection, 0, extracted);
+        }
+
+        if (extracted < maxComponents) {
+            double[][] w = new double[extracted][];
+            double[][] l = new double[extracted][];
+            double[] q = new double[extracted];
+            System.arraycopy(weights, 0, w, 0, extracted);
+            System.arraycopy(loadings, 0, l, 0, extracted);
+            System.arraycopy(yLoadings, 0, q, 0, extracted);
+            weights = w;
+            loadings = l;
+            yLoadings = q;
+        }
+        return new PLSModel(type.toString(), preprocessing.toString(), xMean, xOffset, xScale, yOffset, yScale,
+                weights, loadings, projection, yLoadings);
+    }
+
+    /**
+     * Selects the number of components by k-fold cross validation: the number of
+     * components (up to <code>maxComponents</code>) that minimizes the PRESS
+     * statistic; if several do, the smallest one is chosen. The folds are processed
+     * in parallel.
+     *
+     * @param x
+     *      Independent variables; one row per instance.
+     * @param y
+     *      Target values.
+     * @param maxComponents
+     *      Maximum number of components to consider.
+     * @param numFolds
+     *      Number of folds (at most the number of instances).
+     * @param seed
+     *      Seed used to assign instances to folds.
+     * @return
+     *      The selected number of components.
+     * @throws JaqpotException
+     *      If some model cannot be trained or the computation is interrupted.
+     */
+    public int selectNumComponents(final double[][] x, final double[] y, int maxComponents,
+            int numFolds, long seed) throws JaqpotException {
+        final int numInstances = x.length;
+        final int folds = Math.min(numFolds, numInstances);
+        if (folds < 2) {
+            throw new JaqpotException("Cross validation needs at least 2 folds and 2 instances "
+                    + "(folds: " + numFolds + ", instances: " + numInstances + ")");
+        }
+        /* The smallest training set must be able to provide all components */
+        final int components = Math.max(1, Math.min(maxComponents, numInstances - (numInstances + folds - 1) / folds - 1));
+
+        /* Seeded permutation; fold f is tested on the positions j with j%folds == f */
+        final int[] permutation = new int[numInstances];
+        for (int i = 0; i < numInstances; i++) {
+            permutation[i] = i;
+        }
+        Random random = new Random(seed);
+        for (int i = numInstances - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int temp = permutation[i];
+            permutation[i] = permutation[j];
+            permutation[j] = temp;
+        }
+
+        /* press[f][c-1]: sum of squared errors of fold f with c components */
+        final double[][] press = new double[folds][components];
+        List<Callable<Object>> jobs = new ArrayList<Callable<Object>>(folds);
+        for (int f = 0; f < folds; f++) {
+            final int fold = f;
+            jobs.add(new Callable<Object>() {
+
+                @Override
+                public Object call() throws Exception {
+                    int testSize = (numInstances - fold + folds - 1) / folds;
+                    double[][] trainX = new double[numInstances - testSize][];
+                    double[] trainY = new double[numInstances - testSize];
+                    int k = 0;
+                    for (int j = 0; j < numInstances; j++) {
+                        if (j % folds != fold) {
+                            trainX[k] = x[permutation[j]];
+                            trainY[k++] = y[permutation[j]];
+                        }
+                    }
+                    PLSModel model = fit(trainX, trainY, components);
+                    int extracted = model.getNumComponents();
+                    for (int j = fold; j < numInstances; j += folds) {
+                        double[] scores = model.scores(x[permutation[j]]);
+                        double target = y[permutation[j]];
+                        for (int c = 1; c <= components; c++) {
+                            double error = model.predict(scores, Math.min(c, extracted)) - target;
+                            press[fold][c - 1] += error * error;
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        try {
+            ComputePool.POOL.invokeAll(jobs);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new JaqpotException("Selection of the number of PLS components was interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new JaqpotException("Selection of the number of PLS components failed", ex.getCause());
+        }
+
+        int best = 1;
+        double bestPress = Double.POSITIVE_INFINITY;
+        for (int c = 1; c <= components; c++) {
+            double total = 0;
+            for (int f = 0; f < folds; f++) {
+                total += press[f][c - 1];
+            }
+            if (total < bestPress) {
+                bestPress = total;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * A block of rows or columns processed by a single thread.
+     */
+    private interface Block {
+
+        void run(int from, int to);
+    }
+
+    /**
+     * Splits <code>[0, size)</code> in blocks and runs them on the compute pool
+     * if the amount of work justifies it.
+     */
+    private static void forBlocks(int size, long work, final Block block) {
+        int numJobs = Math.min(Runtime.getRuntime().availableProcessors(), size / _MIN_BLOCK_SIZE);
+        if (work < _PARALLEL_THRESHOLD || numJobs <= 1) {
+            block.run(0, size);
+            return;
+        }
+        int blockSize = (size + numJobs - 1) / numJobs;
+        List<Callable<Object>> jobs = new ArrayList<Callable<Object>>(numJobs);
+        for (int start = 0; start < size; start += blockSize) {
+            final int from = start;
+            final int to = Math.min(start + blockSize, size);
+            jobs.add(new Callable<Object>() {
+
+                @Override
+                public Object call() throws Exception {
+                    block.run(from, to);
+                    return null;
+                }
+            });
+        }
+        try {
+            ComputePool.POOL.invokeAll(jobs);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while computing matrix products", ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    /**
+     * Computes <code>X'v</code>; parallel over blocks of columns.
+     */
+    private static double[] transposeTimes(final double[][] x, final double[] v) {
+        final int n = x.length;
+        final double[] result = new double[x[0].length];
+        forBlocks(result.length, (long) n * result.length, new Block() {
+
+            @Override
+            public void run(int from, int to) {
+                for (int i = 0; i < n; i++) {
+                    double vi = v[i];
+                    if (vi == 0) {
+                        continue;
+                    }
+                    double[] row = x[i];
+                    for (int j = from; j < to; j++) {
+                        result[j] += row[j] * vi;
+                    }
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Computes <code>Xw</code>; parallel over blocks of rows.
+     */
+    private static double[] times(final double[][] x, final double[] w) {
+        final double[] result = new double[x.length];
+        forBlocks(x.length, (long) x.length * w.length, new Block() {
+
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    result[i] = dot(x[i], w);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Computes <code>X := X - tp'</code>; parallel over blocks of rows.
+     */
+    private static void deflate(final double[][] x, final double[] t, final double[] loading) {
+        forBlocks(x.length, (long) x.length * loading.length, new Block() {
+
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    double ti = t[i];
+                    double[] row = x[i];
+                    for (int j = 0; j < row.length; j++) {
+                        row[j] -= ti * loading[j];
+                    }
+                }
+            }
+        });
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static double norm(double[] a) {
+        return Math.sqrt(dot(a, a));
+    }
+
+    private static void scale(double[] a, double factor) {
+        for (int i = 0; i < a.length; i++) {
+            a[i] *= factor;
+        }
+    }
+}
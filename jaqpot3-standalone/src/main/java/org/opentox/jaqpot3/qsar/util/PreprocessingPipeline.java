@@ -0,0 +1,273 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.qsar.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.qsar.exceptions.QSARException;
+import org.opentox.jaqpot3.qsar.util.AttributeCleanup.AttributeType;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * A preprocessing pipeline for training sets which combines the removal of
+ * attributes by type (as {@link AttributeCleanup} does), the replacement of missing
+ * values (as {@link SimpleMVHFilter} does), the placement of the target attribute
+ * at the end of the dataset and, optionally, the extraction of the target values.
+ * All steps are planned on the header of the input dataset and then applied in a
+ * single pass over its instances which produces a single output dataset, instead
+ * of one intermediate copy of the data per filter. The input dataset is not
+ * modified.
+ *
+ * <p>Usage example:</p>
+ * <pre>
+ * Instances training = new PreprocessingPipeline().
+ *          remove(AttributeType.string).
+ *          replaceMissingValues(true).
+ *          target(targetUri.toString()).
+ *          apply(data);
+ * </pre>
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class PreprocessingPipeline {
+
+    private boolean keepCompoundURI = false;
+    private EnumSet<AttributeType> toBeRemoved = EnumSet.noneOf(AttributeType.class);
+    private boolean replaceMissingValues = false;
+    private String target;
+    private boolean targetRequired = true;
+    private boolean keepTarget = true;
+
+    public PreprocessingPipeline() {
+    }
+
+    /**
+     * Whether the attribute <code>compound_uri</code> (or <code>URI</code>) should be
+     * kept in the output. By default it is removed.
+     */
+    public PreprocessingPipeline keepCompoundURI(boolean keepCompoundURI) {
+        this.keepCompoundURI = keepCompoundURI;
+        return this;
+    }
+
+    /**
+     * Attributes of the given types are removed from the output. The target
+     * attribute is never removed by type; it is checked to be numeric instead.
+     */
+    public PreprocessingPipeline remove(AttributeType... types) {
+        toBeRemoved.addAll(Arrays.asList(types));
+        return this;
+    }
+
+    /**
+     * Whether missing values of numeric and nominal attributes (including the target)
+     * should be replaced by the mean or the mode of their column respectively.
+     */
+    public PreprocessingPipeline replaceMissingValues(boolean replaceMissingValues) {
+        this.replaceMissingValues = replaceMissingValues;
+        return this;
+    }
+
+    /**
+     * Sets the name (URI) of the target attribute which is placed at the end of the
+     * output and set as its class attribute.
+     *
+     * @param target
+     *      Name of the target attribute.
+     * @param required
+     *      If <code>true</code> the training set is rejected when it does not contain
+     *      the target attribute; otherwise the pipeline proceeds without a target.
+     */
+    public PreprocessingPipeline target(String target, boolean required) {
+        this.target = target;
+        this.targetRequired = required;
+        return this;
+    }
+
+    public PreprocessingPipeline target(String target) {
+        return target(target, true);
+    }
+
+    /**
+     * Whether the target attribute should be included in the output (as its last
+     * attribute). If not, its values can be retrieved using
+     * {@link #apply(weka.core.Instances, double[]) }.
+     */
+    public PreprocessingPipeline keepTarget(boolean keepTarget) {
+        this.keepTarget = keepTarget;
+        return this;
+    }
+
+    public Instances apply(Instances data) throws QSARException {
+        return apply(data, null);
+    }
+
+    /**
+     * Applies the pipeline on a dataset.
+     *
+     * @param data
+     *      Input dataset which is not modified.
+     * @param targetValues
+     *      Array of length at least equal to the number of instances of the dataset
+     *      which is filled with the (preprocessed) values of the target attribute, or
+     *      <code>null</code> if these are not needed.
+     * @return
+     *      A new dataset with the retained attributes, having the target attribute
+     *      (if any and if kept) last and set as its class.
+     * @throws QSARException
+     *      If the target attribute is required but not found or if it is not numeric.
+     */
+    public Instances apply(Instances data, double[] targetValues) throws QSARException {
+        int targetIndex = findTarget(data);
+        int[] plan = plan(data, targetIndex);
+        FastVector attributes = new FastVector(plan.length);
+        for (int j : plan) {
+            attributes.addElement(data.attribute(j).copy());
+        }
+        Instances result = new Instances(data.relationName(), attributes, data.numInstances());
+        if (targetIndex >= 0 && keepTarget) {
+            result.setClassIndex(plan.length - 1);
+        }
+
+        double[] replacement = null;
+        if (replaceMissingValues) {
+            replacement = replacements(data, plan, targetIndex);
+        }
+        int numInstances = data.numInstances();
+        for (int i = 0; i < numInstances; i++) {
+            Instance instance = data.instance(i);
+            double[] values = new double[plan.length];
+            for (int k = 0; k < plan.length; k++) {
+                values[k] = value(instance, plan[k], replacement, k);
+            }
+            if (targetValues != null && targetIndex >= 0) {
+                targetValues[i] = value(instance, targetIndex, replacement, plan.length);
+            }
+            result.add(new Instance(instance.weight(), values));
+        }
+        return result;
+    }
+
+    private static double value(Instance instance, int attributeIndex, double[] replacement, int k) {
+        double v = instance.value(attributeIndex);
+        if (replacement != null && Instance.isMissingValue(v) && !Double.isNaN(replacement[k])) {
+            return replacement[k];
+        }
+        return v;
+    }
+
+    private int findTarget(Instances data) throws QSARException {
+        if (target == null) {
+            return -1;
+        }
+        Attribute targetAttribute = data.attribute(target);
+        if (targetAttribute == null) {
+            if (targetRequired) {
+                throw new QSARException("The prediction feature you provided was not found in the dataset :{"
+                        + target + "}");
+            }
+            return -1;
+        }
+        if (!targetAttribute.isNumeric()) {
+            throw new QSARException("The prediction feature you provided is not numeric : {" + target + "}");
+        }
+        return targetAttribute.index();
+    }
+
+    /**
+     * Indices of the input attributes which make up the output, in order, with the
+     * target last.
+     */
+    private int[] plan(Instances data, int targetIndex) {
+        List<Integer> columns = new ArrayList<Integer>(data.numAttributes());
+        for (int j = 0; j < data.numAttributes(); j++) {
+            if (j != targetIndex && retain(data.attribute(j))) {
+                columns.add(j);
+            }
+        }
+        if (targetIndex >= 0 && keepTarget) {
+            columns.add(targetIndex);
+        }
+        int[] plan = new int[columns.size()];
+        for (int k = 0; k < plan.length; k++) {
+            plan[k] = columns.get(k);
+        }
+        return plan;
+    }
+
+    private boolean retain(Attribute attribute) {
+        if (attribute.name().equals("compound_uri") || attribute.name().equalsIgnoreCase("uri")) {
+            return keepCompoundURI;
+        }
+        if (attribute.isNominal()) {
+            return !toBeRemoved.contains(AttributeType.nominal);
+        } else if (attribute.isString()) {
+            return !toBeRemoved.contains(AttributeType.string);
+        } else if (attribute.isNumeric()) {
+            return !toBeRemoved.contains(AttributeType.numeric);
+        }
+        return true;
+    }
+
+    /**
+     * Replacement values for the columns of the plan followed by the one of the
+     * target; <code>NaN</code> for columns whose missing values are left as they are.
+     */
+    private double[] replacements(Instances data, int[] plan, int targetIndex) throws QSARException {
+        ColumnStatistics stats;
+        try {
+            stats = ColumnStatistics.compute(data);
+        } catch (JaqpotException ex) {
+            throw new QSARException(ex);
+        }
+        double[] replacement = new double[plan.length + 1];
+        for (int k = 0; k <= plan.length; k++) {
+            int j = k < plan.length ? plan[k] : targetIndex;
+            if (j >= 0 && stats.getMissingCount(j) > 0
+                    && (data.attribute(j).isNumeric() || data.attribute(j).isNominal())) {
+                replacement[k] = stats.getReplacement(j);
+            } else {
+                replacement[k] = Double.NaN;
+            }
+        }
+        return replacement;
+    }
+}
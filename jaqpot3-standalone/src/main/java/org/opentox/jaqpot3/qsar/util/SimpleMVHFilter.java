@@ -44,7 +44,6 @@ import org.opentox.toxotis.core.component.Dataset;
 import org.opentox.toxotis.exceptions.impl.ToxOtisException;
 import org.opentox.toxotis.factory.DatasetFactory;
 import weka.core.Instances;
-import weka.filters.unsupervised.attribute.ReplaceMissingValues;
 
 /**
  *
@@ -62,16 +61,8 @@ public class SimpleMVHFilter {
     }
 
     public Instances filter(Instances data) throws JaqpotException {
-
-        ReplaceMissingValues replacer = new ReplaceMissingValues();
-        try {
-            replacer.setInputFormat(data);
-            replacer.setIgnoreClass(ignoreClass);
-            Instances filtered_data = ReplaceMissingValues.useFilter(data, replacer);
-            return filtered_data;
-        } catch (Exception ex) {
-            throw new JaqpotException("Cannot apply missing values filtering", ex);
-        }
+        /* Missing values of the class are replaced only if ignoreClass is set (as in ReplaceMissingValues) */
+        return ColumnStatistics.compute(data).replaceMissingValues(data, !ignoreClass);
     }
 
     public Dataset process(Dataset data) throws JaqpotException {
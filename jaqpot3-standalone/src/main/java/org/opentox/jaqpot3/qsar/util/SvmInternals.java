@@ -0,0 +1,143 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.qsar.util;
+
+import java.lang.reflect.Field;
+import weka.classifiers.functions.SVMreg;
+import weka.classifiers.functions.supportVector.RegOptimizer;
+import weka.core.Instances;
+import weka.core.Version;
+import weka.filters.Filter;
+
+/**
+ * The parts of a trained {@link SVMreg} which are needed to export it in PMML but
+ * are not exposed by Weka: the Lagrange multipliers and the training data of its
+ * optimizer and the filters for missing values and normalization. They are read
+ * from the protected fields of Weka 3.6 (<code>m_alpha</code>, <code>m_alphaStar</code>
+ * and <code>m_data</code> of {@link RegOptimizer}, <code>m_Missing</code> and
+ * <code>m_Filter</code> of SVMreg); with any other version of Weka, or if the fields
+ * are not found, an {@link UnsupportedOperationException} is thrown and the model
+ * is simply not exported.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+final class SvmInternals {
+
+    static final int WEKA_MAJOR = 3;
+    static final int WEKA_MINOR = 6;
+    private final double[] alpha;
+    private final double[] alphaStar;
+    private final Instances data;
+    private final Filter missing;
+    private final Filter normalization;
+
+    private SvmInternals(double[] alpha, double[] alphaStar, Instances data, Filter missing, Filter normalization) {
+        this.alpha = alpha;
+        this.alphaStar = alphaStar;
+        this.data = data;
+        this.missing = missing;
+        this.normalization = normalization;
+    }
+
+    /**
+     * Reads the internals of a trained classifier.
+     *
+     * @throws UnsupportedOperationException
+     *      If the version of Weka is not supported or the classifier has no
+     *      support vectors.
+     */
+    static SvmInternals of(SVMreg regressor) {
+        if (Version.MAJOR != WEKA_MAJOR || Version.MINOR != WEKA_MINOR) {
+            throw new UnsupportedOperationException("PMML Representation for SVM models is supported only with Weka "
+                    + WEKA_MAJOR + "." + WEKA_MINOR + "; this is Weka " + Version.VERSION + ".");
+        }
+        RegOptimizer optimizer = regressor.getRegOptimizer();
+        if (optimizer == null || !optimizer.modelBuilt()) {
+            throw new UnsupportedOperationException("The SVM model holds no support vectors");
+        }
+        double[] alpha = (double[]) field(optimizer, RegOptimizer.class, "m_alpha");
+        double[] alphaStar = (double[]) field(optimizer, RegOptimizer.class, "m_alphaStar");
+        Instances data = (Instances) field(optimizer, RegOptimizer.class, "m_data");
+        if (alpha == null || alphaStar == null || data == null) {
+            throw new UnsupportedOperationException("The SVM model holds no support vectors");
+        }
+        return new SvmInternals(alpha, alphaStar, data,
+                (Filter) field(regressor, SVMreg.class, "m_Missing"),
+                (Filter) field(regressor, SVMreg.class, "m_Filter"));
+    }
+
+    private static Object field(Object target, Class<?> declaringClass, String name) {
+        try {
+            Field f = declaringClass.getDeclaredField(name);
+            f.setAccessible(true);
+            return f.get(target);
+        } catch (NoSuchFieldException ex) {
+            throw new UnsupportedOperationException("The structure of this SVM model is not recognized; "
+                    + "it cannot be exported in PMML.", ex);
+        } catch (IllegalAccessException ex) {
+            throw new UnsupportedOperationException("The structure of this SVM model is not recognized; "
+                    + "it cannot be exported in PMML.", ex);
+        }
+    }
+
+    double[] getAlpha() {
+        return alpha;
+    }
+
+    double[] getAlphaStar() {
+        return alphaStar;
+    }
+
+    /**
+     * The training data, normalized, in the order of the multipliers.
+     */
+    Instances getData() {
+        return data;
+    }
+
+    /**
+     * The filter replacing missing values or <code>null</code>.
+     */
+    Filter getMissing() {
+        return missing;
+    }
+
+    /**
+     * The filter normalizing or standardizing the data or <code>null</code>.
+     */
+    Filter getNormalization() {
+        return normalization;
+    }
+}
@@ -33,9 +33,9 @@
  */
 package org.opentox.jaqpot3.resources;
 
+import java.sql.SQLException;
 import java.util.UUID;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.concurrent.RejectedExecutionException;
 import org.opentox.jaqpot3.exception.JaqpotException;
 import org.opentox.jaqpot3.pool.ExecutionPool;
 import org.opentox.jaqpot3.qsar.AlgorithmFinder;
@@ -43,9 +43,15 @@ import org.opentox.jaqpot3.qsar.IClientInput;
 import org.opentox.jaqpot3.qsar.IParametrizableAlgorithm;
 import org.opentox.jaqpot3.qsar.ITrainer;
 import org.opentox.jaqpot3.resources.collections.Algorithms;
+import org.opentox.jaqpot3.resources.publish.Publishable;
 import org.opentox.jaqpot3.resources.publish.Publisher;
+import org.opentox.jaqpot3.resources.publish.RenderedCache;
+import org.opentox.jaqpot3.util.ComponentVersions;
 import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DbMetrics;
+import org.opentox.jaqpot3.util.ServerStatistics;
 import org.opentox.jaqpot3.util.TaskFactory;
+import org.opentox.jaqpot3.util.UserQuotas;
 import org.opentox.jaqpot3.www.ClientInput;
 import org.opentox.jaqpot3.www.URITemplate;
 import org.opentox.jaqpot3.www.services.TrainingService;
@@ -55,11 +61,8 @@ import org.opentox.toxotis.core.component.Algorithm;
 import org.opentox.toxotis.core.component.ServiceRestDocumentation;
 import org.opentox.toxotis.core.component.Task;
 import org.opentox.toxotis.core.component.User;
-import org.opentox.toxotis.database.IDbIterator;
-import org.opentox.toxotis.database.account.AccountManager;
 import org.opentox.toxotis.database.engine.task.AddTask;
 import org.opentox.toxotis.database.engine.user.AddUser;
-import org.opentox.toxotis.database.engine.user.FindUser;
 import org.opentox.toxotis.exceptions.impl.ServiceInvocationException;
 import org.opentox.toxotis.exceptions.impl.ToxOtisException;
 import org.opentox.toxotis.util.aa.policy.PolicyManager;
@@ -102,15 +105,26 @@ public class AlgorithmResource extends JaqpotResource {
         if (acceptString != null) {
             variant.setMediaType(MediaType.valueOf(acceptString));
         }
-        Algorithm a = Algorithms.forName(primaryId);
+        final Algorithm a = Algorithms.forName(primaryId);
         if (a == null) {
             toggleNotFound();
             return errorReport("AlgorithmNotFound", "Algorithm not found on the server", null, variant.getMediaType(), false);
         }
-        Publisher pub = new Publisher(variant.getMediaType());
+        ComponentVersions.Version version = ComponentVersions.ofStatic("algorithm-" + primaryId);
+        Representation notModified = notModified(version, variant, CACHE_STATIC);
+        if (notModified != null) {
+            return notModified;
+        }
+        final MediaType media = variant.getMediaType();
         try {
-            Representation rep = pub.createRepresentation(a, true);
-            return rep;
+            /* Algorithm descriptions are static; each media type is rendered once */
+            Representation rep = RenderedCache.CACHE.get("algorithm-" + primaryId, media, new RenderedCache.Renderer() {
+
+                public Publishable render() throws JaqpotException {
+                    return new Publisher(media).process(a);
+                }
+            });
+            return validated(rep, version, variant);
         } catch (JaqpotException ex) {
             if ("MediaTypeNotSupported".equals(ex.getMessage())) {
                 getResponse().setStatus(Status.CLIENT_ERROR_UNSUPPORTED_MEDIA_TYPE);
@@ -143,23 +157,23 @@ public class AlgorithmResource extends JaqpotResource {
                     "You have to authenticate yourself using the 'Authorization' Header according to the OpenTox API "
                     + "specifications", variant.getMediaType(), false);
         }
-        FindUser finder = new FindUser();
-        finder.setWhere("uid='" + creator.getUid() + "'");
+        /* The account of the user is kept in memory (see UserQuotas) */
+        UserQuotas.Account account = null;
         try {
-            IDbIterator<User> iterator = finder.list();
-            if (iterator.hasNext()) {
-                creator = iterator.next();
-            } else {
-                newUser = true;
-            }
+            account = UserQuotas.account(creator.getUid());
         } catch (DbException ex) {
-            Logger.getLogger(AlgorithmResource.class.getName()).log(Level.SEVERE, null, ex);
-        } finally {
-            try {
-                finder.close();
-            } catch (DbException ex) {
-                Logger.getLogger(AlgorithmResource.class.getName()).log(Level.SEVERE, null, ex);
-            }
+            toggleServerError();
+            return errorReport(ex, "DbError", "Cannot get the quota of the user from "
+                    + "the database - Read Error", variant.getMediaType(), false);
+        } catch (SQLException ex) {
+            toggleServerError();
+            return errorReport(ex, "DbError", "Cannot get the quota of the user from "
+                    + "the database - Read Error", variant.getMediaType(), false);
+        }
+        if (account.getUser() != null) {
+            creator = account.getUser();
+        } else {
+            newUser = true;
         }
 
         /*
@@ -186,7 +200,8 @@ public class AlgorithmResource extends JaqpotResource {
             creator.setMaxParallelTasks(5);
             AddUser addUser = new AddUser(creator);
             try {
-                addUser.write();
+                DbMetrics.write(addUser);
+                UserQuotas.userAdded(creator);
             } catch (DbException ex) {
                 // User is already registered! :-)
                 // Proceed...
@@ -201,24 +216,7 @@ public class AlgorithmResource extends JaqpotResource {
                 }
             }
         }
-        long numModels = 0;
-        try {
-            numModels = new AccountManager(creator).countModels();
-        } catch (DbException ex) {
-            toggleServerError();
-            return errorReport(ex, "DbError", "Cannot get the number of models from "
-                    + "the database - Read Error", variant.getMediaType(), false);
-        }
-
-
-        long numTasksActive = 0;
-        try {
-            numTasksActive = new AccountManager(creator).countActiveTasks();
-        } catch (DbException ex) {
-            toggleServerError();
-            return errorReport(ex, "DbError", "Cannot get the number of running tasks from "
-                    + "the database - Read Error", variant.getMediaType(), false);
-        }
+        long numModels = account.getModels();
         //TODO: This should become user-specific
         int maxModels = creator.getMaxModels();
         int maxTasks = creator.getMaxParallelTasks();
@@ -231,7 +229,7 @@ public class AlgorithmResource extends JaqpotResource {
                     + "models [Insufficient storage]. You are advised to delete some of your models and try again. Check your quota at "
                     + Configuration.BASE_URI + "/user/" + creator.getUid() + "/quota . Maximum number of models for you is : "
                     + maxModels + ".", variant.getMediaType(), false);
-        } else if (numTasksActive >= maxTasks) {
+        } else if (!UserQuotas.admitTask(account, uuid.toString(), maxTasks)) {
             final int retryAfterMinutes = 2;
             toggleServerOverloaded(retryAfterMinutes);
             return errorReport("UserQuotaExceeded",
@@ -261,8 +259,10 @@ public class AlgorithmResource extends JaqpotResource {
         //TODO: Handle Exceptions
         AddTask taskAdder = new AddTask(task);
         try {
-            taskAdder.write();
+            DbMetrics.write(taskAdder);
+            ServerStatistics.taskAdded(task);
         } catch (DbException ex) {
+            UserQuotas.taskEnded(uuid.toString());
             String msg = "Task cannot be added in the database due to connectivity reasons";
             logger.error(msg, ex);
             toggleServerError();
@@ -284,8 +284,13 @@ public class AlgorithmResource extends JaqpotResource {
             algorithm.setTask(task);
             ITrainer trainer = (ITrainer) algorithm;
             TrainingService ts = new TrainingService(trainer, clientInput, getUserToken());
-            ExecutionPool.POOL.run(uuid.toString(), ts);
+            try {
+                ExecutionPool.POOL.run(uuid.toString(), ts);
+            } catch (RejectedExecutionException ex) {
+                return taskRejected(task, ex, variant.getMediaType());
+            }
         } else {
+            UserQuotas.taskEnded(uuid.toString());
             toggleNotFound();
             return errorReport("AlgorithmNotFound", "The algorithm with id '" + primaryId + "' was not found on the server", "details", variant.getMediaType(), false);
         }
@@ -44,8 +44,10 @@ import java.util.logging.Logger;
 import org.opentox.jaqpot3.exception.JaqpotException;
 import org.opentox.jaqpot3.resources.collections.Algorithms;
 import org.opentox.jaqpot3.resources.publish.Publisher;
-import org.opentox.jaqpot3.resources.publish.Representer;
+import org.opentox.jaqpot3.resources.publish.Publishable;
+import org.opentox.jaqpot3.resources.publish.RenderedCache;
 import org.opentox.jaqpot3.resources.publish.UriListPublishable;
+import org.opentox.jaqpot3.util.ComponentVersions;
 import org.opentox.jaqpot3.www.URITemplate;
 import org.opentox.toxotis.core.IRestOperation;
 import org.opentox.toxotis.core.OTComponent;
@@ -108,11 +110,21 @@ public class AlgorithmsResource extends JaqpotResource {
 
     @Override
     protected Representation get(Variant variant) throws ResourceException {
-        MediaType media = variant.getMediaType();
-        UriListPublishable publishable = new UriListPublishable(getAlgorithmUris(), media);
-        Representer representer = new Representer(true);
+        final MediaType media = variant.getMediaType();
+        ComponentVersions.Version version = ComponentVersions.ofStatic("algorithms");
+        Representation notModified = notModified(version, variant, CACHE_STATIC);
+        if (notModified != null) {
+            return notModified;
+        }
         try {
-            return representer.process(publishable);
+            /* The list of algorithms is fixed at startup; each media type is rendered once */
+            Representation rep = RenderedCache.CACHE.get("algorithms", media, new RenderedCache.Renderer() {
+
+                public Publishable render() throws JaqpotException {
+                    return new UriListPublishable(getAlgorithmUris(), media);
+                }
+            });
+            return validated(rep, version, variant);
         } catch (JaqpotException ex) {
             return errorReport(ex, "PublicationException", "Cannot create representation - unexpected condition", media, true);
         }
@@ -122,7 +134,21 @@ public class AlgorithmsResource extends JaqpotResource {
     @Override
     protected Representation describe() {
         setTitle("Algorithm Service");
-        return super.describe();
+        try {
+            return RenderedCache.CACHE.get("wadl-algorithms", MediaType.APPLICATION_WADL, new RenderedCache.Renderer() {
+
+                public Publishable render() throws JaqpotException {
+                    return RenderedCache.publishable(AlgorithmsResource.super.describe());
+                }
+            });
+        } catch (JaqpotException ex) {
+            return super.describe();
+        }
+    }
+
+    @Override
+    protected String getDocumentationKey() {
+        return "algorithms";
     }
 
     @Override
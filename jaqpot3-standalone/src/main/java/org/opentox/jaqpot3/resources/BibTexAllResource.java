@@ -46,6 +46,8 @@ import org.opentox.jaqpot3.pool.PolicyCreationPool;
 import org.opentox.jaqpot3.resources.publish.DbListStreamPublisher;
 import org.opentox.jaqpot3.resources.publish.Publisher;
 import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DbMetrics;
+import org.opentox.jaqpot3.util.UserQuotas;
 import org.opentox.jaqpot3.www.URITemplate;
 import org.opentox.toxotis.client.collection.Services;
 import org.opentox.toxotis.core.IRestOperation;
@@ -59,7 +61,6 @@ import org.opentox.toxotis.ontology.impl.SimpleOntModelImpl;
 import org.opentox.toxotis.core.component.User;
 import org.opentox.toxotis.database.DbReader;
 import org.opentox.toxotis.database.IDbIterator;
-import org.opentox.toxotis.database.account.AccountManager;
 import org.opentox.toxotis.database.engine.bibtex.AddBibTeX;
 import org.opentox.toxotis.database.engine.bibtex.ListBibTeX;
 import org.opentox.toxotis.exceptions.impl.ServiceInvocationException;
@@ -174,14 +175,7 @@ public class BibTexAllResource extends JaqpotResource {
         try {
             creator = getUser();
             if (creator != null) {
-                long entriesForUser = 0;
-//                try {
-                    entriesForUser = 0;//;new AccountManager(creator).countBibTeX();
-//                } catch (DbException ex) {
-//                    toggleServerError();
-//                    return errorReport(ex, "DbError", "Cannot get the number of running tasks from "
-//                            + "the database - Read Error", variant.getMediaType(), false);
-//                }
+                long entriesForUser = UserQuotas.account(creator.getUid()).getBibTeX();
                 int maxEntries = Configuration.getIntegerProperty("jaqpot.max_bibtex_per_user");
                 if (entriesForUser >= maxEntries) { // max obtained or exceeded!
                     toggleForbidden();
@@ -222,7 +216,8 @@ public class BibTexAllResource extends JaqpotResource {
             bib = new BibTeX().readString(postedEntity.getStream());
             bib.setCreatedBy(creator);
             bib.setUri(Configuration.getBaseUri().augment("bibtex", uuid.toString()));
-            new AddBibTeX(bib).write();
+            DbMetrics.write(new AddBibTeX(bib));
+            UserQuotas.bibTeXAdded(creator.getUid());
         } catch (ToxOtisException ex) {
             logger.error("Cannot Parse BibTeX entity POSTed by the client", ex);
         } catch (IOException ex) {
@@ -288,7 +283,8 @@ public class BibTexAllResource extends JaqpotResource {
 
         AddBibTeX adder = new AddBibTeX(bib);
         try {
-            adder.write();
+            DbMetrics.write(adder);
+            UserQuotas.bibTeXAdded(creator.getUid());
         } catch (DbException ex) {
             String msg = "Cannot add bibtex entry to the database";
             logger.error(msg, ex);
@@ -420,7 +416,8 @@ public class BibTexAllResource extends JaqpotResource {
 
         try {
             AddBibTeX adder = new AddBibTeX(bibTex);
-            adder.write();
+            DbMetrics.write(adder);
+            UserQuotas.bibTeXAdded(creator.getUid());
             adder.close();
 
 
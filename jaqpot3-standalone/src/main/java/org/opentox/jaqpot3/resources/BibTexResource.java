@@ -44,6 +44,7 @@ import org.opentox.jaqpot3.exception.JaqpotException;
 import org.opentox.jaqpot3.qsar.IClientInput;
 import org.opentox.jaqpot3.resources.publish.Publisher;
 import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DbMetrics;
 import org.opentox.jaqpot3.www.ClientInput;
 import org.opentox.jaqpot3.www.URITemplate;
 import org.opentox.toxotis.client.VRI;
@@ -102,7 +103,7 @@ public class BibTexResource extends JaqpotResource {
         IDbIterator<BibTeX> bibtexFound = null;
         BibTeX bibtex = null;
         try {
-            bibtexFound = fb.list();
+            bibtexFound = DbMetrics.list(fb);
             if (bibtexFound.hasNext()) {
                 bibtex = bibtexFound.next();
             }
@@ -151,7 +152,7 @@ public class BibTexResource extends JaqpotResource {
         String modelId = modelVri.getId();
         AssociateBibTeX associator = new AssociateBibTeX(modelId, primaryId);
         try {
-            associator.write();
+            DbMetrics.write(associator);
         } catch (DbException ex) {
             Logger.getLogger(BibTexResource.class.getName()).log(Level.SEVERE, null, ex);
         } finally {
@@ -169,7 +170,7 @@ public class BibTexResource extends JaqpotResource {
     protected Representation delete(Variant variant) throws ResourceException {
         DisableComponent disabler = new DisableComponent(primaryId);
         try {
-            int count = disabler.disable();
+            int count = DbMetrics.disable(disabler);
             return new StringRepresentation(count + " components where disabled.\n", MediaType.TEXT_PLAIN);
         } catch (DbException ex) {
             Logger.getLogger(BibTexResource.class.getName()).log(Level.SEVERE, null, ex);
@@ -0,0 +1,223 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.resources;
+
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.pool.ExecutionPool;
+import org.opentox.jaqpot3.qsar.AlgorithmFinder;
+import org.opentox.jaqpot3.qsar.IClientInput;
+import org.opentox.jaqpot3.qsar.ICrossValidatable;
+import org.opentox.jaqpot3.qsar.IParametrizableAlgorithm;
+import org.opentox.jaqpot3.qsar.util.CrossValidationReport;
+import org.opentox.jaqpot3.resources.publish.Publisher;
+import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DbMetrics;
+import org.opentox.jaqpot3.util.ServerStatistics;
+import org.opentox.jaqpot3.util.TaskFactory;
+import org.opentox.jaqpot3.util.UserQuotas;
+import org.opentox.jaqpot3.www.ClientInput;
+import org.opentox.jaqpot3.www.URITemplate;
+import org.opentox.jaqpot3.www.services.CrossValidationService;
+import org.opentox.toxotis.core.component.Task;
+import org.opentox.toxotis.core.component.User;
+import org.opentox.toxotis.database.engine.task.AddTask;
+import org.opentox.toxotis.database.exception.DbException;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.representation.Variant;
+import org.restlet.resource.ResourceException;
+
+/**
+ * Cross validation of algorithms. A POST on <code>/crossvalidation</code> with the
+ * parameters <code>algorithm</code> (the id of the algorithm), <code>dataset_uri</code>,
+ * <code>prediction_feature</code>, the parameters of the algorithm and optionally
+ * <code>folds</code> and <code>seed</code> returns a task; the result of the task
+ * is a report under <code>/crossvalidation/{report_id}</code>.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class CrossValidationResource extends JaqpotResource {
+
+    public static final URITemplate template = new URITemplate("crossvalidation", "report_id", null);
+    public static final URITemplate collectionTemplate = new URITemplate("crossvalidation", null, null);
+    private org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CrossValidationResource.class);
+    private UUID uuid = UUID.randomUUID();
+
+    @Override
+    protected void doInit() throws ResourceException {
+        super.doInit();
+        setAutoCommitting(false);
+        initialize(
+                MediaType.TEXT_PLAIN,
+                MediaType.TEXT_HTML,
+                MediaType.TEXT_URI_LIST,
+                MediaType.APPLICATION_RDF_XML,
+                MediaType.APPLICATION_RDF_TURTLE,
+                MediaType.TEXT_RDF_N3,
+                MediaType.TEXT_RDF_NTRIPLES);
+        parseStandardParameters();
+        updatePrimaryId(template);
+    }
+
+    @Override
+    protected Representation get(Variant variant) throws ResourceException {
+        if (acceptString != null) {
+            variant.setMediaType(MediaType.valueOf(acceptString));
+        }
+        CrossValidationReport report = primaryId != null ? CrossValidationService.getReport(primaryId) : null;
+        if (report == null) {
+            toggleNotFound();
+            return errorReport("ReportNotFound", "No cross validation report found with id " + primaryId,
+                    "Reports are kept in memory for a limited time; the statistics are also available in the "
+                    + "metadata of the corresponding task", variant.getMediaType(), false);
+        }
+        if (MediaType.TEXT_HTML.equals(variant.getMediaType())) {
+            StringBuilder html = new StringBuilder();
+            html.append("<html><head><title>Cross Validation Report</title></head><body>");
+            html.append("<h2>Cross Validation Report</h2><table>");
+            html.append(String.format("<tr><td>R<sup>2</sup></td><td>%f</td></tr>", report.getRSquared()));
+            html.append(String.format("<tr><td>Q<sup>2</sup></td><td>%f</td></tr>", report.getQSquared()));
+            html.append(String.format("<tr><td>RMSE</td><td>%f</td></tr>", report.getRmse()));
+            html.append(String.format("<tr><td>Folds</td><td>%d</td></tr>", report.getNumFolds()));
+            html.append(String.format("<tr><td>Instances</td><td>%d</td></tr>", report.getNumInstances()));
+            html.append(String.format("<tr><td>Seed</td><td>%d</td></tr>", report.getSeed()));
+            html.append("</table></body></html>");
+            return new StringRepresentation(html, MediaType.TEXT_HTML);
+        }
+        return sendMessage(report.toString() + NEWLINE);
+    }
+
+    @Override
+    protected Representation post(Representation entity, Variant variant) throws ResourceException {
+        User creator = getUser();
+        if (creator == null) {
+            toggleUnauthorized();
+            return errorReport("Anonymous", "Anonymous cross validation is not allowed",
+                    "You have to authenticate yourself using the 'subjectid' Header according to the OpenTox API "
+                    + "specifications", variant.getMediaType(), false);
+        }
+        IClientInput clientInput = new ClientInput(entity);
+        String algorithmId = clientInput.getFirstValue("algorithm");
+        if (algorithmId == null) {
+            toggleBadRequest();
+            return errorReport("MissingParameter", "The parameter 'algorithm' is mandatory",
+                    "Provide the id of the algorithm to be cross validated, e.g. 'mlr' or 'svm'", variant.getMediaType(), false);
+        }
+        if (algorithmId.contains("/")) {// Algorithm URI instead of id
+            algorithmId = algorithmId.substring(algorithmId.lastIndexOf('/') + 1);
+        }
+        IParametrizableAlgorithm algorithm = AlgorithmFinder.getAlgorithm(algorithmId);
+        if (algorithm == null) {
+            toggleNotFound();
+            return errorReport("AlgorithmNotFound", "The algorithm with id '" + algorithmId + "' was not found on the server",
+                    null, variant.getMediaType(), false);
+        }
+        if (!(algorithm instanceof ICrossValidatable)) {
+            toggleBadRequest();
+            return errorReport("NotCrossValidatable", "The algorithm with id '" + algorithmId + "' does not support cross validation",
+                    null, variant.getMediaType(), false);
+        }
+
+        UserQuotas.Account account = null;
+        try {
+            account = UserQuotas.account(creator.getUid());
+        } catch (DbException ex) {
+            toggleServerError();
+            return errorReport(ex, "DbError", "Cannot get the number of running tasks from "
+                    + "the database - Read Error", variant.getMediaType(), false);
+        } catch (SQLException ex) {
+            toggleServerError();
+            return errorReport(ex, "DbError", "Cannot get the number of running tasks from "
+                    + "the database - Read Error", variant.getMediaType(), false);
+        }
+        int maxTasks = Configuration.getIntegerProperty("jaqpot.max_tasks_per_user", 5);
+        if (!UserQuotas.admitTask(account, uuid.toString(), maxTasks)) {
+            toggleServerOverloaded(2);
+            return errorReport("UserQuotaExceeded",
+                    "User Quota Exceeded! Cannot create another Task",
+                    "Dear " + creator.getName() + ", " + "you have exceeded your quota on this server (" + maxTasks + "). "
+                    + "Due to technical limitations you are not allowed to run more "
+                    + "tasks in parallel. Wait for any tasks you created to finish and then submit this task.",
+                    variant.getMediaType(), false);
+        }
+
+        Task task = TaskFactory.newQueuedTask(creator, uuid);
+        task.getMeta().addDescription("Asynchronous Task for Cross Validation").
+                addComment("Asynchronous task created for the cross validation of the algorithm: " + algorithmId);
+        AddTask taskAdder = new AddTask(task);
+        try {
+            DbMetrics.write(taskAdder);
+            ServerStatistics.taskAdded(task);
+        } catch (DbException ex) {
+            UserQuotas.taskEnded(uuid.toString());
+            String msg = "Task cannot be added in the database due to connectivity reasons";
+            logger.error(msg, ex);
+            toggleServerError();
+            return errorReport(ex, "DBWriterFailed", msg, variant.getMediaType(), false);
+        } finally {
+            try {
+                taskAdder.close();
+            } catch (DbException ex) {
+                String msg = "Task DB writer is uncloseable";
+                logger.error(msg, ex);
+                toggleServerError();
+                return errorReport(ex, "DBWriterUncloseable", msg, variant.getMediaType(), false);
+            }
+        }
+
+        algorithm.setTask(task);
+        CrossValidationService cvs = new CrossValidationService((ICrossValidatable) algorithm, clientInput,
+                getUserToken(), uuid.toString());
+        try {
+            ExecutionPool.POOL.run(uuid.toString(), cvs);
+        } catch (RejectedExecutionException ex) {
+            return taskRejected(task, ex, variant.getMediaType());
+        }
+
+        Publisher publisher = new Publisher(variant.getMediaType());
+        try {
+            getResponse().setStatus(Status.valueOf((int) task.getHttpStatus()));
+            return publisher.createRepresentation(task, true);
+        } catch (JaqpotException ex) {
+            toggleServerError();
+            return fatalException("PublicationError", ex, null);
+        }
+    }
+}
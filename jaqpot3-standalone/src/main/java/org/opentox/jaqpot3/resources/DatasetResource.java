@@ -0,0 +1,105 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.resources;
+
+import java.net.URISyntaxException;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.resources.publish.DatasetPublishable;
+import org.opentox.jaqpot3.resources.publish.Representer;
+import org.opentox.jaqpot3.util.DatasetCache;
+import org.opentox.jaqpot3.www.URITemplate;
+import org.opentox.toxotis.client.VRI;
+import org.restlet.data.MediaType;
+import org.restlet.representation.Representation;
+import org.restlet.representation.Variant;
+import org.restlet.resource.ResourceException;
+import weka.core.Instances;
+
+/**
+ * Serves the datasets of the dataset cache of this server to other Jaqpot services,
+ * in the binary columnar format or in ARFF. The dataset is specified by its
+ * original URI in the query parameter <code>uri</code>; datasets which are not
+ * cached are not downloaded (404 is returned instead).
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class DatasetResource extends JaqpotResource {
+
+    public static final URITemplate template = new URITemplate("dataset", null, null);
+
+    @Override
+    protected void doInit() throws ResourceException {
+        super.doInit();
+        initialize(
+                DatasetPublishable.APPLICATION_COLUMNAR,
+                DatasetPublishable.TEXT_ARFF);
+        parseStandardParameters();
+    }
+
+    @Override
+    protected Representation get(Variant variant) throws ResourceException {
+        if (acceptString != null) {
+            variant.setMediaType(MediaType.valueOf(acceptString));
+        }
+        String uriString = parseParameter("uri");
+        if (uriString == null) {
+            toggleBadRequest();
+            return errorReport("MissingParameter", "The query parameter 'uri' is mandatory", null,
+                    variant.getMediaType(), false);
+        }
+        VRI uri;
+        try {
+            uri = new VRI(uriString);
+        } catch (URISyntaxException ex) {
+            toggleBadRequest();
+            return errorReport("InvalidUri", "The query parameter 'uri' is not a valid URI", null,
+                    variant.getMediaType(), false);
+        }
+        Instances data = DatasetCache.CACHE.getCached(uri);
+        if (data == null) {
+            toggleNotFound();
+            return errorReport("DatasetNotCached", "The dataset " + uriString + " is not cached on this server", null,
+                    variant.getMediaType(), false);
+        }
+        MediaType media = DatasetPublishable.TEXT_ARFF.equals(variant.getMediaType())
+                ? DatasetPublishable.TEXT_ARFF : DatasetPublishable.APPLICATION_COLUMNAR;
+        try {
+            return new Representer(true).process(new DatasetPublishable(data, media));
+        } catch (JaqpotException ex) {
+            toggleServerError();
+            return errorReport("PublicationError", ex.getMessage(), null, variant.getMediaType(), false);
+        }
+    }
+}
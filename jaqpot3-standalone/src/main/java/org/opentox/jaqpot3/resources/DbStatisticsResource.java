@@ -36,20 +36,26 @@
 package org.opentox.jaqpot3.resources;
 
 import java.io.IOException;
-import java.util.Properties;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import org.opentox.jaqpot3.util.ComponentVersions;
+import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DbMetrics;
+import org.opentox.jaqpot3.util.HttpTransport;
+import org.opentox.jaqpot3.util.ServerStatistics;
 import org.opentox.jaqpot3.www.URITemplate;
-import org.opentox.toxotis.database.engine.model.CountModel;
-import org.opentox.toxotis.database.engine.task.CountTasks;
 import org.opentox.toxotis.database.exception.DbException;
 import org.restlet.data.MediaType;
 import org.restlet.ext.xml.DomRepresentation;
-import org.restlet.ext.xml.XmlRepresentation;
 import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
 import org.restlet.representation.Variant;
 import org.restlet.resource.ResourceException;
 import org.w3c.dom.Document;
@@ -62,6 +68,12 @@ import org.w3c.dom.Element;
 public class DbStatisticsResource extends JaqpotResource {
 
     public static final URITemplate template = new URITemplate("dbstats", null, null);
+    private static final String[] ALGORITHMS = {"mlr", "svm", "fastRbfNn", "scaling", "leverages"};
+    private static final String[] STATUSES = {"queued", "running", "completed", "error", "rejected"};
+    /* The statistics are served from memory for a few seconds */
+    private static final long _TTL = 1000L * Configuration.getIntegerProperty("statistics.ttl", 5);
+    private static volatile String cached = null;
+    private static volatile long cachedAt = 0;
     private org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ErrorResource.class);
 
     @Override
@@ -71,7 +83,33 @@ public class DbStatisticsResource extends JaqpotResource {
         initialize(MediaType.APPLICATION_XML);
     }
 
-    private Document doc() throws DbException {
+    private static long sum(Map<String, Long> counts) {
+        long sum = 0;
+        for (Long count : counts.values()) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    /*
+     * The counts of the given keys (zero if missing) followed by the counts of any
+     * other keys
+     */
+    private static Map<String, Long> ordered(Map<String, Long> counts, String[] keys) {
+        Map<String, Long> ordered = new LinkedHashMap<String, Long>();
+        for (String key : keys) {
+            Long count = counts.get(key);
+            ordered.put(key, count != null ? count : 0L);
+        }
+        for (Map.Entry<String, Long> e : counts.entrySet()) {
+            if (!ordered.containsKey(e.getKey())) {
+                ordered.put(e.getKey(), e.getValue());
+            }
+        }
+        return ordered;
+    }
+
+    private Document doc() throws DbException, SQLException {
         Document document = null;
         try {
             DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
@@ -84,43 +122,95 @@ public class DbStatisticsResource extends JaqpotResource {
             root.setAttribute("timestamp", Long.toString(System.currentTimeMillis()));
 
             /* Number of models*/
+            Map<String, Long> modelCounts = ServerStatistics.getModelsPerAlgorithm();
             Element models = (Element) document.createElement("Models");
-            CountModel modelCounter = new CountModel();
-            int countModels = 0;
-            try {
-                countModels = modelCounter.count();
-            } finally {
-                modelCounter.close();
-            }
-            models.setAttribute("count", countModels + "");
+            models.setAttribute("count", sum(modelCounts) + "");
             /* Models Per Algorithm*/
             Element modelsPerAlgorithm = (Element) document.createElement("ModelsPerAlgorithm");
-
-            updateForAlgorithm(document, modelsPerAlgorithm, models, "mlr");
-            updateForAlgorithm(document, modelsPerAlgorithm, models, "svm");
-            updateForAlgorithm(document, modelsPerAlgorithm, models, "fastRbfNn");
-            updateForAlgorithm(document, modelsPerAlgorithm, models, "scaling");
-            updateForAlgorithm(document, modelsPerAlgorithm, models, "leverages");
-
+            for (Map.Entry<String, Long> e : ordered(modelCounts, ALGORITHMS).entrySet()) {
+                Element modelsX = (Element) document.createElement("ForAlgorithm");
+                modelsX.setAttribute("algorithm", e.getKey());
+                modelsX.setTextContent(e.getValue() + "");
+                modelsPerAlgorithm.appendChild(modelsX);
+            }
+            models.appendChild(modelsPerAlgorithm);
             root.appendChild(models);
 
             /* Number of tasks*/
+            Map<String, Long> taskCounts = ServerStatistics.getTasksPerStatus();
             Element tasks = (Element) document.createElement("Tasks");
-            CountTasks taskCounter = new CountTasks();
-            int countTasks = 0;
-            try {
-                countTasks = taskCounter.count();
-            } finally {
-                taskCounter.close();
-            }
-            tasks.setAttribute("count", countTasks + "");
+            tasks.setAttribute("count", sum(taskCounts) + "");
             root.appendChild(tasks);
-           
-            updateForTask(document, tasks, "queued");
-            updateForTask(document, tasks, "running");
-            updateForTask(document, tasks, "completed");
-            updateForTask(document, tasks, "error");
-            updateForTask(document, tasks, "rejected");
+            for (Map.Entry<String, Long> e : ordered(taskCounts, STATUSES).entrySet()) {
+                Element taskSubElement = (Element) document.createElement("Task");
+                taskSubElement.setAttribute("status", e.getKey());
+                taskSubElement.setTextContent(e.getValue() + "");
+                tasks.appendChild(taskSubElement);
+            }
+
+            /* Throughput and latency of the requests served since the server started */
+            long served = ServerStatistics.getRequests();
+            long uptime = Math.max(1, System.currentTimeMillis() - ComponentVersions.STARTED);
+            Element requests = (Element) document.createElement("Requests");
+            requests.setAttribute("count", Long.toString(served));
+            requests.setAttribute("uptimeMillis", Long.toString(uptime));
+            requests.setAttribute("perMinute", String.format(Locale.ENGLISH, "%.2f", served * 60000.0 / uptime));
+            requests.setAttribute("meanLatencyMillis", String.format(Locale.ENGLISH, "%.2f",
+                    served > 0 ? (double) ServerStatistics.getLatencyMillis() / served : 0.0));
+            requests.setAttribute("maxLatencyMillis", Long.toString(ServerStatistics.getMaxLatencyMillis()));
+            long[] histogram = ServerStatistics.getLatencyHistogram();
+            for (int i = 0; i < histogram.length; i++) {
+                Element bucket = (Element) document.createElement("Latency");
+                if (i < ServerStatistics.LATENCY_BUCKETS.length) {
+                    bucket.setAttribute("belowMillis", Long.toString(ServerStatistics.LATENCY_BUCKETS[i]));
+                } else {
+                    bucket.setAttribute("atLeastMillis", Long.toString(ServerStatistics.LATENCY_BUCKETS[i - 1]));
+                }
+                bucket.setTextContent(Long.toString(histogram[i]));
+                requests.appendChild(bucket);
+            }
+            root.appendChild(requests);
+
+            /* Connection pool and timing of the database operations */
+            Element database = (Element) document.createElement("Database");
+            Element pool = (Element) document.createElement("Pool");
+            for (Map.Entry<String, Long> e : DbMetrics.getPool().entrySet()) {
+                pool.setAttribute(e.getKey(), Long.toString(e.getValue()));
+            }
+            database.appendChild(pool);
+            for (DbMetrics.Statistics statistics : DbMetrics.getOperations()) {
+                Element operation = (Element) document.createElement("Operation");
+                operation.setAttribute("type", statistics.getType());
+                operation.setAttribute("count", Long.toString(statistics.getCount()));
+                operation.setAttribute("failures", Long.toString(statistics.getFailures()));
+                operation.setAttribute("meanMillis", String.format(Locale.ENGLISH, "%.2f",
+                        statistics.getCount() > 0 ? statistics.getTotalMillis() / statistics.getCount() : 0.0));
+                operation.setAttribute("maxMillis", String.format(Locale.ENGLISH, "%.2f", statistics.getMaxMillis()));
+                operation.setAttribute("rows", Long.toString(statistics.getRows()));
+                long[] timings = statistics.getHistogram();
+                for (int i = 0; i < timings.length; i++) {
+                    Element bucket = (Element) document.createElement("Latency");
+                    if (i < DbMetrics.LATENCY_BUCKETS.length) {
+                        bucket.setAttribute("belowMillis", Long.toString(DbMetrics.LATENCY_BUCKETS[i]));
+                    } else {
+                        bucket.setAttribute("atLeastMillis", Long.toString(DbMetrics.LATENCY_BUCKETS[i - 1]));
+                    }
+                    bucket.setTextContent(Long.toString(timings[i]));
+                    operation.appendChild(bucket);
+                }
+                database.appendChild(operation);
+            }
+            root.appendChild(database);
+
+            /* Outbound HTTP connections */
+            HttpTransport transport = HttpTransport.TRANSPORT;
+            Element http = (Element) document.createElement("HttpTransport");
+            http.setAttribute("requests", Long.toString(transport.getRequests()));
+            http.setAttribute("reused", Long.toString(transport.getReusedConnections()));
+            http.setAttribute("discarded", Long.toString(transport.getDiscardedConnections()));
+            http.setAttribute("hostWaits", Long.toString(transport.getHostWaits()));
+            http.setAttribute("hostWaitMillis", Long.toString(transport.getHostWaitMillis()));
+            root.appendChild(http);
 
         } catch (ParserConfigurationException ex) {
             Logger.getLogger(DbStatisticsResource.class.getName()).log(Level.SEVERE, null, ex);
@@ -128,44 +218,22 @@ public class DbStatisticsResource extends JaqpotResource {
         return document;
     }
 
-    private void updateForTask(Document document, Element rootElement, String status) throws DbException {
-        CountTasks taskCounter = new CountTasks();
-        taskCounter.setWhere(String.format("status='%s'", status.toUpperCase()));
-        int countTasks = -1;
-        try {
-            countTasks = taskCounter.count();
-        } finally {
-            taskCounter.close();
-        }
-        Element taskSubElement = (Element) document.createElement("Task");
-        taskSubElement.setAttribute("status", status);
-        taskSubElement.setTextContent(countTasks + "");
-        rootElement.appendChild(taskSubElement);
-    }
-
-    private void updateForAlgorithm(Document document, Element modelsPerAlgorithm, Element models, String algorithmId) throws DbException {
-        // MLR Models
-        int countXModels = 0;
-        CountModel modelXCounter = new CountModel();
-        modelXCounter.setWhere("algorithm like '%" + algorithmId + "'");
-        try {
-            countXModels = modelXCounter.count();
-        } finally {
-            modelXCounter.close();
-        }
-        Element modelsX = (Element) document.createElement("ForAlgorithm");
-        modelsX.setAttribute("algorithm", algorithmId);
-        modelsX.setTextContent(countXModels + "");
-        modelsPerAlgorithm.appendChild(modelsX);
-        models.appendChild(modelsPerAlgorithm);
-    }
-
     @Override
     protected Representation get(Variant variant) throws ResourceException {
         try {
-            return new DomRepresentation(MediaType.APPLICATION_XML, doc());
+            String xml = cached;
+            if (xml == null || System.currentTimeMillis() - cachedAt >= _TTL) {
+                xml = new DomRepresentation(MediaType.APPLICATION_XML, doc()).getText();
+                cached = xml;
+                cachedAt = System.currentTimeMillis();
+            }
+            return new StringRepresentation(xml, MediaType.APPLICATION_XML);
         } catch (DbException ex) {
             throw new ResourceException(500);
+        } catch (SQLException ex) {
+            throw new ResourceException(500);
+        } catch (IOException ex) {
+            throw new ResourceException(500);
         }
 
     }
@@ -40,6 +40,7 @@ import java.util.logging.Logger;
 import org.opentox.jaqpot3.exception.JaqpotException;
 import org.opentox.jaqpot3.resources.publish.Publisher;
 import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DbMetrics;
 import org.opentox.jaqpot3.www.URITemplate;
 import org.opentox.toxotis.core.component.ErrorReport;
 import org.opentox.toxotis.database.IDbIterator;
@@ -85,7 +86,7 @@ public class ErrorResource extends JaqpotResource {
         errorFinder.setSearchById(primaryId);
         ErrorReport foundErrorReport = null;
         try {
-            IDbIterator<ErrorReport> errorReportsFound = errorFinder.list();
+            IDbIterator<ErrorReport> errorReportsFound = DbMetrics.list(errorFinder);
             if (errorReportsFound.hasNext()) {
                 foundErrorReport = errorReportsFound.next();
             }
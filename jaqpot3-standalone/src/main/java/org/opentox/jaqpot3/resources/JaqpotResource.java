@@ -40,32 +40,56 @@ import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
 import java.net.URLDecoder;
+import java.sql.SQLException;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.pool.ExecutionPool;
+import org.opentox.jaqpot3.pool.ReportPool;
+import org.opentox.jaqpot3.resources.publish.CompressedRepresentation;
+import org.opentox.jaqpot3.resources.publish.DbListStreamPublisher;
+import org.opentox.jaqpot3.resources.publish.Publishable;
 import org.opentox.jaqpot3.resources.publish.Publisher;
+import org.opentox.jaqpot3.resources.publish.RenderedCache;
+import org.opentox.jaqpot3.resources.publish.ReportCache;
+import org.opentox.jaqpot3.util.ComponentVersions;
 import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DbMetrics;
+import org.opentox.jaqpot3.util.IdLister;
+import org.opentox.jaqpot3.util.ServerStatistics;
+import org.opentox.jaqpot3.util.TaskFactory;
 import org.opentox.jaqpot3.www.URITemplate;
+import org.opentox.jaqpot3.www.services.ReportService;
+import org.opentox.jaqpot3.www.services.RunnableTaskService;
 import org.opentox.toxotis.client.VRI;
 import org.opentox.toxotis.core.component.DummyComponent;
 import org.opentox.toxotis.core.component.ErrorReport;
 import org.opentox.toxotis.core.component.ServiceRestDocumentation;
+import org.opentox.toxotis.core.component.Task;
 import org.opentox.toxotis.exceptions.impl.ServiceInvocationException;
 import org.opentox.toxotis.exceptions.impl.ToxOtisException;
 import org.opentox.toxotis.util.aa.AuthenticationToken;
 import org.opentox.toxotis.core.component.User;
+import org.opentox.toxotis.database.engine.task.AddTask;
+import org.opentox.toxotis.database.exception.DbException;
 import org.opentox.toxotis.ontology.collection.OTClasses;
 import org.restlet.data.CharacterSet;
 import org.restlet.data.Digest;
+import org.restlet.data.Dimension;
 import org.restlet.data.Form;
 import org.restlet.data.Language;
 import org.restlet.data.MediaType;
 import org.restlet.data.Method;
 import org.restlet.data.Reference;
 import org.restlet.data.Status;
+import org.restlet.data.Tag;
 import org.restlet.ext.wadl.WadlServerResource;
+import org.restlet.representation.EmptyRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.representation.StringRepresentation;
 import org.restlet.representation.Variant;
@@ -92,6 +116,16 @@ public abstract class JaqpotResource extends WadlServerResource {
             + "A monitoring service checks for database connection flaws every 15 minutes and takes actions to restore it. "
             + "Please try again later or contact the server administrators at chvng=atT=mail=d0T=ntua=d0t=gr if the problem is not solved automatically "
             + "in a while" + NEWLINE;
+    /**
+     * Cache-Control of (protected) stored components such as models
+     */
+    protected static final String CACHE_COMPONENT = Configuration.getStringProperty("caching.components",
+            "private, max-age=0, must-revalidate");
+    /**
+     * Cache-Control of resources that do not change while the server runs
+     */
+    protected static final String CACHE_STATIC = "public, max-age="
+            + Configuration.getIntegerProperty("caching.staticMaxAge", 3600);
     protected String acceptString = null;
     protected String max = null;
     protected String page = null;
@@ -495,10 +529,245 @@ public abstract class JaqpotResource extends WadlServerResource {
         return rep;
     }
 
+    /**
+     * Answers a conditional GET for a resource of the given version before the
+     * resource is loaded. If the client's copy (<code>If-None-Match</code> or
+     * <code>If-Modified-Since</code>) is current, a <code>304 Not Modified</code>
+     * response is returned; otherwise the caching headers are set and
+     * <code>null</code> is returned, and the representation should be passed to
+     * {@link #validated(org.restlet.representation.Representation, org.opentox.jaqpot3.util.ComponentVersions.Version, org.restlet.representation.Variant) }.
+     *
+     * @param version
+     *      Version of the resource; <code>null</code> disables the check.
+     * @param cacheControl
+     *      Value of the <code>Cache-Control</code> header of the response.
+     */
+    protected Representation notModified(ComponentVersions.Version version, Variant variant, String cacheControl) {
+        if (version == null) {
+            return null;
+        }
+        responseHeaders().add("Cache-Control", cacheControl);
+        Tag tag = tagOf(version, variant);
+        boolean current = false;
+        List<Tag> noneMatch = getRequest().getConditions().getNoneMatch();
+        if (noneMatch != null && !noneMatch.isEmpty()) {
+            for (Tag t : noneMatch) {
+                /* Weak comparison; compressed representations carry the weak form of the tag */
+                if (Tag.ALL.equals(t) || tag.getName().equals(t.getName())) {
+                    current = true;
+                    break;
+                }
+            }
+        } else {
+            Date since = getRequest().getConditions().getModifiedSince();
+            current = since != null && !version.isModifiedSince(since);
+        }
+        if (!current) {
+            return null;
+        }
+        getResponse().setStatus(Status.REDIRECTION_NOT_MODIFIED);
+        return validated(new EmptyRepresentation(), version, variant);
+    }
+
+    /**
+     * Sets the validators (ETag and Last-Modified) of a representation of a
+     * resource of the given version.
+     */
+    protected Representation validated(Representation representation, ComponentVersions.Version version, Variant variant) {
+        if (representation != null && version != null) {
+            representation.setTag(tagOf(version, variant));
+            representation.setModificationDate(new Date(version.getLastModified()));
+        }
+        return representation;
+    }
+
+    private static Tag tagOf(ComponentVersions.Version version, Variant variant) {
+        MediaType media = variant != null ? variant.getMediaType() : null;
+        return new Tag(version.tag(media != null ? media.getName() : null), false);
+    }
+
+    private Form responseHeaders() {
+        Form responseHeaders = (Form) getResponse().getAttributes().get("org.restlet.http.headers");
+        if (responseHeaders == null) {
+            responseHeaders = new Form();
+            getResponse().getAttributes().put("org.restlet.http.headers", responseHeaders);
+        }
+        return responseHeaders;
+    }
+
+    /**
+     * Streams the IDs listed by a keyset-paginated lister as a list of URIs of the
+     * given collection, applying the URL parameters <code>max</code> (page size),
+     * <code>after</code> (last ID of the previous page) and, for compatibility,
+     * <code>page</code>. When the page is full, the URI of the next page is sent
+     * in a <code>Link</code> header (and at the end of HTML listings).
+     */
+    protected Representation publishIdList(IdLister lister, String collection, Variant variant) {
+        String after = parseParameter("after");
+        int maxInt = -1;
+        int pageInt = 0;
+        try {
+            if (max != null) {
+                maxInt = Integer.parseInt(max);
+            }
+            if (page != null) {
+                pageInt = Integer.parseInt(page);
+            }
+        } catch (NumberFormatException nfe) {
+            toggleBadRequest();
+            return errorReport(nfe, "NumberExpected", "Number was expected for the URL parameters 'max' and 'page'",
+                    variant.getMediaType(), false);
+        }
+        lister.limit(maxInt).after(after);
+        if (after == null && maxInt > 0) {
+            lister.offset(pageInt * maxInt);
+        }
+        DbListStreamPublisher publisher = new DbListStreamPublisher();
+        publisher.setMedia(variant.getMediaType());
+        publisher.setBaseUri(Configuration.getBaseUri().augment(collection));
+        try {
+            String last = lister.lastOfPage();
+            if (last != null) {
+                Reference next = new Reference(getReference());
+                Form query = next.getQueryAsForm();
+                query.removeAll("after");
+                query.removeAll("page");
+                query.add("after", last);
+                next.setQuery(query.getQueryString());
+                publisher.setNextPage(next.toString());
+                responseHeaders().add("Link", "<" + next + ">; rel=\"next\"");
+            }
+            return publisher.process(lister);
+        } catch (DbException ex) {
+            toggleServerError();
+            return errorReport(ex, "DbError", "Error while getting data from the DB", variant.getMediaType(), false);
+        } catch (SQLException ex) {
+            toggleServerError();
+            return errorReport(ex, "DbError", "Error while getting data from the DB", variant.getMediaType(), false);
+        } catch (JaqpotException ex) {
+            return errorReport(ex, "DbError", "Error while getting data from the DB", variant.getMediaType(), false);
+        }
+    }
+
+    /**
+     * Marks a stored (queued) task which was rejected by the {@link ExecutionPool}
+     * (or the {@link ReportPool}) as failed, releasing the quota of its creator,
+     * and reports to the client that the server is overloaded.
+     */
+    protected Representation taskRejected(Task task, RejectedExecutionException ex, MediaType media) {
+        RunnableTaskService.updateRejectedTask(task, ex);
+        toggleServerOverloaded(2);
+        return errorReport(ex, "ServerOverloaded", "The server is overloaded and cannot accept more tasks "
+                + "at the moment. Please try again later.", media, false);
+    }
+
+    /**
+     * Serves a report (e.g. a PDF document) of a resource from the {@link ReportCache}.
+     * Reports are rendered in the background: if the report is not in the cache,
+     * a task that renders it is created (unless one is already running) and the
+     * client is redirected to the task with the status 202 (Accepted); when the
+     * task completes, its result is the resource itself.
+     *
+     * @param key
+     *      Identifies the report and must change whenever the resource changes
+     *      (e.g. the key of the version of the resource).
+     * @param resource
+     *      The URI of the reported resource.
+     */
+    protected Representation report(String key, VRI resource, RenderedCache.Renderer renderer) {
+        Representation cached = ReportCache.CACHE.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        User creator = getUser();
+        Task task = creator != null ? TaskFactory.newQueuedTask(creator) : TaskFactory.newQueuedTask();
+        VRI rendering = ReportCache.CACHE.reserve(key, task.getUri());
+        if (rendering == null) {
+            /* The report may have been stored since the cache was first looked up */
+            cached = ReportCache.CACHE.get(key);
+            if (cached != null) {
+                ReportCache.CACHE.release(key);
+                return cached;
+            }
+            task.getMeta().
+                    addDescription("Asynchronous Task for the rendering of a report of " + resource).
+                    addComment("The report is available at " + resource + " when the task completes");
+            AddTask taskAdder = new AddTask(task);
+            try {
+                DbMetrics.write(taskAdder);
+                ServerStatistics.taskAdded(task);
+            } catch (DbException ex) {
+                ReportCache.CACHE.release(key);
+                String msg = "Task cannot be added in the database due to connectivity reasons";
+                logger.error(msg, ex);
+                toggleServerError();
+                return errorReport(ex, "DBWriterFailed", msg, MediaType.TEXT_PLAIN, false);
+            } finally {
+                try {
+                    taskAdder.close();
+                } catch (DbException ex) {
+                    logger.error("Task registerer (DB writer) is uncloseable", ex);
+                }
+            }
+            try {
+                ReportPool.POOL.run(new ReportService(key, task, resource, renderer));
+            } catch (RejectedExecutionException ex) {
+                ReportCache.CACHE.release(key);
+                return taskRejected(task, ex, MediaType.TEXT_PLAIN);
+            }
+            rendering = task.getUri();
+        }
+        toggleAccepted();
+        getResponse().setLocationRef(rendering.toString());
+        return new StringRepresentation(rendering.toString(), MediaType.TEXT_URI_LIST);
+    }
+
+    /**
+     * Handles the request and compresses the response entity (gzip or deflate) if
+     * the client accepts it and the entity is textual (RDF, ARFF, URI lists etc).
+     * The time taken to handle the request is recorded in the {@link ServerStatistics}.
+     */
     @Override
-    public Representation options(Variant variant) {
-        Publisher pub = new Publisher(variant.getMediaType());
+    public Representation handle() {
+        long start = System.currentTimeMillis();
         try {
+            return compressed(super.handle());
+        } finally {
+            ServerStatistics.requestServed(System.currentTimeMillis() - start);
+        }
+    }
+
+    private Representation compressed(Representation result) {
+        Representation entity = getResponse().getEntity() != null ? getResponse().getEntity() : result;
+        if (entity == null || !CompressedRepresentation.isCompressible(entity.getMediaType())) {
+            return result;
+        }
+        getResponse().getDimensions().add(Dimension.ENCODING);
+        Representation encoded = CompressedRepresentation.encode(entity,
+                getRequest().getClientInfo().getAcceptedEncodings());
+        if (encoded != entity) {
+            getResponse().setEntity(encoded);
+            if (result == entity) {
+                result = encoded;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Representation options(final Variant variant) {
+        final MediaType media = variant.getMediaType();
+        String documentationKey = getDocumentationKey();
+        try {
+            if (documentationKey != null) {
+                return RenderedCache.CACHE.get("options-" + documentationKey, media, new RenderedCache.Renderer() {
+
+                    public Publishable render() throws JaqpotException {
+                        return new Publisher(media).process(getServiceDocumentation(variant));
+                    }
+                });
+            }
+            Publisher pub = new Publisher(media);
             return pub.createRepresentation(getServiceDocumentation(variant), true);
         } catch (JaqpotException ex) {
             toggleServerError();
@@ -508,6 +777,18 @@ public abstract class JaqpotResource extends WadlServerResource {
         }
     }
 
+    /**
+     * Resources whose REST documentation does not change while the server runs
+     * may return a key (unique across the server) so that the documentation is
+     * rendered once per media type and served from {@link RenderedCache}.
+     * @return
+     *      A cache key or <code>null</code> if the documentation should be
+     *      rendered on every request.
+     */
+    protected String getDocumentationKey() {
+        return null;
+    }
+
     /**
      * Subclasses should override this method in order to provide meaningful
      * REST documentation.
@@ -33,8 +33,12 @@
  */
 package org.opentox.jaqpot3.resources;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URISyntaxException;
+import java.sql.SQLException;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.opentox.jaqpot3.exception.JaqpotException;
@@ -42,12 +46,22 @@ import org.opentox.jaqpot3.pool.ExecutionPool;
 import org.opentox.jaqpot3.qsar.IClientInput;
 import org.opentox.jaqpot3.qsar.IPredictor;
 import org.opentox.jaqpot3.qsar.PredictorFinder;
+import org.opentox.jaqpot3.qsar.util.ModelUpdater;
 import org.opentox.jaqpot3.qsar.util.PMMLGenerator;
+import org.opentox.jaqpot3.resources.publish.PDFReports;
+import org.opentox.jaqpot3.resources.publish.Publishable;
 import org.opentox.jaqpot3.resources.publish.Publisher;
+import org.opentox.jaqpot3.resources.publish.RenderedCache;
+import org.opentox.jaqpot3.util.ComponentVersions;
 import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DbMetrics;
+import org.opentox.jaqpot3.util.ModelLoader;
+import org.opentox.jaqpot3.util.ServerStatistics;
 import org.opentox.jaqpot3.util.TaskFactory;
+import org.opentox.jaqpot3.util.UserQuotas;
 import org.opentox.jaqpot3.www.ClientInput;
 import org.opentox.jaqpot3.www.URITemplate;
+import org.opentox.jaqpot3.www.services.ModelUpdateService;
 import org.opentox.jaqpot3.www.services.PredictionService;
 import org.opentox.toxotis.client.VRI;
 import org.opentox.toxotis.core.IRestOperation;
@@ -60,14 +74,10 @@ import org.opentox.toxotis.core.component.RestOperation;
 import org.opentox.toxotis.core.component.ServiceRestDocumentation;
 import org.opentox.toxotis.core.component.Task;
 import org.opentox.toxotis.core.component.User;
-import org.opentox.toxotis.database.IDbIterator;
-import org.opentox.toxotis.database.account.AccountManager;
 import org.opentox.toxotis.database.engine.DisableComponent;
 import org.opentox.toxotis.database.engine.bibtex.AssociateBibTeX;
-import org.opentox.toxotis.database.engine.model.FindModel;
 import org.opentox.toxotis.database.engine.task.AddTask;
 import org.opentox.toxotis.database.engine.user.AddUser;
-import org.opentox.toxotis.database.engine.user.FindUser;
 import org.opentox.toxotis.database.exception.DbException;
 import org.opentox.toxotis.exceptions.impl.ServiceInvocationException;
 import org.opentox.toxotis.exceptions.impl.ToxOtisException;
@@ -79,6 +89,7 @@ import org.opentox.toxotis.util.aa.policy.PolicyManager;
 import org.restlet.data.MediaType;
 import org.restlet.data.Method;
 import org.restlet.data.Status;
+import org.restlet.representation.OutputRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.representation.StringRepresentation;
 import org.restlet.representation.Variant;
@@ -141,7 +152,7 @@ public class ModelResource extends JaqpotResource {
             }
             AssociateBibTeX associator = new AssociateBibTeX(primaryId, bibtexUris);
             try {
-                associator.write();
+                DbMetrics.write(associator);
             } catch (DbException ex) {
                 toggleBadRequest();
                 return errorReport(ex, "DatabaseException", "Cannot associate this model with the submitted list of BibTeX URIs ",
@@ -154,6 +165,7 @@ public class ModelResource extends JaqpotResource {
                     return errorReport(ex, "DatabaseException", "Cannot close a database connection", MediaType.APPLICATION_RDF_XML, false);
                 }
             }
+            ComponentVersions.touch(primaryId);
             toggleSuccess();
             return new StringRepresentation(getCurrentVRINoQuery().toString(), MediaType.TEXT_URI_LIST);
         }
@@ -162,68 +174,85 @@ public class ModelResource extends JaqpotResource {
 
     @Override
     protected Representation get(Variant variant) throws ResourceException {
-        FindModel finder = null;
-        IDbIterator<Model> modelsFound = null;
         try {
             if (acceptString != null) {
                 variant.setMediaType(MediaType.valueOf(acceptString));
             }
-            finder = new FindModel(Configuration.getBaseUri());
-            finder.setSearchById(primaryId);
-            finder.setResolveUsers(true);
-            modelsFound = finder.list();
-            Model mdl = null;
-            if (modelsFound.hasNext()) {
-                mdl = modelsFound.next();
+            /* Models are immutable; answer conditional requests before loading the model */
+            ComponentVersions.Version version = ComponentVersions.ofModel(primaryId);
+            Representation notModified = notModified(version, variant, CACHE_COMPONENT);
+            if (notModified != null) {
+                return notModified;
             }
-            if (mdl == null || (mdl != null && !mdl.isEnabled())) {
+            /* Only the metadata are needed, except for the PMML export */
+            Model mdl = version != null ? ModelLoader.findMetadata(primaryId, version) : null;
+            if (mdl == null) {
                 toggleNotFound();
                 return errorReport("ModelNotFound", "The model you requested was not found in our database",
                         "The model with id " + primaryId + " was not found in the database",
                         variant.getMediaType(), false);
             }
             if (variant.getMediaType().equals(MediaType.APPLICATION_XML)) {
-                try {
-                    return sendMessage(PMMLGenerator.generatePMML(mdl));
-                } catch (UnsupportedOperationException ex) {
+                final Model exported = ModelLoader.withPayload(mdl);
+                if (!PMMLGenerator.supports(exported)) {
                     getResponse().setStatus(Status.SERVER_ERROR_NOT_IMPLEMENTED);
-                    return errorReport("NotSupportedYet", ex.getMessage(),
+                    return errorReport("NotSupportedYet", "PMML Representation for this model is not implemented yet.",
                             "PMML Representation for " + mdl.getAlgorithm() + " models is not implemented yet",
                             variant.getMediaType(), false);
                 }
+                Representation pmml = new OutputRepresentation(MediaType.APPLICATION_XML) {
+
+                    @Override
+                    public void write(OutputStream outputStream) throws IOException {
+                        try {
+                            PMMLGenerator.writePMML(exported, outputStream);
+                        } catch (JaqpotException ex) {
+                            throw new IOException("PMML export failed: " + ex.getMessage(), ex);
+                        } catch (UnsupportedOperationException ex) {
+                            throw new IOException("PMML export failed: " + ex.getMessage(), ex);
+                        }
+                    }
+                };
+                return validated(pmml, version, variant);
+            }
+            if (variant.getMediaType().equals(MediaType.APPLICATION_PDF)) {
+                final Model reported = mdl;
+                Representation pdf = report("pdf-" + version.getKey(), getCurrentVRINoQuery(), new RenderedCache.Renderer() {
+
+                    @Override
+                    public Publishable render() throws JaqpotException {
+                        return PDFReports.model(reported);
+                    }
+                });
+                return Status.SUCCESS_ACCEPTED.equals(getResponse().getStatus()) ? pdf : validated(pdf, version, variant);
             }
             Publisher p = new Publisher(variant.getMediaType());
-            return p.createRepresentation(mdl, true);
+            return validated(p.createRepresentation(mdl, true), version, variant);
         } catch (Exception ex) {
             logger.error(null, ex);
             throw new ResourceException(Status.SERVER_ERROR_INTERNAL);
-        } finally {
-            if (modelsFound != null) {
-                try {
-                    modelsFound.close();
-                } catch (DbException ex) {
-                    String msg = "DB iterator is uncloseable";
-                    logger.error(msg, ex);
-                    return errorReport(ex, "DBIteratorUncloseable", msg, variant.getMediaType(), false);
-                }
-            }
-            if (finder != null) {
-                try {
-                    finder.close();
-                } catch (DbException ex) {
-                    String msg = "Model Finder (DB reader) is uncloseable";
-                    logger.error(msg, ex);
-                    return errorReport(ex, "DBReaderUncloseable", msg, variant.getMediaType(), false);
-                }
-            }
         }
     }
 
     @Override
     protected Representation delete(Variant variant) throws ResourceException {
+        /* The owner and the algorithm of the model are needed to update the account
+         * of the user and the statistics */
+        Model model = null;
+        try {
+            model = ModelLoader.findMetadata(primaryId);
+        } catch (JaqpotException ex) {
+            logger.warn("The owner of the model " + primaryId + " could not be found", ex);
+        }
         DisableComponent disabler = new DisableComponent(primaryId);
         try {
-            int count = disabler.disable();
+            int count = DbMetrics.disable(disabler);
+            if (count > 0 && model != null) {
+                if (model.getCreatedBy() != null) {
+                    UserQuotas.modelDeleted(model.getCreatedBy().getUid());
+                }
+                ServerStatistics.modelDeleted(model.getAlgorithm() != null ? model.getAlgorithm().getUri() : null);
+            }
             return new StringRepresentation(count + " components where disabled.\n", MediaType.TEXT_PLAIN);
         } catch (DbException ex) {
             Logger.getLogger(BibTexResource.class.getName()).log(Level.SEVERE, null, ex);
@@ -240,6 +269,105 @@ public class ModelResource extends JaqpotResource {
 
     }
 
+    /**
+     * Creates a new version of the model trained on the union of its training data
+     * and the dataset provided with the parameter <code>dataset_uri</code>, given
+     * that the model holds the sufficient statistics needed for an incremental
+     * update (MLR and leverages models). A task is returned whose result is the
+     * URI of the new model; the original model is not modified.
+     */
+    @Override
+    protected Representation put(Representation entity, Variant variant) throws ResourceException {
+        User creator = getUser();
+        if (creator == null) {
+            toggleUnauthorized();
+            return errorReport("AuthenticationFailed", "Anonymous updates are not allowed",
+                    "You have to authenticate yourself using the 'subjectid' Header according to the OpenTox API "
+                    + "specifications", variant.getMediaType(), false);
+        }
+        Model model = null;
+        try {
+            model = ModelLoader.find(primaryId);
+        } catch (JaqpotException ex) {
+            String msg = "Model cannot be found due to DB connection problems";
+            logger.error(msg, ex);
+            return errorReport(ex, "DBConnectionException", msg, variant.getMediaType(), false);
+        }
+        if (model == null) {
+            toggleNotFound();
+            return errorReport("ModelNotFound", "The model with id '" + primaryId + "' was not found on the server", null,
+                    variant.getMediaType(), false);
+        }
+        if (!ModelUpdater.isUpdatable(model)) {
+            toggleBadRequest();
+            return errorReport("ModelNotUpdatable", "The model with id '" + primaryId + "' cannot be updated",
+                    "Only MLR and leverages models hold the statistics needed for incremental updates. Models "
+                    + "trained with older versions of these algorithms have to be retrained.", variant.getMediaType(), false);
+        }
+
+        UserQuotas.Account account = null;
+        try {
+            account = UserQuotas.account(creator.getUid());
+        } catch (DbException ex) {
+            toggleServerError();
+            return errorReport(ex, "DbError", "Cannot get the number of running tasks from "
+                    + "the database - Read Error", variant.getMediaType(), false);
+        } catch (SQLException ex) {
+            toggleServerError();
+            return errorReport(ex, "DbError", "Cannot get the number of running tasks from "
+                    + "the database - Read Error", variant.getMediaType(), false);
+        }
+        int maxTasks = Configuration.getIntegerProperty("jaqpot.max_tasks_per_user", 5);
+        if (!UserQuotas.admitTask(account, uuid.toString(), maxTasks)) {
+            toggleServerOverloaded(2);
+            return errorReport("UserQuotaExceeded",
+                    "User Quota Exceeded! Cannot create another Task",
+                    "Dear " + creator.getName() + ", " + "you have exceeded your quota on this server (" + maxTasks + "). "
+                    + "Due to technical limitations you are not allowed to run more "
+                    + "tasks in parallel. Wait for any tasks you created to finish and then submit this task.",
+                    variant.getMediaType(), false);
+        }
+
+        Task task = TaskFactory.newQueuedTask(creator, uuid);
+        task.getMeta().
+                addDescription("Asynchronous Task for the update of the model " + getCurrentVRINoQuery()).
+                addComment("Asynchronous task created for a background job initiated by the model: " + primaryId);
+        AddTask taskAdder = new AddTask(task);
+        try {
+            DbMetrics.write(taskAdder);
+            ServerStatistics.taskAdded(task);
+        } catch (DbException ex) {
+            UserQuotas.taskEnded(uuid.toString());
+            String msg = "Task cannot be added in the database due to connectivity reasons";
+            logger.error(msg, ex);
+            toggleServerError();
+            return errorReport(ex, "DBWriterFailed", msg, variant.getMediaType(), false);
+        } finally {
+            try {
+                taskAdder.close();
+            } catch (DbException ex) {
+                String msg = "Task registerer (DB writer) is uncloseable";
+                logger.error(msg, ex);
+                return errorReport(ex, "DBWriterUncloseable", msg, variant.getMediaType(), false);
+            }
+        }
+
+        ModelUpdateService mus = new ModelUpdateService(model, task, new ClientInput(entity), getUserToken());
+        try {
+            ExecutionPool.POOL.run(uuid.toString(), mus);
+        } catch (RejectedExecutionException ex) {
+            return taskRejected(task, ex, variant.getMediaType());
+        }
+
+        getResponse().setStatus(Status.valueOf((int) task.getHttpStatus()));
+        Publisher publisher = new Publisher(variant.getMediaType());
+        try {
+            return publisher.createRepresentation(task, true);
+        } catch (JaqpotException ex) {
+            return fatalException("PublicationError", ex, null);
+        }
+    }
+
     @Override
     protected Representation post(Representation entity, Variant variant) throws ResourceException {
         /*
@@ -261,26 +389,23 @@ public class ModelResource extends JaqpotResource {
                     + "specifications", variant.getMediaType(), false);
         }
 
-        /**
-         * Is that user in the database already or not???
-         */
-        FindUser finder = new FindUser();
-        finder.setWhere("uid='" + creator.getUid() + "'");
+        /* The account of the user is kept in memory (see UserQuotas) */
+        UserQuotas.Account account = null;
         try {
-            IDbIterator<User> iterator = finder.list();
-            if (iterator.hasNext()) {
-                creator = iterator.next();
-            } else {
-                newUser = true;
-            }
+            account = UserQuotas.account(creator.getUid());
         } catch (DbException ex) {
-            Logger.getLogger(AlgorithmResource.class.getName()).log(Level.SEVERE, null, ex);
-        } finally {
-            try {
-                finder.close();
-            } catch (DbException ex) {
-                Logger.getLogger(AlgorithmResource.class.getName()).log(Level.SEVERE, null, ex);
-            }
+            toggleServerError();
+            return errorReport(ex, "DbError", "Cannot get the quota of the user from "
+                    + "the database - Read Error", variant.getMediaType(), false);
+        } catch (SQLException ex) {
+            toggleServerError();
+            return errorReport(ex, "DbError", "Cannot get the quota of the user from "
+                    + "the database - Read Error", variant.getMediaType(), false);
+        }
+        if (account.getUser() != null) {
+            creator = account.getUser();
+        } else {
+            newUser = true;
         }
 
         /*
@@ -302,7 +427,8 @@ public class ModelResource extends JaqpotResource {
             creator.setMaxParallelTasks(5);
             AddUser addUser = new AddUser(creator);
             try {
-                addUser.write();
+                DbMetrics.write(addUser);
+                UserQuotas.userAdded(creator);
             } catch (DbException ex) {
                 // User is already registered! :-)
                 // Proceed...
@@ -319,16 +445,8 @@ public class ModelResource extends JaqpotResource {
         }
 
 
-        long numTasksActive = 0;
-        try {
-            numTasksActive = new AccountManager(creator).countActiveTasks();
-        } catch (DbException ex) {
-            toggleServerError();
-            return errorReport(ex, "DbError", "Cannot get the number of running tasks from "
-                    + "the database - Read Error", variant.getMediaType(), false);
-        }
         int maxTasks = Configuration.getIntegerProperty("jaqpot.max_tasks_per_user", 5);
-        if (numTasksActive >= maxTasks) {
+        if (!UserQuotas.admitTask(account, uuid.toString(), maxTasks)) {
             toggleServerOverloaded(2);
             return errorReport("UserQuotaExceeded",
                     "User Quota Exceeded! Cannot create another Task",
@@ -349,8 +467,10 @@ public class ModelResource extends JaqpotResource {
 
         AddTask taskAdder = new AddTask(task);
         try {
-            taskAdder.write();
+            DbMetrics.write(taskAdder);
+            ServerStatistics.taskAdded(task);
         } catch (DbException ex) {
+            UserQuotas.taskEnded(uuid.toString());
             Logger.getLogger(AlgorithmResource.class.getName()).log(Level.SEVERE, null, ex);
         } finally {
             try {
@@ -362,36 +482,14 @@ public class ModelResource extends JaqpotResource {
             }
         }
 
+        /* The actual model is loaded by the prediction service when it is needed */
         Model model = null;
-        FindModel modelFinder = new FindModel(Configuration.getBaseUri());
-        modelFinder.setSearchById(primaryId);
-        IDbIterator<Model> modelsFound = null;
         try {
-            modelsFound = modelFinder.list();
-            if (modelsFound.hasNext()) {
-                model = modelsFound.next();
-            }
-        } catch (DbException ex) {
+            model = ModelLoader.findMetadata(primaryId);
+        } catch (JaqpotException ex) {
             String msg = "Model cannot be found due to DB connection problems";
             logger.error(msg, ex);
             return errorReport(ex, "DBConnectionException", msg, variant.getMediaType(), false);
-        } finally {
-            if (modelsFound != null) {
-                try {
-                    modelsFound.close();
-                } catch (DbException ex) {
-                    String msg = "Model Iterator (DB iterator) is uncloseable";
-                    logger.error(msg, ex);
-                    return errorReport(ex, "DBIteratorUncloseable", msg, variant.getMediaType(), false);
-                }
-            }
-            try {
-                modelFinder.close();
-            } catch (DbException ex) {
-                String msg = "Model Finder (DB reader) is uncloseable";
-                logger.error(msg, ex);
-                return errorReport(ex, "DBReaderUncloseable", msg, variant.getMediaType(), false);
-            }
         }
 
         IClientInput clientInput = null;
@@ -401,8 +499,13 @@ public class ModelResource extends JaqpotResource {
             predictor.setModel(model);
             predictor.setTask(task);
             PredictionService ps = new PredictionService(predictor, clientInput, getUserToken());
-            ExecutionPool.POOL.run(uuid.toString(), ps);
+            try {
+                ExecutionPool.POOL.run(uuid.toString(), ps);
+            } catch (RejectedExecutionException ex) {
+                return taskRejected(task, ex, variant.getMediaType());
+            }
         } else {
+            UserQuotas.taskEnded(uuid.toString());
             toggleNotFound();
             return errorReport("ModelNotFound", "The model with id '" + primaryId + "' was not found on the server", "details", variant.getMediaType(), false);
         }
@@ -36,9 +36,8 @@
 package org.opentox.jaqpot3.resources;
 
 import java.util.Set;
-import org.opentox.jaqpot3.exception.JaqpotException;
-import org.opentox.jaqpot3.resources.publish.DbListStreamPublisher;
 import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.IdLister;
 import org.opentox.jaqpot3.www.URITemplate;
 import org.opentox.toxotis.core.IRestOperation;
 import org.opentox.toxotis.core.component.DummyComponent;
@@ -47,7 +46,6 @@ import org.opentox.toxotis.core.component.HttpParameter;
 import org.opentox.toxotis.core.component.HttpStatus;
 import org.opentox.toxotis.core.component.RestOperation;
 import org.opentox.toxotis.core.component.ServiceRestDocumentation;
-import org.opentox.toxotis.database.engine.model.ListModel;
 import org.opentox.toxotis.ontology.collection.HttpMethods.MethodsEnum;
 import org.opentox.toxotis.ontology.collection.OTRestClasses;
 import org.opentox.toxotis.ontology.impl.MetaInfoImpl;
@@ -101,39 +99,25 @@ public class ModelsResource extends JaqpotResource {
             variant.setMediaType(MediaType.valueOf(acceptString));
         }
 
-        ListModel lister = new ListModel();
-        if (getSqlQuery() != null) {
-            lister.setWhere(getSqlQuery());
+        IdLister lister = new IdLister("Model");
+        if (creator != null) {
+            lister.where("T.createdBy = ?", creator + "@opensso.in-silico.ch");
         }
-        DbListStreamPublisher publisher = new DbListStreamPublisher();
-        publisher.setMedia(variant.getMediaType());
-        publisher.setBaseUri(Configuration.getBaseUri().augment("model"));
-        try {
-            return publisher.process(lister);
-        } catch (JaqpotException ex) {
-            return errorReport(ex, "DbError", "Error while getting data from the DB",
-                    variant.getMediaType(), false);
+        if (algorithm != null) {
+            /* The algorithm is stored either by ID or by URI; both are looked up in the index */
+            lister.where("T.algorithm IN (?, ?)", algorithm,
+                    Configuration.getBaseUri().augment("algorithm", algorithm).toString());
         }
-
-    }
-
-    private String getSqlQuery() {
-        StringBuilder query = new StringBuilder();
-        if (this.creator != null) {
-            query.append("createdBy LIKE '");
-            query.append(creator);
-            query.append("@opensso.in-silico.ch'");
+        if (algorithm_uri != null) {
+            lister.where("T.algorithm = ?", algorithm_uri);
         }
-        if (this.algorithm != null) {
-            if (query.length() > 0) {
-                query.append(" AND ");
-            }
-            query.append("algorithm LIKE '%");
-            query.append(this.algorithm);
-            query.append("'");
+        if (dataset_uri != null) {
+            lister.where("T.dataset = ?", dataset_uri);
         }
-        String q = query.toString();
-        return q.isEmpty() ? null : q;
+        if (dependent_feature != null) {
+            lister.where("T.id IN (SELECT modelId FROM ModelDepFeatures WHERE featureUri = ?)", dependent_feature);
+        }
+        return publishIdList(lister, "model", variant);
     }
 
     @Override
@@ -170,7 +154,11 @@ public class ModelsResource extends JaqpotResource {
                 + "using the specified algorithm (provide the algorithm's URI)")).setParamOptional(true),
                 new HttpParameter().addInputParamClass(OTRestClasses.urlParameter()).
                 setOpentoxParameter(false).setParamName("page").setMeta(new MetaInfoImpl().addDescription("The index number of the page. Used for paging of the"
-                + "listed models.")).setParamOptional(true));
+                + "listed models.")).setParamOptional(true),
+                new HttpParameter().addInputParamClass(OTRestClasses.urlParameter()).
+                setOpentoxParameter(false).setParamName("after").setMeta(new MetaInfoImpl().addDescription("List the models after the "
+                + "model with this ID (the last ID of the previous page). The URI of the next page is given in the Link header "
+                + "of the response.")).setParamOptional(true));
         get.addHttpParameters(
                 new HttpParameter().addInputParamClass(OTRestClasses.header()).setParamName("Authorization").setParamOptional(true),
                 new HttpParameter().addInputParamClass(OTRestClasses.header()).setParamName("Policy").setParamOptional(true));
@@ -35,11 +35,14 @@
 
 package org.opentox.jaqpot3.resources;
 
+import java.sql.SQLException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.opentox.jaqpot3.exception.JaqpotException;
 import org.opentox.jaqpot3.resources.publish.Publisher;
+import org.opentox.jaqpot3.util.ComponentVersions;
 import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DbMetrics;
 import org.opentox.jaqpot3.www.URITemplate;
 import org.opentox.toxotis.core.component.Parameter;
 import org.opentox.toxotis.database.IDbIterator;
@@ -79,16 +82,28 @@ public class ParameterResource extends JaqpotResource {
 
     @Override
     protected Representation get(Variant variant) throws ResourceException {
+        ComponentVersions.Version version = null;
+        try {
+            version = ComponentVersions.ofParameter(primaryId);
+        } catch (DbException ex) {
+            Logger.getLogger(ParameterResource.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (SQLException ex) {
+            Logger.getLogger(ParameterResource.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        Representation notModified = notModified(version, variant, CACHE_COMPONENT);
+        if (notModified != null) {
+            return notModified;
+        }
         FindParameter finder = new FindParameter(Configuration.getBaseUri());
         IDbIterator parameterIterator = null;
         finder.setSearchById(primaryId);
         try {
-            parameterIterator = finder.list();
+            parameterIterator = DbMetrics.list(finder);
             if (parameterIterator.hasNext()) {
                 Parameter prm = (Parameter) parameterIterator.next();
                 Publisher p = new Publisher(variant.getMediaType());
                 try {
-                    return p.createRepresentation(prm, true);
+                    return validated(p.createRepresentation(prm, true), version, variant);
                 } catch (JaqpotException ex) {
                     Logger.getLogger(ParameterResource.class.getName()).log(Level.SEVERE, null, ex);
                 }
@@ -38,9 +38,17 @@ package org.opentox.jaqpot3.resources;
 import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.opentox.jaqpot3.exception.JaqpotException;
 import org.opentox.jaqpot3.pool.ExecutionPool;
+import org.opentox.jaqpot3.resources.publish.PDFReports;
+import org.opentox.jaqpot3.resources.publish.Publishable;
 import org.opentox.jaqpot3.resources.publish.Publisher;
+import org.opentox.jaqpot3.resources.publish.RenderedCache;
+import org.opentox.jaqpot3.resources.publish.Representer;
 import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DbMetrics;
+import org.opentox.jaqpot3.util.ServerStatistics;
+import org.opentox.jaqpot3.util.UserQuotas;
 import org.opentox.jaqpot3.www.URITemplate;
 import org.opentox.toxotis.core.component.HttpStatus;
 import org.opentox.toxotis.core.component.RestOperation;
@@ -100,7 +108,7 @@ public class TaskResource extends JaqpotResource {
 
             try {
                 taskFinder.setSearchById(primaryId);
-                tasksFound = taskFinder.list();
+                tasksFound = DbMetrics.list(taskFinder);
                 if (tasksFound.hasNext()) {
                     task = tasksFound.next();
                 }
@@ -148,6 +156,20 @@ public class TaskResource extends JaqpotResource {
                 }
 
             }
+            if (MediaType.APPLICATION_PDF.equals(variant.getMediaType())) {
+                if (Task.Status.RUNNING.equals(task.getStatus()) || Task.Status.QUEUED.equals(task.getStatus())) {
+                    /* Reports of running tasks are small and outdated soon; they are not cached */
+                    return new Representer(true).process(PDFReports.task(task));
+                }
+                final Task reported = task;
+                return report("pdf-task-" + primaryId + "-" + task.getStatus(), getCurrentVRINoQuery(), new RenderedCache.Renderer() {
+
+                    @Override
+                    public Publishable render() throws JaqpotException {
+                        return PDFReports.task(reported);
+                    }
+                });
+            }
             Publisher p = new Publisher(variant.getMediaType());
             return p.createRepresentation(task, true);
         } catch (final Exception ex) {
@@ -210,7 +232,7 @@ public class TaskResource extends JaqpotResource {
 
         try {
             taskFinder.setSearchById(primaryId);
-            tasksFound = taskFinder.list();
+            tasksFound = DbMetrics.list(taskFinder);
             if (tasksFound.hasNext()) {
                 task = tasksFound.next();
             }
@@ -255,7 +277,7 @@ public class TaskResource extends JaqpotResource {
                 || Task.Status.CANCELLED.equals(task.getStatus())) {
             DisableComponent disabler = new DisableComponent(primaryId);
             try {
-                disabler.disable();
+                DbMetrics.disable(disabler);
             } catch (DbException ex) {
                 Logger.getLogger(TaskResource.class.getName()).log(Level.SEVERE, null, ex);
             } finally {
@@ -266,12 +288,15 @@ public class TaskResource extends JaqpotResource {
                 }
             }
         } else {
+            Task.Status previous = task.getStatus();
             task.setStatus(Task.Status.CANCELLED);
             ExecutionPool.POOL.cancel(primaryId);
             UpdateTask updater = new UpdateTask(task);
             updater.setUpdateTaskStatus(true);
             try {
-                updater.update();
+                DbMetrics.update(updater);
+                ServerStatistics.taskMoved(previous, Task.Status.CANCELLED);
+                UserQuotas.taskEnded(primaryId);
             } catch (DbException ex) {
                 Logger.getLogger(TaskResource.class.getName()).log(Level.SEVERE, null, ex);
             } finally {
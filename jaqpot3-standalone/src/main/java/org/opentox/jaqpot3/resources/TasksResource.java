@@ -35,11 +35,8 @@
 
 package org.opentox.jaqpot3.resources;
 
-import org.opentox.jaqpot3.exception.JaqpotException;
-import org.opentox.jaqpot3.resources.publish.DbListStreamPublisher;
-import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.IdLister;
 import org.opentox.jaqpot3.www.URITemplate;
-import org.opentox.toxotis.database.engine.task.ListTasks;
 import org.restlet.data.MediaType;
 import org.restlet.representation.Representation;
 import org.restlet.representation.Variant;
@@ -75,45 +72,19 @@ public class TasksResource extends JaqpotResource {
         status = parseParameter("status");
     }
 
-    private String getSqlQuery() {
-        StringBuilder query = new StringBuilder();
-        if (this.creator != null) {
-            query.append("createdBy LIKE '");
-            query.append(creator);
-            query.append("@opensso.in-silico.ch'");
-        }
-        if (this.status != null) {
-            if (query.length() > 0) {
-                query.append(" AND ");
-            }
-            query.append("status='");
-            query.append(this.status.toUpperCase());
-            query.append("'");
-        }
-        String q = query.toString();
-        return q.isEmpty() ? null : q;
-    }
-
     @Override
     protected Representation get(Variant variant) throws ResourceException {
 
         if (acceptString != null) {
             variant.setMediaType(MediaType.valueOf(acceptString));
         }
-        ListTasks lister = new ListTasks();
-        if (getSqlQuery() != null) {
-            lister.setWhere(getSqlQuery());
-        }        
-        DbListStreamPublisher publisher = new DbListStreamPublisher();
-        publisher.setMedia(variant.getMediaType());
-        publisher.setBaseUri(Configuration.getBaseUri().augment("task"));
-        try {
-            return publisher.process(lister);
-        } catch (JaqpotException ex) {
-            return errorReport(ex, "DbError", "Error while getting data from the DB",
-                    variant.getMediaType(), false);
+        IdLister lister = new IdLister("Task");
+        if (creator != null) {
+            lister.where("T.createdBy = ?", creator + "@opensso.in-silico.ch");
         }
-
-
+        if (status != null) {
+            lister.where("T.status = ?", status.toUpperCase());
+        }
+        return publishIdList(lister, "task", variant);
     }
 }
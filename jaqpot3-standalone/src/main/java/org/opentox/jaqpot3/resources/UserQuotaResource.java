@@ -35,6 +35,7 @@
 
 package org.opentox.jaqpot3.resources;
 
+import java.sql.SQLException;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -43,6 +44,8 @@ import org.opentox.jaqpot3.resources.publish.Publisher;
 import org.opentox.jaqpot3.resources.publish.Representer;
 import org.opentox.jaqpot3.resources.publish.UriListPublishable;
 import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DbMetrics;
+import org.opentox.jaqpot3.util.UserQuotas;
 import org.opentox.jaqpot3.www.URITemplate;
 import org.opentox.toxotis.core.component.User;
 import org.opentox.toxotis.core.html.HTMLDivBuilder;
@@ -51,9 +54,6 @@ import org.opentox.toxotis.core.html.HTMLTable;
 import org.opentox.toxotis.core.html.impl.HTMLPageImpl;
 import org.opentox.toxotis.core.html.impl.HTMLTextImpl;
 import org.opentox.toxotis.database.IDbIterator;
-import org.opentox.toxotis.database.engine.bibtex.CountBibTeX;
-import org.opentox.toxotis.database.engine.model.CountModel;
-import org.opentox.toxotis.database.engine.task.CountTasks;
 import org.opentox.toxotis.database.engine.user.FindUser;
 import org.opentox.toxotis.database.exception.DbException;
 import org.opentox.toxotis.exceptions.impl.ServiceInvocationException;
@@ -94,45 +94,20 @@ public class UserQuotaResource extends JaqpotResource {
     }
 
     private Representation get_quota(Variant variant, User u) throws ResourceException {
-        CountModel modelCounter = new CountModel();
-        CountTasks taskCounter = new CountTasks();
-        CountTasks activeTaskCounter = new CountTasks();
-        CountBibTeX bibtexCounter = new CountBibTeX();
-        int countModels = -1;
-        int countTasks = -1;
-        int countActiveTasks = -1;
-        int countBibTeX = -1;
+        long countModels = -1;
+        long countTasks = -1;
+        long countActiveTasks = -1;
+        long countBibTeX = -1;
         try {
-            modelCounter.setWhere("createdBy='" + primaryId + "'");
-            countModels = modelCounter.count();
-            taskCounter.setWhere("createdBy='" + primaryId + "'");
-            countTasks = taskCounter.count();
-            activeTaskCounter.setWhere("createdBy='" + primaryId + "' AND status IN ('QUEUED','RUNNING')");
-            countActiveTasks = activeTaskCounter.count();
-            bibtexCounter.setWhere("createdBy='" + primaryId + "'");
-            countBibTeX = bibtexCounter.count();
+            UserQuotas.Account account = UserQuotas.account(primaryId);
+            countModels = account.getModels();
+            countTasks = account.getTasks();
+            countActiveTasks = account.getActiveTasks();
+            countBibTeX = account.getBibTeX();
         } catch (DbException ex) {
-        } finally {
-            try {
-                modelCounter.close();
-            } catch (DbException ex) {
-                Logger.getLogger(UserQuotaResource.class.getName()).log(Level.SEVERE, null, ex);
-            }
-            try {
-                taskCounter.close();
-            } catch (DbException ex) {
-                Logger.getLogger(UserQuotaResource.class.getName()).log(Level.SEVERE, null, ex);
-            }
-            try {
-                activeTaskCounter.close();
-            } catch (DbException ex) {
-                Logger.getLogger(UserQuotaResource.class.getName()).log(Level.SEVERE, null, ex);
-            }
-            try {
-                bibtexCounter.close();
-            } catch (DbException ex) {
-                Logger.getLogger(UserQuotaResource.class.getName()).log(Level.SEVERE, null, ex);
-            }
+            Logger.getLogger(UserQuotaResource.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (SQLException ex) {
+            Logger.getLogger(UserQuotaResource.class.getName()).log(Level.SEVERE, null, ex);
         }
 
         HTMLDivBuilder builder = new HTMLDivBuilder();
@@ -176,7 +151,7 @@ public class UserQuotaResource extends JaqpotResource {
         FindUser finder = new FindUser();
         finder.setWhere("uid='" + primaryId + "'");
         try {
-            IDbIterator<User> iterator = finder.list();
+            IDbIterator<User> iterator = DbMetrics.list(finder);
             if (iterator.hasNext()) {
                 u = iterator.next();
             }
@@ -40,6 +40,7 @@ import java.util.logging.Logger;
 import org.opentox.jaqpot3.exception.JaqpotException;
 import org.opentox.jaqpot3.resources.publish.Publisher;
 import org.opentox.jaqpot3.www.URITemplate;
+import org.opentox.jaqpot3.util.DbMetrics;
 import org.opentox.toxotis.core.component.User;
 import org.opentox.toxotis.database.IDbIterator;
 import org.opentox.toxotis.database.engine.user.FindUser;
@@ -80,7 +81,7 @@ public class UserResource extends JaqpotResource {
         FindUser findUser = new FindUser();
         findUser.setWhere("uid='" + primaryId + "'");
         try {
-            IDbIterator<User> iterator = findUser.list();
+            IDbIterator<User> iterator = DbMetrics.list(findUser);
             User u = null;
             if (iterator.hasNext()) {
                 u = iterator.next();
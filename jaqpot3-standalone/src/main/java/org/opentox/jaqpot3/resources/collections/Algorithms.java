@@ -71,6 +71,7 @@ public class Algorithms {
     private static Algorithm fastRbfNn;
     private static Algorithm scaling;
     private static Algorithm modelBundler;
+    private static Algorithm pmml;
 //    private static Algorithm fcbf;
 //    private static Algorithm multifilter;
     private static Set<Algorithm> repository;
@@ -248,10 +249,10 @@ public class Algorithms {
                         addSubject("Regression", "Linear", "Training", "Multiple Linear Regression", "Machine Learning", "Single Target", "Eager Learning", "Weka").
                         addContributor("Pantelis Sopasakis", "Charalampos Chomenides").
                         addDescription("Training algorithm for multiple linear regression models. "
-                        + "Applies on datasets which contain exclusively numeric data entries. The algorithm is an implementation "
-                        + "of LinearRegression of Weka. More information about Linear Regression you will find at "
-                        + "http://en.wikipedia.org/wiki/Linear_regression. The weka API for Linear Regression Training is located at "
-                        + "http://weka.sourceforge.net/doc/weka/classifiers/functions/LinearRegression.html").
+                        + "Applies on datasets which contain exclusively numeric data entries. The algorithm computes the least "
+                        + "squares solution from the sufficient statistics X'X and X'y of the training data which are stored in the "
+                        + "model, so that trained models can be updated with new data (PUT on the model URI) without retraining. More "
+                        + "information about Linear Regression you will find at http://en.wikipedia.org/wiki/Linear_regression.").
                         addPublisher(Configuration.BASE_URI).
                         setDate(new LiteralValue<Date>(new Date(System.currentTimeMillis()))).
                         addIdentifier(mlr.getUri().toString());
@@ -273,15 +274,54 @@ public class Algorithms {
         if (consensus == null) {
             try {
                 consensus = new Algorithm(Configuration.getBaseUri().augment("algorithm", "consensus"));
-                MetaInfo algorithmMeta = new MetaInfoImpl().addTitle("consensus", "Multiple Linear Regression Training Algorithm").
-                        addComment("Multiple Linear Regression Algorithm").
+                MetaInfo algorithmMeta = new MetaInfoImpl().addTitle("consensus", "Consensus Modeling Algorithm").
+                        addComment("Combines the predictions of two or more existing models (MLR, SVM or RBF NN) for the same target").
                         addComment("For example cURL commands for this algorithm check out http://cut.gd/P6fa").
                         addSubject("Regression", "Classification", "Training", "Consensus modeling", "Machine Learning", "Single Target", "Eager Learning").
                         addContributor("Pantelis Sopasakis").
-                        addDescription("Training algorithm for Consensus Models").
+                        addDescription("Training algorithm for Consensus Models. The member models run concurrently on the "
+                        + "submitted dataset and their predictions are combined using their mean, their median or a weighted mean. "
+                        + "Members that do not respond within the specified timeout are left out of the consensus.").
                         addPublisher(Configuration.BASE_URI).
                         setDate(new LiteralValue<Date>(new Date(System.currentTimeMillis()))).
-                        addIdentifier(mlr.getUri().toString());
+                        addIdentifier(consensus.getUri().toString());
+                consensus.setParameters(new HashSet<Parameter>());
+
+                Parameter models =
+                        new Parameter(
+                        Configuration.getBaseUri().augment("prm", "consensusModel"), "model", null).setScope(
+                        Parameter.ParameterScope.MANDATORY);
+                models.getMeta().addDescription("URI of a member model; specify this parameter once for every member").
+                        addComment("At least two models are needed");
+                consensus.getParameters().add(models);
+
+                Parameter combination =
+                        new Parameter(
+                        Configuration.getBaseUri().augment("prm", "consensusCombination"), "combination", new LiteralValue<String>("mean")).setScope(
+                        Parameter.ParameterScope.OPTIONAL);
+                combination.getMeta().addDescription("How the predictions of the members are combined").
+                        addComment("Admissible values are 'mean', 'median' and 'weighted'. Default is 'mean'").
+                        addComment("Unless weights are provided, weighted consensus models need the parameters dataset_uri and "
+                        + "prediction_feature; the weight of every member is then the inverse of its mean squared error on that dataset");
+                consensus.getParameters().add(combination);
+
+                Parameter weight =
+                        new Parameter(
+                        Configuration.getBaseUri().augment("prm", "consensusWeight"), "weight", null).setScope(
+                        Parameter.ParameterScope.OPTIONAL);
+                weight.getMeta().addDescription("Weight of a member model; specify one weight for every model in the same order").
+                        addComment("If weights are specified, the combination is weighted");
+                consensus.getParameters().add(weight);
+
+                Parameter timeout =
+                        new Parameter(
+                        Configuration.getBaseUri().augment("prm", "consensusTimeout"), "timeout",
+                        new LiteralValue<Integer>(Configuration.getIntegerProperty("consensus.memberTimeout", 60000))).setScope(
+                        Parameter.ParameterScope.OPTIONAL);
+                timeout.getMeta().addDescription("Maximum time (in milliseconds) the members are allowed to run for a prediction").
+                        addComment("Non-positive values mean that there is no timeout");
+                consensus.getParameters().add(timeout);
+
                 consensus.setMeta(algorithmMeta);
                 consensus.setOntologies(new HashSet<OntologicalClass>());
                 consensus.getOntologies().add(OTAlgorithmTypes.regression());
@@ -349,10 +389,11 @@ public class Algorithms {
 
                 Parameter numComponents =
                         new Parameter(
-                        Configuration.getBaseUri().augment("prm", "numComponents"), "numComponents", null).setScope(
-                        Parameter.ParameterScope.MANDATORY);
+                        Configuration.getBaseUri().augment("prm", "numComponents"), "numComponents", new LiteralValue<String>("auto")).setScope(
+                        Parameter.ParameterScope.OPTIONAL);
                 numComponents.getMeta().addDescription("The maximum number of attributes(features) to use").
-                        addComment("The number of components must be less than the number of independent features in the dataset");
+                        addComment("The number of components must be less than the number of independent features in the dataset").
+                        addComment("If not specified or set to 'auto', the number of components is selected by cross validation");
                 plsFilter.getParameters().add(numComponents);
 
                 Parameter plsAlgorithm =
@@ -546,6 +587,48 @@ public class Algorithms {
         return leverages;
     }
 
+    public static Algorithm pmml() {
+        if (pmml == null) {
+            try {
+                pmml = new Algorithm(Configuration.getBaseUri().augment("algorithm", "pmml"));
+                MetaInfo algorithmMeta = new MetaInfoImpl();
+                algorithmMeta.addTitle("pmml");
+                algorithmMeta.addTitle("PMML Model Import");
+                algorithmMeta.addSubject("PMML", "Model Import", "Regression", "Predictive Model Markup Language").
+                        addContributor("Pantelis Sopasakis", "Charalampos Chomenides").
+                        addDescription("Creates a model out of a PMML document which is downloaded from the given URI. "
+                        + "Regression, support vector machine, neural network and (segmented) mining models are supported. "
+                        + "The names of the input fields of the document have to be feature URIs, while a new feature "
+                        + "is created for every output. The document is compiled once and models are scored without "
+                        + "any Java serialization of the original learner. Models of this server are exported in the same "
+                        + "format when they are requested as application/xml.").
+                        addPublisher(Configuration.BASE_URI).setDate(new LiteralValue<Date>(new Date(System.currentTimeMillis())));
+                pmml.setMeta(algorithmMeta);
+                pmml.setOntologies(new HashSet<OntologicalClass>());
+                pmml.getOntologies().add(OTAlgorithmTypes.algorithmType());
+                pmml.getOntologies().add(OTAlgorithmTypes.regression());
+                pmml.getMeta().addRights(_LICENSE);
+
+                pmml.setParameters(new HashSet<Parameter>());
+                Parameter document = new Parameter(Configuration.getBaseUri().augment("prm", "pmml"));
+                document.setName("pmml").setScope(Parameter.ParameterScope.MANDATORY);
+                document.getMeta().addDescription("URI of the PMML document").
+                        addIdentifier(document.getUri().toString());
+                pmml.getParameters().add(document);
+
+                Parameter featureService = new Parameter(Configuration.getBaseUri().augment("prm", "pmml_feature_service"));
+                featureService.setName("feature_service").setScope(Parameter.ParameterScope.OPTIONAL);
+                featureService.getMeta().addDescription("Feature service where the predicted features are created").
+                        addIdentifier(featureService.getUri().toString());
+                pmml.getParameters().add(featureService);
+                pmml.setEnabled(true);
+            } catch (ToxOtisException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        return pmml;
+    }
+
     public static Algorithm modelBundler() {
         if (modelBundler == null) {
             try {
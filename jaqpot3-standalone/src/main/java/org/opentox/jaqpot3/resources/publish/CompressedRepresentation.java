@@ -0,0 +1,209 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.resources.publish;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import org.opentox.jaqpot3.util.Configuration;
+import org.restlet.data.Encoding;
+import org.restlet.data.MediaType;
+import org.restlet.data.Preference;
+import org.restlet.data.Tag;
+import org.restlet.representation.OutputRepresentation;
+import org.restlet.representation.Representation;
+
+/**
+ * A representation which compresses another representation on the fly using
+ * gzip or deflate. Streamed representations (of unknown size) are compressed
+ * while they are being written. Compression is configured with the properties
+ * <code>compression.*</code> in <code>server.properties</code>.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class CompressedRepresentation extends OutputRepresentation {
+
+    private static final boolean _ENABLED = Boolean.parseBoolean(
+            Configuration.getStringProperty("compression.enabled", "true"));
+    private static final int _THRESHOLD = Configuration.getIntegerProperty("compression.threshold", 1024);
+    private static final int _LEVEL = Math.max(Deflater.BEST_SPEED,
+            Math.min(Deflater.BEST_COMPRESSION, Configuration.getIntegerProperty("compression.level", 6)));
+    private final Representation wrapped;
+    private final Encoding encoding;
+
+    private CompressedRepresentation(Representation wrapped, Encoding encoding) {
+        super(wrapped.getMediaType());
+        this.wrapped = wrapped;
+        this.encoding = encoding;
+        List<Encoding> encodings = new ArrayList<Encoding>();
+        encodings.add(encoding);
+        setEncodings(encodings);
+        setCharacterSet(wrapped.getCharacterSet());
+        setLanguages(wrapped.getLanguages());
+        setModificationDate(wrapped.getModificationDate());
+        setExpirationDate(wrapped.getExpirationDate());
+        if (wrapped.getTag() != null) {
+            /* The compressed bytes differ, so only a weak validator can be shared */
+            setTag(new Tag(wrapped.getTag().getName(), true));
+        }
+    }
+
+    /**
+     * Compresses the given representation with the encoding preferred by the client,
+     * if any, provided that its media type is textual and it is not too small to
+     * benefit from compression.
+     *
+     * @param representation
+     *      The representation to be sent to the client.
+     * @param accepted
+     *      The encodings accepted by the client.
+     * @return
+     *      A compressed representation, or the given one if it should not be
+     *      compressed.
+     */
+    public static Representation encode(Representation representation, List<Preference<Encoding>> accepted) {
+        if (!_ENABLED || representation == null || representation instanceof CompressedRepresentation
+                || !isCompressible(representation.getMediaType())) {
+            return representation;
+        }
+        for (Encoding e : representation.getEncodings()) {
+            if (!Encoding.IDENTITY.equals(e)) {
+                return representation;
+            }
+        }
+        long size = representation.getSize();
+        if (size != UNKNOWN_SIZE && size < _THRESHOLD) {
+            return representation;
+        }
+        Encoding encoding = negotiate(accepted);
+        if (encoding == null) {
+            return representation;
+        }
+        if (representation instanceof RenderedCache.CachedRepresentation) {
+            /* Pre-rendered bytes are compressed once and the result is kept with them */
+            return ((RenderedCache.CachedRepresentation) representation).encoded(encoding);
+        }
+        return new CompressedRepresentation(representation, encoding);
+    }
+
+    private static Encoding negotiate(List<Preference<Encoding>> accepted) {
+        if (accepted == null) {
+            return null;
+        }
+        float gzip = 0f;
+        float deflate = 0f;
+        for (Preference<Encoding> preference : accepted) {
+            Encoding e = preference.getMetadata();
+            if (Encoding.GZIP.equals(e)) {
+                gzip = Math.max(gzip, preference.getQuality());
+            } else if (Encoding.DEFLATE.equals(e)) {
+                deflate = Math.max(deflate, preference.getQuality());
+            } else if (Encoding.ALL.equals(e)) {
+                gzip = Math.max(gzip, preference.getQuality());
+            }
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return Encoding.GZIP;
+        }
+        return deflate > 0 ? Encoding.DEFLATE : null;
+    }
+
+    /**
+     * Whether representations of this media type are worth compressing (text, XML,
+     * JSON and RDF serializations).
+     */
+    public static boolean isCompressible(MediaType mediaType) {
+        if (mediaType == null) {
+            return false;
+        }
+        if ("text".equals(mediaType.getMainType())) {
+            return true;
+        }
+        String subType = mediaType.getSubType();
+        return subType != null && (subType.contains("xml") || subType.contains("json")
+                || subType.contains("rdf") || subType.contains("turtle") || subType.contains("n3"));
+    }
+
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+        /* The wrapped representation may close its stream; the response stream is closed by the connector */
+        final OutputStream target = outputStream;
+        OutputStream shield = new FilterOutputStream(target) {
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                target.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                target.flush();
+            }
+        };
+        if (Encoding.GZIP.equals(encoding)) {
+            GZIPOutputStream gzip = new GZIPOutputStream(shield, 8192) {
+
+                {
+                    def.setLevel(_LEVEL);
+                }
+            };
+            try {
+                wrapped.write(gzip);
+            } finally {
+                gzip.close();
+            }
+        } else {
+            Deflater deflater = new Deflater(_LEVEL);
+            DeflaterOutputStream deflate = new DeflaterOutputStream(shield, deflater, 8192);
+            try {
+                wrapped.write(deflate);
+            } finally {
+                deflate.close();
+                deflater.end();
+            }
+        }
+    }
+
+    @Override
+    public void release() {
+        wrapped.release();
+        super.release();
+    }
+}
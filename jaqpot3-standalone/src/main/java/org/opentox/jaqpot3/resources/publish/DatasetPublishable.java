@@ -0,0 +1,89 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.resources.publish;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import org.opentox.jaqpot3.util.ColumnarDataset;
+import org.restlet.data.MediaType;
+import weka.core.Instances;
+
+/**
+ * Publishes a dataset either in ARFF or in the binary columnar format of
+ * {@link ColumnarDataset} (compressed). ARFF is written row by row so that the
+ * whole document is never built in memory.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class DatasetPublishable extends AbstractPublishable {
+
+    public static final MediaType TEXT_ARFF = MediaType.register("text/x-arff", "Attribute-Relation File Format");
+    public static final MediaType APPLICATION_COLUMNAR = MediaType.register(ColumnarDataset.MEDIA_TYPE,
+            "Jaqpot binary columnar dataset");
+    private Instances data;
+
+    public DatasetPublishable(Instances data, MediaType media) {
+        super();
+        this.data = data;
+        setMediaType(media);
+    }
+
+    @Override
+    public void publish(OutputStream stream) {
+        try {
+            if (APPLICATION_COLUMNAR.equals(getMediaType())) {
+                ColumnarDataset.write(data, stream, true);
+                return;
+            }
+            Writer writer = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"), 1 << 16);
+            writer.write(new Instances(data, 0).toString());
+            for (int i = 0; i < data.numInstances(); i++) {
+                writer.write(data.instance(i).toString());
+                writer.write('\n');
+            }
+            writer.flush();
+        } catch (IOException ex) {
+            throw new RuntimeException("IOException : " + ex.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        data = null;
+    }
+}
@@ -35,13 +35,18 @@
 
 package org.opentox.jaqpot3.resources.publish;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.sql.SQLException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.opentox.jaqpot3.exception.JaqpotException;
 import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DbMetrics;
+import org.opentox.jaqpot3.util.IdLister;
 import org.opentox.toxotis.client.VRI;
 import org.opentox.toxotis.database.DbReader;
 import org.opentox.toxotis.database.IDbIterator;
@@ -57,8 +62,10 @@ import org.restlet.representation.Representation;
  */
 public class DbListStreamPublisher {
 
+    private static final int _BUFFER_SIZE = 8192;
     private MediaType media = MediaType.TEXT_URI_LIST;
     private VRI baseUri;
+    private String nextPage;
 
     public MediaType getMedia() {
         return media;
@@ -76,49 +83,79 @@ public class DbListStreamPublisher {
         this.baseUri = baseUri;
     }
 
+    public String getNextPage() {
+        return nextPage;
+    }
+
+    /**
+     * URI of the next page of the listing; a link to it is appended to HTML listings.
+     */
+    public void setNextPage(String nextPage) {
+        this.nextPage = nextPage;
+    }
+
+    private Writer open(OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"), _BUFFER_SIZE);
+        if (MediaType.TEXT_HTML.equals(media)) {
+            writer.write("<p><ol>");
+        }
+        return writer;
+    }
+
+    private void writeEntry(Writer writer, String prefix, String id) throws IOException {
+        if (MediaType.TEXT_HTML.equals(media)) {
+            writer.write("<li><a href=\"");
+            if (prefix != null) {
+                writer.write(prefix);
+            }
+            writer.write(id);
+            writer.write("\">");
+            writer.write(id);
+            writer.write("</a></li>");
+        } else {
+            if (prefix != null) {
+                writer.write(prefix);
+            }
+            writer.write(id);
+        }
+        writer.write("\n");
+    }
+
+    private void close(Writer writer) throws IOException {
+        if (MediaType.TEXT_HTML.equals(media)) {
+            writer.write("</ol></p>");
+            if (nextPage != null) {
+                writer.write("<p><a href=\"" + nextPage.replace("&", "&amp;") + "\">Next page</a></p>");
+            }
+        }
+        writer.flush();
+    }
+
+    private String prefix() {
+        return getBaseUri() != null ? getBaseUri().toString() + "/" : null;
+    }
+
     public Representation process(final DbReader<String> reader) throws JaqpotException {
 
         Representation representation = new OutputRepresentation(media) {
 
             @Override
             public void write(OutputStream outputStream) throws IOException {
-                OutputStreamWriter writer = new OutputStreamWriter(outputStream);
+                Writer writer = open(outputStream);
                 try {
-                    IDbIterator<String> iterator = reader.list();
+                    IDbIterator<String> iterator = DbMetrics.list(reader);
                     if (iterator != null) {
                         try {
-
-                            if (MediaType.TEXT_HTML.equals(media)) {
-                                writer.write("<p><ol>");
-                            }
+                            String prefix = prefix();
                             while (iterator.hasNext()) {
-                                StringBuilder nextUri = new StringBuilder();
-                                String id = iterator.next();
-                                if (getBaseUri() != null) {
-                                    nextUri.append(getBaseUri().toString());
-                                    nextUri.append("/");
-                                }                                
-                                nextUri.append(id);
-
-                                if (MediaType.TEXT_HTML.equals(media)) {
-                                    writer.write("<li><a href=\"");
-                                    writer.write(nextUri.toString());
-                                    writer.write("\">");
-                                    writer.write(id);
-                                    writer.write("</a></li>");
-                                } else {
-                                    writer.write(nextUri.toString());
-                                }
-                                writer.write("\n");
-                            }
-                            if (MediaType.TEXT_HTML.equals(media)) {
-                                writer.write("</ol></p>");
+                                writeEntry(writer, prefix, iterator.next());
                             }
                             iterator.close();
                         } catch (DbException ex) {
                             Logger.getLogger(DbListStreamPublisher.class.getName()).log(Level.SEVERE, null, ex);
                         }
                     }
+                    close(writer);
                 } catch (DbException ex) {
                     throw new IOException(ex);
                 } catch (IOException ex) {
@@ -143,4 +180,40 @@ public class DbListStreamPublisher {
         return representation;
 
     }
+
+    /**
+     * Streams the IDs listed by a keyset-paginated lister; the rows are written
+     * (in chunks) while they are read from the database.
+     */
+    public Representation process(final IdLister lister) throws JaqpotException {
+
+        Representation representation = new OutputRepresentation(media) {
+
+            @Override
+            public void write(OutputStream outputStream) throws IOException {
+                final Writer writer = open(outputStream);
+                final String prefix = prefix();
+                try {
+                    lister.stream(new IdLister.Sink() {
+
+                        @Override
+                        public void id(String id) throws IOException {
+                            writeEntry(writer, prefix, id);
+                        }
+                    });
+                    close(writer);
+                } catch (DbException ex) {
+                    throw new IOException(ex);
+                } catch (SQLException ex) {
+                    throw new IOException(ex);
+                } finally {
+                    writer.close();
+                    this.release();
+                }
+            }
+        };
+
+        representation.setMediaType(media);
+        return representation;
+    }
 }
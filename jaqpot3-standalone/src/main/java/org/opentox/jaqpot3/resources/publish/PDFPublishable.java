@@ -31,29 +31,156 @@
  * tel. +30 210 7723236
  *
  */
-
-
 package org.opentox.jaqpot3.resources.publish;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import org.restlet.data.MediaType;
 
 /**
+ * A plain text report (a title followed by lines of text) published as a PDF
+ * document. The document is written directly, using the standard Helvetica
+ * fonts, so no external library is needed; long lines are wrapped and pages are
+ * broken automatically.
  *
  * @author Pantelis Sopasakis
  * @author Charalampos Chomenides
  */
-public class PDFPublishable extends AbstractPublishable{
+public class PDFPublishable extends AbstractPublishable {
+
+    private static final int LINES_PER_PAGE = 60;
+    private static final int LINE_WIDTH = 95;
+    private final String title;
+    private final List<String> lines;
+
+    public PDFPublishable(String title, List<String> lines) {
+        super();
+        this.title = title;
+        this.lines = lines;
+        setMediaType(MediaType.APPLICATION_PDF);
+    }
 
     @Override
     public void publish(OutputStream stream) {
-        throw new UnsupportedOperationException("Not supported yet.");
+        try {
+            write(stream);
+        } catch (IOException ex) {
+            throw new RuntimeException("IOException : " + ex.getMessage());
+        }
     }
 
     @Override
     public void close() throws IOException {
-        throw new UnsupportedOperationException("Not supported yet.");
     }
 
-}
\ No newline at end of file
+    private static List<String> wrap(List<String> lines) {
+        List<String> wrapped = new ArrayList<String>(lines.size());
+        for (String line : lines) {
+            String rest = line != null ? line : "";
+            while (rest.length() > LINE_WIDTH) {
+                int cut = rest.lastIndexOf(' ', LINE_WIDTH);
+                if (cut < LINE_WIDTH / 2) {
+                    cut = LINE_WIDTH;
+                }
+                wrapped.add(rest.substring(0, cut));
+                rest = "    " + rest.substring(cut).trim();
+            }
+            wrapped.add(rest);
+        }
+        return wrapped;
+    }
+
+    /**
+     * A PDF string literal; characters outside Latin-1 are replaced by '?'.
+     */
+    private static String literal(String text) {
+        StringBuilder literal = new StringBuilder(text.length() + 2);
+        literal.append('(');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '(' || c == ')' || c == '\\') {
+                literal.append('\\').append(c);
+            } else if (c >= 32 && c < 127) {
+                literal.append(c);
+            } else if (c >= 160 && c < 256) {
+                literal.append('\\').append(Integer.toOctalString(c));
+            } else {
+                literal.append('?');
+            }
+        }
+        return literal.append(')').toString();
+    }
+
+    private static byte[] ascii(String text) {
+        try {
+            return text.getBytes("ISO-8859-1");
+        } catch (java.io.UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void write(OutputStream stream) throws IOException {
+        List<String> text = wrap(lines);
+        /* The title takes the place of two lines on the first page */
+        int offset = title != null ? 2 : 0;
+        int numPages = Math.max(1, (text.size() + offset + LINES_PER_PAGE - 1) / LINES_PER_PAGE);
+        /* Objects: 1 catalog, 2 pages, 3-4 fonts, then a page and its contents per page */
+        int numObjects = 4 + 2 * numPages;
+        long[] offsets = new long[numObjects + 1];
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream(4096 + 64 * text.size());
+        pdf.write(ascii("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n"));
+
+        offsets[1] = pdf.size();
+        pdf.write(ascii("1 0 obj\n<< /Type /Catalog /Pages 2 0 R >>\nendobj\n"));
+        offsets[2] = pdf.size();
+        StringBuilder kids = new StringBuilder();
+        for (int p = 0; p < numPages; p++) {
+            kids.append(5 + 2 * p).append(" 0 R ");
+        }
+        pdf.write(ascii("2 0 obj\n<< /Type /Pages /Kids [ " + kids + "] /Count " + numPages + " >>\nendobj\n"));
+        offsets[3] = pdf.size();
+        pdf.write(ascii("3 0 obj\n<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica /Encoding /WinAnsiEncoding >>\nendobj\n"));
+        offsets[4] = pdf.size();
+        pdf.write(ascii("4 0 obj\n<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica-Bold /Encoding /WinAnsiEncoding >>\nendobj\n"));
+
+        for (int p = 0; p < numPages; p++) {
+            int page = 5 + 2 * p;
+            StringBuilder content = new StringBuilder("BT\n");
+            if (p == 0 && title != null) {
+                content.append("/F2 14 Tf 50 792 Td ").append(literal(title)).append(" Tj\n");
+                content.append("/F1 10 Tf 12 TL 0 -24 Td\n");
+            } else {
+                content.append("/F1 10 Tf 12 TL 50 792 Td\n");
+            }
+            int first = Math.max(0, p * LINES_PER_PAGE - offset);
+            int last = Math.min(text.size(), (p + 1) * LINES_PER_PAGE - offset);
+            for (int i = first; i < last; i++) {
+                content.append(literal(text.get(i))).append(" Tj T*\n");
+            }
+            content.append("ET\n");
+            byte[] contentBytes = ascii(content.toString());
+            offsets[page] = pdf.size();
+            pdf.write(ascii(page + " 0 obj\n<< /Type /Page /Parent 2 0 R /MediaBox [0 0 595 842] "
+                    + "/Resources << /Font << /F1 3 0 R /F2 4 0 R >> >> /Contents " + (page + 1) + " 0 R >>\nendobj\n"));
+            offsets[page + 1] = pdf.size();
+            pdf.write(ascii((page + 1) + " 0 obj\n<< /Length " + contentBytes.length + " >>\nstream\n"));
+            pdf.write(contentBytes);
+            pdf.write(ascii("endstream\nendobj\n"));
+        }
+
+        long xref = pdf.size();
+        StringBuilder trailer = new StringBuilder();
+        trailer.append("xref\n0 ").append(numObjects + 1).append("\n0000000000 65535 f \n");
+        for (int i = 1; i <= numObjects; i++) {
+            trailer.append(String.format("%010d 00000 n \n", offsets[i]));
+        }
+        trailer.append("trailer\n<< /Size ").append(numObjects + 1).append(" /Root 1 0 R >>\nstartxref\n").
+                append(xref).append("\n%%EOF\n");
+        pdf.write(ascii(trailer.toString()));
+        pdf.writeTo(stream);
+        stream.flush();
+    }
+}
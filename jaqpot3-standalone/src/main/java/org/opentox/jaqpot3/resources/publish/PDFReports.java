@@ -0,0 +1,141 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.resources.publish;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.opentox.toxotis.core.component.Feature;
+import org.opentox.toxotis.core.component.Model;
+import org.opentox.toxotis.core.component.Parameter;
+import org.opentox.toxotis.core.component.Task;
+import org.opentox.toxotis.ontology.LiteralValue;
+import org.opentox.toxotis.ontology.MetaInfo;
+
+/**
+ * PDF reports of models and tasks.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class PDFReports {
+
+    private PDFReports() {
+    }
+
+    private static void meta(MetaInfo meta, List<String> lines) {
+        if (meta == null) {
+            return;
+        }
+        if (meta.getTitles() != null) {
+            for (LiteralValue title : meta.getTitles()) {
+                lines.add("Title: " + title.getValueAsString());
+            }
+        }
+        if (meta.getDescriptions() != null) {
+            for (LiteralValue description : meta.getDescriptions()) {
+                lines.add("Description: " + description.getValueAsString());
+            }
+        }
+        if (meta.getComments() != null) {
+            for (LiteralValue comment : meta.getComments()) {
+                lines.add("Comment: " + comment.getValueAsString());
+            }
+        }
+    }
+
+    private static void features(String heading, Collection<Feature> features, List<String> lines) {
+        lines.add("");
+        lines.add(heading + " (" + (features != null ? features.size() : 0) + ")");
+        if (features != null) {
+            for (Feature feature : features) {
+                lines.add("  " + feature.getUri());
+            }
+        }
+    }
+
+    /**
+     * A report of the metadata of a model: its algorithm, training dataset,
+     * features and parameters. The actual model is not needed.
+     */
+    public static PDFPublishable model(Model model) {
+        List<String> lines = new ArrayList<String>();
+        lines.add("URI: " + model.getUri());
+        meta(model.getMeta(), lines);
+        if (model.getAlgorithm() != null) {
+            lines.add("Algorithm: " + model.getAlgorithm().getUri());
+        }
+        if (model.getDataset() != null) {
+            lines.add("Training dataset: " + model.getDataset());
+        }
+        if (model.getCreatedBy() != null) {
+            lines.add("Created by: " + model.getCreatedBy().getUid());
+        }
+        features("Dependent features", model.getDependentFeatures(), lines);
+        features("Predicted features", model.getPredictedFeatures(), lines);
+        features("Independent features", model.getIndependentFeatures(), lines);
+        if (model.getParameters() != null && !model.getParameters().isEmpty()) {
+            lines.add("");
+            lines.add("Parameters");
+            for (Parameter parameter : model.getParameters()) {
+                lines.add("  " + (parameter.getName() != null ? parameter.getName().getValueAsString() : "")
+                        + " = " + parameter.getValue());
+            }
+        }
+        return new PDFPublishable("Model " + model.getUri().getId(), lines);
+    }
+
+    /**
+     * A report of the status of a task.
+     */
+    public static PDFPublishable task(Task task) {
+        List<String> lines = new ArrayList<String>();
+        lines.add("URI: " + task.getUri());
+        meta(task.getMeta(), lines);
+        lines.add("Status: " + task.getStatus());
+        lines.add("HTTP status: " + (int) task.getHttpStatus());
+        lines.add("Completed: " + task.getPercentageCompleted() + "%");
+        if (task.getResultUri() != null) {
+            lines.add("Result: " + task.getResultUri());
+        }
+        if (task.getCreatedBy() != null) {
+            lines.add("Created by: " + task.getCreatedBy().getUid());
+        }
+        if (task.getErrorReport() != null) {
+            lines.add("");
+            lines.add("Error: " + task.getErrorReport().getMessage());
+        }
+        return new PDFPublishable("Task " + task.getUri().getId(), lines);
+    }
+}
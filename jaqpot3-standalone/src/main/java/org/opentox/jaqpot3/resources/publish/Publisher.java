@@ -65,7 +65,9 @@ public class Publisher {
     public Publishable process(IOTComponent data) throws JaqpotException {
         // TODO: Take care of all supported and unsupported mediatypes.
         Publishable p = null;
-        if (ms_rdfRelated.contains(m_mediaType)) {
+        if (StreamingRdfPublishable.supports(data, m_mediaType)) {
+            return new StreamingRdfPublishable(data, m_mediaType);
+        } else if (ms_rdfRelated.contains(m_mediaType)) {
             p = new DataModelPublishable(data.asOntModel(), m_mediaType);
             p.setMediaType(m_mediaType);
             return p;
@@ -0,0 +1,423 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.resources.publish;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes RDF statements directly to an output stream in N-Triples, Turtle or
+ * (flat) RDF/XML without building an in-memory graph first. Statements are
+ * grouped by subject: a subject is opened with {@link #subject(java.lang.String) },
+ * followed by any number of {@link #type(java.lang.String) },
+ * {@link #resource(java.lang.String, java.lang.String) } and
+ * {@link #literal(java.lang.String, java.lang.String, java.lang.String) } calls.
+ * Subjects and objects starting with <code>_:</code> are blank nodes. The classes
+ * and properties which were used are declared (as OWL classes and properties)
+ * when the writer is closed; only the vocabulary is kept in memory.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class RdfStreamWriter {
+
+    public static final String RDF = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    public static final String RDFS = "http://www.w3.org/2000/01/rdf-schema#";
+    public static final String OWL = "http://www.w3.org/2002/07/owl#";
+    public static final String XSD = "http://www.w3.org/2001/XMLSchema#";
+    public static final String DC = "http://purl.org/dc/elements/1.1/";
+    public static final String OT = "http://www.opentox.org/api/1.1#";
+    private static final String _TYPE = RDF + "type";
+
+    public enum Syntax {
+
+        N_TRIPLES,
+        TURTLE,
+        RDF_XML;
+    }
+    private static final Map<String, String> PREFIXES = new LinkedHashMap<String, String>();
+
+    static {
+        PREFIXES.put(RDF, "rdf");
+        PREFIXES.put(RDFS, "rdfs");
+        PREFIXES.put(OWL, "owl");
+        PREFIXES.put(XSD, "xsd");
+        PREFIXES.put(DC, "dc");
+        PREFIXES.put(OT, "ot");
+    }
+    private final Writer out;
+    private final Syntax syntax;
+    private final Set<String> classes = new LinkedHashSet<String>();
+    private final Set<String> objectProperties = new LinkedHashSet<String>();
+    private final Set<String> datatypeProperties = new LinkedHashSet<String>();
+    private String subject = null;
+    private boolean firstStatement = true;
+    private boolean closed = false;
+
+    public RdfStreamWriter(OutputStream stream, Syntax syntax) throws IOException {
+        this.out = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"), 8192);
+        this.syntax = syntax;
+        if (Syntax.TURTLE.equals(syntax)) {
+            for (Map.Entry<String, String> prefix : PREFIXES.entrySet()) {
+                out.write("@prefix " + prefix.getValue() + ": <" + prefix.getKey() + "> .\n");
+            }
+            out.write('\n');
+        } else if (Syntax.RDF_XML.equals(syntax)) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<rdf:RDF");
+            for (Map.Entry<String, String> prefix : PREFIXES.entrySet()) {
+                out.write("\n    xmlns:" + prefix.getValue() + "=\"" + prefix.getKey() + "\"");
+            }
+            out.write(">\n");
+        }
+    }
+
+    /**
+     * Starts the statements about a new subject (closing the previous one).
+     *
+     * @param uri
+     *      URI of the subject.
+     * @return
+     *      This writer.
+     */
+    public RdfStreamWriter subject(String uri) throws IOException {
+        endSubject();
+        subject = uri;
+        firstStatement = true;
+        if (Syntax.TURTLE.equals(syntax)) {
+            out.write(iri(uri));
+        } else if (Syntax.RDF_XML.equals(syntax)) {
+            out.write("  <rdf:Description " + xmlNode("rdf:about", uri) + ">\n");
+        }
+        return this;
+    }
+
+    /**
+     * States that the current subject is an instance of the given class.
+     */
+    public RdfStreamWriter type(String classUri) throws IOException {
+        if (classUri == null) {
+            return this;
+        }
+        classes.add(classUri);
+        statement(_TYPE, classUri, null, null);
+        return this;
+    }
+
+    /**
+     * Links the current subject to another resource.
+     */
+    public RdfStreamWriter resource(String property, String uri) throws IOException {
+        if (uri == null) {
+            return this;
+        }
+        if (!isAnnotation(property)) {
+            objectProperties.add(property);
+        }
+        statement(property, uri, null, null);
+        return this;
+    }
+
+    /**
+     * Adds a literal value to the current subject.
+     *
+     * @param property
+     *      URI of the property.
+     * @param value
+     *      Lexical form of the value; nothing is written if it is <code>null</code>.
+     * @param datatype
+     *      URI of the XSD datatype, or <code>null</code> for a plain literal.
+     */
+    public RdfStreamWriter literal(String property, String value, String datatype) throws IOException {
+        if (value == null) {
+            return this;
+        }
+        if (!isAnnotation(property)) {
+            datatypeProperties.add(property);
+        }
+        statement(property, null, value, datatype);
+        return this;
+    }
+
+    private static boolean isAnnotation(String property) {
+        return property.startsWith(DC) || property.startsWith(RDFS);
+    }
+
+    private void statement(String property, String object, String value, String datatype) throws IOException {
+        if (subject == null) {
+            throw new IllegalStateException("No subject has been started");
+        }
+        switch (syntax) {
+            case N_TRIPLES:
+                out.write(iri(subject));
+                out.write(' ');
+                out.write(iri(property));
+                out.write(' ');
+                out.write(object != null ? iri(object) : ntLiteral(value, datatype));
+                out.write(" .\n");
+                break;
+            case TURTLE:
+                out.write(firstStatement ? "\n    " : " ;\n    ");
+                out.write(_TYPE.equals(property) ? "a" : name(property));
+                out.write(' ');
+                out.write(object != null ? name(object) : ttlLiteral(value, datatype));
+                break;
+            default:
+                String qname = qname(property);
+                out.write("    <" + qname);
+                if (qname.startsWith("ns0:")) {
+                    out.write(" xmlns:ns0=\"" + xml(namespace(property)) + "\"");
+                }
+                if (object != null) {
+                    out.write(" " + xmlNode("rdf:resource", object) + "/>\n");
+                } else {
+                    if (datatype != null) {
+                        out.write(" rdf:datatype=\"" + xml(datatype) + "\"");
+                    }
+                    out.write(">" + xml(value) + "</" + qname + ">\n");
+                }
+        }
+        firstStatement = false;
+    }
+
+    private void endSubject() throws IOException {
+        if (subject == null) {
+            return;
+        }
+        if (Syntax.TURTLE.equals(syntax)) {
+            out.write(firstStatement ? " a rdfs:Resource .\n\n" : " .\n\n");
+        } else if (Syntax.RDF_XML.equals(syntax)) {
+            out.write("  </rdf:Description>\n");
+        }
+        subject = null;
+    }
+
+    /**
+     * Writes the declarations of the vocabulary, completes the document and flushes
+     * the underlying stream (which is not closed).
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        declare(classes, OWL + "Class");
+        declare(objectProperties, OWL + "ObjectProperty");
+        declare(datatypeProperties, OWL + "DatatypeProperty");
+        endSubject();
+        if (Syntax.RDF_XML.equals(syntax)) {
+            out.write("</rdf:RDF>\n");
+        }
+        out.flush();
+    }
+
+    private void declare(Set<String> vocabulary, String kind) throws IOException {
+        for (String uri : new LinkedHashSet<String>(vocabulary)) {
+            subject(uri);
+            statement(_TYPE, kind, null, null);
+        }
+    }
+
+    private static String namespace(String uri) {
+        int split = Math.max(uri.lastIndexOf('#'), uri.lastIndexOf('/')) + 1;
+        return uri.substring(0, split);
+    }
+
+    private static String qname(String uri) {
+        String namespace = namespace(uri);
+        String local = uri.substring(namespace.length());
+        String prefix = PREFIXES.get(namespace);
+        return (prefix != null ? prefix : "ns0") + ":" + local;
+    }
+
+    /**
+     * Prefixed name in Turtle when the namespace is known and the local name is
+     * simple, otherwise a full IRI.
+     */
+    private static String name(String uri) {
+        String namespace = namespace(uri);
+        String prefix = PREFIXES.get(namespace);
+        String local = uri.substring(namespace.length());
+        if (prefix == null || local.length() == 0 || !Character.isLetter(local.charAt(0))) {
+            return iri(uri);
+        }
+        for (int i = 0; i < local.length(); i++) {
+            char c = local.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '-') {
+                return iri(uri);
+            }
+        }
+        return prefix + ":" + local;
+    }
+
+    /**
+     * Whether the identifier is a blank node label (<code>_:label</code>).
+     */
+    private static boolean isBlank(String uri) {
+        return uri.startsWith("_:");
+    }
+
+    private static String xmlNode(String attribute, String uri) {
+        return isBlank(uri) ? "rdf:nodeID=\"" + xml(uri.substring(2)) + "\"" : attribute + "=\"" + xml(uri) + "\"";
+    }
+
+    private static String iri(String uri) {
+        if (isBlank(uri)) {
+            return uri;
+        }
+        StringBuilder sb = new StringBuilder(uri.length() + 2);
+        sb.append('<');
+        for (int i = 0; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            if (c <= 0x20 || c == '<' || c == '>' || c == '"' || c == '{' || c == '}' || c == '|'
+                    || c == '^' || c == '`' || c == '\\') {
+                sb.append(String.format("%%%02X", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('>').toString();
+    }
+
+    private static String ntLiteral(String value, String datatype) {
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                            && Character.isLowSurrogate(value.charAt(i + 1))) {
+                        /* Characters outside the BMP are a single escape, not two surrogates */
+                        sb.append(String.format("\\U%08X", value.codePointAt(i)));
+                        i++;
+                    } else if (c < 0x20 || c > 0x7E) {
+                        sb.append(String.format("\\u%04X", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+        if (datatype != null) {
+            sb.append("^^").append(iri(datatype));
+        }
+        return sb.toString();
+    }
+
+    private static String ttlLiteral(String value, String datatype) {
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        sb.append('"');
+        if (datatype != null) {
+            sb.append("^^").append(name(datatype));
+        }
+        return sb.toString();
+    }
+
+    private static String xml(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                case '"':
+                    sb.append("&quot;");
+                    break;
+                case '\r':
+                    sb.append("&#13;");
+                    break;
+                default:
+                    if ((c < 0x20 && c != '\t' && c != '\n') || c == 0xFFFE || c == 0xFFFF) {
+                        /* Not allowed in XML 1.0, not even as a character reference */
+                        sb.append('\uFFFD');
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.toString();
+    }
+}
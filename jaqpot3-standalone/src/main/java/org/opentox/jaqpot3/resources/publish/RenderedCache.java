@@ -0,0 +1,271 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.resources.publish;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.util.Configuration;
+import org.restlet.data.Encoding;
+import org.restlet.data.Language;
+import org.restlet.data.MediaType;
+import org.restlet.data.Tag;
+import org.restlet.representation.OutputRepresentation;
+import org.restlet.representation.Representation;
+
+/**
+ * An immutable cache of rendered representations of resources that do not
+ * change while the server runs (e.g. algorithm descriptions and their REST
+ * documentation). Every (key, media type) pair is rendered once, on first request,
+ * and served from memory thereafter; compressed forms are computed once as well.
+ * The cache is enabled with the property <code>caching.representations</code>.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class RenderedCache {
+
+    /**
+     * Provides the publishable to be rendered on a cache miss.
+     */
+    public interface Renderer {
+
+        Publishable render() throws JaqpotException;
+    }
+    public static final RenderedCache CACHE = new RenderedCache(Boolean.parseBoolean(
+            Configuration.getStringProperty("caching.representations", "true")));
+    private final ConcurrentMap<String, Rendered> entries = new ConcurrentHashMap<String, Rendered>();
+    private final boolean enabled;
+
+    private RenderedCache(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns the cached representation of a resource in the given media type,
+     * rendering it if this is the first request for it. Failed renderings are
+     * not cached.
+     *
+     * @param key
+     *      A key that identifies the resource, unique across the server.
+     * @param media
+     *      The requested media type.
+     * @param renderer
+     *      Creates the publishable on a cache miss.
+     * @return
+     *      A representation of known size backed by the cached bytes.
+     * @throws JaqpotException
+     *      In case the resource cannot be published in the requested media type.
+     */
+    public CachedRepresentation get(String key, MediaType media, Renderer renderer) throws JaqpotException {
+        String cacheKey = key + " " + media;
+        Rendered rendered = enabled ? entries.get(cacheKey) : null;
+        if (rendered == null) {
+            rendered = render(renderer.render());
+            if (enabled) {
+                Rendered previous = entries.putIfAbsent(cacheKey, rendered);
+                if (previous != null) {
+                    rendered = previous;
+                }
+            }
+        }
+        return new CachedRepresentation(rendered, null);
+    }
+
+    /**
+     * Adapts a representation (e.g. a WADL document) so that it can be rendered
+     * into the cache.
+     */
+    public static Publishable publishable(final Representation representation) {
+        return new Publishable() {
+
+            private MediaType media = representation.getMediaType();
+
+            public void publish(OutputStream stream) {
+                try {
+                    representation.write(stream);
+                } catch (IOException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+
+            public void setMediaType(MediaType media) {
+                this.media = media;
+            }
+
+            public MediaType getMediaType() {
+                return media;
+            }
+
+            public void close() throws IOException {
+                representation.release();
+            }
+        };
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static Rendered render(Publishable publishable) throws JaqpotException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        try {
+            publishable.publish(bytes);
+        } catch (RuntimeException ex) {
+            throw new JaqpotException("Data could not be publihed to output stream.", ex);
+        } finally {
+            try {
+                publishable.close();
+            } catch (IOException ex) {
+                /* Nothing was read from an external source */
+            }
+        }
+        return new Rendered(publishable.getMediaType(), bytes.toByteArray());
+    }
+
+    private static class Rendered {
+
+        private final MediaType media;
+        private final byte[] identity;
+        private volatile byte[] gzip;
+        private volatile byte[] deflate;
+
+        Rendered(MediaType media, byte[] identity) {
+            this.media = media;
+            this.identity = identity;
+        }
+
+        byte[] bytes(Encoding encoding) {
+            if (encoding == null) {
+                return identity;
+            }
+            boolean isGzip = Encoding.GZIP.equals(encoding);
+            byte[] encoded = isGzip ? gzip : deflate;
+            if (encoded == null) {
+                /* Races only compute the same bytes twice */
+                encoded = compress(identity, isGzip);
+                if (isGzip) {
+                    gzip = encoded;
+                } else {
+                    deflate = encoded;
+                }
+            }
+            return encoded;
+        }
+
+        private static byte[] compress(byte[] data, boolean gzip) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+            try {
+                if (gzip) {
+                    GZIPOutputStream out = new GZIPOutputStream(bytes) {
+
+                        {
+                            def.setLevel(Deflater.BEST_COMPRESSION);
+                        }
+                    };
+                    out.write(data);
+                    out.close();
+                } else {
+                    Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+                    try {
+                        DeflaterOutputStream out = new DeflaterOutputStream(bytes, deflater);
+                        out.write(data);
+                        out.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            } catch (IOException ex) {
+                /* Not thrown by in-memory streams */
+                throw new IllegalStateException(ex);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * A representation backed by cached bytes. Since the bytes are immutable, the
+     * same cache entry may be written to any number of responses concurrently.
+     */
+    public static class CachedRepresentation extends OutputRepresentation {
+
+        private final Rendered rendered;
+        private final Encoding encoding;
+
+        private CachedRepresentation(Rendered rendered, Encoding encoding) {
+            super(rendered.media);
+            this.rendered = rendered;
+            this.encoding = encoding;
+            setSize(rendered.bytes(encoding).length);
+            List<Language> langs = new ArrayList<Language>();
+            langs.add(Language.ENGLISH);
+            langs.add(Language.ENGLISH_US);
+            setLanguages(langs);
+            if (encoding != null) {
+                List<Encoding> encodings = new ArrayList<Encoding>();
+                encodings.add(encoding);
+                setEncodings(encodings);
+            }
+        }
+
+        /**
+         * A copy of this representation compressed with the given encoding, whose
+         * compressed bytes are cached alongside the original ones.
+         */
+        public CachedRepresentation encoded(Encoding encoding) {
+            CachedRepresentation encoded = new CachedRepresentation(rendered, encoding);
+            encoded.setCharacterSet(getCharacterSet());
+            encoded.setModificationDate(getModificationDate());
+            encoded.setExpirationDate(getExpirationDate());
+            if (getTag() != null) {
+                encoded.setTag(new Tag(getTag().getName(), true));
+            }
+            return encoded;
+        }
+
+        @Override
+        public void write(OutputStream outputStream) throws IOException {
+            outputStream.write(rendered.bytes(encoding));
+            outputStream.flush();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.resources.publish;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.toxotis.client.VRI;
+import org.restlet.data.MediaType;
+import org.restlet.representation.OutputRepresentation;
+import org.restlet.representation.Representation;
+
+/**
+ * A size-bounded cache of rendered reports (e.g. PDF documents of models),
+ * keyed by the id and the version of the reported component. Reports are
+ * rendered in the background (see {@link org.opentox.jaqpot3.www.services.ReportService});
+ * while a report is being rendered the cache holds the URI of the task that
+ * renders it, so that concurrent requests for the same report share the task.
+ * The least recently used reports are evicted when the cache exceeds
+ * <code>caching.reports.maxKilobytes</code>.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class ReportCache {
+
+    public static final ReportCache CACHE = new ReportCache(
+            1024L * Configuration.getIntegerProperty("caching.reports.maxKilobytes", 32768));
+    private final long maxSize;
+    private long size = 0;
+    private final Map<String, Report> reports = new LinkedHashMap<String, Report>(16, 0.75f, true);
+    private final ConcurrentMap<String, VRI> pending = new ConcurrentHashMap<String, VRI>();
+
+    private static class Report {
+
+        private final String media;
+        private final byte[] bytes;
+
+        Report(String media, byte[] bytes) {
+            this.media = media;
+            this.bytes = bytes;
+        }
+    }
+
+    private ReportCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * The cached report as a representation of known size, or <code>null</code>
+     * if the report is not in the cache.
+     */
+    public Representation get(String key) {
+        final Report report;
+        synchronized (this) {
+            report = reports.get(key);
+        }
+        if (report == null) {
+            return null;
+        }
+        Representation representation = new OutputRepresentation(MediaType.valueOf(report.media)) {
+
+            @Override
+            public void write(OutputStream outputStream) throws IOException {
+                outputStream.write(report.bytes);
+                outputStream.flush();
+            }
+        };
+        representation.setSize(report.bytes.length);
+        return representation;
+    }
+
+    /**
+     * Renders a publishable and stores the result under the given key.
+     */
+    public void render(String key, Publishable publishable) throws JaqpotException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+        try {
+            publishable.publish(bytes);
+        } catch (RuntimeException ex) {
+            throw new JaqpotException("Data could not be publihed to output stream.", ex);
+        } finally {
+            try {
+                publishable.close();
+            } catch (IOException ex) {
+                /* Nothing was read from an external source */
+            }
+        }
+        put(key, new Report(publishable.getMediaType().toString(), bytes.toByteArray()));
+    }
+
+    private synchronized void put(String key, Report report) {
+        if (report.bytes.length > maxSize) {
+            return;
+        }
+        Report previous = reports.put(key, report);
+        size += report.bytes.length - (previous != null ? previous.bytes.length : 0);
+        Iterator<Report> lru = reports.values().iterator();
+        while (size > maxSize && lru.hasNext()) {
+            size -= lru.next().bytes.length;
+            lru.remove();
+        }
+    }
+
+    /**
+     * Records that the report is being rendered by a task.
+     *
+     * @return
+     *      <code>null</code> if the report was reserved for the given task, or the
+     *      URI of the task that already renders it.
+     */
+    public VRI reserve(String key, VRI task) {
+        return pending.putIfAbsent(key, task);
+    }
+
+    /**
+     * Called when the task that renders a report ends, successfully or not.
+     */
+    public void release(String key) {
+        pending.remove(key);
+    }
+
+    public synchronized int size() {
+        return reports.size();
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.resources.publish;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Set;
+import org.opentox.jaqpot3.resources.publish.RdfStreamWriter.Syntax;
+import org.opentox.toxotis.core.IOTComponent;
+import org.opentox.toxotis.core.OTComponent;
+import org.opentox.toxotis.core.component.Algorithm;
+import org.opentox.toxotis.core.component.Feature;
+import org.opentox.toxotis.core.component.Model;
+import org.opentox.toxotis.core.component.Parameter;
+import org.opentox.toxotis.core.component.Task;
+import org.opentox.toxotis.ontology.LiteralValue;
+import org.opentox.toxotis.ontology.MetaInfo;
+import org.opentox.toxotis.ontology.OntologicalClass;
+import org.opentox.toxotis.ontology.ResourceValue;
+import org.restlet.data.MediaType;
+
+import static org.opentox.jaqpot3.resources.publish.RdfStreamWriter.DC;
+import static org.opentox.jaqpot3.resources.publish.RdfStreamWriter.OT;
+import static org.opentox.jaqpot3.resources.publish.RdfStreamWriter.RDFS;
+import static org.opentox.jaqpot3.resources.publish.RdfStreamWriter.XSD;
+
+/**
+ * Publishes models, algorithms and tasks in N-Triples, Turtle (also used for N3)
+ * or RDF/XML by writing their triples straight to the output stream, instead of
+ * building their ontological model in memory first (as {@link DataModelPublishable}
+ * does). The response starts immediately and memory use does not grow with the
+ * number of features and parameters of a model.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class StreamingRdfPublishable extends AbstractPublishable {
+
+    private final IOTComponent component;
+    private int blankNodes = 0;
+
+    public StreamingRdfPublishable(IOTComponent component, MediaType media) {
+        this.component = component;
+        setMediaType(media);
+    }
+
+    /**
+     * Whether the component can be streamed in the given media type. Tasks which
+     * carry an error report are left to {@link DataModelPublishable}.
+     */
+    public static boolean supports(IOTComponent component, MediaType media) {
+        if (syntax(media) == null) {
+            return false;
+        }
+        if (component instanceof Task) {
+            return ((Task) component).getErrorReport() == null;
+        }
+        return component instanceof Model || component instanceof Algorithm;
+    }
+
+    private static Syntax syntax(MediaType media) {
+        if (MediaType.TEXT_RDF_NTRIPLES.equals(media)) {
+            return Syntax.N_TRIPLES;
+        } else if (MediaType.APPLICATION_RDF_TURTLE.equals(media) || MediaType.TEXT_RDF_N3.equals(media)) {
+            return Syntax.TURTLE;
+        } else if (MediaType.APPLICATION_RDF_XML.equals(media)) {
+            return Syntax.RDF_XML;
+        }
+        return null;
+    }
+
+    @Override
+    public void publish(OutputStream stream) {
+        try {
+            RdfStreamWriter writer = new RdfStreamWriter(stream, syntax(getMediaType()));
+            if (component instanceof Model) {
+                writeModel(writer, (Model) component);
+            } else if (component instanceof Algorithm) {
+                writeAlgorithm(writer, (Algorithm) component);
+            } else if (component instanceof Task) {
+                writeTask(writer, (Task) component);
+            }
+            writer.close();
+        } catch (IOException ex) {
+            throw new RuntimeException("IOException : " + ex.getMessage());
+        }
+    }
+
+    private String id(OTComponent<?> c) {
+        return c.getUri() != null ? c.getUri().toString() : "_:b" + (blankNodes++);
+    }
+
+    private void writeModel(RdfStreamWriter writer, Model model) throws IOException {
+        writer.subject(model.getUri().toString()).type(OT + "Model");
+        writeMeta(writer, model.getMeta());
+        if (model.getAlgorithm() != null) {
+            writer.resource(OT + "algorithm", model.getAlgorithm().getUri().toString());
+        }
+        if (model.getDataset() != null) {
+            writer.resource(OT + "trainingDataset", model.getDataset().toString());
+        }
+        /* Link to the features and parameters first, then describe them one by one */
+        linkFeatures(writer, OT + "independentVariables", model.getIndependentFeatures());
+        linkFeatures(writer, OT + "dependentVariables", model.getDependentFeatures());
+        linkFeatures(writer, OT + "predictedVariables", model.getPredictedFeatures());
+        Set<Parameter> parameters = model.getParameters();
+        String[] parameterIds = null;
+        if (parameters != null) {
+            parameterIds = new String[parameters.size()];
+            int i = 0;
+            for (Parameter p : parameters) {
+                parameterIds[i] = id(p);
+                writer.resource(OT + "parameters", parameterIds[i++]);
+            }
+        }
+        if (model.getAlgorithm() != null) {
+            writer.subject(model.getAlgorithm().getUri().toString()).type(OT + "Algorithm");
+        }
+        if (model.getDataset() != null) {
+            writer.subject(model.getDataset().toString()).type(OT + "Dataset");
+        }
+        describeFeatures(writer, model.getIndependentFeatures());
+        describeFeatures(writer, model.getDependentFeatures());
+        describeFeatures(writer, model.getPredictedFeatures());
+        if (parameters != null) {
+            int i = 0;
+            for (Parameter p : parameters) {
+                writeParameter(writer, parameterIds[i++], p);
+            }
+        }
+    }
+
+    private void writeAlgorithm(RdfStreamWriter writer, Algorithm algorithm) throws IOException {
+        writer.subject(algorithm.getUri().toString()).type(OT + "Algorithm");
+        writeOntologies(writer, algorithm.getOntologicalClasses());
+        writeMeta(writer, algorithm.getMeta());
+        Set<Parameter> parameters = algorithm.getParameters();
+        if (parameters == null) {
+            return;
+        }
+        String[] parameterIds = new String[parameters.size()];
+        int i = 0;
+        for (Parameter p : parameters) {
+            parameterIds[i] = id(p);
+            writer.resource(OT + "parameters", parameterIds[i++]);
+        }
+        i = 0;
+        for (Parameter p : parameters) {
+            writeParameter(writer, parameterIds[i++], p);
+        }
+    }
+
+    private void writeTask(RdfStreamWriter writer, Task task) throws IOException {
+        writer.subject(task.getUri().toString()).type(OT + "Task");
+        writeMeta(writer, task.getMeta());
+        if (task.getStatus() != null) {
+            String status = task.getStatus().name();
+            writer.literal(OT + "hasStatus", status.charAt(0) + status.substring(1).toLowerCase(), XSD + "string");
+        }
+        writer.literal(OT + "percentageCompleted", Float.toString(task.getPercentageCompleted()), XSD + "float");
+        if (task.getResultUri() != null) {
+            writer.literal(OT + "resultURI", task.getResultUri().toString(), XSD + "anyURI");
+        }
+    }
+
+    private void linkFeatures(RdfStreamWriter writer, String property, Collection<Feature> features) throws IOException {
+        if (features == null) {
+            return;
+        }
+        for (Feature f : features) {
+            if (f.getUri() != null) {
+                writer.resource(property, f.getUri().toString());
+            }
+        }
+    }
+
+    private void describeFeatures(RdfStreamWriter writer, Collection<Feature> features) throws IOException {
+        if (features == null) {
+            return;
+        }
+        for (Feature f : features) {
+            if (f.getUri() == null) {
+                continue;
+            }
+            writer.subject(f.getUri().toString()).type(OT + "Feature");
+            writeOntologies(writer, f.getOntologicalClasses());
+            writeMeta(writer, f.getMeta());
+        }
+    }
+
+    private void writeParameter(RdfStreamWriter writer, String id, Parameter p) throws IOException {
+        writer.subject(id).type(OT + "Parameter");
+        if (p.getName() != null) {
+            writer.literal(DC + "title", p.getName().getValueAsString(), XSD + "string");
+        }
+        if (p.getScope() != null) {
+            writer.literal(OT + "paramScope", p.getScope().toString().toLowerCase(), XSD + "string");
+        }
+        writeLiteral(writer, OT + "paramValue", p.getTypedValue());
+    }
+
+    private void writeOntologies(RdfStreamWriter writer, Set<OntologicalClass> ontologies) throws IOException {
+        if (ontologies == null) {
+            return;
+        }
+        for (OntologicalClass oc : ontologies) {
+            if (oc != null) {
+                writer.type(oc.getUri());
+            }
+        }
+    }
+
+    private void writeMeta(RdfStreamWriter writer, MetaInfo meta) throws IOException {
+        if (meta == null) {
+            return;
+        }
+        writeLiterals(writer, DC + "title", meta.getTitles());
+        writeLiterals(writer, DC + "description", meta.getDescriptions());
+        writeLiterals(writer, RDFS + "comment", meta.getComments());
+        writeLiterals(writer, DC + "creator", meta.getCreators());
+        writeLiterals(writer, DC + "rights", meta.getRights());
+        writeLiteral(writer, DC + "date", meta.getDate());
+        Set<ResourceValue> sources = meta.getHasSources();
+        if (sources != null) {
+            for (ResourceValue source : sources) {
+                writer.resource(OT + "hasSource", source.getUri() != null ? source.getUri().toString() : null);
+            }
+        }
+    }
+
+    private void writeLiterals(RdfStreamWriter writer, String property, Set<LiteralValue> values) throws IOException {
+        if (values == null) {
+            return;
+        }
+        for (LiteralValue value : values) {
+            writeLiteral(writer, property, value);
+        }
+    }
+
+    private void writeLiteral(RdfStreamWriter writer, String property, LiteralValue value) throws IOException {
+        if (value == null || value.getValue() == null) {
+            return;
+        }
+        writer.literal(property, value.getValueAsString(), value.getType() != null ? value.getType().getURI() : null);
+    }
+
+    @Override
+    public void close() throws IOException {
+        /* Nothing to release */
+    }
+}
@@ -0,0 +1,548 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Compact binary columnar format for datasets, used for the exchange of datasets
+ * between Jaqpot services (media type {@value #MEDIA_TYPE}) and for the datasets
+ * of the disk cache. All numbers are big-endian; strings are written as their
+ * length in bytes (<code>-1</code> for <code>null</code>) followed by their UTF-8
+ * encoding. The layout (version 1) is:
+ * <pre>
+ * int    magic ("JQCD")
+ * short  version
+ * short  flags (reserved, 0)
+ * int    length of the header
+ * header relation name, number of instances, number of attributes and, per
+ *        attribute, its name (feature URI), its type (byte: 0 numeric, 1 nominal,
+ *        2 string, 3 date) and the nominal values or the date format
+ * block  instance weights (empty if all weights are 1)
+ * block  one per attribute
+ * </pre>
+ * Every block consists of a codec (byte: 0 raw, 1 deflate), its stored and its raw
+ * length (int) and the stored bytes. A column has a flag (byte) indicating whether
+ * it has missing values, followed by the missing-value bitset (longs, bit
+ * <code>i % 64</code> of word <code>i / 64</code> for instance <code>i</code>) if so,
+ * and its values: doubles for numeric and date attributes (<code>NaN</code> where
+ * missing), indices (int) for nominal attributes and, for string attributes, a
+ * dictionary of the distinct values followed by indices into it (<code>-1</code>
+ * where missing).
+ *
+ * <p>Datasets are read from untrusted sources, so every count and length is
+ * checked against sane limits and against the data actually received before
+ * anything is allocated for it.</p>
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class ColumnarDataset {
+
+    public static final String MEDIA_TYPE = "application/x-jaqpot-dataset";
+    private static final int _MAGIC = 0x4A514344;
+    private static final short _VERSION = 1;
+    private static final byte _RAW = 0;
+    private static final byte _DEFLATE = 1;
+    private static final byte _NUMERIC = 0;
+    private static final byte _NOMINAL = 1;
+    private static final byte _STRING = 2;
+    private static final byte _DATE = 3;
+    private static final int _MAX_HEADER_LENGTH = 1 << 26;
+    /* Deflate cannot shrink data by more than about 1032:1 */
+    private static final long _MAX_DEFLATE_RATIO = 1032;
+    private static final int _READ_CHUNK = 1 << 20;
+
+    private ColumnarDataset() {
+    }
+
+    /**
+     * Writes a dataset in the columnar format. The stream is flushed but not closed.
+     *
+     * @param data
+     *      Dataset.
+     * @param out
+     *      Output stream.
+     * @param compress
+     *      Whether the blocks should be compressed (with deflate). Blocks that do
+     *      not shrink are stored uncompressed.
+     * @throws IOException
+     *      If the dataset cannot be written or contains relational attributes.
+     */
+    public static void write(Instances data, OutputStream out, boolean compress) throws IOException {
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        int numInstances = data.numInstances();
+        int numAttributes = data.numAttributes();
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        writeString(header, data.relationName());
+        header.writeInt(numInstances);
+        header.writeInt(numAttributes);
+        for (int j = 0; j < numAttributes; j++) {
+            Attribute attribute = data.attribute(j);
+            writeString(header, attribute.name());
+            switch (attribute.type()) {
+                case Attribute.NUMERIC:
+                    header.writeByte(_NUMERIC);
+                    break;
+                case Attribute.NOMINAL:
+                    header.writeByte(_NOMINAL);
+                    header.writeInt(attribute.numValues());
+                    for (int k = 0; k < attribute.numValues(); k++) {
+                        writeString(header, attribute.value(k));
+                    }
+                    break;
+                case Attribute.STRING:
+                    header.writeByte(_STRING);
+                    break;
+                case Attribute.DATE:
+                    header.writeByte(_DATE);
+                    writeString(header, attribute.getDateFormat());
+                    break;
+                default:
+                    throw new IOException("Attribute " + attribute.name() + " is of unsupported type");
+            }
+        }
+        header.flush();
+        dos.writeInt(_MAGIC);
+        dos.writeShort(_VERSION);
+        dos.writeShort(0);
+        dos.writeInt(headerBytes.size());
+        headerBytes.writeTo(dos);
+
+        boolean unitWeights = true;
+        for (int i = 0; i < numInstances && unitWeights; i++) {
+            unitWeights = data.instance(i).weight() == 1.0;
+        }
+        if (unitWeights) {
+            writeBlock(dos, new byte[0], false);
+        } else {
+            ByteBuffer weights = ByteBuffer.allocate(8 * numInstances);
+            for (int i = 0; i < numInstances; i++) {
+                weights.putDouble(data.instance(i).weight());
+            }
+            writeBlock(dos, weights.array(), compress);
+        }
+        for (int j = 0; j < numAttributes; j++) {
+            writeBlock(dos, encodeColumn(data, j), compress);
+        }
+        dos.flush();
+    }
+
+    private static byte[] encodeColumn(Instances data, int j) throws IOException {
+        int numInstances = data.numInstances();
+        Attribute attribute = data.attribute(j);
+        long[] missing = new long[(numInstances + 63) / 64];
+        boolean hasMissing = false;
+        for (int i = 0; i < numInstances; i++) {
+            if (data.instance(i).isMissing(j)) {
+                missing[i >>> 6] |= 1L << (i & 63);
+                hasMissing = true;
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 + 8 * missing.length + 8 * numInstances);
+        DataOutputStream column = new DataOutputStream(bytes);
+        column.writeByte(hasMissing ? 1 : 0);
+        if (hasMissing) {
+            for (long word : missing) {
+                column.writeLong(word);
+            }
+        }
+        if (attribute.isNominal()) {
+            for (int i = 0; i < numInstances; i++) {
+                Instance instance = data.instance(i);
+                column.writeInt(instance.isMissing(j) ? -1 : (int) instance.value(j));
+            }
+        } else if (attribute.isString()) {
+            Map<String, Integer> dictionary = new LinkedHashMap<String, Integer>();
+            int[] indices = new int[numInstances];
+            for (int i = 0; i < numInstances; i++) {
+                Instance instance = data.instance(i);
+                if (instance.isMissing(j)) {
+                    indices[i] = -1;
+                    continue;
+                }
+                String value = instance.stringValue(j);
+                Integer index = dictionary.get(value);
+                if (index == null) {
+                    index = dictionary.size();
+                    dictionary.put(value, index);
+                }
+                indices[i] = index;
+            }
+            column.writeInt(dictionary.size());
+            for (String value : dictionary.keySet()) {
+                writeString(column, value);
+            }
+            for (int index : indices) {
+                column.writeInt(index);
+            }
+        } else {
+            for (int i = 0; i < numInstances; i++) {
+                column.writeDouble(data.instance(i).value(j));
+            }
+        }
+        column.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeBlock(DataOutputStream out, byte[] raw, boolean compress) throws IOException {
+        if (compress && raw.length > 0) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2);
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                DeflaterOutputStream deflating = new DeflaterOutputStream(compressed, deflater);
+                deflating.write(raw);
+                deflating.finish();
+            } finally {
+                deflater.end();
+            }
+            if (compressed.size() < raw.length) {
+                out.writeByte(_DEFLATE);
+                out.writeInt(compressed.size());
+                out.writeInt(raw.length);
+                compressed.writeTo(out);
+                return;
+            }
+        }
+        out.writeByte(_RAW);
+        out.writeInt(raw.length);
+        out.writeInt(raw.length);
+        out.write(raw);
+    }
+
+    /**
+     * Reads a dataset in the columnar format from a stream. The stream is not closed.
+     *
+     * @param in
+     *      Input stream.
+     * @return
+     *      The dataset.
+     * @throws IOException
+     *      If the stream cannot be read or is not in the columnar format.
+     */
+    public static Instances read(InputStream in) throws IOException {
+        DataInputStream input = new DataInputStream(in);
+        ByteBuffer prefix = ByteBuffer.allocate(12);
+        input.readFully(prefix.array());
+        int headerLength = checkPrefix(prefix);
+        byte[] header = readBytes(input, 0, headerLength);
+        int[] numInstancesHolder = new int[1];
+        Instances structure;
+        try {
+            structure = readHeader(ByteBuffer.wrap(header), numInstancesHolder);
+        } catch (RuntimeException ex) {
+            throw new IOException("Corrupted header", ex);
+        }
+        int numInstances = numInstancesHolder[0];
+        int numAttributes = structure.numAttributes();
+        if (numInstances > 0 && numAttributes == 0) {
+            throw new IOException("Corrupted header: instances without attributes");
+        }
+        /* All blocks are read and their lengths checked before the rows are allocated */
+        ByteBuffer weights = inflate(readBlock(input));
+        if (weights.remaining() != 0 && weights.remaining() != 8L * numInstances) {
+            throw new IOException("Corrupted block of weights");
+        }
+        ByteBuffer[] columns = new ByteBuffer[numAttributes];
+        for (int j = 0; j < numAttributes; j++) {
+            columns[j] = inflate(readBlock(input));
+            checkColumnLength(columns[j].remaining(), structure.attribute(j), numInstances);
+        }
+        double[][] rows = new double[numInstances][numAttributes];
+        try {
+            for (int j = 0; j < numAttributes; j++) {
+                decodeColumn(columns[j], structure.attribute(j), j, rows);
+            }
+            return assemble(structure, weights, rows);
+        } catch (RuntimeException ex) {
+            throw new IOException("Corrupted dataset", ex);
+        }
+    }
+
+    /**
+     * Reads a dataset in the columnar format from a byte array.
+     */
+    public static Instances read(byte[] bytes) throws IOException {
+        return read(new ByteArrayInputStream(bytes));
+    }
+
+    private static ByteBuffer readBlock(DataInputStream input) throws IOException {
+        byte codec = input.readByte();
+        int storedLength = input.readInt();
+        int rawLength = input.readInt();
+        if (storedLength < 0 || rawLength < 0 || storedLength > Integer.MAX_VALUE - 9
+                || (codec == _RAW && rawLength != storedLength)
+                || (codec == _DEFLATE && rawLength > _MAX_DEFLATE_RATIO * storedLength + 64)) {
+            throw new IOException("Corrupted block");
+        }
+        ByteBuffer block = ByteBuffer.wrap(readBytes(input, 9, storedLength));
+        block.put(codec).putInt(storedLength).putInt(rawLength);
+        block.rewind();
+        return block;
+    }
+
+    /**
+     * Reads <code>length</code> bytes into a new array after <code>offset</code>
+     * bytes which are left for the caller. The array grows as the bytes arrive, so
+     * that a corrupted length fails at the end of the stream instead of allocating
+     * memory which is never filled.
+     */
+    private static byte[] readBytes(DataInputStream input, int offset, int length) throws IOException {
+        int end = offset + length;
+        byte[] bytes = new byte[Math.min(end, offset + _READ_CHUNK)];
+        int position = offset;
+        while (position < end) {
+            if (position == bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(end, 2L * bytes.length));
+            }
+            int n = input.read(bytes, position, bytes.length - position);
+            if (n < 0) {
+                throw new EOFException("Unexpected end of the dataset");
+            }
+            position += n;
+        }
+        return bytes;
+    }
+
+    /**
+     * Checks the raw length of a column against the number of instances.
+     */
+    private static void checkColumnLength(int length, Attribute attribute, int numInstances) throws IOException {
+        long values = attribute.isNominal() ? 4L * numInstances
+                : (attribute.isString() ? 4L + 4L * numInstances : 8L * numInstances);
+        long bitset = 8L * ((numInstances + 63) / 64);
+        boolean valid = attribute.isString()
+                ? length >= 1 + values
+                : (length == 1 + values || length == 1 + bitset + values);
+        if (!valid) {
+            throw new IOException("Corrupted column of the attribute " + attribute.name());
+        }
+    }
+
+    private static int checkPrefix(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != _MAGIC) {
+            throw new IOException("Not a dataset in the columnar format");
+        }
+        short version = buffer.getShort();
+        if (version != _VERSION) {
+            throw new IOException("Unsupported version of the columnar format: " + version);
+        }
+        buffer.getShort(); // flags
+        int headerLength = buffer.getInt();
+        if (headerLength < 0 || headerLength > _MAX_HEADER_LENGTH) {
+            throw new IOException("Corrupted header");
+        }
+        return headerLength;
+    }
+
+    /**
+     * Parses the header into an empty dataset; the number of instances is stored in
+     * the first element of <code>numInstances</code>.
+     */
+    private static Instances readHeader(ByteBuffer header, int[] numInstances) throws IOException {
+        String relation = readString(header);
+        numInstances[0] = header.getInt();
+        int numAttributes = header.getInt();
+        /* Every attribute takes at least 5 bytes of the header */
+        if (numInstances[0] < 0 || numAttributes < 0 || numAttributes > header.remaining() / 5) {
+            throw new IOException("Corrupted header");
+        }
+        FastVector attributes = new FastVector(numAttributes);
+        for (int j = 0; j < numAttributes; j++) {
+            String name = readString(header);
+            byte type = header.get();
+            switch (type) {
+                case _NUMERIC:
+                    attributes.addElement(new Attribute(name));
+                    break;
+                case _NOMINAL:
+                    int numValues = header.getInt();
+                    if (numValues < 0 || numValues > header.remaining() / 4) {
+                        throw new IOException("Corrupted header");
+                    }
+                    FastVector values = new FastVector(numValues);
+                    for (int k = 0; k < numValues; k++) {
+                        values.addElement(readString(header));
+                    }
+                    attributes.addElement(new Attribute(name, values));
+                    break;
+                case _STRING:
+                    attributes.addElement(new Attribute(name, (FastVector) null));
+                    break;
+                case _DATE:
+                    attributes.addElement(new Attribute(name, readString(header)));
+                    break;
+                default:
+                    throw new IOException("Unknown type of attribute " + name + ": " + type);
+            }
+        }
+        return new Instances(relation, attributes, numInstances[0]);
+    }
+
+    /**
+     * Returns the raw contents of a block (positioned at its codec), inflating them
+     * if needed; raw blocks are returned as views of the given buffer.
+     */
+    private static ByteBuffer inflate(ByteBuffer block) throws IOException {
+        byte codec = block.get();
+        int storedLength = block.getInt();
+        int rawLength = block.getInt();
+        if (codec == _RAW) {
+            ByteBuffer raw = block.slice();
+            raw.limit(rawLength);
+            block.position(block.position() + storedLength);
+            return raw;
+        } else if (codec != _DEFLATE) {
+            throw new IOException("Unknown codec: " + codec);
+        }
+        byte[] stored = new byte[storedLength];
+        block.get(stored);
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored);
+            int offset = 0;
+            while (offset < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(raw, offset, rawLength - offset);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += n;
+            }
+            if (offset != rawLength) {
+                throw new IOException("Corrupted compressed block");
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("Corrupted compressed block", ex);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(raw);
+    }
+
+    private static void decodeColumn(ByteBuffer column, Attribute attribute, int j, double[][] rows) throws IOException {
+        int numInstances = rows.length;
+        if (column.get() != 0) {
+            /* Missing values are also marked in the values themselves */
+            column.position(column.position() + 8 * ((numInstances + 63) / 64));
+        }
+        if (attribute.isNominal()) {
+            int numValues = attribute.numValues();
+            for (int i = 0; i < numInstances; i++) {
+                int index = column.getInt();
+                if (index >= numValues) {
+                    throw new IOException("Corrupted column of the attribute " + attribute.name());
+                }
+                rows[i][j] = index < 0 ? Instance.missingValue() : index;
+            }
+        } else if (attribute.isString()) {
+            int size = column.getInt();
+            if (size < 0 || size > column.remaining() / 4) {
+                throw new IOException("Corrupted column of the attribute " + attribute.name());
+            }
+            int[] mapping = new int[size];
+            for (int k = 0; k < size; k++) {
+                mapping[k] = attribute.addStringValue(readString(column));
+            }
+            for (int i = 0; i < numInstances; i++) {
+                int index = column.getInt();
+                rows[i][j] = index < 0 ? Instance.missingValue() : mapping[index];
+            }
+        } else {
+            DoubleBuffer values = column.asDoubleBuffer();
+            for (int i = 0; i < numInstances; i++) {
+                rows[i][j] = values.get(i);
+            }
+        }
+    }
+
+    private static Instances assemble(Instances structure, ByteBuffer weights, double[][] rows) {
+        boolean unitWeights = !weights.hasRemaining();
+        for (int i = 0; i < rows.length; i++) {
+            structure.add(new Instance(unitWeights ? 1.0 : weights.getDouble(8 * i), rows[i]));
+        }
+        return structure;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new IOException("Corrupted string");
+        }
+        if (buffer.hasArray()) {
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, "UTF-8");
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
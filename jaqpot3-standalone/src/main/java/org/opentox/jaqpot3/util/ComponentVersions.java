@@ -0,0 +1,208 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.opentox.toxotis.database.exception.DbException;
+
+/**
+ * Versions of components used as validators (ETag and Last-Modified) for
+ * conditional requests. Models never change after they are created except
+ * when BibTeX entries are associated with them or when they are deleted, and
+ * both happen through this server, which records the time of the modification.
+ * The start time of the server is part of every version, so that validators
+ * issued before a restart (whose modifications are no longer recorded, and
+ * which may have been rendered by an older version of jaqpot) are not reused.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class ComponentVersions {
+
+    public static final long STARTED = System.currentTimeMillis();
+    private static final ConcurrentMap<String, Long> modified = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * The version of a component.
+     */
+    public static class Version {
+
+        private final String key;
+        private final long lastModified;
+        private final long created;
+
+        public Version(String key, long lastModified) {
+            this(key, lastModified, lastModified);
+        }
+
+        public Version(String key, long lastModified, long created) {
+            this.key = key;
+            this.lastModified = lastModified;
+            this.created = created;
+        }
+
+        /**
+         * Opaque string that changes whenever the component changes.
+         */
+        public String getKey() {
+            return key;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * The time the component was stored in the database, which (unlike the
+         * key) does not change when the server restarts.
+         */
+        public long getCreated() {
+            return created;
+        }
+
+        /**
+         * Entity tag of the representation of the component in the given media
+         * type.
+         */
+        public String tag(String mediaType) {
+            return key + "-" + Integer.toString((mediaType != null ? mediaType : "").hashCode() & 0x7fffffff, 36);
+        }
+
+        /**
+         * Whether the component was modified after the given date (of an
+         * <code>If-Modified-Since</code> header); HTTP dates have a precision of
+         * one second. A <code>null</code> date is always before the modification.
+         */
+        public boolean isModifiedSince(Date since) {
+            return since == null || lastModified / 1000 > since.getTime() / 1000;
+        }
+    }
+
+    private ComponentVersions() {
+    }
+
+    /**
+     * Records that the component has been modified now.
+     */
+    public static void touch(String id) {
+        modified.put(id, System.currentTimeMillis());
+    }
+
+    /**
+     * Version of a resource that does not change while the server runs (e.g. the
+     * algorithms).
+     */
+    public static Version ofStatic(String name) {
+        return new Version(name + "-" + Long.toString(STARTED, 36), STARTED);
+    }
+
+    /**
+     * Version of an enabled model, or <code>null</code> if there is no such model.
+     */
+    public static Version ofModel(String id) throws DbException, SQLException {
+        return query("SELECT C.created FROM OTComponent C WHERE C.id = ? AND C.enabled = true", id);
+    }
+
+    /**
+     * Version of a parameter, which is the version of the model it belongs to, or
+     * <code>null</code> if there is no such parameter.
+     */
+    public static Version ofParameter(String id) throws DbException, SQLException {
+        Connection connection = DbMetrics.getConnection();
+        String modelId;
+        try {
+            PreparedStatement statement = connection.prepareStatement("SELECT modelId FROM Parameter WHERE id = ?");
+            try {
+                statement.setString(1, id);
+                ResultSet rs = DbMetrics.query(statement, "ParameterVersion", id);
+                try {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    modelId = rs.getString(1);
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+        Version model = ofModel(modelId);
+        return model != null ? new Version("p" + id + "-" + model.getKey(), model.getLastModified()) : null;
+    }
+
+    private static Version query(String sql, String id) throws DbException, SQLException {
+        Connection connection = DbMetrics.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            try {
+                statement.setString(1, id);
+                ResultSet rs = DbMetrics.query(statement, "ComponentVersion", id);
+                try {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    Timestamp created = rs.getTimestamp(1);
+                    return version(id, created != null ? created.getTime() : 0);
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Version of a component stored at the given time, taking into account the
+     * modifications recorded by {@link #touch(java.lang.String) }.
+     */
+    static Version version(String id, long createdAt) {
+        Long modifiedAt = modified.get(id);
+        long lastModified = Math.max(Math.max(createdAt, STARTED), modifiedAt != null ? modifiedAt : 0);
+        return new Version(id + "-" + Long.toString(createdAt, 36) + "-" + Long.toString(STARTED, 36)
+                + "-" + Long.toString(modifiedAt != null ? modifiedAt : 0, 36), lastModified, createdAt);
+    }
+}
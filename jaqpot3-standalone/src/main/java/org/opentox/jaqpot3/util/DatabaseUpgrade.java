@@ -0,0 +1,132 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import org.opentox.toxotis.database.exception.DbException;
+
+/**
+ * Brings the schema of an existing database up to date with
+ * <code>databaseCreation.sql</code>, which only applies to new databases.
+ * Indexes added in later versions are created, in the background when the
+ * server starts, unless they already exist; the check makes the upgrade safe to
+ * run at every start.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class DatabaseUpgrade {
+
+    /**
+     * Indexes added after the schema was first released: table, name of the
+     * index and indexed column.
+     */
+    private static final String[][] INDEXES = {
+        {"Task", "index_task_status", "status"}
+    };
+    private static boolean started = false;
+    private static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(DatabaseUpgrade.class);
+
+    private DatabaseUpgrade() {
+    }
+
+    /**
+     * Starts the upgrade in a background thread (once per server run).
+     */
+    public static synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        Thread worker = new Thread("Database_Upgrade") {
+
+            @Override
+            public void run() {
+                try {
+                    upgrade();
+                } catch (DbException ex) {
+                    logger.warn("The database could not be upgraded", ex);
+                } catch (SQLException ex) {
+                    logger.warn("The database could not be upgraded", ex);
+                }
+            }
+        };
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }
+
+    /**
+     * Creates the missing indexes.
+     */
+    public static void upgrade() throws DbException, SQLException {
+        Connection connection = DbMetrics.getConnection();
+        try {
+            for (String[] index : INDEXES) {
+                if (!indexExists(connection, index[0], index[1])) {
+                    logger.info("Creating the index " + index[1] + " on " + index[0] + "(" + index[2] + ")");
+                    PreparedStatement statement = connection.prepareStatement("CREATE INDEX `" + index[1]
+                            + "` USING BTREE ON `" + index[0] + "` (`" + index[2] + "`)");
+                    try {
+                        DbMetrics.execute(statement, "UpgradeDatabase", index[1]);
+                    } finally {
+                        statement.close();
+                    }
+                }
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static boolean indexExists(Connection connection, String table, String name) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM information_schema.STATISTICS "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND INDEX_NAME = ?");
+        try {
+            statement.setString(1, table);
+            statement.setString(2, name);
+            ResultSet rs = DbMetrics.query(statement, "UpgradeDatabase", name);
+            try {
+                return rs.next() && rs.getLong(1) > 0;
+            } finally {
+                rs.close();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+}
@@ -0,0 +1,483 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.toxotis.client.VRI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import weka.core.Instances;
+
+/**
+ * Cache of remote datasets (in ARFF or in the columnar format of {@link ColumnarDataset})
+ * shared by all trainers and predictors. Datasets are kept in memory and on disk
+ * (in the columnar format), keyed by their URI, and are revalidated against
+ * the remote server using the <code>ETag</code> and <code>Last-Modified</code> headers
+ * of the original response. Both tiers are bounded in size and the least recently
+ * used entries are evicted first. Concurrent requests for the same URI are served
+ * by a single download.
+ *
+ * <p>Cached datasets are never handed out directly; every call returns a new copy
+ * which the caller is free to modify. The cache is configured with the properties
+ * <code>datasetcache.*</code> in <code>server.properties</code>.</p>
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class DatasetCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatasetCache.class);
+    private static final int _MAGIC = 0x4A514453;
+    private static final int _VERSION = 2;
+    private static final String _SUFFIX = ".ds";
+    private static final int _MAX_STRING_LENGTH = 1 << 16;
+    public static final DatasetCache CACHE = new DatasetCache();
+    private final boolean enabled;
+    private final long maxMemoryBytes;
+    private final long maxDiskBytes;
+    private final long revalidateAfter;
+    private final int timeout;
+    private final File directory;
+    /**
+     * Memory tier in access order; guarded by itself
+     */
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long memoryBytes = 0;
+    /**
+     * Downloads in progress, one per URI
+     */
+    private final ConcurrentMap<String, FutureTask<Entry>> inFlight = new ConcurrentHashMap<String, FutureTask<Entry>>();
+
+    private static class Entry {
+
+        private final String uri;
+        private final Instances data;
+        private final String etag;
+        private final long lastModified;
+        private final long size;
+        private volatile long validatedAt;
+
+        Entry(String uri, Instances data, String etag, long lastModified, long validatedAt) {
+            this.uri = uri;
+            this.data = data;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.validatedAt = validatedAt;
+            this.size = estimateSize(data);
+        }
+    }
+
+    private DatasetCache() {
+        enabled = Boolean.parseBoolean(Configuration.getStringProperty("datasetcache.enabled", "true"));
+        maxMemoryBytes = 1024L * 1024L * Configuration.getIntegerProperty("datasetcache.memoryMB", 256);
+        maxDiskBytes = 1024L * 1024L * Configuration.getIntegerProperty("datasetcache.diskMB", 2048);
+        revalidateAfter = 1000L * Configuration.getIntegerProperty("datasetcache.revalidateAfter", 30);
+        timeout = Configuration.getIntegerProperty("datasetcache.timeout", 300000);
+        directory = new File(Configuration.getStringProperty("datasetcache.directory",
+                new File(System.getProperty("java.io.tmpdir"), "jaqpot-datasets").getPath()));
+        if (enabled && !directory.isDirectory() && !directory.mkdirs()) {
+            logger.warn("Cannot create the dataset cache directory " + directory + "; only the memory cache will be used");
+        }
+    }
+
+    /**
+     * Returns the dataset at the given URI in ARFF format, using the cached copy
+     * if it is still valid.
+     *
+     * @param uri
+     *      URI of the dataset.
+     * @return
+     *      A new copy of the dataset, or <code>null</code> if the server does not
+     *      provide the dataset in ARFF.
+     * @throws JaqpotException
+     *      If the dataset cannot be downloaded (and no cached copy exists) or the
+     *      calling thread is interrupted.
+     */
+    public Instances getInstances(VRI uri) throws JaqpotException {
+        final String key = uri.toString();
+        if (!enabled) {
+            try {
+                Entry entry = fetch(key);
+                return entry != null ? entry.data : null;
+            } catch (IOException ex) {
+                throw new JaqpotException("Cannot download the dataset " + key, ex);
+            }
+        }
+        FutureTask<Entry> task = new FutureTask<Entry>(new Callable<Entry>() {
+
+            @Override
+            public Entry call() throws Exception {
+                return fetch(key);
+            }
+        });
+        FutureTask<Entry> existing = inFlight.putIfAbsent(key, task);
+        if (existing == null) {
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+        } else {
+            task = existing;
+        }
+        try {
+            Entry entry = task.get();
+            return entry != null ? new Instances(entry.data) : null;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new JaqpotException("Interrupted while downloading the dataset " + key, ex);
+        } catch (ExecutionException ex) {
+            throw new JaqpotException("Cannot download the dataset " + key, ex.getCause());
+        }
+    }
+
+    /**
+     * Returns the cached copy of a dataset, if any, without contacting the remote
+     * server.
+     *
+     * @param uri
+     *      URI of the dataset.
+     * @return
+     *      A new copy of the dataset or <code>null</code> if it is not cached.
+     */
+    public Instances getCached(VRI uri) {
+        if (!enabled) {
+            return null;
+        }
+        String key = uri.toString();
+        Entry entry = fromMemory(key);
+        if (entry == null) {
+            entry = fromDisk(key);
+        }
+        return entry != null ? new Instances(entry.data) : null;
+    }
+
+    private Entry fetch(String uri) throws IOException {
+        Entry cached = null;
+        if (enabled) {
+            cached = fromMemory(uri);
+            if (cached == null) {
+                cached = fromDisk(uri);
+            }
+        }
+        long now = System.currentTimeMillis();
+        if (cached != null && now - cached.validatedAt < revalidateAfter) {
+            return cached;
+        }
+
+        HttpTransport.Exchange exchange;
+        try {
+            exchange = HttpTransport.TRANSPORT.open(uri, "GET");
+        } catch (IOException ex) {
+            if (cached != null) {
+                logger.warn("Cannot revalidate the dataset " + uri + "; using the cached copy", ex);
+                return cached;
+            }
+            throw ex;
+        }
+        HttpURLConnection connection = exchange.getConnection();
+        try {
+            connection.setReadTimeout(timeout);
+            connection.setRequestProperty("Accept", ColumnarDataset.MEDIA_TYPE + ", text/x-arff;q=0.9");
+            if (cached != null && cached.etag != null) {
+                connection.setRequestProperty("If-None-Match", cached.etag);
+            }
+            if (cached != null && cached.lastModified > 0) {
+                connection.setIfModifiedSince(cached.lastModified);
+            }
+            int status;
+            try {
+                status = connection.getResponseCode();
+            } catch (IOException ex) {
+                if (cached != null) {
+                    logger.warn("Cannot revalidate the dataset " + uri + "; using the cached copy", ex);
+                    return cached;
+                }
+                throw ex;
+            }
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                cached.validatedAt = now;
+                touch(uri);
+                return cached;
+            }
+            String contentType = connection.getContentType();
+            boolean columnar = contentType != null && contentType.startsWith(ColumnarDataset.MEDIA_TYPE);
+            if (status != HttpURLConnection.HTTP_OK
+                    || (contentType != null && !columnar && !contentType.startsWith("text/x-arff"))) {
+                /* Not available in ARFF; the caller falls back to RDF */
+                return null;
+            }
+            Instances data;
+            InputStream in = exchange.getInputStream();
+            try {
+                data = columnar ? ColumnarDataset.read(in) : new StreamingArffReader(in).readAll();
+            } finally {
+                in.close();
+            }
+            long lastModified = connection.getLastModified();
+            Entry fresh = new Entry(uri, data, connection.getHeaderField("ETag"), lastModified, now);
+            if (enabled) {
+                toMemory(fresh);
+                toDisk(fresh);
+            }
+            return fresh;
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Entry fromMemory(String uri) {
+        synchronized (memory) {
+            return memory.get(uri);
+        }
+    }
+
+    private void toMemory(Entry entry) {
+        synchronized (memory) {
+            Entry previous = memory.put(entry.uri, entry);
+            if (previous != null) {
+                memoryBytes -= previous.size;
+            }
+            memoryBytes += entry.size;
+            Iterator<Entry> iterator = memory.values().iterator();
+            while (memoryBytes > maxMemoryBytes && iterator.hasNext()) {
+                Entry eldest = iterator.next();
+                if (eldest == entry) {
+                    continue;
+                }
+                iterator.remove();
+                memoryBytes -= eldest.size;
+            }
+        }
+    }
+
+    /**
+     * Rough size of a dataset in memory.
+     */
+    private static long estimateSize(Instances data) {
+        return 64L * data.numAttributes() + (long) data.numInstances() * (8L * data.numAttributes() + 48);
+    }
+
+    private File fileFor(String uri) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(uri.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder(2 * hash.length + _SUFFIX.length());
+            for (byte b : hash) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return new File(directory, name.append(_SUFFIX).toString());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private void touch(String uri) {
+        File file = fileFor(uri);
+        if (file.exists() && !file.setLastModified(System.currentTimeMillis())) {
+            logger.debug("Cannot update the access time of " + file);
+        }
+    }
+
+    /**
+     * Entry layout: magic, version, URI, ETag, Last-Modified and then the dataset
+     * in the (uncompressed) columnar format of {@link ColumnarDataset}. Entries are
+     * read back through a buffered stream.
+     */
+    private void toDisk(Entry entry) {
+        if (!directory.isDirectory()) {
+            return;
+        }
+        File target = fileFor(entry.uri);
+        File temp = new File(directory, target.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+            try {
+                out.writeInt(_MAGIC);
+                out.writeInt(_VERSION);
+                writeString(out, entry.uri);
+                writeString(out, entry.etag);
+                out.writeLong(entry.lastModified);
+                ColumnarDataset.write(entry.data, out, false);
+            } finally {
+                out.close();
+            }
+            if (target.exists() && !target.delete()) {
+                logger.debug("Cannot replace " + target);
+            }
+            if (!temp.renameTo(target)) {
+                logger.warn("Cannot store the dataset " + entry.uri + " in the disk cache");
+                temp.delete();
+                return;
+            }
+        } catch (IOException ex) {
+            logger.warn("Cannot store the dataset " + entry.uri + " in the disk cache", ex);
+            temp.delete();
+            return;
+        }
+        evictFromDisk();
+    }
+
+    private Entry fromDisk(String uri) {
+        File file = fileFor(uri);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            Entry entry;
+            try {
+                if (in.readInt() != _MAGIC || in.readInt() != _VERSION) {
+                    throw new IOException("Not a dataset cache entry");
+                }
+                String storedUri = readString(in);
+                if (!uri.equals(storedUri)) {
+                    return null;
+                }
+                String etag = readString(in);
+                long lastModified = in.readLong();
+                Instances data = ColumnarDataset.read(in);
+                /* Loaded entries are revalidated on first use */
+                entry = new Entry(uri, data, etag, lastModified, 0);
+            } finally {
+                in.close();
+            }
+            touch(uri);
+            toMemory(entry);
+            return entry;
+        } catch (IOException ex) {
+            logger.warn("Corrupted dataset cache entry " + file + "; it will be discarded", ex);
+            file.delete();
+            return null;
+        } catch (RuntimeException ex) {
+            logger.warn("Corrupted dataset cache entry " + file + "; it will be discarded", ex);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the disk tier fits in its limit.
+     */
+    private synchronized void evictFromDisk() {
+        File[] files = directory.listFiles(new FileFilter() {
+
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(_SUFFIX);
+            }
+        });
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxDiskBytes) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+
+            @Override
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        for (int i = 0; i < files.length && total > maxDiskBytes; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > _MAX_STRING_LENGTH) {
+            throw new IOException("Corrupted string");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Removes all entries from the memory tier. Entries on disk are kept.
+     */
+    public void clearMemory() {
+        synchronized (memory) {
+            memory.clear();
+            memoryBytes = 0;
+        }
+    }
+}
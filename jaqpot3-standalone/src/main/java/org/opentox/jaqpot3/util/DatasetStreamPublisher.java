@@ -0,0 +1,213 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.util.zip.GZIPOutputStream;
+import org.opentox.toxotis.client.VRI;
+import org.opentox.toxotis.core.component.Task;
+import org.opentox.toxotis.util.TaskRunner;
+import org.opentox.toxotis.util.aa.AuthenticationToken;
+import weka.core.Instances;
+
+/**
+ * Publishes a dataset to a remote dataset service as ARFF which is streamed to the
+ * server (in chunked transfer encoding and, optionally, gzip-compressed) while it
+ * is being produced. The header is sent by {@link #begin(weka.core.Instances) },
+ * rows are sent by any number of calls to {@link #write(weka.core.Instances) } and
+ * {@link #finish() } completes the request and returns the URI of the created
+ * dataset, waiting for the task of the dataset service if needed.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class DatasetStreamPublisher implements Closeable, PipelinedUpload.Target {
+
+    private static final int _BUFFER_SIZE = 1 << 16;
+    private final VRI datasetService;
+    private final AuthenticationToken token;
+    private final boolean compress;
+    private final int timeout;
+    private HttpTransport.Exchange exchange;
+    private HttpURLConnection connection;
+    private Writer writer;
+
+    public DatasetStreamPublisher(VRI datasetService, AuthenticationToken token) {
+        this(datasetService, token,
+                Boolean.parseBoolean(Configuration.getStringProperty("predictions.compress", "false")));
+    }
+
+    public DatasetStreamPublisher(VRI datasetService, AuthenticationToken token, boolean compress) {
+        this.datasetService = datasetService;
+        this.token = token;
+        this.compress = compress;
+        this.timeout = Configuration.getIntegerProperty("predictions.publicationTimeout", 300000);
+    }
+
+    /**
+     * Opens the connection to the dataset service and sends the ARFF header.
+     *
+     * @param header
+     *      Dataset whose header is sent (its instances are ignored).
+     * @throws IOException
+     *      If the connection cannot be established.
+     */
+    public void begin(Instances header) throws IOException {
+        exchange = HttpTransport.TRANSPORT.open(datasetService.toString(), "POST");
+        connection = exchange.getConnection();
+        connection.setDoOutput(true);
+        connection.setChunkedStreamingMode(_BUFFER_SIZE);
+        connection.setReadTimeout(timeout);
+        connection.setRequestProperty("Content-Type", "text/x-arff; charset=UTF-8");
+        connection.setRequestProperty("Accept", "text/uri-list");
+        if (compress) {
+            connection.setRequestProperty("Content-Encoding", "gzip");
+        }
+        if (token != null) {
+            connection.setRequestProperty("subjectid", token.stringValue());
+        }
+        OutputStream out = connection.getOutputStream();
+        if (compress) {
+            out = new GZIPOutputStream(out, _BUFFER_SIZE);
+        }
+        writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), _BUFFER_SIZE);
+        writer.write(new Instances(header, 0).toString());
+    }
+
+    /**
+     * Sends the instances of a dataset which has the header passed to
+     * {@link #begin(weka.core.Instances) }.
+     *
+     * @param rows
+     *      Instances to be sent.
+     * @throws IOException
+     *      If the data cannot be sent.
+     */
+    public void write(Instances rows) throws IOException {
+        if (writer == null) {
+            throw new IllegalStateException("The publication has not begun");
+        }
+        int numInstances = rows.numInstances();
+        for (int i = 0; i < numInstances; i++) {
+            writer.write(rows.instance(i).toString());
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * Completes the request and waits for the dataset to be created.
+     *
+     * @return
+     *      URI of the created dataset.
+     * @throws IOException
+     *      If the request fails or the dataset service does not accept the dataset.
+     */
+    public VRI finish() throws IOException {
+        if (writer == null) {
+            throw new IllegalStateException("The publication has not begun");
+        }
+        writer.close();
+        writer = null;
+        int status = connection.getResponseCode();
+        String uri = firstLine(exchange.getInputStream());
+        exchange.close();
+        exchange = null;
+        if (status != HttpURLConnection.HTTP_OK && status != HttpURLConnection.HTTP_CREATED
+                && status != HttpURLConnection.HTTP_ACCEPTED) {
+            throw new IOException("The dataset service " + datasetService + " responded with status " + status
+                    + (uri != null ? " : " + uri : ""));
+        }
+        if (uri == null) {
+            throw new IOException("The dataset service " + datasetService + " did not return a URI");
+        }
+        VRI result;
+        try {
+            result = new VRI(uri);
+        } catch (URISyntaxException ex) {
+            throw new IOException("The dataset service returned an invalid URI : " + uri, ex);
+        }
+        if (status != HttpURLConnection.HTTP_ACCEPTED) {
+            return result;
+        }
+        /* The dataset service has created a task for the dataset */
+        Task task;
+        try {
+            task = new TaskRunner(new Task(result)).call();
+        } catch (Exception ex) {
+            throw new IOException("The task " + result + " of the dataset service failed", ex);
+        }
+        if (task == null || task.getResultUri() == null) {
+            throw new IOException("The task " + result + " of the dataset service did not produce a dataset");
+        }
+        return task.getResultUri();
+    }
+
+    private static String firstLine(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() > 0) {
+                    return line;
+                }
+            }
+            return null;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Aborts an unfinished publication and releases the connection.
+     */
+    @Override
+    public void close() {
+        writer = null;
+        if (exchange != null) {
+            exchange.abort();
+            exchange = null;
+        }
+    }
+}
@@ -0,0 +1,429 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.opentox.toxotis.database.DbReader;
+import org.opentox.toxotis.database.IDbIterator;
+import org.opentox.toxotis.database.engine.DisableComponent;
+import org.opentox.toxotis.database.engine.bibtex.AddBibTeX;
+import org.opentox.toxotis.database.engine.bibtex.AssociateBibTeX;
+import org.opentox.toxotis.database.engine.error.AddErrorReport;
+import org.opentox.toxotis.database.engine.model.AddModel;
+import org.opentox.toxotis.database.engine.task.AddTask;
+import org.opentox.toxotis.database.engine.task.UpdateTask;
+import org.opentox.toxotis.database.engine.user.AddUser;
+import org.opentox.toxotis.database.exception.DbException;
+import org.opentox.toxotis.database.pool.DataSourceFactory;
+
+/**
+ * Instrumentation of the access to the database: the time threads wait to check
+ * out a connection from the pool and, per type of operation, the number of
+ * operations, their execution time and the number of rows they returned or
+ * changed, as well as the number of operations which failed. Operations which
+ * take longer than <code>db.slowQueryThreshold</code> milliseconds are logged.
+ *
+ * <p>Database operations are executed through the methods of this class (e.g.
+ * <code>DbMetrics.update(updater)</code> instead of <code>updater.update()</code>),
+ * which time and record them; an operation which throws an exception is recorded
+ * as failed. The readers and writers
+ * of ToxOtis check out their connections themselves, so their time includes the
+ * wait for the connection; the wait is recorded separately only for the
+ * connections obtained by {@link #getConnection() }.</p>
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class DbMetrics {
+
+    /**
+     * Upper bounds (in ms) of the buckets of the histograms; the last bucket is
+     * unbounded.
+     */
+    public static final long[] LATENCY_BUCKETS = {1, 10, 100, 1000, 10000};
+    /**
+     * The type of the operation under which connection checkouts are recorded.
+     */
+    public static final String CHECKOUT = "ConnectionCheckout";
+    private static final String[] POOL_ATTRIBUTES = {"maxPoolSize", "numConnections", "numBusyConnections",
+        "numIdleConnections", "numThreadsAwaitingCheckoutDefaultUser"};
+    private static final long _SLOW_THRESHOLD = Configuration.getIntegerProperty("db.slowQueryThreshold", 500);
+    private static final ConcurrentMap<String, Statistics> operations = new ConcurrentHashMap<String, Statistics>();
+    private static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(DbMetrics.class);
+
+    /**
+     * Statistics of the operations of a certain type.
+     */
+    public static class Statistics {
+
+        private final String type;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong[] histogram = new AtomicLong[LATENCY_BUCKETS.length + 1];
+
+        private Statistics(String type) {
+            this.type = type;
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = new AtomicLong();
+            }
+        }
+
+        private void record(long elapsed, long affected, boolean succeeded) {
+            count.incrementAndGet();
+            if (!succeeded) {
+                failures.incrementAndGet();
+            }
+            nanos.addAndGet(elapsed);
+            long max = maxNanos.get();
+            while (elapsed > max && !maxNanos.compareAndSet(max, elapsed)) {
+                max = maxNanos.get();
+            }
+            if (affected > 0) {
+                rows.addAndGet(affected);
+            }
+            long millis = elapsed / 1000000L;
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKETS.length && millis >= LATENCY_BUCKETS[bucket]) {
+                bucket++;
+            }
+            histogram[bucket].incrementAndGet();
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * The number of operations, including the failed ones.
+         */
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * The number of operations which failed.
+         */
+        public long getFailures() {
+            return failures.get();
+        }
+
+        public double getTotalMillis() {
+            return nanos.get() / 1e6;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        /**
+         * The number of rows returned or changed by the operations, where known.
+         */
+        public long getRows() {
+            return rows.get();
+        }
+
+        /**
+         * The number of operations in each bucket of {@link DbMetrics#LATENCY_BUCKETS}.
+         */
+        public long[] getHistogram() {
+            long[] snapshot = new long[histogram.length];
+            for (int i = 0; i < snapshot.length; i++) {
+                snapshot[i] = histogram[i].get();
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * A database operation.
+     */
+    private interface Call<T, E extends Exception> {
+
+        T call() throws E;
+    }
+
+    private DbMetrics() {
+    }
+
+    /**
+     * Executes and records an operation of the given type; the detail (e.g. the id
+     * of a component or the statement executed) is only used to log the operation
+     * if it is slow. Numeric results are recorded as the number of rows changed.
+     */
+    private static <T, E extends Exception> T time(String type, String detail, Call<T, E> call) throws E {
+        long started = System.nanoTime();
+        boolean succeeded = false;
+        long rows = -1;
+        try {
+            T result = call.call();
+            if (result instanceof Number) {
+                rows = ((Number) result).longValue();
+            }
+            succeeded = true;
+            return result;
+        } finally {
+            record(type, detail, System.nanoTime() - started, rows, succeeded);
+        }
+    }
+
+    /**
+     * Updates a task.
+     */
+    public static void update(final UpdateTask updater) throws DbException {
+        time("UpdateTask", null, new Call<Object, DbException>() {
+
+            @Override
+            public Object call() throws DbException {
+                updater.update();
+                return null;
+            }
+        });
+    }
+
+    public static void write(final AddTask writer) throws DbException {
+        time("AddTask", null, new Call<Object, DbException>() {
+
+            @Override
+            public Object call() throws DbException {
+                writer.write();
+                return null;
+            }
+        });
+    }
+
+    public static void write(final AddModel writer) throws DbException {
+        time("AddModel", null, new Call<Object, DbException>() {
+
+            @Override
+            public Object call() throws DbException {
+                writer.write();
+                return null;
+            }
+        });
+    }
+
+    public static void write(final AddUser writer) throws DbException {
+        time("AddUser", null, new Call<Object, DbException>() {
+
+            @Override
+            public Object call() throws DbException {
+                writer.write();
+                return null;
+            }
+        });
+    }
+
+    public static void write(final AddBibTeX writer) throws DbException {
+        time("AddBibTeX", null, new Call<Object, DbException>() {
+
+            @Override
+            public Object call() throws DbException {
+                writer.write();
+                return null;
+            }
+        });
+    }
+
+    public static void write(final AssociateBibTeX writer) throws DbException {
+        time("AssociateBibTeX", null, new Call<Object, DbException>() {
+
+            @Override
+            public Object call() throws DbException {
+                writer.write();
+                return null;
+            }
+        });
+    }
+
+    public static void write(final AddErrorReport writer) throws DbException {
+        time("AddErrorReport", null, new Call<Object, DbException>() {
+
+            @Override
+            public Object call() throws DbException {
+                writer.write();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Disables components.
+     *
+     * @return
+     *      The number of disabled components.
+     */
+    public static int disable(final DisableComponent disabler) throws DbException {
+        return time("DisableComponent", null, new Call<Integer, DbException>() {
+
+            @Override
+            public Integer call() throws DbException {
+                return disabler.disable();
+            }
+        });
+    }
+
+    /**
+     * Runs a reader; the operation is recorded under the name of the class of the
+     * reader (e.g. <code>FindTask</code>).
+     */
+    public static <T> IDbIterator<T> list(DbReader<T> reader) throws DbException {
+        return list(reader, null);
+    }
+
+    public static <T> IDbIterator<T> list(final DbReader<T> reader, String detail) throws DbException {
+        return time(reader.getClass().getSimpleName(), detail, new Call<IDbIterator<T>, DbException>() {
+
+            @Override
+            public IDbIterator<T> call() throws DbException {
+                return reader.list();
+            }
+        });
+    }
+
+    /**
+     * Executes a query.
+     */
+    public static ResultSet query(final PreparedStatement statement, String type, String detail) throws SQLException {
+        return time(type, detail, new Call<ResultSet, SQLException>() {
+
+            @Override
+            public ResultSet call() throws SQLException {
+                return statement.executeQuery();
+            }
+        });
+    }
+
+    /**
+     * Executes an update.
+     *
+     * @return
+     *      The number of changed rows.
+     */
+    public static int execute(final PreparedStatement statement, String type, String detail) throws SQLException {
+        return time(type, detail, new Call<Integer, SQLException>() {
+
+            @Override
+            public Integer call() throws SQLException {
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * Checks out a connection from the pool, recording the time waited for it.
+     */
+    public static Connection getConnection() throws DbException, SQLException {
+        long started = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            Connection connection = DataSourceFactory.getInstance().getConnection();
+            succeeded = true;
+            return connection;
+        } finally {
+            record(CHECKOUT, null, System.nanoTime() - started, -1, succeeded);
+        }
+    }
+
+    private static void record(String type, String detail, long elapsed, long rows, boolean succeeded) {
+        Statistics statistics = operations.get(type);
+        if (statistics == null) {
+            Statistics created = new Statistics(type);
+            statistics = operations.putIfAbsent(type, created);
+            if (statistics == null) {
+                statistics = created;
+            }
+        }
+        statistics.record(elapsed, rows, succeeded);
+        long millis = elapsed / 1000000L;
+        if (millis >= _SLOW_THRESHOLD) {
+            logger.warn("Slow " + (succeeded ? "" : "failed ") + "database operation " + type + (detail != null ? " [" + detail + "]" : "")
+                    + ": " + millis + " ms" + (rows >= 0 ? ", " + rows + " rows" : ""));
+        }
+    }
+
+    /**
+     * The statistics of all types of operations recorded so far, ordered by type.
+     */
+    public static List<Statistics> getOperations() {
+        return new ArrayList<Statistics>(new TreeMap<String, Statistics>(operations).values());
+    }
+
+    /**
+     * The state of the connection pool as published by c3p0 over JMX (number of
+     * connections, busy and idle connections and threads awaiting a checkout),
+     * or an empty map if it is not available.
+     */
+    public static Map<String, Long> getPool() {
+        Map<String, Long> pool = new TreeMap<String, Long>();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (ObjectName name : server.queryNames(new ObjectName("com.mchange.v2.c3p0:*"), null)) {
+                if (!name.toString().contains("PooledDataSource")) {
+                    continue;
+                }
+                for (String attribute : POOL_ATTRIBUTES) {
+                    try {
+                        Object value = server.getAttribute(name, attribute);
+                        if (value instanceof Number) {
+                            Long previous = pool.get(attribute);
+                            pool.put(attribute, ((Number) value).longValue() + (previous != null ? previous : 0));
+                        }
+                    } catch (JMException ex) {
+                        logger.debug("Attribute " + attribute + " of the connection pool is not available");
+                    }
+                }
+            }
+        } catch (JMException ex) {
+            logger.debug("The connection pool cannot be inspected", ex);
+        }
+        return pool;
+    }
+}
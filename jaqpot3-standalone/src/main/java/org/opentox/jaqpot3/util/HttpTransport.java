@@ -0,0 +1,340 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared transport for the outbound HTTP calls of jaqpot. Connections are kept
+ * alive and reused by the JVM connection cache (which is sized and configured
+ * here, so that the settings also apply to the connections opened by ToxOtis),
+ * the number of concurrent requests per remote host is bounded and all requests
+ * use the configured connect and read timeouts. Responses are drained when an
+ * {@link Exchange} is closed so that the underlying connection (and its TLS
+ * session) can be reused by the next request to the same host.
+ *
+ * <p>The transport is configured with the properties <code>http.*</code> in
+ * <code>server.properties</code>.</p>
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class HttpTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpTransport.class);
+    /**
+     * Responses with more unread bytes than this are not drained; their connection
+     * is closed instead.
+     */
+    private static final int _MAX_DRAIN = 64 * 1024;
+    public static final HttpTransport TRANSPORT = new HttpTransport();
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final int maxPerHost;
+    private final int maxIdlePerHost;
+    private final long keepAlive;
+    private final ConcurrentMap<String, Host> hosts = new ConcurrentHashMap<String, Host>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong waitMillis = new AtomicLong();
+
+    private static class Host {
+
+        private final Semaphore permits;
+        /**
+         * Connections released to the keep-alive cache; guarded by this
+         */
+        private int idle = 0;
+        private long lastRelease = 0;
+
+        Host(int maxPerHost) {
+            this.permits = new Semaphore(maxPerHost, true);
+        }
+
+        synchronized boolean takeIdle(long now, long keepAlive) {
+            if (idle > 0 && now - lastRelease > keepAlive) {
+                idle = 0;
+            }
+            if (idle > 0) {
+                idle--;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void putIdle(long now, int maxIdle) {
+            idle = Math.min(idle + 1, maxIdle);
+            lastRelease = now;
+        }
+    }
+
+    private HttpTransport() {
+        connectTimeout = Configuration.getIntegerProperty("http.connectTimeout", 10000);
+        readTimeout = Configuration.getIntegerProperty("http.readTimeout", 300000);
+        maxPerHost = Math.max(1, Configuration.getIntegerProperty("http.maxPerHost", 16));
+        maxIdlePerHost = Math.max(1, Configuration.getIntegerProperty("http.maxIdlePerHost", 8));
+        keepAlive = 1000L * Configuration.getIntegerProperty("http.keepAlive", 5);
+        /*
+         * The keep-alive cache of the JVM reads these when it is first used, so the
+         * transport should be created at start-up (see WebApplecation). Explicit
+         * system properties given on the command line are respected.
+         */
+        setDefault("http.keepAlive", "true");
+        setDefault("http.maxConnections", Integer.toString(maxIdlePerHost));
+        setDefault("sun.net.client.defaultConnectTimeout", Integer.toString(connectTimeout));
+        setDefault("sun.net.client.defaultReadTimeout", Integer.toString(readTimeout));
+    }
+
+    private static void setDefault(String property, String value) {
+        if (System.getProperty(property) == null) {
+            System.setProperty(property, value);
+        }
+    }
+
+    private Host host(URL url) {
+        String key = url.getProtocol() + "://" + url.getHost() + ":"
+                + (url.getPort() != -1 ? url.getPort() : url.getDefaultPort());
+        Host host = hosts.get(key);
+        if (host == null) {
+            Host created = new Host(maxPerHost);
+            host = hosts.putIfAbsent(key, created);
+            if (host == null) {
+                host = created;
+            }
+        }
+        return host;
+    }
+
+    /**
+     * Opens a connection to the given URI once the number of concurrent requests
+     * to its host drops below the limit. The returned exchange must be closed (or
+     * aborted) by the caller, otherwise the slot for the host is never released.
+     *
+     * @param uri
+     *      The remote URI.
+     * @param method
+     *      The HTTP method of the request.
+     * @return
+     *      An exchange holding the (not yet connected) connection.
+     * @throws IOException
+     *      If no slot is available for the host within the connect timeout or the
+     *      connection cannot be created.
+     */
+    public Exchange open(String uri, String method) throws IOException {
+        URL url = new URL(uri);
+        Host host = host(url);
+        if (!host.permits.tryAcquire()) {
+            long start = System.currentTimeMillis();
+            waits.incrementAndGet();
+            try {
+                if (!host.permits.tryAcquire(connectTimeout, TimeUnit.MILLISECONDS)) {
+                    throw new IOException("Too many concurrent requests to " + url.getHost());
+                }
+            } catch (InterruptedException ex) {
+                throw new InterruptedIOException("Interrupted while waiting for a connection to " + url.getHost());
+            } finally {
+                waitMillis.addAndGet(System.currentTimeMillis() - start);
+            }
+        }
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod(method);
+            connection.setConnectTimeout(connectTimeout);
+            connection.setReadTimeout(readTimeout);
+            requests.incrementAndGet();
+            if (host.takeIdle(System.currentTimeMillis(), keepAlive)) {
+                reused.incrementAndGet();
+            }
+            return new Exchange(host, connection);
+        } catch (IOException ex) {
+            host.permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * A single request/response on a connection of the transport.
+     */
+    public class Exchange {
+
+        private final Host host;
+        private final HttpURLConnection connection;
+        private DrainingInputStream in;
+        private boolean closed = false;
+
+        private Exchange(Host host, HttpURLConnection connection) {
+            this.host = host;
+            this.connection = connection;
+        }
+
+        public HttpURLConnection getConnection() {
+            return connection;
+        }
+
+        /**
+         * The body of the response (or of the error response). Closing the stream
+         * drains what the caller did not read.
+         */
+        public InputStream getInputStream() throws IOException {
+            if (in == null) {
+                InputStream raw = connection.getResponseCode() < 400
+                        ? connection.getInputStream() : connection.getErrorStream();
+                in = new DrainingInputStream(raw != null ? raw : new ByteArrayInputStream(new byte[0]));
+            }
+            return in;
+        }
+
+        /**
+         * Drains and closes the response and releases the slot for the host. The
+         * connection is returned to the keep-alive cache if the response could be
+         * read completely.
+         */
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            boolean reusable;
+            try {
+                getInputStream().close();
+                reusable = in.drained;
+            } catch (IOException ex) {
+                logger.debug("Connection to " + connection.getURL() + " is not reusable", ex);
+                reusable = false;
+            }
+            if (reusable) {
+                host.putIdle(System.currentTimeMillis(), maxIdlePerHost);
+            } else {
+                discarded.incrementAndGet();
+                connection.disconnect();
+            }
+            host.permits.release();
+        }
+
+        /**
+         * Closes the connection without reading the rest of the response and
+         * releases the slot for the host.
+         */
+        public void abort() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            discarded.incrementAndGet();
+            connection.disconnect();
+            host.permits.release();
+        }
+    }
+
+    private static class DrainingInputStream extends FilterInputStream {
+
+        private boolean closed = false;
+        private boolean drained = false;
+
+        DrainingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                byte[] buffer = new byte[4096];
+                int total = 0;
+                int read;
+                while (total <= _MAX_DRAIN && (read = in.read(buffer)) != -1) {
+                    total += read;
+                }
+                drained = total <= _MAX_DRAIN;
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Number of requests sent through the transport.
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Number of requests which (as far as the transport can tell) were sent over a
+     * connection that had been released to the keep-alive cache by an earlier
+     * request to the same host.
+     */
+    public long getReusedConnections() {
+        return reused.get();
+    }
+
+    /**
+     * Number of connections closed instead of being kept alive.
+     */
+    public long getDiscardedConnections() {
+        return discarded.get();
+    }
+
+    /**
+     * Number of requests which had to wait because of the per-host limit.
+     */
+    public long getHostWaits() {
+        return waits.get();
+    }
+
+    /**
+     * Total time (in milliseconds) spent waiting because of the per-host limit.
+     */
+    public long getHostWaitMillis() {
+        return waitMillis.get();
+    }
+}
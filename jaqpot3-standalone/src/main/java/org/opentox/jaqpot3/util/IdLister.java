@@ -0,0 +1,233 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.opentox.toxotis.database.exception.DbException;
+
+/**
+ * Lists the IDs of the (enabled) components stored in a table using keyset
+ * pagination: the IDs are returned in ascending order and a page starts right
+ * after the last ID of the previous page (<code>WHERE id &gt; ?</code>), so that
+ * every page is a range scan on an index regardless of how deep it is. Filters
+ * are bound as statement parameters. A page is read in chunks of at most
+ * <code>listing.chunkSize</code> IDs and the connection is returned to the pool
+ * before a chunk is passed to the sink, so that a slow client never holds a
+ * pooled connection while it downloads the listing.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class IdLister {
+
+    /**
+     * Receives the listed IDs one by one.
+     */
+    public interface Sink {
+
+        void id(String id) throws IOException;
+    }
+    private static final int _CHUNK_SIZE = Math.max(1, Configuration.getIntegerProperty("listing.chunkSize", 1000));
+    private final String table;
+    private final List<String> conditions = new ArrayList<String>();
+    private final List<String> arguments = new ArrayList<String>();
+    private String after;
+    private int limit = -1;
+    private int offset = 0;
+
+    /**
+     * @param table
+     *      Table of the components (e.g. <code>Model</code> or <code>Task</code>);
+     *      its primary key is <code>id</code> and references <code>OTComponent</code>.
+     */
+    public IdLister(String table) {
+        this.table = table;
+    }
+
+    /**
+     * Adds a condition on the rows of the table. Use <code>?</code> for the
+     * arguments and <code>T</code> to refer to the listed table.
+     */
+    public IdLister where(String condition, String... args) {
+        conditions.add(condition);
+        for (String a : args) {
+            arguments.add(a);
+        }
+        return this;
+    }
+
+    /**
+     * Lists only IDs greater than the given one (the last ID of the previous page).
+     */
+    public IdLister after(String id) {
+        this.after = id;
+        return this;
+    }
+
+    /**
+     * Maximum number of IDs to list; non-positive for no limit.
+     */
+    public IdLister limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Number of IDs to skip (for the old page-based paging; prefer {@link #after(java.lang.String) }).
+     */
+    public IdLister offset(int offset) {
+        this.offset = Math.max(0, offset);
+        return this;
+    }
+
+    private String sql(String cursor, int rowLimit, int rowOffset) {
+        StringBuilder sql = new StringBuilder("SELECT T.id FROM `").append(table).
+                append("` T INNER JOIN OTComponent C ON C.id = T.id WHERE C.enabled = true");
+        for (String c : conditions) {
+            sql.append(" AND (").append(c).append(')');
+        }
+        if (cursor != null) {
+            sql.append(" AND T.id > ?");
+        }
+        sql.append(" ORDER BY T.id");
+        if (rowLimit > 0) {
+            sql.append(" LIMIT ").append(rowLimit);
+            if (rowOffset > 0) {
+                sql.append(" OFFSET ").append(rowOffset);
+            }
+        } else if (rowOffset > 0) {
+            sql.append(" LIMIT ").append(Long.MAX_VALUE).append(" OFFSET ").append(rowOffset);
+        }
+        return sql.toString();
+    }
+
+    private PreparedStatement prepare(Connection connection, String sql, String cursor) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        int i = 1;
+        for (String a : arguments) {
+            statement.setString(i++, a);
+        }
+        if (cursor != null) {
+            statement.setString(i, cursor);
+        }
+        return statement;
+    }
+
+    /**
+     * The last ID of the current page, used as the cursor of the next page, or
+     * <code>null</code> if there is no limit or the page is not full (this is the
+     * last page). Only the index is scanned.
+     */
+    public String lastOfPage() throws DbException, SQLException {
+        if (limit <= 0) {
+            return null;
+        }
+        Connection connection = DbMetrics.getConnection();
+        try {
+            PreparedStatement statement = prepare(connection, sql(after, 1, offset + limit - 1), after);
+            try {
+                ResultSet rs = DbMetrics.query(statement, "ListIds", null);
+                try {
+                    return rs.next() ? rs.getString(1) : null;
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Streams the IDs of the page to the given sink, one chunk at a time.
+     *
+     * @return
+     *      The number of IDs listed.
+     */
+    public int stream(Sink sink) throws DbException, SQLException, IOException {
+        int count = 0;
+        String cursor = after;
+        int skip = offset;
+        while (true) {
+            int chunk = limit > 0 ? Math.min(_CHUNK_SIZE, limit - count) : _CHUNK_SIZE;
+            List<String> ids = read(cursor, chunk, skip);
+            for (String id : ids) {
+                sink.id(id);
+            }
+            count += ids.size();
+            if (ids.size() < chunk || (limit > 0 && count >= limit)) {
+                return count;
+            }
+            /* The next chunk starts right after the last ID of this one */
+            cursor = ids.get(ids.size() - 1);
+            skip = 0;
+        }
+    }
+
+    /**
+     * Reads at most <code>chunk</code> IDs after the given cursor into memory,
+     * releasing the connection before they are returned.
+     */
+    private List<String> read(String cursor, int chunk, int skip) throws DbException, SQLException {
+        List<String> ids = new ArrayList<String>(chunk);
+        Connection connection = DbMetrics.getConnection();
+        try {
+            PreparedStatement statement = prepare(connection, sql(cursor, chunk, skip), cursor);
+            try {
+                ResultSet rs = DbMetrics.query(statement, "ListIds", null);
+                try {
+                    while (rs.next()) {
+                        ids.add(rs.getString(1));
+                    }
+                } finally {
+                    rs.close();
+                }
+                return ids;
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+}
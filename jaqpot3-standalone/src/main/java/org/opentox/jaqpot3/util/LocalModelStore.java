@@ -0,0 +1,217 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.qsar.serializable.FastRbfNnModel;
+import org.opentox.jaqpot3.qsar.serializable.MappedRbfNetwork;
+import org.opentox.toxotis.core.component.Model;
+import org.opentox.toxotis.database.exception.DbException;
+
+/**
+ * Local store of large models kept in memory-mapped files (see
+ * {@link MappedRbfNetwork}). A model is written in the store from its payload
+ * the first time it is used and the mapping is then shared by all predictions
+ * of the same version of the model, which no longer need to load the payload
+ * from the database. The payload of a model never changes, so files are named
+ * after the ID and the creation time of the model and are reused after the
+ * server restarts; files of models which were deleted and stored again under
+ * the same ID are deleted when the new model is stored. Models are stored under
+ * a lock per model, so that different models are stored concurrently.
+ *
+ * <p>The store is enabled by <code>models.localStore</code>; only models with
+ * at least <code>models.localStore.minNodes</code> nodes are stored, in the
+ * directory <code>models.localStore.directory</code>.</p>
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class LocalModelStore {
+
+    private static final boolean _ENABLED = Configuration.getBooleanProperty("models.localStore", false);
+    private static final int _MIN_NODES = Configuration.getIntegerProperty("models.localStore.minNodes", 1000);
+    private static final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private static final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+    private static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(LocalModelStore.class);
+
+    private static class Entry {
+
+        private final String version;
+        /* null if this version of the model is not kept in the store */
+        private final MappedRbfNetwork network;
+
+        Entry(String version, MappedRbfNetwork network) {
+            this.version = version;
+            this.network = network;
+        }
+    }
+
+    private LocalModelStore() {
+    }
+
+    public static boolean isEnabled() {
+        return _ENABLED;
+    }
+
+    private static File directory() {
+        String path = Configuration.getStringProperty("models.localStore.directory");
+        if (path == null || path.trim().isEmpty()) {
+            path = new File(System.getProperty("java.io.tmpdir"), "jaqpot3-models").getPath();
+        }
+        return new File(path.trim());
+    }
+
+    /**
+     * Identifies the payload of the model: its ID and the time it was created.
+     */
+    private static String version(Model model) throws JaqpotException {
+        String id = model.getUri().getId();
+        ComponentVersions.Version version;
+        try {
+            version = ComponentVersions.ofModel(id);
+        } catch (DbException ex) {
+            throw new JaqpotException("The version of the model " + id + " cannot be retrieved from the database", ex);
+        } catch (SQLException ex) {
+            throw new JaqpotException("The version of the model " + id + " cannot be retrieved from the database", ex);
+        }
+        if (version == null) {
+            throw new JaqpotException("The model " + id + " was not found in the database");
+        }
+        return id + "-" + Long.toString(version.getCreated(), 36);
+    }
+
+    private static Object lock(String id) {
+        Object lock = locks.get(id);
+        if (lock == null) {
+            Object created = new Object();
+            lock = locks.putIfAbsent(id, created);
+            if (lock == null) {
+                lock = created;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * Whether the current version of the model is served by the store, so that
+     * its payload need not be loaded to make predictions.
+     */
+    public static boolean serves(Model model) throws JaqpotException {
+        if (!_ENABLED) {
+            return false;
+        }
+        Entry entry = entries.get(model.getUri().getId());
+        return entry != null && entry.network != null && entry.version.equals(version(model));
+    }
+
+    /**
+     * The mapped RBF network of a model. The network is stored (reading the
+     * payload of the model from the database, unless the model already has it)
+     * when it is first requested.
+     *
+     * @return
+     *      The mapped network or <code>null</code> if the store is disabled or the
+     *      network is too small to be stored or cannot be mapped, in which case
+     *      the payload of the model should be used.
+     */
+    public static MappedRbfNetwork rbfNetwork(Model model) throws JaqpotException {
+        if (!_ENABLED) {
+            return null;
+        }
+        final String id = model.getUri().getId();
+        String version = version(model);
+        Entry entry = entries.get(id);
+        if (entry != null && entry.version.equals(version)) {
+            return entry.network;
+        }
+        synchronized (lock(id)) {
+            entry = entries.get(id);
+            if (entry != null && entry.version.equals(version)) {
+                return entry.network;
+            }
+            MappedRbfNetwork network = null;
+            Object payload = ModelLoader.withPayload(model).getActualModel();
+            if (payload instanceof FastRbfNnModel && ((FastRbfNnModel) payload).getNodes() != null
+                    && ((FastRbfNnModel) payload).getNodes().numInstances() >= _MIN_NODES
+                    && MappedRbfNetwork.supports((FastRbfNnModel) payload)) {
+                try {
+                    network = store(id, version, (FastRbfNnModel) payload);
+                } catch (IOException ex) {
+                    logger.warn("The model " + id + " cannot be stored locally; its payload will be used", ex);
+                }
+            }
+            entries.put(id, new Entry(version, network));
+            return network;
+        }
+    }
+
+    private static MappedRbfNetwork store(final String id, String version, FastRbfNnModel payload) throws IOException {
+        File directory = directory();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("The directory " + directory + " cannot be created");
+        }
+        final String name = version + ".rbf";
+        File file = new File(directory, name);
+        if (!file.isFile()) {
+            File temporary = new File(directory, name + ".tmp");
+            MappedRbfNetwork.write(payload, temporary);
+            if (!temporary.renameTo(file)) {
+                temporary.delete();
+                throw new IOException("The file " + file + " cannot be created");
+            }
+        }
+        File[] stale = directory.listFiles(new FilenameFilter() {
+
+            public boolean accept(File dir, String fileName) {
+                return fileName.startsWith(id + "-") && !fileName.equals(name);
+            }
+        });
+        if (stale != null) {
+            for (File old : stale) {
+                if (!old.delete()) {
+                    logger.debug("Stale model file " + old + " could not be deleted");
+                }
+            }
+        }
+        MappedRbfNetwork network = MappedRbfNetwork.map(file);
+        logger.info("Model " + id + " (" + network.getNumNodes() + " nodes) is mapped from " + file);
+        return network;
+    }
+}
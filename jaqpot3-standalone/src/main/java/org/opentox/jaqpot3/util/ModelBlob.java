@@ -0,0 +1,147 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The compression of the actualModel blobs of the table Model. Blobs hold a
+ * serialized model which may be stored as is, compressed with gzip, as a zlib
+ * stream or in the format of the MySQL function <code>COMPRESS</code> (the
+ * uncompressed length in four bytes, little endian, followed by a zlib stream);
+ * the format is recognized from the first bytes of the blob.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+final class ModelBlob {
+
+    static final int NONE = 0, GZIP = 1, ZLIB = 2, MYSQL = 3;
+    private static final int _HEADER = 6;
+
+    private ModelBlob() {
+    }
+
+    private static boolean isZlib(int first, int second) {
+        return (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0;
+    }
+
+    /**
+     * The compression of a blob given its first bytes.
+     */
+    static int compressionOf(byte[] head, int length) {
+        if (length < 2) {
+            return NONE;
+        }
+        int b0 = head[0] & 0xFF, b1 = head[1] & 0xFF;
+        if (b0 == 0xAC && b1 == 0xED) {
+            return NONE;
+        }
+        if (b0 == 0x1F && b1 == 0x8B) {
+            return GZIP;
+        }
+        if (isZlib(b0, b1)) {
+            return ZLIB;
+        }
+        if (length >= _HEADER && isZlib(head[4] & 0xFF, head[5] & 0xFF)) {
+            return MYSQL;
+        }
+        return NONE;
+    }
+
+    static int compressionOf(byte[] blob) {
+        return compressionOf(blob, blob.length);
+    }
+
+    /**
+     * Stream of the serialized model stored in a blob.
+     */
+    static InputStream decompress(InputStream blob) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(blob);
+        byte[] head = new byte[_HEADER];
+        in.mark(_HEADER);
+        int length = 0, read;
+        while (length < _HEADER && (read = in.read(head, length, _HEADER - length)) > 0) {
+            length += read;
+        }
+        in.reset();
+        switch (compressionOf(head, length)) {
+            case GZIP:
+                return new GZIPInputStream(in);
+            case ZLIB:
+                return new InflaterInputStream(in);
+            case MYSQL:
+                for (int i = 0; i < 4; i++) {
+                    in.read(); // the uncompressed length
+                }
+                return new InflaterInputStream(in);
+            default:
+                return in;
+        }
+    }
+
+    /**
+     * Compresses a serialized model in the given format.
+     */
+    static byte[] compress(byte[] serialized, int compression) throws IOException {
+        if (compression == NONE) {
+            return serialized;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(serialized.length / 2, 64));
+        OutputStream out;
+        if (compression == GZIP) {
+            out = new GZIPOutputStream(bytes);
+        } else {
+            if (compression == MYSQL) {
+                int length = serialized.length;
+                bytes.write(length);
+                bytes.write(length >>> 8);
+                bytes.write(length >>> 16);
+                bytes.write(length >>> 24);
+            }
+            out = new DeflaterOutputStream(bytes);
+        }
+        out.write(serialized);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.toxotis.core.component.Feature;
+import org.opentox.toxotis.core.component.Model;
+import org.opentox.toxotis.database.IDbIterator;
+import org.opentox.toxotis.database.engine.model.FindModel;
+import org.opentox.toxotis.database.exception.DbException;
+
+/**
+ * Loads models from the database keeping their metadata (meta information,
+ * algorithm, dataset, features and parameters) apart from their payload (the
+ * actual model). Metadata are cached, without the payload, for as long as the
+ * version of the model (see {@link ComponentVersions}) does not change, so
+ * serving the representations of a model does not read its actualModel blob
+ * except when the model is first requested. The payload is read, streamed from
+ * the blob, only when it is needed to make predictions or to export the model
+ * and is never cached here.
+ *
+ * <p>Models returned by {@link #findMetadata(java.lang.String) } are shared and
+ * must not be modified; {@link #withPayload(org.opentox.toxotis.core.component.Model) }
+ * returns a copy.</p>
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class ModelLoader {
+
+    private static final int _CACHE_SIZE = Configuration.getIntegerProperty("models.metadataCacheSize", 512);
+    private static final Map<String, Entry> cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > _CACHE_SIZE;
+        }
+    };
+    private static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ModelLoader.class);
+
+    private static class Entry {
+
+        private final String version;
+        private final Model metadata;
+
+        Entry(String version, Model metadata) {
+            this.version = version;
+            this.metadata = metadata;
+        }
+    }
+
+    private ModelLoader() {
+    }
+
+    /**
+     * The metadata of an enabled model, without its payload
+     * ({@link Model#getActualModel() } is <code>null</code>).
+     *
+     * @param id
+     *      The id of the model.
+     * @return
+     *      The model or <code>null</code> if there is no such (enabled) model.
+     */
+    public static Model findMetadata(String id) throws JaqpotException {
+        ComponentVersions.Version version;
+        try {
+            version = ComponentVersions.ofModel(id);
+        } catch (DbException ex) {
+            throw new JaqpotException("The version of the model " + id + " cannot be retrieved from the database", ex);
+        } catch (SQLException ex) {
+            throw new JaqpotException("The version of the model " + id + " cannot be retrieved from the database", ex);
+        }
+        return version != null ? findMetadata(id, version) : null;
+    }
+
+    /**
+     * Like {@link #findMetadata(java.lang.String) } when the version of the
+     * model is already known.
+     */
+    public static Model findMetadata(String id, ComponentVersions.Version version) throws JaqpotException {
+        Model cached = cached(id, version);
+        if (cached != null) {
+            return cached;
+        }
+        Model model = findInDb(id);
+        if (model == null) {
+            return null;
+        }
+        try {
+            model.setActualModel((Serializable) null);
+        } catch (NotSerializableException ex) {
+            logger.warn("The payload of the model " + id + " cannot be discarded", ex);
+            return model;
+        }
+        cache(id, version, model);
+        return model;
+    }
+
+    /**
+     * The cached metadata of a model, or <code>null</code> if they are not cached
+     * or were cached for another version of the model.
+     */
+    static Model cached(String id, ComponentVersions.Version version) {
+        synchronized (cache) {
+            Entry entry = cache.get(id);
+            return entry != null && entry.version.equals(version.getKey()) ? entry.metadata : null;
+        }
+    }
+
+    static void cache(String id, ComponentVersions.Version version, Model metadata) {
+        synchronized (cache) {
+            cache.put(id, new Entry(version.getKey(), metadata));
+        }
+    }
+
+    /**
+     * A complete enabled model, with its payload.
+     *
+     * @return
+     *      The model or <code>null</code> if there is no such (enabled) model.
+     */
+    public static Model find(String id) throws JaqpotException {
+        Model metadata = findMetadata(id);
+        return metadata != null ? withPayload(metadata) : null;
+    }
+
+    /**
+     * A copy of the model along with its payload, which is read from the
+     * database. If the model already has its payload, it is returned as is.
+     */
+    public static Model withPayload(Model metadata) throws JaqpotException {
+        if (metadata.getActualModel() != null) {
+            return metadata;
+        }
+        String id = metadata.getUri().getId();
+        Object payload = null;
+        try {
+            payload = readPayload(id);
+        } catch (IOException ex) {
+            logger.warn("The payload of the model " + id + " cannot be decoded; the model is loaded by ToxOtis", ex);
+        } catch (ClassNotFoundException ex) {
+            logger.warn("The payload of the model " + id + " cannot be decoded; the model is loaded by ToxOtis", ex);
+        }
+        Model complete = payload instanceof Serializable ? copyOf(metadata, (Serializable) payload) : null;
+        if (complete == null) {
+            complete = findInDb(id);
+            if (complete == null) {
+                throw new JaqpotException("The model " + id + " was not found in the database");
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Reads and deserializes the actualModel blob of a model.
+     *
+     * @return
+     *      The actual model or <code>null</code> if the model has no payload.
+     */
+    static Object readPayload(String id) throws JaqpotException, IOException, ClassNotFoundException {
+        Connection connection = null;
+        try {
+            connection = DbMetrics.getConnection();
+            PreparedStatement statement = connection.prepareStatement("SELECT actualModel FROM Model WHERE id = ?");
+            try {
+                statement.setString(1, id);
+                ResultSet rs = DbMetrics.query(statement, "ReadModelPayload", id);
+                try {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    InputStream blob = rs.getBinaryStream(1);
+                    if (blob == null) {
+                        return null;
+                    }
+                    ObjectInputStream in = new ObjectInputStream(ModelBlob.decompress(blob));
+                    try {
+                        return in.readObject();
+                    } finally {
+                        in.close();
+                    }
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                statement.close();
+            }
+        } catch (DbException ex) {
+            throw new JaqpotException("The payload of the model " + id + " cannot be read from the database", ex);
+        } catch (SQLException ex) {
+            throw new JaqpotException("The payload of the model " + id + " cannot be read from the database", ex);
+        } finally {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException ex) {
+                    logger.error("Database connection is uncloseable", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy of the metadata of a model with the given payload, or <code>null</code>
+     * if the payload cannot be set.
+     */
+    private static Model copyOf(Model model, Serializable payload) {
+        Model copy = new Model(model.getUri());
+        copy.setMeta(model.getMeta());
+        copy.setAlgorithm(model.getAlgorithm());
+        copy.setCreatedBy(model.getCreatedBy());
+        copy.setDataset(model.getDataset());
+        copy.setIndependentFeatures(model.getIndependentFeatures());
+        for (Feature f : model.getDependentFeatures()) {
+            copy.addDependentFeatures(f);
+        }
+        for (Feature f : model.getPredictedFeatures()) {
+            copy.addPredictedFeatures(f);
+        }
+        copy.setParameters(model.getParameters());
+        try {
+            copy.setActualModel(payload);
+        } catch (NotSerializableException ex) {
+            logger.warn("The payload of the model " + model.getUri() + " is not serializable", ex);
+            return null;
+        }
+        return copy;
+    }
+
+    /**
+     * Loads a model, with its payload, using ToxOtis.
+     */
+    private static Model findInDb(String id) throws JaqpotException {
+        FindModel finder = new FindModel(Configuration.getBaseUri());
+        finder.setSearchById(id);
+        finder.setResolveUsers(true);
+        IDbIterator<Model> modelsFound = null;
+        Model found = null;
+        try {
+            modelsFound = DbMetrics.list(finder, id);
+            if (modelsFound.hasNext()) {
+                found = modelsFound.next();
+            }
+        } catch (DbException ex) {
+            throw new JaqpotException("Model " + id + " cannot be found due to DB connection problems", ex);
+        } finally {
+            try {
+                if (modelsFound != null) {
+                    modelsFound.close();
+                }
+                finder.close();
+            } catch (DbException ex) {
+                logger.error("Model Finder (DB reader) is uncloseable", ex);
+            }
+        }
+        return found != null && found.isEnabled() ? found : null;
+    }
+}
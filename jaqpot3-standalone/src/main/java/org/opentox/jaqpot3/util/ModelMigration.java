@@ -0,0 +1,257 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.opentox.jaqpot3.qsar.serializable.EncodedModel;
+import org.opentox.jaqpot3.qsar.serializable.ModelCodec;
+import org.opentox.toxotis.database.exception.DbException;
+
+/**
+ * Rewrites the actual models stored in the database so that every model
+ * which can be encoded by {@link ModelCodec} is stored in its binary form.
+ * Blobs are read and written directly, keeping the compression that the blob
+ * was stored with (see {@link ModelBlob}), so that ToxOtis reads the migrated
+ * models exactly as it reads new ones. Models that cannot be encoded, or are
+ * already encoded, are left untouched, so the migration may be interrupted
+ * and restarted at any time.
+ *
+ * <p>The migration is an explicit opt-in step: it runs in the background when the
+ * server starts only if <code>models.migrate</code> is set to <code>true</code>
+ * (and the codec is enabled). Migrated models cannot be read by earlier versions
+ * of the server, so the database should be backed up before it is enabled.</p>
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class ModelMigration {
+
+    private static boolean started = false;
+    private static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ModelMigration.class);
+
+    private ModelMigration() {
+    }
+
+    /**
+     * Starts the migration in a background thread (once per server run).
+     */
+    public static synchronized void start() {
+        if (started || !ModelCodec.isEnabled() || !Configuration.getBooleanProperty("models.migrate", false)) {
+            return;
+        }
+        started = true;
+        Thread worker = new Thread("Model_Migration") {
+
+            @Override
+            public void run() {
+                try {
+                    migrate();
+                } catch (DbException ex) {
+                    logger.error("Migration of stored models failed", ex);
+                } catch (SQLException ex) {
+                    logger.error("Migration of stored models failed", ex);
+                }
+            }
+        };
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }
+
+    /**
+     * Migrates all stored models.
+     *
+     * @return
+     *      The number of models which were rewritten.
+     */
+    public static int migrate() throws DbException, SQLException {
+        List<String> ids = new ArrayList<String>();
+        Connection connection = DbMetrics.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement("SELECT id FROM Model WHERE actualModel IS NOT NULL");
+            try {
+                ResultSet rs = DbMetrics.query(statement, "ListModels", null);
+                try {
+                    while (rs.next()) {
+                        ids.add(rs.getString(1));
+                    }
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+        int migrated = 0, failed = 0;
+        long[] sizes = new long[2];
+        for (String id : ids) {
+            try {
+                if (migrate(id, sizes)) {
+                    migrated++;
+                }
+            } catch (IOException ex) {
+                failed++;
+                logger.warn("Model " + id + " could not be migrated", ex);
+            } catch (ClassNotFoundException ex) {
+                failed++;
+                logger.warn("Model " + id + " could not be migrated", ex);
+            }
+        }
+        logger.info("Migration of stored models completed: " + migrated + " of " + ids.size()
+                + " models were rewritten (" + (sizes[0] / 1024) + " KB before, " + (sizes[1] / 1024) + " KB after), "
+                + failed + " failed");
+        return migrated;
+    }
+
+    /**
+     * Migrates a single model, adding the size of the blob before and after the
+     * migration to <code>sizes</code>.
+     *
+     * @return
+     *      Whether the model was rewritten.
+     */
+    private static boolean migrate(String id, long[] sizes) throws DbException, SQLException, IOException, ClassNotFoundException {
+        Connection connection = DbMetrics.getConnection();
+        try {
+            byte[] blob = null;
+            PreparedStatement select = connection.prepareStatement("SELECT actualModel FROM Model WHERE id = ?");
+            try {
+                select.setString(1, id);
+                ResultSet rs = DbMetrics.query(select, "ReadModelPayload", id);
+                try {
+                    if (rs.next()) {
+                        blob = rs.getBytes(1);
+                    }
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                select.close();
+            }
+            byte[] rewritten = blob != null ? rewrite(blob) : null;
+            if (rewritten == null) {
+                return false;
+            }
+            PreparedStatement update = connection.prepareStatement("UPDATE Model SET actualModel = ? WHERE id = ?");
+            try {
+                update.setBytes(1, rewritten);
+                update.setString(2, id);
+                int updated = DbMetrics.execute(update, "MigrateModel", id);
+                if (updated == 0) {
+                    return false;
+                }
+                sizes[0] += blob.length;
+                sizes[1] += rewritten.length;
+                return true;
+            } finally {
+                update.close();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Deserializer which records whether the stream contains encoded models.
+     */
+    private static class Inspector extends ObjectInputStream {
+
+        private boolean encoded = false;
+
+        Inspector(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (EncodedModel.class.getName().equals(desc.getName())) {
+                encoded = true;
+            }
+            return super.resolveClass(desc);
+        }
+    }
+
+    private static Inspector open(byte[] blob) throws IOException {
+        return new Inspector(ModelBlob.decompress(new ByteArrayInputStream(blob)));
+    }
+
+    /**
+     * Decompresses and deserializes a stored blob, in any of the formats written
+     * by ToxOtis.
+     */
+    public static Object read(byte[] blob) throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = open(blob);
+        try {
+            return ois.readObject();
+        } finally {
+            ois.close();
+        }
+    }
+
+    /**
+     * The blob with the model in its binary form, compressed as the original
+     * blob, or <code>null</code> if the blob should not be changed.
+     */
+    static byte[] rewrite(byte[] blob) throws IOException, ClassNotFoundException {
+        Object model;
+        Inspector inspector = open(blob);
+        try {
+            model = inspector.readObject();
+        } finally {
+            inspector.close();
+        }
+        if (inspector.encoded || !ModelCodec.supports(model)) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(blob.length, 64));
+        ObjectOutputStream oos = new ObjectOutputStream(bytes);
+        oos.writeObject(model);
+        oos.close();
+        return ModelBlob.compress(bytes.toByteArray(), ModelBlob.compressionOf(blob));
+    }
+}
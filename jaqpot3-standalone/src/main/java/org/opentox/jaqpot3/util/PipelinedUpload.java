@@ -0,0 +1,220 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.opentox.toxotis.client.VRI;
+import weka.core.FastVector;
+import weka.core.Instances;
+
+/**
+ * Uploads consecutive chunks of a dataset on a separate thread while the next
+ * chunks are being computed. The chunks are handed over to the uploading thread
+ * through a bounded queue, so the producer may run ahead of the upload by a few
+ * chunks only. Every chunk is also kept, so that if the upload fails the whole
+ * dataset is still available (see {@link #getInstances() }) and can be published
+ * by other means without computing it again.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class PipelinedUpload {
+
+    /**
+     * Destination of the chunks, e.g. a {@link DatasetStreamPublisher}.
+     */
+    public interface Target {
+
+        void begin(Instances header) throws IOException;
+
+        void write(Instances rows) throws IOException;
+
+        VRI finish() throws IOException;
+
+        void close();
+    }
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger(0);
+    /* Marks the end of the chunks in the queue */
+    private static final Instances END = new Instances("end", new FastVector(0), 0);
+    private final Target target;
+    private final BlockingQueue<Instances> queue;
+    private final List<Instances> chunks = new ArrayList<Instances>();
+    private final Thread uploader;
+    private volatile IOException failure;
+    private VRI result;
+
+    /**
+     *
+     * @param target
+     *      Destination of the chunks.
+     * @param capacity
+     *      Maximum number of chunks waiting to be uploaded.
+     */
+    public PipelinedUpload(Target target, int capacity) {
+        this.target = target;
+        this.queue = new ArrayBlockingQueue<Instances>(Math.max(1, capacity));
+        this.uploader = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                upload();
+            }
+        }, "pipelined-upload-" + THREAD_COUNT.incrementAndGet());
+        this.uploader.setDaemon(true);
+    }
+
+    /**
+     * Starts the thread that uploads the chunks.
+     */
+    public void start() {
+        uploader.start();
+    }
+
+    /**
+     * Hands over the next chunk to the upload; waits while the queue is full. Once
+     * the upload has failed, chunks are only kept.
+     *
+     * @param chunk
+     *      Chunk of the dataset; all chunks must have the same header.
+     * @throws InterruptedException
+     *      If interrupted while waiting for the queue.
+     */
+    public void add(Instances chunk) throws InterruptedException {
+        chunks.add(chunk);
+        if (failure == null) {
+            queue.put(chunk);
+        }
+    }
+
+    /**
+     * Waits until all chunks have been uploaded.
+     *
+     * @return
+     *      URI of the uploaded dataset.
+     * @throws IOException
+     *      If the upload failed.
+     * @throws InterruptedException
+     *      If interrupted while waiting for the upload.
+     */
+    public VRI finish() throws IOException, InterruptedException {
+        queue.put(END);
+        uploader.join();
+        if (failure != null) {
+            throw failure;
+        }
+        return result;
+    }
+
+    /**
+     * Stops an unfinished upload and releases the target; has no effect on a
+     * finished upload.
+     */
+    public void abort() {
+        uploader.interrupt();
+        target.close();
+    }
+
+    /**
+     * All chunks added so far, merged in one dataset.
+     *
+     * @return
+     *      The dataset or <code>null</code> if no chunks were added.
+     */
+    public Instances getInstances() {
+        if (chunks.isEmpty()) {
+            return null;
+        }
+        int numInstances = 0;
+        for (Instances chunk : chunks) {
+            numInstances += chunk.numInstances();
+        }
+        Instances all = new Instances(chunks.get(0), numInstances);
+        for (Instances chunk : chunks) {
+            for (int i = 0; i < chunk.numInstances(); i++) {
+                all.add(chunk.instance(i));
+            }
+        }
+        return all;
+    }
+
+    private void upload() {
+        boolean begun = false;
+        try {
+            while (true) {
+                Instances chunk = queue.take();
+                if (chunk == END) {
+                    if (failure == null) {
+                        try {
+                            if (!begun) {
+                                throw new IOException("No data were uploaded");
+                            }
+                            result = target.finish();
+                        } catch (IOException ex) {
+                            fail(ex);
+                        } catch (RuntimeException ex) {
+                            fail(new IOException(ex));
+                        }
+                    }
+                    return;
+                }
+                if (failure != null) {
+                    continue; // keep draining the queue so that the producer is never blocked
+                }
+                try {
+                    if (!begun) {
+                        target.begin(chunk);
+                        begun = true;
+                    }
+                    target.write(chunk);
+                } catch (IOException ex) {
+                    fail(ex);
+                } catch (RuntimeException ex) {
+                    fail(new IOException(ex));
+                }
+            }
+        } catch (InterruptedException ex) {
+            fail(new IOException("The upload was interrupted", ex));
+        }
+    }
+
+    private void fail(IOException ex) {
+        failure = ex;
+        target.close();
+    }
+}
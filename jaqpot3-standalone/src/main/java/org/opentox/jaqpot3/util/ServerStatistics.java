@@ -0,0 +1,283 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.opentox.toxotis.client.VRI;
+import org.opentox.toxotis.core.component.Task;
+import org.opentox.toxotis.database.exception.DbException;
+
+/**
+ * Statistics of the server, kept in memory: the number of (enabled) models per
+ * algorithm and of tasks per status, and the throughput and latency of the requests
+ * served. The counters of models and tasks are updated when models and tasks
+ * are written or models are deleted and are reconciled with the database (with a single grouped
+ * query per table) when first used and then every
+ * <code>statistics.reconcileInterval</code> seconds, so that changes made
+ * elsewhere (e.g. by the {@link DatabaseJanitor}) are eventually accounted for.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class ServerStatistics {
+
+    /**
+     * Upper bounds (in ms) of the buckets of the latency histogram; the last
+     * bucket is unbounded.
+     */
+    public static final long[] LATENCY_BUCKETS = {10, 100, 1000, 10000};
+    private static final long _RECONCILE_INTERVAL = 1000L * Configuration.getIntegerProperty("statistics.reconcileInterval", 600);
+    private static final ConcurrentMap<String, AtomicLong> modelsPerAlgorithm = new ConcurrentHashMap<String, AtomicLong>();
+    private static final ConcurrentMap<String, AtomicLong> tasksPerStatus = new ConcurrentHashMap<String, AtomicLong>();
+    private static final AtomicLong requests = new AtomicLong();
+    private static final AtomicLong latencyMillis = new AtomicLong();
+    private static final AtomicLong maxLatencyMillis = new AtomicLong();
+    private static final AtomicLong[] latencyHistogram = new AtomicLong[LATENCY_BUCKETS.length + 1];
+    private static volatile long reconciledAt = 0;
+    private static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ServerStatistics.class);
+
+    static {
+        for (int i = 0; i < latencyHistogram.length; i++) {
+            latencyHistogram[i] = new AtomicLong();
+        }
+    }
+
+    private ServerStatistics() {
+    }
+
+    private static void add(ConcurrentMap<String, AtomicLong> counters, String key, long delta) {
+        AtomicLong counter = counters.get(key);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = counters.putIfAbsent(key, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.addAndGet(delta);
+    }
+
+    /**
+     * The id of an algorithm, i.e. the last segment of its URI.
+     */
+    private static String algorithmId(String algorithmUri) {
+        if (algorithmUri == null) {
+            return "unknown";
+        }
+        String uri = algorithmUri.endsWith("/") ? algorithmUri.substring(0, algorithmUri.length() - 1) : algorithmUri;
+        return uri.substring(uri.lastIndexOf('/') + 1);
+    }
+
+    private static String statusKey(Task.Status status) {
+        return status != null ? status.toString().toLowerCase() : "unknown";
+    }
+
+    /**
+     * Records that a model trained by the given algorithm was stored.
+     */
+    public static void modelAdded(VRI algorithm) {
+        add(modelsPerAlgorithm, algorithmId(algorithm != null ? algorithm.toString() : null), 1);
+    }
+
+    /**
+     * Records that a model trained by the given algorithm was deleted (disabled).
+     */
+    public static void modelDeleted(VRI algorithm) {
+        String key = algorithmId(algorithm != null ? algorithm.toString() : null);
+        add(modelsPerAlgorithm, key, -1);
+        AtomicLong counter = modelsPerAlgorithm.get(key);
+        if (counter != null && counter.get() < 0) {
+            counter.set(0);
+        }
+    }
+
+    /**
+     * Records that a (new) task was stored.
+     */
+    public static void taskAdded(Task task) {
+        add(tasksPerStatus, statusKey(task.getStatus()), 1);
+    }
+
+    /**
+     * Records that the status of a stored task changed.
+     */
+    public static void taskMoved(Task.Status from, Task.Status to) {
+        if (from == to) {
+            return;
+        }
+        add(tasksPerStatus, statusKey(from), -1);
+        add(tasksPerStatus, statusKey(to), 1);
+    }
+
+    /**
+     * Records a served request.
+     */
+    public static void requestServed(long millis) {
+        requests.incrementAndGet();
+        latencyMillis.addAndGet(millis);
+        long max = maxLatencyMillis.get();
+        while (millis > max && !maxLatencyMillis.compareAndSet(max, millis)) {
+            max = maxLatencyMillis.get();
+        }
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKETS.length && millis >= LATENCY_BUCKETS[bucket]) {
+            bucket++;
+        }
+        latencyHistogram[bucket].incrementAndGet();
+    }
+
+    private static Map<String, Long> snapshot(ConcurrentMap<String, AtomicLong> counters) {
+        Map<String, Long> snapshot = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> e : counters.entrySet()) {
+            snapshot.put(e.getKey(), e.getValue().get());
+        }
+        return snapshot;
+    }
+
+    /**
+     * The number of models per algorithm id.
+     */
+    public static Map<String, Long> getModelsPerAlgorithm() throws DbException, SQLException {
+        reconcileIfDue();
+        return snapshot(modelsPerAlgorithm);
+    }
+
+    /**
+     * The number of tasks per status (in lower case).
+     */
+    public static Map<String, Long> getTasksPerStatus() throws DbException, SQLException {
+        reconcileIfDue();
+        return snapshot(tasksPerStatus);
+    }
+
+    public static long getRequests() {
+        return requests.get();
+    }
+
+    public static long getLatencyMillis() {
+        return latencyMillis.get();
+    }
+
+    public static long getMaxLatencyMillis() {
+        return maxLatencyMillis.get();
+    }
+
+    /**
+     * The number of requests in each bucket of {@link #LATENCY_BUCKETS}.
+     */
+    public static long[] getLatencyHistogram() {
+        long[] histogram = new long[latencyHistogram.length];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = latencyHistogram[i].get();
+        }
+        return histogram;
+    }
+
+    private static void reconcileIfDue() throws DbException, SQLException {
+        if (System.currentTimeMillis() - reconciledAt >= _RECONCILE_INTERVAL) {
+            synchronized (ServerStatistics.class) {
+                if (System.currentTimeMillis() - reconciledAt >= _RECONCILE_INTERVAL) {
+                    reconcile();
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the counters of models and tasks by the counts in the database.
+     */
+    public static synchronized void reconcile() throws DbException, SQLException {
+        Map<String, Long> models = count("SELECT M.algorithm, COUNT(*) FROM Model M INNER JOIN OTComponent C "
+                + "ON M.id = C.id WHERE C.enabled = true GROUP BY M.algorithm", true);
+        Map<String, Long> tasks = count("SELECT status, COUNT(*) FROM Task GROUP BY status", false);
+        reset(modelsPerAlgorithm, models);
+        reset(tasksPerStatus, tasks);
+        reconciledAt = System.currentTimeMillis();
+        logger.debug("Statistics reconciled with the database");
+    }
+
+    /*
+     * Writes that happen during the query may be counted twice or not at all until
+     * the next reconciliation
+     */
+    private static void reset(ConcurrentMap<String, AtomicLong> counters, Map<String, Long> counts) {
+        for (Map.Entry<String, AtomicLong> e : counters.entrySet()) {
+            if (!counts.containsKey(e.getKey())) {
+                e.getValue().set(0);
+            }
+        }
+        for (Map.Entry<String, Long> e : counts.entrySet()) {
+            AtomicLong counter = counters.get(e.getKey());
+            if (counter != null) {
+                counter.set(e.getValue());
+            } else {
+                add(counters, e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    private static Map<String, Long> count(String sql, boolean algorithms) throws DbException, SQLException {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        Connection connection = DbMetrics.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            try {
+                ResultSet rs = DbMetrics.query(statement, "CountStatistics", sql);
+                try {
+                    while (rs.next()) {
+                        String key = algorithms ? algorithmId(rs.getString(1))
+                                : (rs.getString(1) != null ? rs.getString(1).toLowerCase() : "unknown");
+                        Long previous = counts.get(key);
+                        counts.put(key, rs.getLong(2) + (previous != null ? previous : 0));
+                    }
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+        return counts;
+    }
+}
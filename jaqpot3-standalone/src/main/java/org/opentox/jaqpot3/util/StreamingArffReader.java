@@ -0,0 +1,690 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+/**
+ * Fast reader of datasets in ARFF which parses directly from a byte stream
+ * (typically the body of an HTTP response) through an NIO buffer, so that the
+ * ARFF text is never held in memory. The header is parsed on construction and is
+ * available through {@link #getStructure() }; the instances are then read with
+ * {@link #readAll() }. Numeric values are parsed from the bytes without creating
+ * intermediate strings.
+ *
+ * <p>Numeric, integer, real, nominal, string and date attributes are supported,
+ * as are sparse instances and instance weights. Relational attributes are not.
+ * The stream is expected to be encoded in UTF-8.</p>
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class StreamingArffReader {
+
+    private static final int _BUFFER_SIZE = 1 << 16;
+    private static final int _EOF = -1;
+    /**
+     * Exact powers of ten; a decimal with at most 15 significant digits scaled by
+     * one of these is correctly rounded
+     */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final Instances header;
+    private final int numAttributes;
+    private byte[] token = new byte[128];
+    private int tokenLength;
+    private boolean tokenQuoted;
+    private int line = 1;
+
+    /**
+     * Creates a new reader and parses the header of the dataset.
+     *
+     * @param in
+     *      Input stream; it is not closed by the reader.
+     * @throws IOException
+     *      If the stream cannot be read or the header is malformed.
+     */
+    public StreamingArffReader(InputStream in) throws IOException {
+        this(Channels.newChannel(in));
+    }
+
+    public StreamingArffReader(ReadableByteChannel channel) throws IOException {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(_BUFFER_SIZE);
+        this.buffer.flip();
+        this.header = readHeader();
+        this.numAttributes = header.numAttributes();
+    }
+
+    /**
+     * The header of the dataset. String values found in the instances that have been
+     * read so far are registered in its string attributes.
+     *
+     * @return
+     *      Empty dataset with the attributes of the ARFF header.
+     */
+    public Instances getStructure() {
+        return new Instances(header, 0);
+    }
+
+    /**
+     * Reads all remaining instances.
+     *
+     * @return
+     *      Dataset with the remaining instances of the stream.
+     * @throws IOException
+     *      If the stream cannot be read or is malformed.
+     */
+    public Instances readAll() throws IOException {
+        Instances data = new Instances(header, 1024);
+        Instance instance;
+        while ((instance = readInstance()) != null) {
+            data.add(instance);
+        }
+        data.compactify();
+        return data;
+    }
+
+    /**
+     * Reads the next instance.
+     *
+     * @return
+     *      The next instance (bound to the header) or <code>null</code> if the end
+     *      of the stream has been reached.
+     * @throws IOException
+     *      If the stream cannot be read or is malformed.
+     */
+    private Instance readInstance() throws IOException {
+        int c = skipBlankLines();
+        if (c == _EOF) {
+            return null;
+        }
+        Instance instance;
+        if (c == '{') {
+            instance = readSparse();
+        } else {
+            instance = readDense();
+        }
+        instance.setDataset(header);
+        return instance;
+    }
+
+    private Instance readDense() throws IOException {
+        double[] values = new double[numAttributes];
+        for (int j = 0; j < numAttributes; j++) {
+            int c = readToken();
+            values[j] = parseValue(j);
+            if (j < numAttributes - 1 && c != ',') {
+                throw error("Expected " + numAttributes + " values but found " + (j + 1));
+            }
+            if (j == numAttributes - 1 && c == ',') {
+                c = skipSpaces();
+                if (c != '{') {
+                    throw error("Expected " + numAttributes + " values but found more");
+                }
+                next();
+                return new Instance(readWeight(), values);
+            }
+        }
+        return new Instance(1.0, values);
+    }
+
+    private Instance readSparse() throws IOException {
+        next(); // '{'
+        int capacity = 16;
+        int[] indices = new int[capacity];
+        double[] values = new double[capacity];
+        int count = 0;
+        int c = skipSpaces();
+        if (c == '}') {
+            next();
+        } else {
+            while (true) {
+                int index = readIndex();
+                if (index < 0 || index >= numAttributes) {
+                    throw error("Attribute index out of range: " + index);
+                }
+                if (count > 0 && index <= indices[count - 1]) {
+                    throw error("Sparse indices must be in ascending order");
+                }
+                c = readToken();
+                if (count == capacity) {
+                    capacity *= 2;
+                    indices = Arrays.copyOf(indices, capacity);
+                    values = Arrays.copyOf(values, capacity);
+                }
+                indices[count] = index;
+                values[count] = parseValue(index);
+                count++;
+                if (c == '}') {
+                    next();
+                    break;
+                } else if (c != ',') {
+                    throw error("Unterminated sparse instance");
+                }
+            }
+        }
+        double weight = 1.0;
+        c = skipSpaces();
+        if (c == ',') {
+            next();
+            if (skipSpaces() != '{') {
+                throw error("Expected the weight of the instance");
+            }
+            next();
+            weight = readWeight();
+        }
+        return new SparseInstance(weight, Arrays.copyOf(values, count), Arrays.copyOf(indices, count), numAttributes);
+    }
+
+    private double readWeight() throws IOException {
+        skipSpaces();
+        readUnquoted();
+        if (peek() != '}') {
+            throw error("Unterminated instance weight");
+        }
+        next();
+        double weight = parseNumber();
+        if (Double.isNaN(weight)) {
+            throw error("Invalid instance weight");
+        }
+        return weight;
+    }
+
+    private int readIndex() throws IOException {
+        skipSpaces();
+        int index = 0;
+        int digits = 0;
+        int c;
+        while ((c = peek()) >= '0' && c <= '9') {
+            index = 10 * index + (c - '0');
+            digits++;
+            next();
+        }
+        if (digits == 0 || (c != ' ' && c != '\t')) {
+            throw error("Invalid sparse index");
+        }
+        return index;
+    }
+
+    /**
+     * Reads the next value into the token buffer and returns the separator that
+     * follows it (which is not consumed if it terminates the line).
+     */
+    private int readToken() throws IOException {
+        int c = skipSpaces();
+        if (c == '\'' || c == '"') {
+            readQuoted();
+        } else {
+            readUnquoted();
+        }
+        c = skipSpaces();
+        if (c == ',') {
+            next();
+        } else if (c != '\n' && c != '\r' && c != '}' && c != '%' && c != _EOF) {
+            throw error("Unexpected character '" + (char) c + "'");
+        }
+        return c;
+    }
+
+    private void readUnquoted() throws IOException {
+        tokenLength = 0;
+        tokenQuoted = false;
+        int c;
+        while ((c = peek()) != _EOF && c != ',' && c != '\n' && c != '\r' && c != '}' && c != '%') {
+            append(c);
+            next();
+        }
+        while (tokenLength > 0 && (token[tokenLength - 1] == ' ' || token[tokenLength - 1] == '\t')) {
+            tokenLength--;
+        }
+        if (tokenLength == 0) {
+            throw error("Missing value");
+        }
+    }
+
+    private void readQuoted() throws IOException {
+        int quote = next();
+        tokenLength = 0;
+        tokenQuoted = true;
+        int c;
+        while ((c = next()) != quote) {
+            if (c == _EOF || c == '\n') {
+                throw error("Unterminated quoted value");
+            }
+            if (c == '\\') {
+                c = next();
+                switch (c) {
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    case _EOF:
+                        throw error("Unterminated quoted value");
+                    default:
+                        break;
+                }
+            }
+            append(c);
+        }
+    }
+
+    private void append(int c) {
+        if (tokenLength == token.length) {
+            token = Arrays.copyOf(token, 2 * token.length);
+        }
+        token[tokenLength++] = (byte) c;
+    }
+
+    private double parseValue(int attributeIndex) throws IOException {
+        if (!tokenQuoted && tokenLength == 1 && token[0] == '?') {
+            return Instance.missingValue();
+        }
+        Attribute attribute = header.attribute(attributeIndex);
+        switch (attribute.type()) {
+            case Attribute.NUMERIC:
+                double value = parseNumber();
+                if (Double.isNaN(value)) {
+                    throw error("Invalid number '" + tokenString() + "' for attribute " + attribute.name());
+                }
+                return value;
+            case Attribute.NOMINAL:
+                int index = attribute.indexOfValue(tokenString());
+                if (index < 0) {
+                    throw error("Nominal value '" + tokenString() + "' not declared in the header of attribute "
+                            + attribute.name());
+                }
+                return index;
+            case Attribute.STRING:
+                return attribute.addStringValue(tokenString());
+            case Attribute.DATE:
+                try {
+                    return attribute.parseDate(tokenString());
+                } catch (ParseException ex) {
+                    throw error("Invalid date '" + tokenString() + "' for attribute " + attribute.name());
+                }
+            default:
+                throw error("Unsupported type of attribute " + attribute.name());
+        }
+    }
+
+    /**
+     * Parses the token as a decimal number; returns <code>NaN</code> if it is not one.
+     * Numbers with up to 15 significant digits and small exponents are converted
+     * exactly with a single multiplication or division; the rest are delegated to
+     * {@link Double#parseDouble(java.lang.String) }.
+     */
+    private double parseNumber() throws IOException {
+        int i = 0;
+        boolean negative = false;
+        if (i < tokenLength && (token[i] == '-' || token[i] == '+')) {
+            negative = token[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significant = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean fast = true;
+        while (i < tokenLength && token[i] >= '0' && token[i] <= '9') {
+            if (significant < 15) {
+                mantissa = 10 * mantissa + (token[i] - '0');
+                if (mantissa > 0) {
+                    significant++;
+                }
+            } else {
+                fast = false;
+            }
+            digits++;
+            i++;
+        }
+        if (i < tokenLength && token[i] == '.') {
+            i++;
+            while (i < tokenLength && token[i] >= '0' && token[i] <= '9') {
+                if (significant < 15) {
+                    mantissa = 10 * mantissa + (token[i] - '0');
+                    if (mantissa > 0) {
+                        significant++;
+                    }
+                    exponent--;
+                } else {
+                    fast = false;
+                }
+                digits++;
+                i++;
+            }
+        }
+        if (digits == 0) {
+            return fallback();
+        }
+        if (i < tokenLength && (token[i] == 'e' || token[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < tokenLength && (token[i] == '-' || token[i] == '+')) {
+                negativeExponent = token[i] == '-';
+                i++;
+            }
+            int e = 0;
+            int exponentDigits = 0;
+            while (i < tokenLength && token[i] >= '0' && token[i] <= '9') {
+                if (e < 10000) {
+                    e = 10 * e + (token[i] - '0');
+                }
+                exponentDigits++;
+                i++;
+            }
+            if (exponentDigits == 0) {
+                return Double.NaN;
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+        if (i != tokenLength) {
+            return fallback();
+        }
+        if (!fast || exponent < -22 || exponent > 22) {
+            return fallback();
+        }
+        double value = exponent < 0
+                ? mantissa / POWERS_OF_TEN[-exponent]
+                : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Handles what the fast path does not, e.g. long mantissas, large exponents,
+     * <code>Infinity</code> and <code>NaN</code>.
+     */
+    private double fallback() throws IOException {
+        String text = tokenString();
+        if (text.equals("NaN")) {
+            throw error("NaN is not a valid value; use '?' for missing values");
+        }
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException ex) {
+            return Double.NaN;
+        }
+    }
+
+    private String tokenString() throws UnsupportedEncodingException {
+        return new String(token, 0, tokenLength, "UTF-8");
+    }
+
+    /* ----- Header ----- */
+    private Instances readHeader() throws IOException {
+        String relation = null;
+        FastVector attributes = new FastVector();
+        String headerLine;
+        while ((headerLine = readLine()) != null) {
+            String trimmed = headerLine.trim();
+            if (trimmed.length() == 0 || trimmed.startsWith("%")) {
+                continue;
+            }
+            List<String> tokens = tokenize(trimmed);
+            String keyword = tokens.get(0).toLowerCase();
+            if (keyword.equals("@relation")) {
+                if (tokens.size() < 2) {
+                    throw error("Missing name of relation");
+                }
+                relation = tokens.get(1);
+            } else if (keyword.equals("@attribute")) {
+                attributes.addElement(parseAttribute(trimmed, tokens));
+            } else if (keyword.equals("@data")) {
+                if (relation == null) {
+                    throw error("Missing @relation declaration");
+                }
+                return new Instances(relation, attributes, 0);
+            } else {
+                throw error("Unexpected keyword '" + tokens.get(0) + "' in the ARFF header");
+            }
+        }
+        throw error("Premature end of the ARFF header");
+    }
+
+    private Attribute parseAttribute(String declaration, List<String> tokens) throws IOException {
+        if (tokens.size() < 3) {
+            throw error("Incomplete attribute declaration");
+        }
+        String name = tokens.get(1);
+        String type = tokens.get(2).toLowerCase();
+        if (type.equals("numeric") || type.equals("real") || type.equals("integer")) {
+            return new Attribute(name);
+        } else if (type.equals("string")) {
+            return new Attribute(name, (FastVector) null);
+        } else if (type.equals("date")) {
+            try {
+                return tokens.size() > 3 ? new Attribute(name, tokens.get(3)) : new Attribute(name, (String) null);
+            } catch (IllegalArgumentException ex) {
+                throw error("Invalid date format for attribute " + name);
+            }
+        } else if (type.startsWith("{")) {
+            int open = declaration.indexOf('{');
+            int close = declaration.lastIndexOf('}');
+            if (close < open) {
+                throw error("Unterminated nominal specification of attribute " + name);
+            }
+            FastVector values = new FastVector();
+            for (String value : split(declaration.substring(open + 1, close))) {
+                values.addElement(value);
+            }
+            return new Attribute(name, values);
+        }
+        throw error("Unsupported type '" + tokens.get(2) + "' of attribute " + name);
+    }
+
+    /**
+     * Splits a header line in whitespace separated tokens, honouring quotes; a
+     * nominal specification <code>{...}</code> is returned as a single token.
+     */
+    private List<String> tokenize(String text) throws IOException {
+        List<String> tokens = new ArrayList<String>();
+        int i = 0;
+        int n = text.length();
+        while (i < n) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'' || c == '"') {
+                StringBuilder value = new StringBuilder();
+                i = unquote(text, i, value);
+                tokens.add(value.toString());
+            } else if (c == '{') {
+                int close = text.indexOf('}', i);
+                if (close < 0) {
+                    throw error("Unterminated nominal specification");
+                }
+                tokens.add(text.substring(i, close + 1));
+                i = close + 1;
+            } else {
+                int start = i;
+                while (i < n && !Character.isWhitespace(text.charAt(i))) {
+                    i++;
+                }
+                tokens.add(text.substring(start, i));
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Splits the comma-separated values of a nominal specification.
+     */
+    private List<String> split(String text) throws IOException {
+        List<String> values = new ArrayList<String>();
+        int i = 0;
+        int n = text.length();
+        while (i < n) {
+            while (i < n && Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            if (i == n) {
+                break;
+            }
+            StringBuilder value = new StringBuilder();
+            char c = text.charAt(i);
+            if (c == '\'' || c == '"') {
+                i = unquote(text, i, value);
+                while (i < n && text.charAt(i) != ',') {
+                    i++;
+                }
+            } else {
+                int comma = text.indexOf(',', i);
+                int end = comma < 0 ? n : comma;
+                value.append(text.substring(i, end).trim());
+                i = end;
+            }
+            values.add(value.toString());
+            i++; // ','
+        }
+        return values;
+    }
+
+    /**
+     * Reads the quoted string starting at <code>start</code> into <code>value</code>
+     * and returns the index after the closing quote.
+     */
+    private int unquote(String text, int start, StringBuilder value) throws IOException {
+        char quote = text.charAt(start);
+        int i = start + 1;
+        while (i < text.length()) {
+            char c = text.charAt(i++);
+            if (c == quote) {
+                return i;
+            }
+            if (c == '\\' && i < text.length()) {
+                c = text.charAt(i++);
+                c = c == 'n' ? '\n' : c == 't' ? '\t' : c == 'r' ? '\r' : c;
+            }
+            value.append(c);
+        }
+        throw error("Unterminated quoted string");
+    }
+
+    private String readLine() throws IOException {
+        int c = peek();
+        if (c == _EOF) {
+            return null;
+        }
+        tokenLength = 0;
+        while ((c = next()) != _EOF && c != '\n') {
+            if (c != '\r') {
+                append(c);
+            }
+        }
+        line++;
+        return tokenString();
+    }
+
+    /* ----- Buffer ----- */
+    private int peek() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) {
+            return _EOF;
+        }
+        return buffer.get(buffer.position()) & 0xFF;
+    }
+
+    private int next() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) {
+            return _EOF;
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        buffer.clear();
+        int read;
+        do {
+            read = channel.read(buffer);
+        } while (read == 0);
+        buffer.flip();
+        return read > 0;
+    }
+
+    private int skipSpaces() throws IOException {
+        int c;
+        while ((c = peek()) == ' ' || c == '\t') {
+            next();
+        }
+        return c;
+    }
+
+    /**
+     * Skips empty lines, comments and the end of the previous line; returns the
+     * first character of the next instance.
+     */
+    private int skipBlankLines() throws IOException {
+        while (true) {
+            int c = skipSpaces();
+            if (c == '\n') {
+                line++;
+                next();
+            } else if (c == '\r') {
+                next();
+            } else if (c == '%') {
+                while ((c = peek()) != _EOF && c != '\n') {
+                    next();
+                }
+            } else {
+                return c;
+            }
+        }
+    }
+
+    private IOException error(String message) {
+        return new IOException("Malformed ARFF (line " + line + "): " + message);
+    }
+}
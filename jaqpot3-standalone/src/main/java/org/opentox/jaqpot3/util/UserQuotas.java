@@ -0,0 +1,424 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.opentox.toxotis.core.component.User;
+import org.opentox.toxotis.database.IDbIterator;
+import org.opentox.toxotis.database.engine.user.FindUser;
+import org.opentox.toxotis.database.exception.DbException;
+
+/**
+ * In-memory accounting of the quota of the users: their active (queued or
+ * running) tasks, models and BibTeX entries. The account of a user is loaded
+ * from the database when first needed and is then updated as tasks are admitted
+ * and end and as models and BibTeX entries are created and deleted. Accounts are
+ * reconciled with the database in the background every
+ * <code>quota.reconcileInterval</code> seconds, so that changes made elsewhere
+ * are eventually accounted for; only the accounts used since the previous
+ * reconciliation and those with active tasks are reloaded.
+ *
+ * <p>Accounts without active tasks are dropped from memory once they have not been
+ * used for <code>quota.idleTimeout</code> seconds, and the least recently used of
+ * them are dropped when there are more than <code>quota.maxAccounts</code>
+ * accounts; they are loaded again when needed.</p>
+ *
+ * <p>Tasks are admitted with {@link #admitTask(org.opentox.jaqpot3.util.UserQuotas.Account, java.lang.String, int) }
+ * which checks the limit and records the task atomically, so concurrent requests
+ * of a user cannot exceed the limit.</p>
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class UserQuotas {
+
+    private static final long _RECONCILE_INTERVAL = 1000L * Configuration.getIntegerProperty("quota.reconcileInterval", 300);
+    private static final long _IDLE_TIMEOUT = 1000L * Configuration.getIntegerProperty("quota.idleTimeout", 3600);
+    private static final int _MAX_ACCOUNTS = Math.max(1, Configuration.getIntegerProperty("quota.maxAccounts", 10000));
+    private static final ConcurrentMap<String, Account> accounts = new ConcurrentHashMap<String, Account>();
+    /* Admitted task id to the account of its creator */
+    private static final ConcurrentMap<String, Account> admitted = new ConcurrentHashMap<String, Account>();
+    /* Recently ended task id to the time it ended, as the database may still list it as active */
+    private static final ConcurrentMap<String, Long> ended = new ConcurrentHashMap<String, Long>();
+    private static boolean started = false;
+    private static volatile long lastReconciliation = 0;
+    private static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(UserQuotas.class);
+
+    /**
+     * The quota usage of a user.
+     */
+    public static class Account {
+
+        private final String uid;
+        private volatile User user;
+        /* Active task id to the time it was admitted (or found active in the database) */
+        private final Map<String, Long> activeTasks = new HashMap<String, Long>();
+        private final AtomicLong tasks = new AtomicLong();
+        private final AtomicLong models = new AtomicLong();
+        private final AtomicLong bibTeX = new AtomicLong();
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        Account(String uid) {
+            this.uid = uid;
+        }
+
+        private Account touch() {
+            lastUsed = System.currentTimeMillis();
+            return this;
+        }
+
+        /**
+         * The user as stored in the database (with the limits of the quota), or
+         * <code>null</code> if the user is not registered.
+         */
+        public User getUser() {
+            return user;
+        }
+
+        public synchronized int getActiveTasks() {
+            return activeTasks.size();
+        }
+
+        public long getTasks() {
+            return tasks.get();
+        }
+
+        public long getModels() {
+            return models.get();
+        }
+
+        public long getBibTeX() {
+            return bibTeX.get();
+        }
+    }
+
+    private UserQuotas() {
+    }
+
+    /**
+     * The account of a user, loaded from the database if it is not in memory.
+     */
+    public static Account account(String uid) throws DbException, SQLException {
+        Account account = accounts.get(uid);
+        if (account != null) {
+            return account.touch();
+        }
+        Account loaded = new Account(uid);
+        load(loaded);
+        start();
+        return cache(loaded);
+    }
+
+    /**
+     * Keeps a loaded account in memory unless the account of the same user is
+     * already there, evicting accounts if there are too many.
+     *
+     * @return
+     *      The account kept in memory.
+     */
+    static Account cache(Account loaded) {
+        Account account = accounts.putIfAbsent(loaded.uid, loaded);
+        if (account != null) {
+            return account.touch();
+        }
+        if (accounts.size() > _MAX_ACCOUNTS) {
+            evict(System.currentTimeMillis());
+        }
+        return loaded;
+    }
+
+    /**
+     * Drops the accounts without active tasks which have been idle for longer than
+     * <code>quota.idleTimeout</code> and, while there are more than 90% of
+     * <code>quota.maxAccounts</code> accounts, the least recently used of the rest.
+     */
+    static synchronized void evict(long now) {
+        List<Account> idle = new ArrayList<Account>();
+        Iterator<Account> it = accounts.values().iterator();
+        while (it.hasNext()) {
+            Account account = it.next();
+            if (account.getActiveTasks() > 0) {
+                continue;
+            }
+            if (now - account.lastUsed > _IDLE_TIMEOUT) {
+                it.remove();
+            } else {
+                idle.add(account);
+            }
+        }
+        int excess = accounts.size() - (_MAX_ACCOUNTS - _MAX_ACCOUNTS / 10);
+        if (excess <= 0) {
+            return;
+        }
+        Collections.sort(idle, new Comparator<Account>() {
+
+            @Override
+            public int compare(Account a, Account b) {
+                return a.lastUsed < b.lastUsed ? -1 : (a.lastUsed > b.lastUsed ? 1 : 0);
+            }
+        });
+        for (int i = 0; i < idle.size() && excess > 0; i++) {
+            if (accounts.remove(idle.get(i).uid, idle.get(i))) {
+                excess--;
+            }
+        }
+    }
+
+    /**
+     * The account of a user if it is in memory.
+     */
+    static Account cached(String uid) {
+        return accounts.get(uid);
+    }
+
+    /**
+     * Records that a user was registered in the database.
+     */
+    public static void userAdded(User user) {
+        Account account = accounts.get(user.getUid());
+        if (account != null) {
+            account.user = user;
+        }
+    }
+
+    /**
+     * Admits a new task of a user if the user has less than <code>maxTasks</code>
+     * active tasks; the task is then counted as active until it
+     * {@link #taskEnded(java.lang.String) ends}.
+     *
+     * @param account
+     *      The account of the user (see {@link #account(java.lang.String) }).
+     * @return
+     *      Whether the task was admitted.
+     */
+    public static boolean admitTask(Account account, String taskId, int maxTasks) {
+        synchronized (account) {
+            if (account.activeTasks.size() >= maxTasks) {
+                return false;
+            }
+            account.activeTasks.put(taskId, System.currentTimeMillis());
+        }
+        account.touch();
+        account.tasks.incrementAndGet();
+        admitted.put(taskId, account);
+        return true;
+    }
+
+    /**
+     * Records that an admitted task completed, failed or was cancelled (or was
+     * never started). Calls for tasks that were not admitted are ignored.
+     */
+    public static void taskEnded(String taskId) {
+        Account account = admitted.remove(taskId);
+        if (account != null) {
+            ended.put(taskId, System.currentTimeMillis());
+            synchronized (account) {
+                account.activeTasks.remove(taskId);
+            }
+        }
+    }
+
+    public static void modelAdded(String uid) {
+        Account account = uid != null ? accounts.get(uid) : null;
+        if (account != null) {
+            account.touch().models.incrementAndGet();
+        }
+    }
+
+    public static void modelDeleted(String uid) {
+        Account account = uid != null ? accounts.get(uid) : null;
+        if (account != null && account.touch().models.decrementAndGet() < 0) {
+            account.models.set(0);
+        }
+    }
+
+    public static void bibTeXAdded(String uid) {
+        Account account = uid != null ? accounts.get(uid) : null;
+        if (account != null) {
+            account.touch().bibTeX.incrementAndGet();
+        }
+    }
+
+    private static synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        Thread worker = new Thread("Quota_Reconciliation") {
+
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        Thread.sleep(_RECONCILE_INTERVAL);
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    try {
+                        reconcile();
+                    } catch (DbException ex) {
+                        logger.warn("Quota accounts could not be reconciled with the database", ex);
+                    } catch (SQLException ex) {
+                        logger.warn("Quota accounts could not be reconciled with the database", ex);
+                    }
+                }
+            }
+        };
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }
+
+    /**
+     * Evicts idle accounts and reloads from the database the accounts which were
+     * used since the previous reconciliation or have active tasks.
+     */
+    public static void reconcile() throws DbException, SQLException {
+        long start = System.currentTimeMillis();
+        evict(start);
+        for (Account account : accounts.values()) {
+            if (account.lastUsed >= lastReconciliation || account.getActiveTasks() > 0) {
+                load(account);
+            }
+        }
+        lastReconciliation = start;
+        Iterator<Long> it = ended.values().iterator();
+        while (it.hasNext()) {
+            if (it.next() < start) {
+                it.remove();
+            }
+        }
+    }
+
+    private static void load(Account account) throws DbException, SQLException {
+        long start = System.currentTimeMillis();
+        /* Counters change concurrently while the database is read; the changes
+         * made in the meantime are kept by applying only the difference between
+         * the stored counts and the counters as they were before reading */
+        long tasksBefore = account.tasks.get();
+        long modelsBefore = account.models.get();
+        long bibTeXBefore = account.bibTeX.get();
+        FindUser finder = new FindUser();
+        finder.setWhere("uid='" + account.uid.replace("'", "''") + "'");
+        try {
+            IDbIterator<User> iterator = DbMetrics.list(finder);
+            account.user = iterator.hasNext() ? iterator.next() : null;
+        } finally {
+            finder.close();
+        }
+        Set<String> active = new HashSet<String>();
+        long tasks, models, bibTeX;
+        Connection connection = DbMetrics.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(
+                    "SELECT id FROM Task WHERE createdBy = ? AND status IN ('QUEUED','RUNNING')");
+            try {
+                statement.setString(1, account.uid);
+                ResultSet rs = DbMetrics.query(statement, "LoadQuota", account.uid);
+                try {
+                    while (rs.next()) {
+                        active.add(rs.getString(1));
+                    }
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                statement.close();
+            }
+            tasks = count(connection, "SELECT COUNT(*) FROM Task WHERE createdBy = ?", account.uid);
+            models = count(connection, "SELECT COUNT(*) FROM Model M INNER JOIN OTComponent C ON M.id = C.id "
+                    + "WHERE M.createdBy = ? AND C.enabled = true", account.uid);
+            bibTeX = count(connection, "SELECT COUNT(*) FROM BibTeX B INNER JOIN OTComponent C ON B.id = C.id "
+                    + "WHERE B.createdBy = ? AND C.enabled = true", account.uid);
+        } finally {
+            connection.close();
+        }
+        synchronized (account) {
+            /* Tasks admitted while the database was read may not be there yet */
+            Iterator<Map.Entry<String, Long>> it = account.activeTasks.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Long> e = it.next();
+                if (!active.contains(e.getKey()) && e.getValue() < start) {
+                    it.remove();
+                    admitted.remove(e.getKey());
+                }
+            }
+            for (String id : active) {
+                if (!account.activeTasks.containsKey(id) && !ended.containsKey(id)) {
+                    account.activeTasks.put(id, start);
+                    admitted.putIfAbsent(id, account);
+                }
+            }
+        }
+        merge(account.tasks, tasksBefore, tasks);
+        merge(account.models, modelsBefore, models);
+        merge(account.bibTeX, bibTeXBefore, bibTeX);
+    }
+
+    private static void merge(AtomicLong counter, long before, long stored) {
+        if (counter.addAndGet(stored - before) < 0) {
+            counter.set(0);
+        }
+    }
+
+    private static long count(Connection connection, String sql, String uid) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        try {
+            statement.setString(1, uid);
+            ResultSet rs = DbMetrics.query(statement, "LoadQuota", sql);
+            try {
+                return rs.next() ? rs.getLong(1) : 0;
+            } finally {
+                rs.close();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+}
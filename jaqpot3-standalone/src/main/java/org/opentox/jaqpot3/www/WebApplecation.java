@@ -41,9 +41,16 @@ import java.util.Properties;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.SimpleFormatter;
+import org.opentox.jaqpot3.pool.ComputePool;
+import org.opentox.jaqpot3.pool.ReportPool;
+import org.opentox.jaqpot3.qsar.predictor.ConsensusPredictor;
+import org.opentox.jaqpot3.qsar.util.FeaturePublisher;
 import org.opentox.jaqpot3.resources.*;
 import org.opentox.jaqpot3.util.Configuration;
 import org.opentox.jaqpot3.util.DatabaseJanitor;
+import org.opentox.jaqpot3.util.DatabaseUpgrade;
+import org.opentox.jaqpot3.util.HttpTransport;
+import org.opentox.jaqpot3.util.ModelMigration;
 import org.opentox.jaqpot3.www.guard.OpenSSOAuthorizer;
 import org.opentox.toxotis.database.exception.DbException;
 import org.opentox.toxotis.database.pool.DataSourceFactory;
@@ -111,12 +118,27 @@ final public class WebApplecation extends JaqpotWebApplication {
             java.util.logging.Logger.getLogger(WebApplecation.class.getName()).log(Level.SEVERE, null, ex);
         }
 
+        /*
+         * Configure the shared HTTP transport before any outbound connection is made
+         */
+        System.out.print(keyOut_normal + "Outbound HTTP transport with keep-alive is configured ");
+        HttpTransport.TRANSPORT.getRequests();
+        System.out.print(done + "\n");
+
         //TODO: Cleanup database
 
         System.out.print(keyOut_normal + "Database Janitor is in place and started working ");
         DatabaseJanitor.work();
         System.out.print(done + "\n");
 
+        System.out.print(keyOut_normal + "Missing database indexes are created in the background ");
+        DatabaseUpgrade.start();
+        System.out.print(done + "\n");
+
+        System.out.print(keyOut_normal + "Stored models are migrated to the binary format in the background ");
+        ModelMigration.start();
+        System.out.print(done + "\n");
+
     }
 
     public WebApplecation() throws IOException {
@@ -147,6 +169,8 @@ final public class WebApplecation extends JaqpotWebApplication {
         router.attach(ParametersResource.template.toString(), ParametersResource.class);
         router.attach(ParameterResource.template.toString(), ParameterResource.class);
         router.attach(ModelMetaResource.template.toString(), ModelMetaResource.class);
+        router.attach(CrossValidationResource.collectionTemplate.toString(), CrossValidationResource.class);
+        router.attach(CrossValidationResource.template.toString(), CrossValidationResource.class);
         router.attach("/test", TestResource.class);
         router.attach("/iface/policy", PolicyCreatorResource.class);
         router.attach("/iface/generic", TrainGeneric.class);
@@ -158,6 +182,7 @@ final public class WebApplecation extends JaqpotWebApplication {
 
         protectResource(router, BibTexAllResource.class, false, true);
         protectResource(router, ModelResource.class, true, true);
+        protectResource(router, DatasetResource.class, true, true);
         protectResource(router, ShutDownResource.class, true, true);        
         protectResource(router, UserResource.class, true, true);
         protectResource(router, UsersResource.class, true, true);
@@ -202,6 +227,10 @@ final public class WebApplecation extends JaqpotWebApplication {
                         System.out.print(fail + "\n");
                     }
                 }
+                ComputePool.POOL.shutdown();
+                ReportPool.POOL.shutdown();
+                ConsensusPredictor.shutdown();
+                FeaturePublisher.shutdown();
                 System.out.print(keyOut_strange + "Disconnecting from the database ");
 
                 System.out.print(done + "\n");
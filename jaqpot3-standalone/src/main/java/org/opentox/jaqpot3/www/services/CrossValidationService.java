@@ -0,0 +1,219 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+
+package org.opentox.jaqpot3.www.services;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.qsar.IClientInput;
+import org.opentox.jaqpot3.qsar.ICrossValidatable;
+import org.opentox.jaqpot3.qsar.exceptions.BadParameterException;
+import org.opentox.jaqpot3.qsar.util.CrossValidation;
+import org.opentox.jaqpot3.qsar.util.CrossValidationReport;
+import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DatasetCache;
+import org.opentox.jaqpot3.util.DbMetrics;
+import org.opentox.jaqpot3.util.ServerStatistics;
+import org.opentox.jaqpot3.util.UserQuotas;
+import org.opentox.toxotis.client.VRI;
+import org.opentox.toxotis.core.component.Dataset;
+import org.opentox.toxotis.core.component.ErrorReport;
+import org.opentox.toxotis.core.component.Task.Status;
+import org.opentox.toxotis.database.engine.task.UpdateTask;
+import org.opentox.toxotis.database.exception.DbException;
+import org.opentox.toxotis.exceptions.impl.ServiceInvocationException;
+import org.opentox.toxotis.exceptions.impl.ToxOtisException;
+import org.opentox.toxotis.ontology.LiteralValue;
+import org.opentox.toxotis.ontology.ResourceValue;
+import org.opentox.toxotis.util.aa.AuthenticationToken;
+import weka.core.Instances;
+
+/**
+ * Runs a k-fold cross validation for a trainer and stores the outcome in memory
+ * (see {@link #getReport(java.lang.String) }) as well as in the metadata of the
+ * task.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class CrossValidationService extends RunnableTaskService {
+
+    private static final int _MAX_REPORTS = Configuration.getIntegerProperty("crossvalidation.maxReports", 200);
+    private static final int _DEFAULT_FOLDS = Configuration.getIntegerProperty("crossvalidation.defaultFolds", 10);
+    /**
+     * Report id to report (the least recently added reports are discarded first)
+     */
+    private static final Map<String, CrossValidationReport> REPORTS = Collections.synchronizedMap(
+            new LinkedHashMap<String, CrossValidationReport>() {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CrossValidationReport> eldest) {
+                    return size() > _MAX_REPORTS;
+                }
+            });
+    private ICrossValidatable trainer;
+    private IClientInput clientInput;
+    private AuthenticationToken token;
+    private String reportId;
+    private int numFolds = _DEFAULT_FOLDS;
+    private long seed = 1;
+    private org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CrossValidationService.class);
+
+    public CrossValidationService(ICrossValidatable trainer, IClientInput clientInput, AuthenticationToken token, String reportId) {
+        this.trainer = trainer;
+        this.clientInput = clientInput;
+        this.token = token;
+        this.reportId = reportId;
+    }
+
+    public static CrossValidationReport getReport(String reportId) {
+        return REPORTS.get(reportId);
+    }
+
+    private void parametrize(IClientInput clientParameters) throws BadParameterException {
+        String foldsString = clientParameters.getFirstValue("folds");
+        if (foldsString != null) {
+            try {
+                numFolds = Integer.parseInt(foldsString.trim());
+            } catch (NumberFormatException ex) {
+                throw new BadParameterException("The parameter 'folds' must be an integer.", ex);
+            }
+            if (numFolds < 2) {
+                throw new BadParameterException("The parameter 'folds' must be at least 2.");
+            }
+        }
+        String seedString = clientParameters.getFirstValue("seed");
+        if (seedString != null) {
+            try {
+                seed = Long.parseLong(seedString.trim());
+            } catch (NumberFormatException ex) {
+                throw new BadParameterException("The parameter 'seed' must be an integer.", ex);
+            }
+        }
+    }
+
+    private Instances download(VRI datasetUri) throws JaqpotException {
+        Instances inst = DatasetCache.CACHE.getInstances(datasetUri);
+        if (inst != null) {
+            return inst;
+        }
+        try {
+            return new Dataset(datasetUri).loadFromRemote().getInstances();
+        } catch (ToxOtisException ex) {
+            throw new JaqpotException(ex);
+        } catch (ServiceInvocationException ex) {
+            throw new JaqpotException(ex);
+        }
+    }
+
+    @Override
+    public void run() {
+        long startingTime = System.currentTimeMillis();
+        trainer.setToken(token);
+        trainer.getTask().setStatus(Status.RUNNING);
+        trainer.getTask().getMeta().addHasSource(
+                new ResourceValue(trainer.getAlgorithm().getUri(), null)).setDate(
+                new LiteralValue(new Date(System.currentTimeMillis()), XSDDatatype.XSDdate));
+        UpdateTask updater = new UpdateTask(trainer.getTask());
+        updater.setUpdateTaskStatus(true);
+        updater.setUpdateMeta(true);
+        try {
+            DbMetrics.update(updater);// update the task (QUEUED --> RUNNING)
+            ServerStatistics.taskMoved(Status.QUEUED, Status.RUNNING);
+        } catch (DbException ex) {
+            logger.error("Cannot update task to RUNNING", ex);
+        } finally {
+            try {
+                updater.close();
+            } catch (DbException ex) {
+                logger.error("TaskUpdater is uncloseable", ex);
+            }
+        }
+
+        String datasetUri = clientInput.getFirstValue("dataset_uri");
+        try {
+            this.parametrize(clientInput);
+            trainer.parametrize(clientInput);
+            if (datasetUri == null) {
+                throw new BadParameterException("The parameter 'dataset_uri' is mandatory for cross validation.");
+            }
+            /* The dataset is downloaded and preprocessed once and shared by all folds */
+            Instances data = trainer.prepareTrainingSet(download(new VRI(datasetUri)));
+            CrossValidationReport report = new CrossValidation(trainer, data).
+                    setNumFolds(numFolds).setSeed(seed).validate();
+            REPORTS.put(reportId, report);
+
+            trainer.getTask().setDuration(System.currentTimeMillis() - startingTime);
+            trainer.getTask().getMeta().
+                    addComment("Cross validation completed successfully: " + report.toString());
+            trainer.getTask().setStatus(Status.COMPLETED).setHttpStatus(200).
+                    setResultUri(Configuration.getBaseUri().augment("crossvalidation", reportId)).
+                    setPercentageCompleted(100);
+
+            UpdateTask taskFinalUpdater = new UpdateTask(trainer.getTask());
+            taskFinalUpdater.setUpdateHttpStatus(true);
+            taskFinalUpdater.setUpdateTaskStatus(true);
+            taskFinalUpdater.setUpdateDuration(true);
+            taskFinalUpdater.setUpdateResultUri(true);
+            taskFinalUpdater.setUpdateMeta(true);
+            DbMetrics.update(taskFinalUpdater);
+            ServerStatistics.taskMoved(Status.RUNNING, Status.COMPLETED);
+            UserQuotas.taskEnded(trainer.getTask().getUri().getId());
+            taskFinalUpdater.close();
+        } catch (BadParameterException ex) {
+            updateFailedTask(trainer.getTask(), ex, "Task failed due to illegal parametrization. ", 400,
+                    trainer.getTask().getCreatedBy().getUid());
+            logger.trace(null, ex);
+        } catch (URISyntaxException ex) {
+            updateFailedTask(trainer.getTask(), ex, "The dataset URI you provided cannot be cast as a valid URI object.", 400,
+                    trainer.getTask().getCreatedBy().getUid());
+            logger.trace(null, ex);
+        } catch (JaqpotException ex) {
+            logger.info(null, ex);
+            updateFailedTask(trainer.getTask(), ex, "", 500, Configuration.BASE_URI);
+        } catch (ServiceInvocationException ex) {
+            ErrorReport er = ex.asErrorReport();
+            er.setErrorCode(ex.getClass().getSimpleName());
+            updateFailedTask(trainer.getTask(), er);
+        } catch (Throwable throwable) {
+            logger.error(null, throwable);
+            updateFailedTask(trainer.getTask(), throwable, "", 500, Configuration.BASE_URI);
+        }
+    }
+}
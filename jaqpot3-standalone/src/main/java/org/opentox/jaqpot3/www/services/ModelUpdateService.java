@@ -0,0 +1,186 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+
+package org.opentox.jaqpot3.www.services;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import java.net.URISyntaxException;
+import java.util.Date;
+import java.util.UUID;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.qsar.IClientInput;
+import org.opentox.jaqpot3.qsar.exceptions.BadParameterException;
+import org.opentox.jaqpot3.qsar.util.ModelUpdater;
+import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DatasetCache;
+import org.opentox.jaqpot3.util.DbMetrics;
+import org.opentox.jaqpot3.util.ServerStatistics;
+import org.opentox.jaqpot3.util.UserQuotas;
+import org.opentox.toxotis.client.VRI;
+import org.opentox.toxotis.core.component.Dataset;
+import org.opentox.toxotis.core.component.ErrorReport;
+import org.opentox.toxotis.core.component.Model;
+import org.opentox.toxotis.core.component.Task;
+import org.opentox.toxotis.core.component.Task.Status;
+import org.opentox.toxotis.database.engine.model.AddModel;
+import org.opentox.toxotis.database.engine.task.UpdateTask;
+import org.opentox.toxotis.database.exception.DbException;
+import org.opentox.toxotis.exceptions.impl.ServiceInvocationException;
+import org.opentox.toxotis.exceptions.impl.ToxOtisException;
+import org.opentox.toxotis.ontology.LiteralValue;
+import org.opentox.toxotis.ontology.ResourceValue;
+import org.opentox.toxotis.ontology.collection.OTClasses;
+import org.opentox.toxotis.util.aa.AuthenticationToken;
+import org.opentox.toxotis.util.aa.policy.IPolicyWrapper;
+import org.opentox.toxotis.util.aa.policy.PolicyManager;
+import weka.core.Instances;
+
+/**
+ * Creates a new version of a model by folding the data of a dataset into it
+ * (see {@link ModelUpdater}). The original model is left intact.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class ModelUpdateService extends RunnableTaskService {
+
+    private Model model;
+    private Task task;
+    private IClientInput clientInput;
+    private AuthenticationToken token;
+    private org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ModelUpdateService.class);
+
+    public ModelUpdateService(Model model, Task task, IClientInput clientInput, AuthenticationToken token) {
+        this.model = model;
+        this.task = task;
+        this.clientInput = clientInput;
+        this.token = token;
+    }
+
+    private Instances download(VRI datasetUri) throws JaqpotException {
+        Instances inst = DatasetCache.CACHE.getInstances(datasetUri);
+        if (inst != null) {
+            return inst;
+        }
+        try {
+            return new Dataset(datasetUri).loadFromRemote().getInstances();
+        } catch (ToxOtisException ex) {
+            throw new JaqpotException(ex);
+        } catch (ServiceInvocationException ex) {
+            throw new JaqpotException(ex);
+        }
+    }
+
+    @Override
+    public void run() {
+        long startingTime = System.currentTimeMillis();
+        task.setStatus(Status.RUNNING);
+        task.getMeta().addHasSource(new ResourceValue(model.getUri(), OTClasses.model())).setDate(
+                new LiteralValue(new Date(System.currentTimeMillis()), XSDDatatype.XSDdate));
+        UpdateTask updater = new UpdateTask(task);
+        updater.setUpdateTaskStatus(true);
+        updater.setUpdateMeta(true);
+        try {
+            DbMetrics.update(updater);// update the task (QUEUED --> RUNNING)
+            ServerStatistics.taskMoved(Status.QUEUED, Status.RUNNING);
+        } catch (DbException ex) {
+            logger.error("Cannot update task to RUNNING", ex);
+        } finally {
+            try {
+                updater.close();
+            } catch (DbException ex) {
+                logger.error("TaskUpdater is uncloseable", ex);
+            }
+        }
+
+        String datasetUri = clientInput.getFirstValue("dataset_uri");
+        try {
+            if (datasetUri == null) {
+                throw new BadParameterException("The parameter 'dataset_uri' is mandatory for updating a model.");
+            }
+            Instances data = download(new VRI(datasetUri));
+            VRI newModelUri = Configuration.getBaseUri().augment("model", UUID.randomUUID().toString());
+            Model updated = ModelUpdater.update(model, data, newModelUri);
+
+            /* Create a policy for the new model (on behalf of the user) */
+            IPolicyWrapper pw = PolicyManager.defaultSignleUserPolicy("model_" + updated.getUri().getId(), updated.getUri(), token);
+            pw.publish(null, token);
+
+            updated.getMeta().addCreator(token.getUser().getUid());
+            AddModel modelAdder = new AddModel(updated);
+            try {
+                DbMetrics.write(modelAdder);
+                ServerStatistics.modelAdded(updated.getAlgorithm() != null ? updated.getAlgorithm().getUri() : null);
+                UserQuotas.modelAdded(token.getUser().getUid());
+            } finally {
+                modelAdder.close();
+            }
+
+            task.setDuration(System.currentTimeMillis() - startingTime);
+            task.getMeta().addComment("Model updated successfully with the data of " + datasetUri
+                    + ". The new version of the model is now stored in the database.");
+            task.setStatus(Status.COMPLETED).setHttpStatus(200).
+                    setResultUri(updated.getUri()).setPercentageCompleted(100);
+
+            UpdateTask taskFinalUpdater = new UpdateTask(task);
+            taskFinalUpdater.setUpdateHttpStatus(true);
+            taskFinalUpdater.setUpdateTaskStatus(true);
+            taskFinalUpdater.setUpdateDuration(true);
+            taskFinalUpdater.setUpdateResultUri(true);
+            taskFinalUpdater.setUpdateMeta(true);
+            DbMetrics.update(taskFinalUpdater);
+            ServerStatistics.taskMoved(Status.RUNNING, Status.COMPLETED);
+            UserQuotas.taskEnded(task.getUri().getId());
+            taskFinalUpdater.close();
+        } catch (BadParameterException ex) {
+            updateFailedTask(task, ex, "Task failed due to illegal parametrization. ", 400,
+                    task.getCreatedBy().getUid());
+            logger.trace(null, ex);
+        } catch (URISyntaxException ex) {
+            updateFailedTask(task, ex, "The dataset URI you provided cannot be cast as a valid URI object.", 400,
+                    task.getCreatedBy().getUid());
+            logger.trace(null, ex);
+        } catch (JaqpotException ex) {
+            logger.info(null, ex);
+            updateFailedTask(task, ex, "", 500, Configuration.BASE_URI);
+        } catch (ServiceInvocationException ex) {
+            ErrorReport er = ex.asErrorReport();
+            er.setErrorCode(ex.getClass().getSimpleName());
+            updateFailedTask(task, er);
+        } catch (Throwable throwable) {
+            logger.error(null, throwable);
+            updateFailedTask(task, throwable, "", 500, Configuration.BASE_URI);
+        }
+    }
+}
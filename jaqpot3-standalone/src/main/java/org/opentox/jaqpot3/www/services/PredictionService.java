@@ -35,24 +35,37 @@
 package org.opentox.jaqpot3.www.services;
 
 import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.Date;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.qsar.AbstractPredictor;
 import org.opentox.jaqpot3.qsar.IClientInput;
 import org.opentox.jaqpot3.qsar.IPredictor;
 import org.opentox.jaqpot3.qsar.exceptions.BadParameterException;
 import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DatasetStreamPublisher;
+import org.opentox.jaqpot3.util.DbMetrics;
+import org.opentox.jaqpot3.util.LocalModelStore;
+import org.opentox.jaqpot3.util.ModelLoader;
+import org.opentox.jaqpot3.util.PipelinedUpload;
+import org.opentox.jaqpot3.util.ServerStatistics;
+import org.opentox.jaqpot3.util.UserQuotas;
 import org.opentox.toxotis.client.VRI;
 import org.opentox.toxotis.client.collection.Services;
 import org.opentox.toxotis.core.component.Dataset;
 import org.opentox.toxotis.core.component.Task.Status;
 import org.opentox.toxotis.database.engine.task.UpdateTask;
 import org.opentox.toxotis.database.exception.DbException;
+import org.opentox.toxotis.exceptions.impl.ToxOtisException;
+import org.opentox.toxotis.factory.DatasetFactory;
 import org.opentox.toxotis.ontology.LiteralValue;
 import org.opentox.toxotis.ontology.ResourceValue;
 import org.opentox.toxotis.ontology.collection.OTClasses;
 import org.opentox.toxotis.util.aa.AuthenticationToken;
+import weka.core.Instances;
 
 /**
  *
@@ -66,6 +79,10 @@ public class PredictionService extends RunnableTaskService {
     private AuthenticationToken token;
     private org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(PredictionService.class);
     private VRI datasetServiceUri = Services.ideaconsult().augment("dataset");
+    private static final boolean _STREAMING = Boolean.parseBoolean(
+            Configuration.getStringProperty("predictions.streaming", "true"));
+    private static final int _CHUNK_SIZE = Configuration.getIntegerProperty("predictions.chunkSize", 1000);
+    private static final int _QUEUED_CHUNKS = Configuration.getIntegerProperty("predictions.queuedChunks", 2);
 
     public PredictionService(IPredictor predictor, IClientInput clientInput, AuthenticationToken token) {
         this.predictor = predictor;
@@ -84,6 +101,99 @@ public class PredictionService extends RunnableTaskService {
         }
     }
 
+    /**
+     * Predicts the dataset chunk by chunk while the chunks already predicted are
+     * streamed to the dataset service on another thread. Predictors that are not
+     * row independent predict the whole dataset at once, still the result is
+     * streamed without being converted to an OpenTox dataset first. If streaming
+     * fails, the predictions already computed are published in a single request.
+     */
+    private VRI publishStreamed(VRI datasetURI) throws JaqpotException, ExecutionException {
+        Instances input = AbstractPredictor.loadInstances(datasetURI);
+        int numInstances = input.numInstances();
+        int chunkSize = predictor.isRowIndependent() ? Math.max(1, _CHUNK_SIZE) : Math.max(1, numInstances);
+        PipelinedUpload upload = new PipelinedUpload(new DatasetStreamPublisher(datasetServiceUri, token),
+                _QUEUED_CHUNKS);
+        upload.start();
+        try {
+            long lastUpdate = System.currentTimeMillis();
+            int from = 0;
+            do {
+                int size = Math.min(chunkSize, numInstances - from);
+                Instances predictions = predictor.predictInstances(new Instances(input, from, size));
+                if (predictions == null) {
+                    throw new JaqpotException("The predictor did not produce any predictions");
+                }
+                upload.add(predictions);
+                from += size;
+                if (System.currentTimeMillis() - lastUpdate >= 1000) {
+                    updatePercentage(90f * from / numInstances);
+                    lastUpdate = System.currentTimeMillis();
+                }
+            } while (from < numInstances);
+            try {
+                return upload.finish();
+            } catch (IOException ex) {
+                logger.warn("Streamed publication of the predictions to " + datasetServiceUri
+                        + " failed; falling back to a full upload", ex);
+            }
+            return publish(upload.getInstances());
+        } catch (InterruptedException ex) {
+            logger.error("Interrupted", ex);
+            throw new JaqpotException("UnknownCauseOfException", ex);
+        } finally {
+            upload.abort();
+        }
+    }
+
+    /**
+     * Publishes the complete dataset of predictions in a single request.
+     */
+    private VRI publish(Instances predictions) throws JaqpotException, ExecutionException {
+        try {
+            return publish(DatasetFactory.getInstance().createFromArff(predictions));
+        } catch (ToxOtisException ex) {
+            throw new JaqpotException("Exception while performing prediction", ex);
+        }
+    }
+
+    /**
+     * Publishes the complete dataset of predictions in a single request.
+     */
+    private VRI publish(Dataset output) throws JaqpotException, ExecutionException {
+        Future<VRI> future = output.publish(datasetServiceUri, token);
+        float counter = 1;
+        while (!future.isDone()) {
+            try {
+                Thread.sleep(1000);
+                updatePercentage(100f - (50.0f / (float) Math.sqrt(counter)));
+                counter++;
+            } catch (InterruptedException ex) {
+                logger.error("Interrupted", ex);
+                throw new JaqpotException("UnknownCauseOfException", ex);
+            }
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            logger.error("Task update was abnormally interrupted", ex);
+            throw new JaqpotException("UnknownCauseOfException", ex);
+        }
+    }
+
+    private void updatePercentage(float percentage) {
+        predictor.getTask().setPercentageCompleted(percentage);
+        UpdateTask updateTask = new UpdateTask(predictor.getTask());
+        updateTask.setUpdateMeta(true);
+        updateTask.setUpdatePercentageCompleted(true);
+        try {
+            DbMetrics.update(updateTask);
+            updateTask.close();
+        } catch (DbException ex) {
+            logger.error("Cannot update the percentage of the task", ex);
+        }
+    }
+
     @Override
     public void run() {
 
@@ -103,7 +213,8 @@ public class PredictionService extends RunnableTaskService {
         updater.setUpdateTaskStatus(true);
         updater.setUpdateMeta(true);
         try {
-            updater.update();// update the task (QUEUED --> RUNNING)
+            DbMetrics.update(updater);// update the task (QUEUED --> RUNNING)
+            ServerStatistics.taskMoved(Status.QUEUED, Status.RUNNING);
         } catch (DbException ex) {
             logger.error("Cannot update task to RUNNING", ex);
         } finally {
@@ -118,47 +229,27 @@ public class PredictionService extends RunnableTaskService {
 
         String datasetUri = clientInput.getFirstValue("dataset_uri");
         try {
+            /* The model is found with its metadata only; its actual model is loaded now
+             * unless the predictions are served from the local model store */
+            if (predictor.getModel() != null && !LocalModelStore.serves(predictor.getModel())) {
+                predictor.setModel(ModelLoader.withPayload(predictor.getModel()));
+            }
             this.parametrize(clientInput);
             predictor.parametrize(clientInput);
             VRI datasetURI = new VRI(datasetUri);
             
 
-            /* GET THE PREDICTIONS FROM THE PREDICTOR */
-            Dataset output = predictor.predict(datasetURI);
-            /* */
-            Future<VRI> future = output.publish(datasetServiceUri, token);
-            float counter = 1;
-            while (!future.isDone()) {
-                try {
-                    Thread.sleep(1000);
-                    float prc = 100f - (50.0f / (float) Math.sqrt(counter));
-                    predictor.getTask().setPercentageCompleted(prc);
-                    UpdateTask updateTask = new UpdateTask(predictor.getTask());
-                    updateTask.setUpdateMeta(true);
-                    updateTask.setUpdatePercentageCompleted(true);
-                    updateTask.update();
-                    updateTask.close();
-                    counter++;
-                } catch (InterruptedException ex) {
-                    logger.error("Interrupted", ex);
-                    throw new JaqpotException("UnknownCauseOfException", ex);
-                }
-            }
-            try {
-                VRI resultUri = future.get();
-                predictor.getTask().setHttpStatus(200).setPercentageCompleted(100.0f).
-                        setResultUri(resultUri).setStatus(Status.COMPLETED);
-                UpdateTask updateTask = new UpdateTask(predictor.getTask());
-                updateTask.setUpdateHttpStatus(true);
-                updateTask.setUpdateTaskStatus(true);
-                updateTask.setUpdateResultUri(true);
-                updateTask.update();
-                updateTask.close();
-
-            } catch (InterruptedException ex) {
-                logger.error("Task update was abnormally interrupted", ex);
-                throw new JaqpotException("UnknownCauseOfException", ex);
-            }
+            VRI resultUri = _STREAMING ? publishStreamed(datasetURI) : publish(predictor.predict(datasetURI));
+            predictor.getTask().setHttpStatus(200).setPercentageCompleted(100.0f).
+                    setResultUri(resultUri).setStatus(Status.COMPLETED);
+            UpdateTask updateTask = new UpdateTask(predictor.getTask());
+            updateTask.setUpdateHttpStatus(true);
+            updateTask.setUpdateTaskStatus(true);
+            updateTask.setUpdateResultUri(true);
+            DbMetrics.update(updateTask);
+            ServerStatistics.taskMoved(Status.RUNNING, Status.COMPLETED);
+            UserQuotas.taskEnded(predictor.getTask().getUri().getId());
+            updateTask.close();
 
         } catch (URISyntaxException ex) {
             logger.trace(null, ex);
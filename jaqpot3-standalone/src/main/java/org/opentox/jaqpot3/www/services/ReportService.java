@@ -0,0 +1,105 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.www.services;
+
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.resources.publish.RenderedCache;
+import org.opentox.jaqpot3.resources.publish.ReportCache;
+import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DbMetrics;
+import org.opentox.jaqpot3.util.ServerStatistics;
+import org.opentox.toxotis.client.VRI;
+import org.opentox.toxotis.core.component.Task;
+import org.opentox.toxotis.core.component.Task.Status;
+import org.opentox.toxotis.database.engine.task.UpdateTask;
+import org.opentox.toxotis.database.exception.DbException;
+
+/**
+ * Renders a report (e.g. the PDF document of a model) into the
+ * {@link ReportCache} in the background. When the task completes, its result is
+ * the reported resource, which is then served from the cache.
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class ReportService extends RunnableTaskService {
+
+    private String key;
+    private Task task;
+    private VRI resultUri;
+    private RenderedCache.Renderer renderer;
+    private org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ReportService.class);
+
+    public ReportService(String key, Task task, VRI resultUri, RenderedCache.Renderer renderer) {
+        this.key = key;
+        this.task = task;
+        this.resultUri = resultUri;
+        this.renderer = renderer;
+    }
+
+    @Override
+    public void run() {
+        long startingTime = System.currentTimeMillis();
+        try {
+            ReportCache.CACHE.render(key, renderer.render());
+
+            task.setDuration(System.currentTimeMillis() - startingTime);
+            task.getMeta().addComment("The report is ready and is available at " + resultUri);
+            task.setStatus(Status.COMPLETED).setHttpStatus(200).
+                    setResultUri(resultUri).setPercentageCompleted(100);
+            UpdateTask taskFinalUpdater = new UpdateTask(task);
+            taskFinalUpdater.setUpdateHttpStatus(true);
+            taskFinalUpdater.setUpdateTaskStatus(true);
+            taskFinalUpdater.setUpdateDuration(true);
+            taskFinalUpdater.setUpdateResultUri(true);
+            taskFinalUpdater.setUpdateMeta(true);
+            try {
+                DbMetrics.update(taskFinalUpdater);
+                ServerStatistics.taskMoved(Status.QUEUED, Status.COMPLETED);
+            } finally {
+                taskFinalUpdater.close();
+            }
+        } catch (JaqpotException ex) {
+            logger.info(null, ex);
+            updateFailedTask(task, ex, "The report could not be rendered. ", 500, Configuration.BASE_URI);
+        } catch (DbException ex) {
+            logger.error("Cannot update task to COMPLETED", ex);
+        } catch (Throwable throwable) {
+            logger.error(null, throwable);
+            updateFailedTask(task, throwable, "", 500, Configuration.BASE_URI);
+        } finally {
+            ReportCache.CACHE.release(key);
+        }
+    }
+}
@@ -37,6 +37,10 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DbMetrics;
+import org.opentox.jaqpot3.util.ServerStatistics;
+import org.opentox.jaqpot3.util.UserQuotas;
 import org.opentox.toxotis.core.component.ErrorReport;
 import org.opentox.toxotis.core.component.Task;
 import org.opentox.toxotis.core.component.Task.Status;
@@ -54,6 +58,7 @@ public abstract class RunnableTaskService implements Runnable {
 
     protected static void updateFailedTask(Task task, Throwable throwable, String explanation, int httpStatus, String actor) {
         task.getMeta().addDescription("Failed task. " + explanation);
+        Status previous = task.getStatus();
         task.setHttpStatus(httpStatus);
         task.setStatus(Status.ERROR);
         String details = exceptionDetails(throwable);
@@ -77,7 +82,7 @@ public abstract class RunnableTaskService implements Runnable {
 
         AddErrorReport addError = new AddErrorReport(task.getErrorReport());
         try {
-            addError.write();
+            DbMetrics.write(addError);
         } catch (DbException ex) {
             Logger.getLogger(RunnableTaskService.class.getName()).log(Level.SEVERE, null, ex);
         } finally {
@@ -91,8 +96,10 @@ public abstract class RunnableTaskService implements Runnable {
         updater.setUpdateErrorReport(true);
         updater.setUpdateTaskStatus(true);
         updater.setUpdateMeta(true);
+        UserQuotas.taskEnded(task.getUri().getId());
         try {
-            updater.update();
+            DbMetrics.update(updater);
+            ServerStatistics.taskMoved(previous, Status.ERROR);
             updater.close();
         } catch (DbException ex) {
             Logger.getLogger(RunnableTaskService.class.getName()).log(Level.SEVERE, null, ex);
@@ -102,12 +109,13 @@ public abstract class RunnableTaskService implements Runnable {
 
     protected static void updateFailedTask(Task task, ErrorReport er) {
         task.getMeta().addDescription("Failed task. " + er.getMessage());
+        Status previous = task.getStatus();
         task.setHttpStatus(er.getHttpStatus());
         task.setStatus(Status.ERROR);
         task.setErrorReport(er);
         AddErrorReport addError = new AddErrorReport(task.getErrorReport());
         try {
-            addError.write();
+            DbMetrics.write(addError);
         } catch (DbException ex) {
             Logger.getLogger(RunnableTaskService.class.getName()).log(Level.SEVERE, null, ex);
         } finally {
@@ -121,8 +129,10 @@ public abstract class RunnableTaskService implements Runnable {
         updater.setUpdateErrorReport(true);
         updater.setUpdateTaskStatus(true);
         updater.setUpdateMeta(true);
+        UserQuotas.taskEnded(task.getUri().getId());
         try {
-            updater.update();
+            DbMetrics.update(updater);
+            ServerStatistics.taskMoved(previous, Status.ERROR);
             updater.close();
         } catch (DbException ex) {
             Logger.getLogger(RunnableTaskService.class.getName()).log(Level.SEVERE, null, ex);
@@ -130,6 +140,16 @@ public abstract class RunnableTaskService implements Runnable {
 
     }
 
+    /**
+     * Marks a task which was stored as queued but was rejected by the
+     * {@link org.opentox.jaqpot3.pool.ExecutionPool} (its queue is full) as
+     * failed with status 503; the quota of the user is released.
+     */
+    public static void updateRejectedTask(Task task, Throwable rejection) {
+        updateFailedTask(task, rejection, "The server is overloaded and cannot accept more tasks at the moment. "
+                + "Please try again later.", 503, Configuration.BASE_URI);
+    }
+
     protected static String exceptionDetails(Throwable ex) {
         StringWriter sw = new StringWriter();
         PrintWriter pw = new PrintWriter(sw);
@@ -41,6 +41,9 @@ import org.opentox.jaqpot3.qsar.IClientInput;
 import org.opentox.jaqpot3.qsar.ITrainer;
 import org.opentox.jaqpot3.qsar.exceptions.BadParameterException;
 import org.opentox.jaqpot3.util.Configuration;
+import org.opentox.jaqpot3.util.DbMetrics;
+import org.opentox.jaqpot3.util.ServerStatistics;
+import org.opentox.jaqpot3.util.UserQuotas;
 import org.opentox.toxotis.client.VRI;
 import org.opentox.toxotis.core.component.ErrorReport;
 import org.opentox.toxotis.core.component.Model;
@@ -88,7 +91,8 @@ public class TrainingService extends RunnableTaskService {
         updater.setUpdateTaskStatus(true);
         updater.setUpdateMeta(true);
         try {
-            updater.update();// update the task
+            DbMetrics.update(updater);// update the task
+            ServerStatistics.taskMoved(Status.QUEUED, Status.RUNNING);
         } catch (DbException ex) {
             logger.error("Cannot update task to RUNNING", ex);
         } finally {
@@ -118,7 +122,9 @@ public class TrainingService extends RunnableTaskService {
             AddModel modelAdder = new AddModel(resultModel);
 
             //TODO: Handle exceptions properly
-            modelAdder.write();
+            DbMetrics.write(modelAdder);
+            ServerStatistics.modelAdded(resultModel.getAlgorithm() != null ? resultModel.getAlgorithm().getUri() : null);
+            UserQuotas.modelAdded(token.getUser().getUid());
             modelAdder.close();
 
             /* UPDATE THE TASK - COMPLETED :)*/
@@ -135,7 +141,9 @@ public class TrainingService extends RunnableTaskService {
             taskFinalUpdater.setUpdateDuration(true);
             taskFinalUpdater.setUpdateResultUri(true);
             taskFinalUpdater.setUpdateMeta(true);
-            taskFinalUpdater.update();
+            DbMetrics.update(taskFinalUpdater);
+            ServerStatistics.taskMoved(Status.RUNNING, Status.COMPLETED);
+            UserQuotas.taskEnded(trainer.getTask().getUri().getId());
             taskFinalUpdater.close();
 
         } catch (BadParameterException ex) {// FROM #NODE_01
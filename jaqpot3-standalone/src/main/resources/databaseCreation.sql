@@ -191,6 +191,7 @@ CREATE TABLE `Task` (
   KEY `index_uri_in_task_refs_OTComponent` USING BTREE  (`id`),
   KEY `index_errReport_in_task` USING BTREE  (`errorReport`),
   KEY `index_task_creator` USING BTREE  (`createdBy`),
+  KEY `index_task_status` USING BTREE  (`status`),
   CONSTRAINT `FK_errReport_in_task` FOREIGN KEY (`errorReport`) REFERENCES `ErrorReport` (`id`),
   CONSTRAINT `FK_task_creator` FOREIGN KEY (`createdBy`) REFERENCES `User` (`uid`) ON DELETE CASCADE ON UPDATE CASCADE,
   CONSTRAINT `id_in_task_references_OTComponent` FOREIGN KEY (`id`) REFERENCES `OTComponent` (`id`) ON DELETE CASCADE ON UPDATE CASCADE
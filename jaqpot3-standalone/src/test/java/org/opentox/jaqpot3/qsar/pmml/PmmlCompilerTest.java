@@ -0,0 +1,186 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.qsar.pmml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import org.junit.Test;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class PmmlCompilerTest {
+
+    private static final String[] INPUTS = {"http://f/1", "http://f/2"};
+
+    public PmmlCompilerTest() {
+    }
+
+    private static PmmlWriter document(ByteArrayOutputStream bytes, String... outputs) throws Exception {
+        PmmlWriter w = new PmmlWriter(bytes);
+        w.start("PMML", "version", PmmlWriter.PMML_VERSION, "xmlns", PmmlWriter.PMML_NAMESPACE);
+        w.start("DataDictionary");
+        for (String field : INPUTS) {
+            w.empty("DataField", "name", field, "optype", "continuous", "dataType", "double");
+        }
+        for (String field : outputs) {
+            w.empty("DataField", "name", field, "optype", "continuous", "dataType", "double");
+        }
+        w.end();
+        return w;
+    }
+
+    private static void miningSchema(PmmlWriter w, double[] replacements, String... outputs) throws Exception {
+        w.start("MiningSchema");
+        for (int j = 0; j < INPUTS.length; j++) {
+            w.empty("MiningField", "name", INPUTS[j],
+                    "missingValueReplacement", replacements != null ? (Object) replacements[j] : null);
+        }
+        for (String output : outputs) {
+            w.empty("MiningField", "name", output, "usageType", "predicted");
+        }
+        w.end();
+    }
+
+    private static PmmlEvaluator compile(ByteArrayOutputStream bytes) throws JaqpotException {
+        return PmmlCompiler.compile(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test
+    public void testRegressionWithTargets() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PmmlWriter w = document(bytes, "y");
+        w.start("RegressionModel", "functionName", "regression");
+        miningSchema(w, new double[]{1, 2}, "y");
+        w.start("Targets");
+        w.empty("Target", "field", "y", "min", 0.0, "rescaleFactor", 2.0, "rescaleConstant", 1.0);
+        w.end();
+        w.start("RegressionTable", "intercept", 0.5);
+        w.empty("NumericPredictor", "name", INPUTS[0], "coefficient", 3.0);
+        w.empty("NumericPredictor", "name", INPUTS[1], "exponent", 2, "coefficient", -1.0);
+        w.start("PredictorTerm", "coefficient", 0.25);
+        w.empty("FieldRef", "field", INPUTS[0]);
+        w.empty("FieldRef", "field", INPUTS[1]);
+        w.end();
+        w.finish();
+
+        PmmlEvaluator evaluator = compile(bytes);
+        assertArrayEquals(INPUTS, evaluator.getInputFields());
+        assertArrayEquals(new String[]{"y"}, evaluator.getOutputFields());
+        /* 0.5 + 3*1 - 4 + 0.25*2 = 0 -> 2*0 + 1 */
+        assertEquals(1.0, evaluator.evaluate(new double[]{1, Double.NaN})[0], 1e-12);
+        /* Negative values are bounded by the minimum before rescaling */
+        assertEquals(1.0, evaluator.evaluate(new double[]{0, 10})[0], 1e-12);
+        assertEquals(2 * (0.5 + 6 - 1 + 0.5) + 1, evaluator.evaluate(new double[]{2, 1})[0], 1e-12);
+    }
+
+    @Test
+    public void testRadialBasisNetwork() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PmmlWriter w = document(bytes, "y");
+        w.start("NeuralNetwork", "functionName", "regression", "activationFunction", "identity");
+        miningSchema(w, null, "y");
+        w.start("NeuralInputs");
+        for (int j = 0; j < INPUTS.length; j++) {
+            w.start("NeuralInput", "id", "i" + j);
+            w.start("DerivedField");
+            w.empty("FieldRef", "field", INPUTS[j]);
+            w.end();
+            w.end();
+        }
+        w.end();
+        w.start("NeuralLayer", "activationFunction", "radialBasis");
+        w.start("Neuron", "id", "h", "width", 0.5);
+        w.empty("Con", "from", "i0", "weight", 1.0);
+        w.empty("Con", "from", "i1", "weight", -1.0);
+        w.end();
+        w.end();
+        w.start("NeuralLayer");
+        w.start("Neuron", "id", "o", "bias", 0.1);
+        w.empty("Con", "from", "h", "weight", 2.0);
+        w.end();
+        w.end();
+        w.start("NeuralOutputs");
+        w.start("NeuralOutput", "outputNeuron", "o");
+        w.start("DerivedField");
+        w.empty("FieldRef", "field", "y");
+        w.finish();
+
+        PmmlEvaluator evaluator = compile(bytes);
+        double z = (0.25 + 0.25) / (2 * 0.25);
+        assertEquals(0.1 + 2 * Math.exp(-z), evaluator.evaluate(new double[]{0.5, -0.5})[0], 1e-12);
+    }
+
+    @Test
+    public void testSelectAllSegments() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PmmlWriter w = document(bytes, "a", "b");
+        w.start("MiningModel", "functionName", "regression");
+        miningSchema(w, null, "a", "b");
+        w.start("Segmentation", "multipleModelMethod", "selectAll");
+        String[] outputs = {"a", "b"};
+        for (int o = 0; o < outputs.length; o++) {
+            w.start("Segment");
+            w.empty("True");
+            w.start("RegressionModel", "functionName", "regression", "targetFieldName", outputs[o]);
+            miningSchema(w, null, outputs[o]);
+            w.start("RegressionTable", "intercept", (double) o);
+            w.empty("NumericPredictor", "name", INPUTS[o], "coefficient", 10.0);
+            w.end();
+            w.end();
+            w.end();
+        }
+        w.finish();
+
+        PmmlEvaluator evaluator = compile(bytes);
+        double[] workspace = evaluator.newWorkspace();
+        double[] output = new double[2];
+        evaluator.evaluate(new double[]{1, 2}, output, workspace);
+        assertArrayEquals(new double[]{10, 21}, output, 1e-12);
+        evaluator.evaluate(new double[]{3, Double.NaN}, output, workspace);
+        assertEquals(30, output[0], 1e-12);
+        assertTrue(Double.isNaN(output[1]));
+    }
+
+    @Test(expected = JaqpotException.class)
+    public void testUnsupportedModel() throws Exception {
+        String pmml = "<PMML version=\"4.1\"><DataDictionary/>"
+                + "<TreeModel functionName=\"regression\"><MiningSchema/></TreeModel></PMML>";
+        PmmlCompiler.compile(new ByteArrayInputStream(pmml.getBytes("UTF-8")));
+    }
+}
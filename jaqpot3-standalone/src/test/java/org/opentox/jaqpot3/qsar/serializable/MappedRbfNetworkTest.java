@@ -0,0 +1,84 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.qsar.serializable;
+
+import java.io.File;
+import org.junit.Test;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class MappedRbfNetworkTest {
+
+    public MappedRbfNetworkTest() {
+    }
+
+    @Test
+    public void testEvaluate() throws Exception {
+        FastVector attributes = new FastVector(3);
+        for (int j = 0; j < 3; j++) {
+            attributes.addElement(new Attribute("a" + j));
+        }
+        Instances nodes = new Instances("nodes", attributes, 2);
+        nodes.add(new Instance(1.0, new double[]{0, 1, 2}));
+        nodes.add(new Instance(1.0, new double[]{-1, 0.5, 3}));
+        FastRbfNnModel model = new FastRbfNnModel();
+        model.setNodes(nodes);
+        model.setSigma(new double[]{1.5, 0.7});
+        model.setLrCoefficients(new double[]{2.0, -1.0});
+        assertTrue(MappedRbfNetwork.supports(model));
+
+        File file = File.createTempFile("rbf", ".rbf");
+        try {
+            MappedRbfNetwork.write(model, file);
+            MappedRbfNetwork network = MappedRbfNetwork.map(file);
+            assertEquals(2, network.getNumNodes());
+            assertEquals(3, network.getNumAttributes());
+
+            double[] x = {0.5, 0.5, 2.5};
+            double expected = 2.0 * Math.exp(-(0.25 + 0.25 + 0.25) / (1.5 * 1.5))
+                    - 1.0 * Math.exp(-(2.25 + 0 + 0.25) / (0.7 * 0.7));
+            assertEquals(expected, network.evaluate(x), 1e-12);
+        } finally {
+            file.delete();
+        }
+    }
+}
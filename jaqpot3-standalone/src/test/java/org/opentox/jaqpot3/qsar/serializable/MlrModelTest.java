@@ -0,0 +1,97 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.qsar.serializable;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class MlrModelTest {
+
+    public MlrModelTest() {
+    }
+
+    private static Instances randomLinearData(int numInstances, long seed) {
+        FastVector attributes = new FastVector();
+        attributes.addElement(new Attribute("x1"));
+        attributes.addElement(new Attribute("x2"));
+        attributes.addElement(new Attribute("y"));
+        Instances data = new Instances("linear", attributes, numInstances);
+        data.setClassIndex(2);
+        Random random = new Random(seed);
+        for (int i = 0; i < numInstances; i++) {
+            double x1 = random.nextDouble(), x2 = random.nextDouble();
+            double y = 1.5 * x1 - 2.0 * x2 + 0.5 + 0.01 * random.nextGaussian();
+            data.add(new Instance(1.0, new double[]{x1, x2, y}));
+        }
+        return data;
+    }
+
+    @Test
+    public void testUpdateEqualsRetraining() throws Exception {
+        Instances first = randomLinearData(50, 1);
+        Instances second = randomLinearData(30, 2);
+        Instances all = new Instances(first);
+        for (int i = 0; i < second.numInstances(); i++) {
+            all.add(second.instance(i));
+        }
+
+        MlrModel model = new MlrModel();
+        model.buildClassifier(first);
+        MlrModel updated = model.update(second);
+        MlrModel retrained = new MlrModel();
+        retrained.buildClassifier(all);
+
+        assertEquals(50, model.getN());
+        assertEquals(80, updated.getN());
+        double[] expected = retrained.coefficients();
+        double[] actual = updated.coefficients();
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], actual[i], 1e-9);
+        }
+        assertEquals(1.5, actual[0], 0.05);
+        assertEquals(-2.0, actual[1], 0.05);
+        assertEquals(0.5, actual[3], 0.05);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.qsar.serializable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class ModelCodecTest {
+
+    public ModelCodecTest() {
+    }
+
+    @Test
+    public void testConsensusModel() throws Exception {
+        ConsensusModel model = new ConsensusModel();
+        model.getMemberUris().add("http://localhost/model/1");
+        model.getMemberUris().add("http://localhost/model/2");
+        model.setCombination(ConsensusModel.Combination.weighted);
+        model.setWeights(new double[]{0.25, 0.75});
+        model.setMemberTimeout(5000);
+
+        byte[] data = ModelCodec.encode(model);
+        assertTrue(ModelCodec.isEncoded(data));
+        ConsensusModel decoded = (ConsensusModel) ModelCodec.decode(data);
+        assertEquals(model.getMemberUris(), decoded.getMemberUris());
+        assertEquals(ConsensusModel.Combination.weighted, decoded.getCombination());
+        assertTrue(Arrays.equals(model.getWeights(), decoded.getWeights()));
+        assertEquals(5000, decoded.getMemberTimeout());
+    }
+
+    @Test
+    public void testPLSModel() throws Exception {
+        double[][] projection = {{0.5, -0.5, 1.0}, {0.1, 0.2, 0.3}};
+        PLSModel model = new PLSModel("SIMPLS", "center",
+                new double[]{1, 2, 3}, new double[]{1, 2, 3}, new double[]{1, 1, 1}, 4.0, 2.0,
+                projection, projection, projection, new double[]{1.5, -0.5});
+        model.setFeatures(new String[]{"http://localhost/feature/1", "http://localhost/feature/2", "http://localhost/feature/1"});
+
+        PLSModel decoded = (PLSModel) ModelCodec.decode(ModelCodec.encode(model));
+        assertTrue(Arrays.equals(model.getFeatures(), decoded.getFeatures()));
+        assertEquals("SIMPLS", decoded.getAlgorithm());
+        assertEquals(2, decoded.getNumComponents());
+        double[] row = {0.5, Double.NaN, 7};
+        assertEquals(model.predict(row), decoded.predict(row), 0);
+    }
+
+    @Test
+    public void testLegacyPLSModelIsNotEncoded() {
+        assertFalse(ModelCodec.supports(new PLSModel(new weka.filters.supervised.attribute.PLSFilter())));
+        assertFalse(ModelCodec.supports(new java.util.HashSet<String>()));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedModel() throws Exception {
+        ModelBundle bundle = new ModelBundle();
+        bundle.addModel("http://localhost/model/1");
+        byte[] data = ModelCodec.encode(bundle);
+        ModelCodec.decode(Arrays.copyOf(data, data.length - 2));
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.qsar.trainer;
+
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.opentox.jaqpot3.exception.JaqpotException;
+import org.opentox.jaqpot3.qsar.serializable.ConsensusModel;
+import org.opentox.jaqpot3.qsar.serializable.MlrModel;
+import org.opentox.jaqpot3.resources.collections.Algorithms;
+import org.opentox.jaqpot3.util.TaskFactory;
+import org.opentox.jaqpot3.www.ClientInput;
+import org.opentox.toxotis.client.VRI;
+import org.opentox.toxotis.core.component.Feature;
+import org.opentox.toxotis.core.component.Model;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class ConsensusTrainerTest {
+
+    private static final String FEATURE = "http://localhost/feature/";
+    private static final String MODEL = "http://localhost/model/";
+
+    public ConsensusTrainerTest() {
+    }
+
+    /**
+     * Trainer whose members are kept in memory; like the database, the actual
+     * member models are only returned if they are requested.
+     */
+    private static class LocalConsensusTrainer extends ConsensusTrainer {
+
+        private final Map<String, MlrModel> members;
+
+        LocalConsensusTrainer(Map<String, MlrModel> members) {
+            this.members = members;
+        }
+
+        @Override
+        protected Model findMember(String memberUri, boolean withPayload) throws JaqpotException {
+            if (!members.containsKey(memberUri)) {
+                throw new JaqpotException("The model " + memberUri + " was not found on the server");
+            }
+            try {
+                Model member = member(memberUri);
+                if (withPayload) {
+                    member.setActualModel(members.get(memberUri));
+                }
+                return member;
+            } catch (Exception ex) {
+                throw new JaqpotException(ex);
+            }
+        }
+
+        @Override
+        protected Feature publishPredictedFeature(Model consensus) throws JaqpotException {
+            try {
+                return new Feature(new VRI(FEATURE + "consensus"));
+            } catch (Exception ex) {
+                throw new JaqpotException(ex);
+            }
+        }
+    }
+
+    private static Instances linearData(int numInstances, double noise, long seed) {
+        FastVector attributes = new FastVector();
+        attributes.addElement(new Attribute(FEATURE + "x1"));
+        attributes.addElement(new Attribute(FEATURE + "x2"));
+        attributes.addElement(new Attribute(FEATURE + "y"));
+        Instances data = new Instances("linear", attributes, numInstances);
+        data.setClassIndex(2);
+        Random random = new Random(seed);
+        for (int i = 0; i < numInstances; i++) {
+            double x1 = random.nextDouble(), x2 = random.nextDouble();
+            double y = 1.5 * x1 - 2.0 * x2 + 0.5 + noise * random.nextGaussian();
+            data.add(new Instance(1.0, new double[]{x1, x2, y}));
+        }
+        return data;
+    }
+
+    private static Model member(String uri) throws Exception {
+        Model member = new Model(new VRI(uri));
+        member.setAlgorithm(Algorithms.mlr());
+        List<Feature> independent = new ArrayList<Feature>();
+        independent.add(new Feature(new VRI(FEATURE + "x1")));
+        independent.add(new Feature(new VRI(FEATURE + "x2")));
+        member.setIndependentFeatures(independent);
+        member.addDependentFeatures(new Feature(new VRI(FEATURE + "y")));
+        member.addPredictedFeatures(new Feature(new VRI(uri + "/predicted")));
+        return member;
+    }
+
+    @Test
+    public void testWeightedWithoutWeights() throws Exception {
+        /* An accurate member and a member trained on noisy data */
+        MlrModel accurate = new MlrModel();
+        accurate.buildClassifier(linearData(50, 0.01, 1));
+        MlrModel noisy = new MlrModel();
+        noisy.buildClassifier(linearData(50, 1.0, 2));
+        Map<String, MlrModel> members = new HashMap<String, MlrModel>();
+        members.put(MODEL + "accurate", accurate);
+        members.put(MODEL + "noisy", noisy);
+
+        LocalConsensusTrainer trainer = new LocalConsensusTrainer(members);
+        trainer.setTask(TaskFactory.newQueuedTask(null, new VRI("http://localhost/task/1")));
+        trainer.parametrize(new ClientInput("model=" + URLEncoder.encode(MODEL + "accurate", "UTF-8")
+                + "&model=" + URLEncoder.encode(MODEL + "noisy", "UTF-8")
+                + "&combination=weighted"
+                + "&dataset_uri=" + URLEncoder.encode("http://localhost/dataset/1", "UTF-8")
+                + "&prediction_feature=" + URLEncoder.encode(FEATURE + "y", "UTF-8")));
+        assertTrue(trainer.needsDataset());
+
+        Model consensus = trainer.train(linearData(40, 0.01, 3));
+        ConsensusModel actual = (ConsensusModel) consensus.getActualModel();
+        assertEquals(ConsensusModel.Combination.weighted, actual.getCombination());
+        double[] weights = actual.getWeights();
+        assertEquals(2, weights.length);
+        assertEquals(1.0, weights[0] + weights[1], 1e-9);
+        assertTrue(weights[0] > weights[1]);
+    }
+}
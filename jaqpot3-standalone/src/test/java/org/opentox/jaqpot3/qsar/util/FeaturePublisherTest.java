@@ -0,0 +1,101 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+
+package org.opentox.jaqpot3.qsar.util;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.opentox.toxotis.client.VRI;
+import org.opentox.toxotis.core.component.Feature;
+import org.opentox.toxotis.exceptions.impl.ServiceInvocationException;
+import org.opentox.toxotis.ontology.ResourceValue;
+
+/**
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class FeaturePublisherTest {
+
+    public FeaturePublisherTest() {
+    }
+
+    /**
+     * Stand-in for a remote feature service; records the maximum number of
+     * concurrent requests.
+     */
+    private static class LocalFeaturePublisher extends FeaturePublisher {
+
+        private final AtomicInteger active = new AtomicInteger(0);
+        private final AtomicInteger maxActive = new AtomicInteger(0);
+
+        LocalFeaturePublisher(int maxConcurrency) throws Exception {
+            super(new VRI("http://localhost/feature"), null, maxConcurrency);
+        }
+
+        @Override
+        protected Feature publish(String title, String units, ResourceValue source) throws ServiceInvocationException {
+            int now = active.incrementAndGet();
+            synchronized (maxActive) {
+                if (now > maxActive.get()) {
+                    maxActive.set(now);
+                }
+            }
+            try {
+                Thread.sleep(5);
+                return new Feature(new VRI("http://localhost/feature/" + title));
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    }
+
+    @Test
+    public void testOrderAndBoundedConcurrency() throws Exception {
+        LocalFeaturePublisher publisher = new LocalFeaturePublisher(3);
+        for (int i = 0; i < 40; i++) {
+            publisher.submit(Integer.toString(i), "", null);
+        }
+        List<Feature> features = publisher.join();
+        assertEquals(40, features.size());
+        for (int i = 0; i < 40; i++) {
+            assertEquals("http://localhost/feature/" + i, features.get(i).getUri().toString());
+        }
+        assertTrue(publisher.maxActive.get() <= 3);
+    }
+}
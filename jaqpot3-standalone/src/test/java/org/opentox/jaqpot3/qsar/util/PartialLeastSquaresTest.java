@@ -0,0 +1,93 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+
+package org.opentox.jaqpot3.qsar.util;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.opentox.jaqpot3.qsar.serializable.PLSModel;
+import org.opentox.jaqpot3.qsar.util.PartialLeastSquares.Preprocessing;
+import org.opentox.jaqpot3.qsar.util.PartialLeastSquares.Type;
+
+/**
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class PartialLeastSquaresTest {
+
+    public PartialLeastSquaresTest() {
+    }
+
+    @Test
+    public void testPls1AgreesWithSimpls() throws Exception {
+        Random random = new Random(7);
+        int n = 40, p = 12;
+        double[][] x = new double[n][p];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < p; j++) {
+                x[i][j] = random.nextGaussian() + j;
+            }
+            y[i] = x[i][0] - 2 * x[i][3] + 0.1 * random.nextGaussian();
+        }
+        for (Preprocessing preprocessing : Preprocessing.values()) {
+            PLSModel pls1 = new PartialLeastSquares(Type.PLS1, preprocessing).fit(x, y, 3);
+            PLSModel simpls = new PartialLeastSquares(Type.SIMPLS, preprocessing).fit(x, y, 3);
+            for (int i = 0; i < n; i++) {
+                assertEquals(pls1.predict(x[i]), simpls.predict(x[i]), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testAllComponentsReproduceLeastSquares() throws Exception {
+        Random random = new Random(3);
+        int n = 30, p = 3;
+        double[][] x = new double[n][p];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < p; j++) {
+                x[i][j] = random.nextGaussian();
+            }
+            y[i] = 1 + x[i][0] - 2 * x[i][1] + 0.5 * x[i][2];
+        }
+        PLSModel model = new PartialLeastSquares(Type.PLS1, Preprocessing.center).fit(x, y, p);
+        assertEquals(p, model.getNumComponents());
+        for (int i = 0; i < n; i++) {
+            assertEquals(y[i], model.predict(x[i]), 1e-9);
+        }
+    }
+}
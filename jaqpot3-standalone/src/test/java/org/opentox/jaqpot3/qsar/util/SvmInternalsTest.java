@@ -0,0 +1,98 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.qsar.util;
+
+import java.io.StringReader;
+import org.junit.Test;
+import weka.classifiers.functions.SVMreg;
+import weka.core.Instances;
+import weka.core.Version;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class SvmInternalsTest {
+
+    private static final String ARFF = "@relation svm\n"
+            + "@attribute http://feature/1 numeric\n"
+            + "@attribute http://feature/2 numeric\n"
+            + "@attribute http://feature/y numeric\n"
+            + "@data\n"
+            + "0,1,-1\n"
+            + "1,0,2\n"
+            + "2,3,1\n"
+            + "3,1,5\n"
+            + "4,2,6\n"
+            + "5,5,5\n";
+
+    public SvmInternalsTest() {
+    }
+
+    /**
+     * The export of SVM models reads fields of Weka; this fails when Weka is
+     * upgraded so that {@link SvmInternals} is checked against the new version.
+     */
+    @Test
+    public void testWekaVersion() {
+        assertEquals(SvmInternals.WEKA_MAJOR, Version.MAJOR);
+        assertEquals(SvmInternals.WEKA_MINOR, Version.MINOR);
+    }
+
+    @Test
+    public void testInternalsOfTrainedModel() throws Exception {
+        Instances data = new Instances(new StringReader(ARFF));
+        data.setClassIndex(2);
+        SVMreg regressor = new SVMreg();
+        regressor.buildClassifier(data);
+        SvmInternals internals = SvmInternals.of(regressor);
+        assertEquals(data.numInstances(), internals.getAlpha().length);
+        assertEquals(data.numInstances(), internals.getAlphaStar().length);
+        assertEquals(data.numInstances(), internals.getData().numInstances());
+        assertNotNull(internals.getMissing());
+        assertNotNull(internals.getNormalization());
+        boolean supportVectors = false;
+        for (int i = 0; i < data.numInstances(); i++) {
+            supportVectors |= internals.getAlpha()[i] != internals.getAlphaStar()[i];
+        }
+        assertTrue(supportVectors);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUntrainedModel() {
+        SvmInternals.of(new SVMreg());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.resources.publish;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class RdfStreamWriterTest {
+
+    private static final String SUBJECT = "http://localhost/dataset/1";
+    private static final String TITLE = RdfStreamWriter.DC + "title";
+    private static final String VALUE = "a \"quoted\" \\ value\nwith\ttabs\r, <tags> & caf\u00e9 \ud83d\ude00";
+
+    public RdfStreamWriterTest() {
+    }
+
+    private static String write(RdfStreamWriter.Syntax syntax, String subject, String property, String value) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        RdfStreamWriter writer = new RdfStreamWriter(bytes, syntax);
+        writer.subject(subject).literal(property, value, null);
+        writer.close();
+        return bytes.toString("UTF-8");
+    }
+
+    @Test
+    public void testNTriplesLiteral() throws Exception {
+        String nt = write(RdfStreamWriter.Syntax.N_TRIPLES, SUBJECT, TITLE, VALUE);
+        assertTrue(nt, nt.contains("<" + SUBJECT + "> <" + TITLE + "> "
+                + "\"a \\\"quoted\\\" \\\\ value\\nwith\\ttabs\\r, <tags> & caf\\u00E9 \\U0001F600\" .\n"));
+        /* N-Triples is ASCII */
+        for (int i = 0; i < nt.length(); i++) {
+            assertTrue(nt.charAt(i) < 0x80);
+        }
+    }
+
+    @Test
+    public void testNTriplesIri() throws Exception {
+        String nt = write(RdfStreamWriter.Syntax.N_TRIPLES, "http://localhost/a b<c>\"d\"", TITLE, "x");
+        assertTrue(nt, nt.startsWith("<http://localhost/a%20b%3Cc%3E%22d%22> "));
+    }
+
+    @Test
+    public void testBlankNode() throws Exception {
+        String nt = write(RdfStreamWriter.Syntax.N_TRIPLES, "_:b0", TITLE, "x");
+        assertTrue(nt, nt.startsWith("_:b0 <" + TITLE + "> \"x\" .\n"));
+        String xml = write(RdfStreamWriter.Syntax.RDF_XML, "_:b0", TITLE, "x");
+        assertTrue(xml, xml.contains("<rdf:Description rdf:nodeID=\"b0\">"));
+    }
+
+    @Test
+    public void testTurtleLiteral() throws Exception {
+        String ttl = write(RdfStreamWriter.Syntax.TURTLE, SUBJECT, TITLE, VALUE);
+        assertTrue(ttl, ttl.contains("dc:title \"a \\\"quoted\\\" \\\\ value\\nwith\\ttabs\\r, <tags> & caf\u00e9 \ud83d\ude00\""));
+    }
+
+    @Test
+    public void testTurtleNames() throws Exception {
+        /* Local names which are not simple fall back to full IRIs */
+        String ttl = write(RdfStreamWriter.Syntax.TURTLE, SUBJECT, RdfStreamWriter.OT + "has.dot", "x");
+        assertTrue(ttl, ttl.contains("<" + RdfStreamWriter.OT + "has.dot> \"x\""));
+        ttl = write(RdfStreamWriter.Syntax.TURTLE, SUBJECT, RdfStreamWriter.OT + "hasSource", "x");
+        assertTrue(ttl, ttl.contains("ot:hasSource \"x\""));
+    }
+
+    @Test
+    public void testXmlRoundTrip() throws Exception {
+        String subject = "http://localhost/dataset?a=1&b=\"2\"";
+        String xml = write(RdfStreamWriter.Syntax.RDF_XML, subject, TITLE, VALUE + "\u0001");
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+        NodeList titles = document.getElementsByTagNameNS(RdfStreamWriter.DC, "title");
+        assertEquals(1, titles.getLength());
+        /* The control character, which XML 1.0 cannot carry, is replaced */
+        assertEquals(VALUE + "\ufffd", titles.item(0).getTextContent());
+        Element description = (Element) titles.item(0).getParentNode();
+        assertEquals(subject, description.getAttributeNS(RdfStreamWriter.RDF, "about"));
+    }
+
+    @Test
+    public void testXmlUnknownNamespace() throws Exception {
+        String property = "http://example.org/vocabulary#label";
+        String xml = write(RdfStreamWriter.Syntax.RDF_XML, SUBJECT, property, "x");
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+        assertEquals(1, document.getElementsByTagNameNS("http://example.org/vocabulary#", "label").getLength());
+    }
+}
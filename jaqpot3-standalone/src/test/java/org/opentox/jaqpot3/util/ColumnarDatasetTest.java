@@ -0,0 +1,134 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import weka.core.Instances;
+
+/**
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class ColumnarDatasetTest {
+
+    private static final String ARFF = "@relation test\n"
+            + "@attribute compound_uri string\n"
+            + "@attribute http://feature/1 numeric\n"
+            + "@attribute http://feature/2 {a,b,c}\n"
+            + "@data\n"
+            + "http://compound/1,1.5,a\n"
+            + "http://compound/2,?,?\n"
+            + "http://compound/1,-3,c\n";
+
+    public ColumnarDatasetTest() {
+    }
+
+    private static void assertSameData(Instances expected, Instances actual) {
+        assertEquals(expected.numInstances(), actual.numInstances());
+        assertEquals(expected.numAttributes(), actual.numAttributes());
+        for (int i = 0; i < expected.numInstances(); i++) {
+            assertEquals(expected.instance(i).toString(), actual.instance(i).toString());
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Instances data = new Instances(new StringReader(ARFF));
+        for (boolean compress : new boolean[]{false, true}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ColumnarDataset.write(data, out, compress);
+            assertSameData(data, ColumnarDataset.read(new ByteArrayInputStream(out.toByteArray())));
+            assertSameData(data, ColumnarDataset.read(out.toByteArray()));
+        }
+    }
+
+    private static byte[] columnar(boolean compress) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnarDataset.write(new Instances(new StringReader(ARFF)), out, compress);
+        return out.toByteArray();
+    }
+
+    private static void assertCorrupted(byte[] bytes) {
+        try {
+            ColumnarDataset.read(new ByteArrayInputStream(bytes));
+            fail("A corrupted dataset should be rejected");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testHugeCountsAreRejected() throws Exception {
+        byte[] bytes = columnar(false);
+        /* The number of instances follows the relation name ("test") in the header */
+        int numInstancesOffset = 12 + 4 + 4;
+        ByteBuffer.wrap(bytes).putInt(numInstancesOffset, Integer.MAX_VALUE);
+        assertCorrupted(bytes);
+
+        bytes = columnar(false);
+        ByteBuffer.wrap(bytes).putInt(numInstancesOffset + 4, Integer.MAX_VALUE);
+        assertCorrupted(bytes);
+
+        bytes = columnar(false);
+        ByteBuffer.wrap(bytes).putInt(8, Integer.MAX_VALUE);
+        assertCorrupted(bytes);
+    }
+
+    @Test
+    public void testTruncatedDatasetsAreRejected() throws Exception {
+        for (boolean compress : new boolean[]{false, true}) {
+            byte[] bytes = columnar(compress);
+            for (int length = 0; length < bytes.length; length++) {
+                assertCorrupted(Arrays.copyOf(bytes, length));
+            }
+        }
+    }
+
+    @Test
+    public void testHugeBlockLengthIsRejected() throws Exception {
+        byte[] bytes = columnar(false);
+        int headerLength = ByteBuffer.wrap(bytes).getInt(8);
+        /* The block of weights follows the header; claim it is almost 2GB long */
+        ByteBuffer.wrap(bytes).putInt(12 + headerLength + 1, Integer.MAX_VALUE - 9).putInt(12 + headerLength + 5,
+                Integer.MAX_VALUE - 9);
+        assertCorrupted(bytes);
+    }
+}
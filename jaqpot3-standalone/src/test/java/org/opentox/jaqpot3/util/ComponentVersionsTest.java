@@ -0,0 +1,88 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import java.util.Date;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class ComponentVersionsTest {
+
+    public ComponentVersionsTest() {
+    }
+
+    @Test
+    public void testTagPerMediaType() {
+        ComponentVersions.Version version = ComponentVersions.version("tagPerMediaType", 1000L);
+        String rdf = version.tag("application/rdf+xml");
+        assertEquals(rdf, ComponentVersions.version("tagPerMediaType", 1000L).tag("application/rdf+xml"));
+        assertFalse(rdf.equals(version.tag("text/turtle")));
+        assertFalse(rdf.equals(version.tag(null)));
+        /* Tags are quoted in the headers, so they must not contain quotes or spaces */
+        assertTrue(rdf, rdf.matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test
+    public void testTagChangesWithTheComponent() {
+        String id = "tagChanges";
+        String before = ComponentVersions.version(id, 1000L).tag("text/uri-list");
+        assertFalse(before.equals(ComponentVersions.version(id, 2000L).tag("text/uri-list")));
+        assertFalse(before.equals(ComponentVersions.version("other", 1000L).tag("text/uri-list")));
+        ComponentVersions.touch(id);
+        assertFalse(before.equals(ComponentVersions.version(id, 1000L).tag("text/uri-list")));
+    }
+
+    @Test
+    public void testModifiedSince() {
+        ComponentVersions.Version version = new ComponentVersions.Version("modifiedSince", 10500L);
+        assertTrue(version.isModifiedSince(null));
+        /* Within the same second as the modification */
+        assertFalse(version.isModifiedSince(new Date(10000L)));
+        assertFalse(version.isModifiedSince(new Date(11000L)));
+        assertTrue(version.isModifiedSince(new Date(9999L)));
+    }
+
+    @Test
+    public void testStaticVersions() {
+        ComponentVersions.Version version = ComponentVersions.ofStatic("algorithms");
+        assertEquals(version.getKey(), ComponentVersions.ofStatic("algorithms").getKey());
+        assertFalse(version.getKey().equals(ComponentVersions.ofStatic("algorithm-mlr").getKey()));
+        assertFalse(version.isModifiedSince(new Date(version.getLastModified())));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class DbMetricsTest {
+
+    public DbMetricsTest() {
+    }
+
+    /**
+     * A statement whose updates change the given number of rows, or fail if negative.
+     */
+    private static PreparedStatement statement(final int rows) {
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class[]{PreparedStatement.class}, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (!method.getName().equals("executeUpdate")) {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+                if (rows < 0) {
+                    throw new SQLException("Failed");
+                }
+                return rows;
+            }
+        });
+    }
+
+    private static DbMetrics.Statistics statistics(String type) {
+        for (DbMetrics.Statistics statistics : DbMetrics.getOperations()) {
+            if (statistics.getType().equals(type)) {
+                return statistics;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testSucceededAndFailedOperations() throws Exception {
+        assertEquals(3, DbMetrics.execute(statement(3), "TestUpdate", null));
+        assertEquals(2, DbMetrics.execute(statement(2), "TestUpdate", null));
+        try {
+            DbMetrics.execute(statement(-1), "TestUpdate", "failing");
+            fail("The failure of the statement should be propagated");
+        } catch (SQLException expected) {
+        }
+        DbMetrics.Statistics statistics = statistics("TestUpdate");
+        assertNotNull(statistics);
+        assertEquals(3, statistics.getCount());
+        assertEquals(1, statistics.getFailures());
+        assertEquals(5, statistics.getRows());
+        long total = 0;
+        for (long bucket : statistics.getHistogram()) {
+            total += bucket;
+        }
+        assertEquals(3, total);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class HttpTransportTest {
+
+    private static final HttpTransport transport = HttpTransport.TRANSPORT;
+
+    public HttpTransportTest() {
+    }
+
+    @Test
+    public void testPerHostLimit() throws Exception {
+        int maxPerHost = Math.max(1, Configuration.getIntegerProperty("http.maxPerHost", 16));
+        List<HttpTransport.Exchange> open = new ArrayList<HttpTransport.Exchange>();
+        /* Connections are not established until a response is requested */
+        for (int i = 0; i < maxPerHost; i++) {
+            open.add(transport.open("http://limited.invalid:8080/" + i, "GET"));
+        }
+        /* Other hosts (and other ports of the same host) are not affected */
+        transport.open("http://limited.invalid:8081/", "GET").abort();
+        transport.open("http://other.invalid:8080/", "GET").abort();
+
+        final AtomicReference<HttpTransport.Exchange> waiting = new AtomicReference<HttpTransport.Exchange>();
+        final CountDownLatch admitted = new CountDownLatch(1);
+        long waitsBefore = transport.getHostWaits();
+        Thread waiter = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    waiting.set(transport.open("http://limited.invalid:8080/waiting", "GET"));
+                    admitted.countDown();
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        };
+        waiter.start();
+        assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+        open.remove(0).abort();
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        assertTrue(transport.getHostWaits() > waitsBefore);
+        /* Closing twice does not release two slots */
+        waiting.get().abort();
+        waiting.get().abort();
+        for (HttpTransport.Exchange exchange : open) {
+            exchange.abort();
+        }
+        for (int i = 0; i < maxPerHost; i++) {
+            open.add(transport.open("http://limited.invalid:8080/" + i, "GET"));
+        }
+        for (HttpTransport.Exchange exchange : open) {
+            exchange.abort();
+        }
+    }
+
+    private static HttpServer server(final int bodyLength) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, bodyLength);
+                OutputStream out = exchange.getResponseBody();
+                try {
+                    out.write(new byte[bodyLength]);
+                } finally {
+                    out.close();
+                }
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    @Test
+    public void testSmallResponsesAreReused() throws Exception {
+        HttpServer server = server(1000);
+        try {
+            String uri = "http://127.0.0.1:" + server.getAddress().getPort() + "/small";
+            long reusedBefore = transport.getReusedConnections();
+            long discardedBefore = transport.getDiscardedConnections();
+            for (int i = 0; i < 3; i++) {
+                HttpTransport.Exchange exchange = transport.open(uri, "GET");
+                InputStream in = exchange.getInputStream();
+                assertEquals(0, in.read());
+                /* The rest of the body is drained on close */
+                exchange.close();
+            }
+            assertEquals(reusedBefore + 2, transport.getReusedConnections());
+            assertEquals(discardedBefore, transport.getDiscardedConnections());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testLargeResponsesAreDiscarded() throws Exception {
+        HttpServer server = server(1024 * 1024);
+        try {
+            String uri = "http://127.0.0.1:" + server.getAddress().getPort() + "/large";
+            long discardedBefore = transport.getDiscardedConnections();
+            HttpTransport.Exchange exchange = transport.open(uri, "GET");
+            assertEquals(200, exchange.getConnection().getResponseCode());
+            exchange.close();
+            assertEquals(discardedBefore + 1, transport.getDiscardedConnections());
+        } finally {
+            server.stop(0);
+        }
+    }
+}
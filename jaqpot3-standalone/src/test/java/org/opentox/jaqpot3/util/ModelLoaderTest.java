@@ -0,0 +1,102 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import org.junit.Test;
+import org.opentox.toxotis.client.VRI;
+import org.opentox.toxotis.core.component.Model;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class ModelLoaderTest {
+
+    private static final String BASE = "http://localhost:8080/jaqpot/model/";
+
+    public ModelLoaderTest() {
+    }
+
+    @Test
+    public void testCachedPerVersion() throws Exception {
+        String id = "cachedPerVersion";
+        ComponentVersions.Version version = ComponentVersions.version(id, 1000L);
+        assertNull(ModelLoader.cached(id, version));
+        Model model = new Model(new VRI(BASE + id));
+        ModelLoader.cache(id, version, model);
+        assertSame(model, ModelLoader.cached(id, version));
+        assertSame(model, ModelLoader.cached(id, ComponentVersions.version(id, 1000L)));
+    }
+
+    @Test
+    public void testModificationInvalidates() throws Exception {
+        String id = "modificationInvalidates";
+        ComponentVersions.Version version = ComponentVersions.version(id, 1000L);
+        ModelLoader.cache(id, version, new Model(new VRI(BASE + id)));
+        ComponentVersions.touch(id);
+        ComponentVersions.Version modified = ComponentVersions.version(id, 1000L);
+        assertFalse(version.getKey().equals(modified.getKey()));
+        assertTrue(modified.getLastModified() >= version.getLastModified());
+        assertNull(ModelLoader.cached(id, modified));
+        /* The reloaded model replaces the stale one */
+        Model reloaded = new Model(new VRI(BASE + id));
+        ModelLoader.cache(id, modified, reloaded);
+        assertSame(reloaded, ModelLoader.cached(id, modified));
+        assertNull(ModelLoader.cached(id, version));
+    }
+
+    @Test
+    public void testRecreatedModelInvalidates() throws Exception {
+        /* A model deleted and stored again under the same id */
+        String id = "recreated";
+        ModelLoader.cache(id, ComponentVersions.version(id, 1000L), new Model(new VRI(BASE + id)));
+        assertNull(ModelLoader.cached(id, ComponentVersions.version(id, 2000L)));
+    }
+
+    @Test
+    public void testCacheIsBounded() throws Exception {
+        int size = Configuration.getIntegerProperty("models.metadataCacheSize", 512);
+        ComponentVersions.Version first = ComponentVersions.version("bounded-0", 1000L);
+        ModelLoader.cache("bounded-0", first, new Model(new VRI(BASE + "bounded-0")));
+        for (int i = 1; i <= size; i++) {
+            String id = "bounded-" + i;
+            ModelLoader.cache(id, ComponentVersions.version(id, 1000L), new Model(new VRI(BASE + id)));
+        }
+        assertNull(ModelLoader.cached("bounded-0", first));
+        String last = "bounded-" + size;
+        assertNotNull(ModelLoader.cached(last, ComponentVersions.version(last, 1000L)));
+    }
+}
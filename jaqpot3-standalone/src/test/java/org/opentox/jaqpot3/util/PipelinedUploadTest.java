@@ -0,0 +1,169 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.opentox.toxotis.client.VRI;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class PipelinedUploadTest {
+
+    public PipelinedUploadTest() {
+    }
+
+    /**
+     * Records the uploaded values; fails on the given write (counting from 1), if positive.
+     */
+    private static class RecordingTarget implements PipelinedUpload.Target {
+
+        private final int failingWrite;
+        private final List<Double> values = new ArrayList<Double>();
+        private int begun = 0;
+        private int writes = 0;
+        private boolean closed = false;
+        private Thread thread;
+
+        RecordingTarget(int failingWrite) {
+            this.failingWrite = failingWrite;
+        }
+
+        @Override
+        public synchronized void begin(Instances header) throws IOException {
+            begun++;
+        }
+
+        @Override
+        public synchronized void write(Instances rows) throws IOException {
+            thread = Thread.currentThread();
+            if (++writes == failingWrite) {
+                throw new IOException("Connection reset");
+            }
+            for (int i = 0; i < rows.numInstances(); i++) {
+                values.add(rows.instance(i).value(0));
+            }
+        }
+
+        @Override
+        public synchronized VRI finish() throws IOException {
+            try {
+                return new VRI("http://localhost/dataset/1");
+            } catch (URISyntaxException ex) {
+                throw new IOException(ex);
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+        }
+    }
+
+    private static Instances chunk(int from, int size) {
+        FastVector attributes = new FastVector(1);
+        attributes.addElement(new Attribute("y"));
+        Instances chunk = new Instances("predictions", attributes, size);
+        for (int i = from; i < from + size; i++) {
+            chunk.add(new Instance(1.0, new double[]{i}));
+        }
+        return chunk;
+    }
+
+    @Test
+    public void testChunksAreUploadedInOrder() throws Exception {
+        RecordingTarget target = new RecordingTarget(0);
+        PipelinedUpload upload = new PipelinedUpload(target, 2);
+        upload.start();
+        for (int c = 0; c < 5; c++) {
+            upload.add(chunk(3 * c, 3));
+        }
+        assertEquals("http://localhost/dataset/1", upload.finish().toString());
+        upload.abort();
+        assertEquals(1, target.begun);
+        assertEquals(5, target.writes);
+        assertEquals(15, target.values.size());
+        for (int i = 0; i < 15; i++) {
+            assertEquals(i, target.values.get(i), 0.0);
+        }
+        assertNotSame(Thread.currentThread(), target.thread);
+    }
+
+    @Test
+    public void testFailedUploadKeepsPredictions() throws Exception {
+        RecordingTarget target = new RecordingTarget(2);
+        PipelinedUpload upload = new PipelinedUpload(target, 1);
+        upload.start();
+        /* More chunks than the queue holds: the producer must not block after the failure */
+        for (int c = 0; c < 10; c++) {
+            upload.add(chunk(2 * c, 2));
+        }
+        try {
+            upload.finish();
+            fail("The failure of the upload should be reported");
+        } catch (IOException expected) {
+        }
+        assertTrue(target.closed);
+        assertTrue(target.writes < 10);
+        Instances all = upload.getInstances();
+        assertEquals(20, all.numInstances());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, all.instance(i).value(0), 0.0);
+        }
+    }
+
+    @Test
+    public void testNothingToUpload() throws Exception {
+        RecordingTarget target = new RecordingTarget(0);
+        PipelinedUpload upload = new PipelinedUpload(target, 2);
+        upload.start();
+        try {
+            upload.finish();
+            fail("An empty upload should fail");
+        } catch (IOException expected) {
+        }
+        assertNull(upload.getInstances());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class StreamingArffReaderTest {
+
+    private static final String ARFF = "% comment\n"
+            + "@relation 'test'\n\n"
+            + "@attribute compound_uri string\n"
+            + "@attribute 'http://feature/1' numeric\n"
+            + "@attribute http://feature/2 {'a b',c,d}\n"
+            + "@attribute http://feature/3 real\n"
+            + "@data\n"
+            + "'http://compound/1', 1.5e3, 'a b', -0.000125\r\n"
+            + "% another comment\n"
+            + "\"http://compound/2\",?,c,123456789012345678\n"
+            + "'http://compound/3', 3 , d, 0.1\n"
+            + "{0 'http://compound/4', 2 d}\n";
+
+    public StreamingArffReaderTest() {
+    }
+
+    private static StreamingArffReader reader(String arff) throws IOException {
+        return new StreamingArffReader(new ByteArrayInputStream(arff.getBytes("UTF-8")));
+    }
+
+    @Test
+    public void testAgreesWithWekaReader() throws Exception {
+        Instances expected = new Instances(new StringReader(ARFF));
+        Instances actual = reader(ARFF).readAll();
+        assertEquals(expected.relationName(), actual.relationName());
+        assertEquals(expected.numAttributes(), actual.numAttributes());
+        assertEquals(expected.numInstances(), actual.numInstances());
+        for (int j = 0; j < expected.numAttributes(); j++) {
+            assertEquals(expected.attribute(j).name(), actual.attribute(j).name());
+            assertEquals(expected.attribute(j).type(), actual.attribute(j).type());
+        }
+        for (int i = 0; i < expected.numInstances(); i++) {
+            Instance e = expected.instance(i);
+            Instance a = actual.instance(i);
+            assertEquals(e.weight(), a.weight(), 0);
+            for (int j = 0; j < expected.numAttributes(); j++) {
+                assertEquals(e.isMissing(j), a.isMissing(j));
+                if (!e.isMissing(j)) {
+                    assertEquals(e.toString(j), a.toString(j));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWeights() throws Exception {
+        StreamingArffReader reader = reader("@relation x\n@attribute a numeric\n@attribute b numeric\n@data\n"
+                + "1, 2, {0.5}\n{1 3}, {2}\n");
+        assertEquals(2, reader.getStructure().numAttributes());
+        Instances data = reader.readAll();
+        assertEquals(2, data.numInstances());
+        assertEquals(0.5, data.instance(0).weight(), 0);
+        assertEquals(2, data.instance(0).value(1), 0);
+        assertEquals(2, data.instance(1).weight(), 0);
+        assertEquals(0, data.instance(1).value(0), 0);
+        assertEquals(3, data.instance(1).value(1), 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void testUndeclaredNominalValue() throws Exception {
+        reader("@relation x\n@attribute a {p}\n@data\nq\n").readAll();
+    }
+}
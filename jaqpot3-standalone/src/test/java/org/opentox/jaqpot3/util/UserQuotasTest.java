@@ -0,0 +1,119 @@
+/*
+ *
+ * Jaqpot - version 3
+ *
+ * The JAQPOT-3 web services are OpenTox API-1.2 compliant web services. Jaqpot
+ * is a web application that supports model training and data preprocessing algorithms
+ * such as multiple linear regression, support vector machines, neural networks
+ * (an in-house implementation based on an efficient algorithm), an implementation
+ * of the leverage algorithm for domain of applicability estimation and various
+ * data preprocessing algorithms like PLS and data cleanup.
+ *
+ * Copyright (C) 2009-2012 Pantelis Sopasakis & Charalampos Chomenides
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contact:
+ * Pantelis Sopasakis
+ * chvng@mail.ntua.gr
+ * Address: Iroon Politechniou St. 9, Zografou, Athens Greece
+ * tel. +30 210 7723236
+ *
+ */
+package org.opentox.jaqpot3.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Pantelis Sopasakis
+ * @author Charalampos Chomenides
+ */
+public class UserQuotasTest {
+
+    public UserQuotasTest() {
+    }
+
+    @Test
+    public void testAdmission() {
+        UserQuotas.Account account = new UserQuotas.Account("admission@test");
+        assertTrue(UserQuotas.admitTask(account, "admission-1", 2));
+        assertTrue(UserQuotas.admitTask(account, "admission-2", 2));
+        assertFalse(UserQuotas.admitTask(account, "admission-3", 2));
+        assertEquals(2, account.getActiveTasks());
+        assertEquals(2, account.getTasks());
+        UserQuotas.taskEnded("admission-1");
+        /* Tasks that were not admitted are ignored */
+        UserQuotas.taskEnded("admission-3");
+        assertEquals(1, account.getActiveTasks());
+        assertTrue(UserQuotas.admitTask(account, "admission-3", 2));
+        assertEquals(2, account.getActiveTasks());
+        UserQuotas.taskEnded("admission-2");
+        UserQuotas.taskEnded("admission-3");
+        assertEquals(0, account.getActiveTasks());
+    }
+
+    @Test
+    public void testConcurrentAdmissionRespectsTheLimit() throws Exception {
+        final UserQuotas.Account account = new UserQuotas.Account("concurrent@test");
+        final int maxTasks = 5;
+        final AtomicInteger admitted = new AtomicInteger();
+        final CountDownLatch go = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        go.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (int i = 0; i < 100; i++) {
+                        if (UserQuotas.admitTask(account, "concurrent-" + thread + "-" + i, maxTasks)) {
+                            admitted.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(maxTasks, admitted.get());
+        assertEquals(maxTasks, account.getActiveTasks());
+    }
+
+    @Test
+    public void testIdleAccountsAreEvicted() {
+        UserQuotas.Account idle = new UserQuotas.Account("idle@test");
+        UserQuotas.Account busy = new UserQuotas.Account("busy@test");
+        assertSame(idle, UserQuotas.cache(idle));
+        assertSame(busy, UserQuotas.cache(busy));
+        /* A second load of the same user keeps the account already in memory */
+        assertSame(idle, UserQuotas.cache(new UserQuotas.Account("idle@test")));
+        assertTrue(UserQuotas.admitTask(busy, "busy-1", 1));
+        UserQuotas.evict(System.currentTimeMillis() + 1000L * 1000L * 1000L);
+        assertNull(UserQuotas.cached("idle@test"));
+        assertSame(busy, UserQuotas.cached("busy@test"));
+        UserQuotas.taskEnded("busy-1");
+    }
+}